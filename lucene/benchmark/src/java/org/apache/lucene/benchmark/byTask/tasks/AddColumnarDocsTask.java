@@ -0,0 +1,200 @@
+package org.apache.lucene.benchmark.byTask.tasks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.lucene.benchmark.byTask.PerfRunData;
+import org.apache.lucene.benchmark.byTask.feeds.DocMaker;
+import org.apache.lucene.document.ColumnarDocuments;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoubleField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.FloatField;
+import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Add a batch of documents with a single call to
+ * {@link org.apache.lucene.index.IndexWriter#addDocuments}, as {@link ColumnarDocuments}:
+ * every field of the documents from the {@link DocMaker} becomes a column, whose
+ * {@link Field} is re-used for all documents.  Compare with {@link AddDocTask} over
+ * the same documents, see conf/indexing-columnar.alg.
+ * <br>Other side effects: none.
+ * <br>Takes optional params: batch size (default 100), and document size
+ * (0 for no limit), separated by a comma, e.g. AddColumnarDocs(500,100).
+ * <br>Numeric fields that a document does not have are indexed as 0.
+ */
+public class AddColumnarDocsTask extends PerfTask {
+
+  public AddColumnarDocsTask(PerfRunData runData) {
+    super(runData);
+  }
+
+  private int batchSize = 100;
+  private int docSize = 0;
+
+  /** the column fields, re-used across batches */
+  private Map<String,Field> fields = new HashMap<String,Field>();
+
+  /**
+   * volatile data passed between setup(), doLogic(), tearDown().
+   * the batch is created at setup() and added at doLogic().
+   */
+  protected ColumnarDocuments docs = null;
+
+  @Override
+  public void setup() throws Exception {
+    super.setup();
+    DocMaker docMaker = getRunData().getDocMaker();
+    // field name -> array of values, in the order the fields are first seen
+    Map<String,Object> columns = new LinkedHashMap<String,Object>();
+    for (int i = 0; i < batchSize; i++) {
+      Document doc = docSize > 0 ? docMaker.makeDocument(docSize) : docMaker.makeDocument();
+      for (IndexableField f : doc) {
+        Object values = columns.get(f.name());
+        if (values == null) {
+          values = newValues(f);
+          columns.put(f.name(), values);
+        }
+        setValue(values, i, f);
+      }
+    }
+
+    docs = new ColumnarDocuments(batchSize);
+    for (Map.Entry<String,Object> column : columns.entrySet()) {
+      Field field = fields.get(column.getKey());
+      Object values = column.getValue();
+      if (values instanceof String[]) {
+        docs.addColumn(field, (String[]) values);
+      } else if (values instanceof BytesRef[]) {
+        docs.addColumn(field, (BytesRef[]) values);
+      } else if (values instanceof int[]) {
+        docs.addColumn(field, (int[]) values);
+      } else if (values instanceof long[]) {
+        docs.addColumn(field, (long[]) values);
+      } else if (values instanceof float[]) {
+        docs.addColumn(field, (float[]) values);
+      } else {
+        docs.addColumn(field, (double[]) values);
+      }
+    }
+  }
+
+  /** Creates the value array for a column, and its field if there is none yet */
+  private Object newValues(IndexableField f) {
+    Field field = fields.get(f.name());
+    FieldType type = (FieldType) f.fieldType();
+    Number number = f.numericValue();
+    Object values;
+    if (number instanceof Integer) {
+      if (field == null) field = new IntField(f.name(), 0, type);
+      values = new int[batchSize];
+    } else if (number instanceof Long) {
+      if (field == null) field = new LongField(f.name(), 0L, type);
+      values = new long[batchSize];
+    } else if (number instanceof Float) {
+      if (field == null) field = new FloatField(f.name(), 0f, type);
+      values = new float[batchSize];
+    } else if (number instanceof Double) {
+      if (field == null) field = new DoubleField(f.name(), 0.0, type);
+      values = new double[batchSize];
+    } else if (f.binaryValue() != null) {
+      if (field == null) field = new Field(f.name(), new BytesRef(), type);
+      values = new BytesRef[batchSize];
+    } else {
+      if (field == null) field = new Field(f.name(), "", type);
+      values = new String[batchSize];
+    }
+    fields.put(f.name(), field);
+    return values;
+  }
+
+  private static void setValue(Object values, int doc, IndexableField f) {
+    if (values instanceof String[]) {
+      ((String[]) values)[doc] = f.stringValue();
+    } else if (values instanceof BytesRef[]) {
+      ((BytesRef[]) values)[doc] = BytesRef.deepCopyOf(f.binaryValue());
+    } else if (values instanceof int[]) {
+      ((int[]) values)[doc] = f.numericValue().intValue();
+    } else if (values instanceof long[]) {
+      ((long[]) values)[doc] = f.numericValue().longValue();
+    } else if (values instanceof float[]) {
+      ((float[]) values)[doc] = f.numericValue().floatValue();
+    } else {
+      ((double[]) values)[doc] = f.numericValue().doubleValue();
+    }
+  }
+
+  @Override
+  protected AddColumnarDocsTask clone() throws CloneNotSupportedException {
+    AddColumnarDocsTask other = (AddColumnarDocsTask) super.clone();
+    // parallel copies must not share their fields
+    other.fields = new HashMap<String,Field>();
+    return other;
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    docs = null;
+    super.tearDown();
+  }
+
+  @Override
+  protected String getLogMessage(int recsCount) {
+    return String.format(Locale.ROOT, "added %9d docs", recsCount);
+  }
+
+  @Override
+  public int doLogic() throws Exception {
+    getRunData().getIndexWriter().addDocuments(docs);
+    return docs.size();
+  }
+
+  /**
+   * Set the params (batch size, and optionally the document size)
+   * @param params batchSize[,docSize], where a docSize of 0 means no limit.
+   */
+  @Override
+  public void setParams(String params) {
+    super.setParams(params);
+    String[] parts = params.split(",");
+    batchSize = (int) Float.parseFloat(parts[0].trim());
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batch size must be positive: " + params);
+    }
+    if (parts.length > 1) {
+      docSize = (int) Float.parseFloat(parts[1].trim());
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see org.apache.lucene.benchmark.byTask.tasks.PerfTask#supportsParams()
+   */
+  @Override
+  public boolean supportsParams() {
+    return true;
+  }
+
+}
@@ -113,6 +113,26 @@ public class TestPerfTasksLogic extends BenchmarkTestCase {
     ir.close();
   }
 
+  /**
+   * Test that AddColumnarDocs adds whole batches of documents
+   */
+  public void testAddColumnarDocs() throws Exception {
+    String algLines[] = {
+        "doc.reuse.fields=true",
+        "ResetSystemErase",
+        "CreateIndex",
+        "{ AddColumnarDocs(50,100) } : 20",
+        "CloseIndex",
+    };
+
+    Benchmark benchmark = execBenchmark(algLines);
+
+    IndexReader ir = DirectoryReader.open(benchmark.getRunData().getDirectory());
+    assertEquals("1000 docs were added to the index, this is what we expect to find!", 1000, ir.numDocs());
+    assertEquals(1000, ir.getDocCount(DocMaker.TIME_SEC_FIELD));
+    ir.close();
+  }
+
   /**
    * Test timed sequence task.
    */
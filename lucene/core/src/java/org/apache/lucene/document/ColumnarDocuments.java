@@ -0,0 +1,209 @@
+package org.apache.lucene.document;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.lucene.index.IndexWriter; // javadocs
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * A batch of documents given column by column: each column is a {@link Field}
+ * and an array holding its value for every document of the batch.
+ * <p>
+ * Iterating over the batch returns its documents in order.  Every document
+ * re-uses the same column {@link Field} instances, set to the values of that
+ * document, so their token streams are re-used as well and no per-document
+ * {@link Document} or {@link Field} is created.  A batch can be indexed with a
+ * single call to {@link IndexWriter#addDocuments(Iterable)}, which takes the
+ * indexing thread state and checks for pending flushes once for the whole batch
+ * rather than once per document.
+ * <p>
+ * Note that {@link IndexWriter#addDocuments(Iterable)} adds the batch atomically:
+ * its documents get adjacent document IDs, are always flushed to the same segment,
+ * and are all deleted if one of them fails to index.  Batches should therefore be
+ * small compared to the RAM buffer, typically a few hundred to a few thousand
+ * documents.
+ * <p>
+ * Values in <code>String</code> and {@link BytesRef} columns may be null, in
+ * which case the document has no value for that field.  A document returned by
+ * the iterator is only valid until the next one is requested.
+ *
+ * @lucene.experimental
+ */
+public final class ColumnarDocuments implements Iterable<Iterable<IndexableField>> {
+
+  private final int numDocs;
+  private final List<Column> columns = new ArrayList<Column>();
+
+  /** Creates an empty batch of <code>numDocs</code> documents */
+  public ColumnarDocuments(int numDocs) {
+    if (numDocs < 0) {
+      throw new IllegalArgumentException("numDocs must be >= 0; got " + numDocs);
+    }
+    this.numDocs = numDocs;
+  }
+
+  /** Returns the number of documents in the batch */
+  public int size() {
+    return numDocs;
+  }
+
+  /** Adds a column of string values; null values are skipped */
+  public ColumnarDocuments addColumn(Field field, final String[] values) {
+    checkColumn(field, values.length);
+    columns.add(new Column(field) {
+      @Override
+      boolean set(int doc) {
+        if (values[doc] == null) {
+          return false;
+        }
+        field.setStringValue(values[doc]);
+        return true;
+      }
+    });
+    return this;
+  }
+
+  /** Adds a column of binary values; null values are skipped */
+  public ColumnarDocuments addColumn(Field field, final BytesRef[] values) {
+    checkColumn(field, values.length);
+    columns.add(new Column(field) {
+      @Override
+      boolean set(int doc) {
+        if (values[doc] == null) {
+          return false;
+        }
+        field.setBytesValue(values[doc]);
+        return true;
+      }
+    });
+    return this;
+  }
+
+  /** Adds a column of int values, for example for an {@link IntField} */
+  public ColumnarDocuments addColumn(Field field, final int[] values) {
+    checkColumn(field, values.length);
+    columns.add(new Column(field) {
+      @Override
+      boolean set(int doc) {
+        field.setIntValue(values[doc]);
+        return true;
+      }
+    });
+    return this;
+  }
+
+  /** Adds a column of long values, for example for a {@link LongField} */
+  public ColumnarDocuments addColumn(Field field, final long[] values) {
+    checkColumn(field, values.length);
+    columns.add(new Column(field) {
+      @Override
+      boolean set(int doc) {
+        field.setLongValue(values[doc]);
+        return true;
+      }
+    });
+    return this;
+  }
+
+  /** Adds a column of float values, for example for a {@link FloatField} */
+  public ColumnarDocuments addColumn(Field field, final float[] values) {
+    checkColumn(field, values.length);
+    columns.add(new Column(field) {
+      @Override
+      boolean set(int doc) {
+        field.setFloatValue(values[doc]);
+        return true;
+      }
+    });
+    return this;
+  }
+
+  /** Adds a column of double values, for example for a {@link DoubleField} */
+  public ColumnarDocuments addColumn(Field field, final double[] values) {
+    checkColumn(field, values.length);
+    columns.add(new Column(field) {
+      @Override
+      boolean set(int doc) {
+        field.setDoubleValue(values[doc]);
+        return true;
+      }
+    });
+    return this;
+  }
+
+  private void checkColumn(Field field, int numValues) {
+    if (field == null) {
+      throw new IllegalArgumentException("field must not be null");
+    }
+    if (numValues != numDocs) {
+      throw new IllegalArgumentException("column \"" + field.name() + "\" has " + numValues
+          + " values, but the batch has " + numDocs + " documents");
+    }
+  }
+
+  @Override
+  public Iterator<Iterable<IndexableField>> iterator() {
+    return new Iterator<Iterable<IndexableField>>() {
+      private final List<IndexableField> fields = new ArrayList<IndexableField>(columns.size());
+      private int doc;
+
+      @Override
+      public boolean hasNext() {
+        return doc < numDocs;
+      }
+
+      @Override
+      public Iterable<IndexableField> next() {
+        if (doc >= numDocs) {
+          throw new NoSuchElementException();
+        }
+        fields.clear();
+        for (Column column : columns) {
+          if (column.set(doc)) {
+            fields.add(column.field);
+          }
+        }
+        doc++;
+        return fields;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /** A field and its values */
+  private static abstract class Column {
+    final Field field;
+
+    Column(Field field) {
+      this.field = field;
+    }
+
+    /** Sets the field to the value of the given document; returns false if it has none */
+    abstract boolean set(int doc);
+  }
+}
@@ -3061,6 +3061,18 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
     return docWriter.flushControl.netBytes() + bufferedDeletesStream.bytesUsed();
   }
   
+  /** Expert: Returns true if indexing threads are currently
+   *  stalled because flushing can't keep up with the documents
+   *  being added, so that new documents wait until flushes
+   *  free up enough RAM.  Applications can use this to hold
+   *  back less important documents until flushing catches up.
+   *
+   * @lucene.experimental */
+  public final boolean isIndexingStalled() {
+    ensureOpen();
+    return docWriter.flushControl.anyStalledThreads();
+  }
+
   // for testing only
   DocumentsWriter getDocsWriter() {
     boolean test = false;
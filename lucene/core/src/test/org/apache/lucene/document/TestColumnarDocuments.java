@@ -0,0 +1,114 @@
+package org.apache.lucene.document;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Iterator;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestColumnarDocuments extends LuceneTestCase {
+
+  public void testAddDocuments() throws Exception {
+    int numDocs = atLeast(50);
+    String[] ids = new String[numDocs];
+    String[] bodies = new String[numDocs];
+    int[] nums = new int[numDocs];
+    double[] prices = new double[numDocs];
+    BytesRef[] payloads = new BytesRef[numDocs];
+    int numBodies = 0;
+    for (int i = 0; i < numDocs; i++) {
+      ids[i] = Integer.toString(i);
+      if (i % 3 != 0) {
+        bodies[i] = "common text " + i;
+        numBodies++;
+      }
+      nums[i] = i;
+      prices[i] = i / 2.0;
+      payloads[i] = new BytesRef("payload" + i);
+    }
+
+    ColumnarDocuments docs = new ColumnarDocuments(numDocs)
+        .addColumn(new StringField("id", "", Field.Store.YES), ids)
+        .addColumn(new TextField("body", "", Field.Store.NO), bodies)
+        .addColumn(new IntField("num", 0, Field.Store.YES), nums)
+        .addColumn(new DoubleField("price", 0.0, Field.Store.YES), prices)
+        .addColumn(new StoredField("payload", new BytesRef()), payloads);
+    assertEquals(numDocs, docs.size());
+
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    w.addDocuments(docs);
+    IndexReader r = w.getReader();
+    w.close();
+
+    assertEquals(numDocs, r.numDocs());
+    IndexSearcher s = newSearcher(r);
+    for (int i = 0; i < numDocs; i++) {
+      TopDocs hits = s.search(new TermQuery(new Term("id", ids[i])), 1);
+      assertEquals(1, hits.totalHits);
+      Document doc = s.doc(hits.scoreDocs[0].doc);
+      assertEquals(i, doc.getField("num").numericValue().intValue());
+      assertEquals(prices[i], doc.getField("price").numericValue().doubleValue(), 0.0);
+      assertEquals(payloads[i], doc.getBinaryValue("payload"));
+    }
+    assertEquals(numBodies, s.search(new TermQuery(new Term("body", "common")), 1).totalHits);
+    assertEquals(10, s.search(NumericRangeQuery.newIntRange("num", 10, 19, true, true), 1).totalHits);
+
+    r.close();
+    dir.close();
+  }
+
+  public void testSkipsNullValues() {
+    ColumnarDocuments docs = new ColumnarDocuments(2)
+        .addColumn(new StringField("id", "", Field.Store.YES), new String[] {"0", "1"})
+        .addColumn(new StringField("tag", "", Field.Store.YES), new String[] {null, "a"});
+
+    Iterator<Iterable<IndexableField>> it = docs.iterator();
+    assertEquals(1, count(it.next()));
+    assertEquals(2, count(it.next()));
+    assertFalse(it.hasNext());
+  }
+
+  public void testWrongNumberOfValues() {
+    ColumnarDocuments docs = new ColumnarDocuments(3);
+    try {
+      docs.addColumn(new IntField("num", 0, Field.Store.NO), new int[2]);
+      fail("column with the wrong number of values should fail");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
+  private static int count(Iterable<IndexableField> doc) {
+    int count = 0;
+    for (IndexableField field : doc) {
+      count++;
+    }
+    return count;
+  }
+}
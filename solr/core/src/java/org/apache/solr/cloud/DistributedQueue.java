@@ -18,8 +18,11 @@
 
 package org.apache.solr.cloud;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.TreeMap;
 
 import org.apache.solr.common.SolrException;
@@ -32,6 +35,7 @@ import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.ZooDefs;
 import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,6 +56,10 @@ public class DistributedQueue {
   private final String prefix = "qn-";
   
   private final String response_prefix = "qnr-" ;
+
+  // the children from the last listing that were not consumed yet, so that
+  // consuming the queue doesn't list all of it again for every element
+  private final TreeMap<Long,String> knownChildren = new TreeMap<Long,String>();
   
   public DistributedQueue(SolrZkClient zookeeper, String dir, List<ACL> acl) {
     this.dir = dir;
@@ -110,6 +118,27 @@ public class DistributedQueue {
     return orderedChildren;
   }
   
+  /**
+   * Returns the names of the known children in order, listing the children
+   * again first if all of them were consumed or <code>refresh</code> is true.
+   */
+  private List<String> knownChildren(Watcher watcher, boolean refresh) throws KeeperException,
+      InterruptedException {
+    synchronized (knownChildren) {
+      if (knownChildren.isEmpty() || refresh) {
+        knownChildren.clear();
+        knownChildren.putAll(orderedChildren(watcher));
+      }
+      return new ArrayList<String>(knownChildren.values());
+    }
+  }
+
+  private void forget(String childName) {
+    synchronized (knownChildren) {
+      knownChildren.values().remove(childName);
+    }
+  }
+
   /**
    * Return the head of the queue without modifying the queue.
    * 
@@ -117,30 +146,29 @@ public class DistributedQueue {
    */
   private QueueEvent element() throws NoSuchElementException, KeeperException,
       InterruptedException {
-    TreeMap<Long,String> orderedChildren;
+    List<String> children;
     
     // element, take, and remove follow the same pattern.
     // We want to return the child node with the smallest sequence number.
     // Since other clients are remove()ing and take()ing nodes concurrently,
-    // the child with the smallest sequence number in orderedChildren might be
+    // the child with the smallest sequence number in the known children might be
     // gone by the time we check.
     // We don't call getChildren again until we have tried the rest of the nodes
     // in sequence order.
     while (true) {
       try {
-        orderedChildren = orderedChildren(null);
+        children = knownChildren(null, false);
       } catch (KeeperException.NoNodeException e) {
         throw new NoSuchElementException();
       }
-      if (orderedChildren.size() == 0) throw new NoSuchElementException();
+      if (children.size() == 0) throw new NoSuchElementException();
       
-      for (String headNode : orderedChildren.values()) {
-        if (headNode != null) {
-          try {
-            return new QueueEvent(dir + "/" + headNode, zookeeper.getData(dir + "/" + headNode, null, null, true), null);
-          } catch (KeeperException.NoNodeException e) {
-            // Another client removed the node first, try next
-          }
+      for (String headNode : children) {
+        try {
+          return new QueueEvent(dir + "/" + headNode, zookeeper.getData(dir + "/" + headNode, null, null, true), null);
+        } catch (KeeperException.NoNodeException e) {
+          // Another client removed the node first, try next
+          forget(headNode);
         }
       }
     }
@@ -153,24 +181,26 @@ public class DistributedQueue {
    */
   public byte[] remove() throws NoSuchElementException, KeeperException,
       InterruptedException {
-    TreeMap<Long,String> orderedChildren;
+    List<String> children;
     // Same as for element. Should refactor this.
     while (true) {
       try {
-        orderedChildren = orderedChildren(null);
+        children = knownChildren(null, false);
       } catch (KeeperException.NoNodeException e) {
         throw new NoSuchElementException();
       }
-      if (orderedChildren.size() == 0) throw new NoSuchElementException();
+      if (children.size() == 0) throw new NoSuchElementException();
       
-      for (String headNode : orderedChildren.values()) {
+      for (String headNode : children) {
         String path = dir + "/" + headNode;
         try {
           byte[] data = zookeeper.getData(path, null, null, true);
           zookeeper.delete(path, -1, true);
+          forget(headNode);
           return data;
         } catch (KeeperException.NoNodeException e) {
           // Another client deleted the node first.
+          forget(headNode);
         }
       }
       
@@ -191,6 +221,7 @@ public class DistributedQueue {
     }
     byte[] data = zookeeper.getData(path, null, null, true);
     zookeeper.delete(path, -1, true);
+    forget(path.substring(path.lastIndexOf('/') + 1));
     return data;
   }
   
@@ -393,32 +424,91 @@ public class DistributedQueue {
       return element();
     }
     
-    TreeMap<Long,String> orderedChildren;
+    List<QueueEvent> events = peekTopN(1, Collections.<String>emptySet(), Long.MAX_VALUE);
+    return events.get(0);
+  }
+
+  /**
+   * Returns the data at the first element of the queue, waiting up to
+   * <code>wait</code> ms for an element if the queue is empty.
+   * 
+   * @return data at the first element of the queue, or null if there was none in time.
+   */
+  public byte[] peek(long wait) throws KeeperException, InterruptedException {
+    List<QueueEvent> events = peekTopN(1, Collections.<String>emptySet(), wait);
+    return events.isEmpty() ? null : events.get(0).getBytes();
+  }
+
+  /**
+   * Returns up to <code>n</code> elements from the head of the queue, skipping
+   * those whose id is in <code>excludeSet</code>, without modifying the queue.
+   * If there are none, waits up to <code>wait</code> ms for one to be added.
+   * 
+   * @return the elements in queue order, empty if there were none in time.
+   */
+  public List<QueueEvent> peekTopN(int n, Set<String> excludeSet, long wait)
+      throws KeeperException, InterruptedException {
+    long waitUntil = wait == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + wait;
+    List<QueueEvent> events = new ArrayList<QueueEvent>();
+    boolean listed = false;
     while (true) {
-      LatchChildWatcher childWatcher = new LatchChildWatcher();
+      LatchChildWatcher childWatcher = null;
+      List<String> children;
+      if (listed) {
+        // set a watch so that we know when there is more to take
+        childWatcher = new LatchChildWatcher();
+      }
       try {
-        orderedChildren = orderedChildren(childWatcher);
+        // more than the head can't be taken from the known children, newer ones may be missing
+        children = knownChildren(childWatcher, listed || n > 1);
       } catch (KeeperException.NoNodeException e) {
         zookeeper.create(dir, new byte[0], acl, CreateMode.PERSISTENT, true);
         continue;
       }
-      if (orderedChildren.size() == 0) {
-        childWatcher.await(DEFAULT_TIMEOUT);
-        continue;
-      }
       
-      for (String headNode : orderedChildren.values()) {
+      for (String headNode : children) {
         String path = dir + "/" + headNode;
+        if (excludeSet.contains(path)) continue;
         try {
           byte[] data = zookeeper.getData(path, null, null, true);
-          return new QueueEvent(path, data, childWatcher.getWatchedEvent());
+          events.add(new QueueEvent(path, data, childWatcher == null ? null : childWatcher.getWatchedEvent()));
+          if (events.size() >= n) break;
         } catch (KeeperException.NoNodeException e) {
           // Another client deleted the node first.
+          forget(headNode);
+        }
+      }
+      if (!events.isEmpty()) {
+        return events;
+      }
+      if (childWatcher != null) {
+        long left = waitUntil - System.currentTimeMillis();
+        if (left <= 0) {
+          return events;
         }
+        childWatcher.await(Math.min(left, DEFAULT_TIMEOUT));
       }
+      listed = true;
     }
   }
+
+  /**
+   * Returns the number of children of the queue node: the elements, and for
+   * a queue with responses also the pending response nodes.
+   */
+  public int size() throws KeeperException, InterruptedException {
+    Stat stat = zookeeper.exists(dir, null, true);
+    return stat == null ? 0 : stat.getNumChildren();
+  }
   
+  /**
+   * Sets a watch that fires once the elements of the queue change next, e.g.
+   * when one is added.
+   */
+  public void watch(Watcher watcher) throws KeeperException, InterruptedException {
+    zookeeper.getChildren(dir, watcher, true);
+  }
+
   /**
    * Attempts to remove the head of the queue and return it. Returns null if the
    * queue is empty.
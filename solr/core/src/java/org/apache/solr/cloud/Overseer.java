@@ -24,10 +24,15 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.cloud.ClusterState;
@@ -40,10 +45,15 @@ import org.apache.solr.common.cloud.SolrZkClient;
 import org.apache.solr.common.cloud.ZkCoreNodeProps;
 import org.apache.solr.common.cloud.ZkNodeProps;
 import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
 import org.apache.solr.core.ConfigSolr;
-import org.apache.solr.handler.component.ShardHandler;
+import org.apache.solr.handler.component.ShardHandlerFactory;
 import org.apache.solr.update.UpdateShardHandler;
 import org.apache.solr.util.IOUtils;
+import org.apache.solr.util.stats.Snapshot;
+import org.apache.solr.util.stats.Timer;
+import org.apache.solr.util.stats.TimerContext;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.slf4j.Logger;
@@ -60,6 +70,9 @@ public class Overseer implements Closeable {
 
   private static final int STATE_UPDATE_DELAY = 1500;  // delay between cloud state updates
 
+  /** The name under which {@link Stats} keeps the writes of the cluster state */
+  public static final String WRITE_STATE = "write_state";
+
   private static Logger log = LoggerFactory.getLogger(Overseer.class);
   
   static enum LeaderStatus { DONT_KNOW, NO, YES };
@@ -75,13 +88,21 @@ public class Overseer implements Closeable {
     //If Overseer dies while extracting the main queue a new overseer will start from this queue 
     private final DistributedQueue workQueue;
     private volatile boolean isClosed;
+    //the most updates applied before writing the cluster state
+    private final int batchSize;
+    //the least time between writes of the cluster state, unless a batch is full
+    private final int flushInterval;
+    private final Stats stats;
     
-    public ClusterStateUpdater(final ZkStateReader reader, final String myId) {
+    public ClusterStateUpdater(final ZkStateReader reader, final String myId, Stats stats) {
       this.zkClient = reader.getZkClient();
       this.stateUpdateQueue = getInQueue(zkClient);
       this.workQueue = getInternalQueue(zkClient);
       this.myId = myId;
       this.reader = reader;
+      this.stats = stats;
+      this.batchSize = config.getOverseerStateUpdateBatchSize();
+      this.flushInterval = config.getOverseerStateUpdateFlushInterval();
     }
     
     @Override
@@ -114,6 +135,7 @@ public class Overseer implements Closeable {
                 else if (LeaderStatus.YES == isLeader) {
                   final ZkNodeProps message = ZkNodeProps.load(head);
                   final String operation = message.getStr(QUEUE_OPERATION);
+                  ClusterState prevState = clusterState;
                   try {
                     clusterState = processMessage(clusterState, message, operation);
                   } catch (Exception e) {
@@ -124,8 +146,7 @@ public class Overseer implements Closeable {
                     // track retries and put it back on the end of the queue
                     log.error("Overseer could not process the current clusterstate state update message, skipping the message.", e);
                   }
-                  zkClient.setData(ZkStateReader.CLUSTER_STATE,
-                      ZkStateReader.toJSON(clusterState), true);
+                  writeClusterState(prevState, clusterState);
                   
                   workQueue.poll(); // poll-ing removes the element we got by peek-ing
                 }
@@ -155,6 +176,11 @@ public class Overseer implements Closeable {
       }
       
       log.info("Starting to work on the main queue");
+      // the state with the updates that were not written yet
+      ClusterState clusterState = null;
+      ClusterState prevState = null;
+      int pending = 0;
+      long lastWrite = 0;
       while (!this.isClosed) {
         isLeader = amILeader();
         if (LeaderStatus.NO == isLeader) {
@@ -164,61 +190,147 @@ public class Overseer implements Closeable {
           log.debug("am_i_leader unclear {}", isLeader);                  
           continue; // not a no, not a yes, try ask again
         }
-        synchronized (reader.getUpdateLock()) {
-          try {
+        try {
+          synchronized (reader.getUpdateLock()) {
             byte[] head = stateUpdateQueue.peek();
             
-            if (head != null) {
+            if (head != null && pending == 0) {
               reader.updateClusterState(true);
-              ClusterState clusterState = reader.getClusterState();
+              clusterState = reader.getClusterState();
+              prevState = clusterState;
+            }
+            
+            // apply updates until the batch is full or it is time to write them
+            while (head != null) {
+              final ZkNodeProps message = ZkNodeProps.load(head);
+              final String operation = message.getStr(QUEUE_OPERATION);
+              TimerContext timer = stats.time(operation);
+              try {
+                clusterState = processMessage(clusterState, message, operation);
+                stats.success(operation);
+              } catch (Exception e) {
+                stats.error(operation);
+                // generally there is nothing we can do - in most cases, we have
+                // an issue that will fail again on retry or we cannot communicate with
+                // ZooKeeper in which case another Overseer should take over
+                // TODO: if ordering for the message is not important, we could
+                // track retries and put it back on the end of the queue
+                log.error("Overseer could not process the current clusterstate state update message, skipping the message.", e);
+              } finally {
+                timer.stop();
+              }
+              workQueue.offer(head);
               
-              while (head != null) {
-                final ZkNodeProps message = ZkNodeProps.load(head);
-                final String operation = message.getStr(QUEUE_OPERATION);
-                try {
-                  clusterState = processMessage(clusterState, message, operation);
-                } catch (Exception e) {
-                  // generally there is nothing we can do - in most cases, we have
-                  // an issue that will fail again on retry or we cannot communicate with
-                  // ZooKeeper in which case another Overseer should take over
-                  // TODO: if ordering for the message is not important, we could
-                  // track retries and put it back on the end of the queue
-                  log.error("Overseer could not process the current clusterstate state update message, skipping the message.", e);
-                }
-                workQueue.offer(head);
-                
-                stateUpdateQueue.poll();
-                head = stateUpdateQueue.peek();
+              stateUpdateQueue.poll();
+              pending++;
+              if (pending >= batchSize || System.currentTimeMillis() - lastWrite >= flushInterval) {
+                break;
               }
-              zkClient.setData(ZkStateReader.CLUSTER_STATE,
-                  ZkStateReader.toJSON(clusterState), true);
+              head = stateUpdateQueue.peek();
             }
-            // clean work queue
-            while (workQueue.poll() != null);
             
-          } catch (KeeperException e) {
-            if (e.code() == KeeperException.Code.SESSIONEXPIRED) {
-              log.warn("Solr cannot talk to ZK, exiting Overseer main queue loop", e);
-              return;
+            if (pending > 0 && (pending >= batchSize || System.currentTimeMillis() - lastWrite >= flushInterval)) {
+              TimerContext timer = stats.time(WRITE_STATE);
+              try {
+                writeClusterState(prevState, clusterState);
+              } finally {
+                timer.stop();
+              }
+              log.debug("Wrote the cluster state after {} updates", pending);
+              pending = 0;
+              lastWrite = System.currentTimeMillis();
+              prevState = clusterState = null;
+              // clean work queue
+              while (workQueue.poll() != null);
             }
-            log.error("Exception in Overseer main queue loop", e);
-          } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+          }
+          
+          // wait for more updates, and for the pending ones no longer than until they are due
+          long wait = pending > 0 ? lastWrite + flushInterval - System.currentTimeMillis() : STATE_UPDATE_DELAY;
+          if (wait > 0) {
+            stateUpdateQueue.peek(wait);
+          }
+          
+        } catch (KeeperException e) {
+          if (e.code() == KeeperException.Code.SESSIONEXPIRED) {
+            log.warn("Solr cannot talk to ZK, exiting Overseer main queue loop", e);
             return;
-            
-          } catch (Exception e) {
-            log.error("Exception in Overseer main queue loop", e);
           }
-        }
-        
-        try {
-          Thread.sleep(STATE_UPDATE_DELAY);
+          log.error("Exception in Overseer main queue loop", e);
+          // start over from the state in ZooKeeper
+          pending = 0;
         } catch (InterruptedException e) {
           Thread.currentThread().interrupt();
+          return;
+          
+        } catch (Exception e) {
+          log.error("Exception in Overseer main queue loop", e);
+          pending = 0;
         }
       }
     }
 
+    /**
+     * Writes the collections that changed since <code>prevState</code>: those
+     * with their own state node to it, and clusterstate.json once if any of the
+     * others changed.  Collections are compared by identity, the mutators
+     * below only replace those they change.
+     */
+    private void writeClusterState(ClusterState prevState, ClusterState clusterState)
+        throws KeeperException, InterruptedException {
+      Set<String> names = new LinkedHashSet<String>(prevState.getCollections());
+      names.addAll(clusterState.getCollections());
+
+      boolean legacyChanged = false;
+      for (String name : names) {
+        ClusterState.CollectionRef prevRef = prevState.getCollectionRef(name);
+        ClusterState.CollectionRef ref = clusterState.getCollectionRef(name);
+        if (prevRef == ref) continue;
+
+        if (prevRef != null && stateFormat(prevRef) == 1) {
+          legacyChanged = true;
+        }
+        if (ref == null) {
+          if (stateFormat(prevRef) > 1) {
+            // the collection node may have been removed with it already
+            try {
+              zkClient.delete(ZkStateReader.getCollectionPath(name), -1, true);
+            } catch (KeeperException.NoNodeException e) {
+              // fine
+            }
+          }
+          continue;
+        }
+
+        DocCollection coll = ref.get();
+        if (coll.getStateFormat() == 1) {
+          legacyChanged = true;
+          continue;
+        }
+        String path = ZkStateReader.getCollectionPath(name);
+        byte[] data = ZkStateReader.toJSON(Collections.singletonMap(name, coll));
+        try {
+          zkClient.setData(path, data, true);
+        } catch (KeeperException.NoNodeException e) {
+          log.info("Creating the state node of collection {}", name);
+          zkClient.makePath(path, data, true);
+        }
+      }
+
+      // write the state nodes first, so that a migrated collection never goes missing
+      if (legacyChanged) {
+        zkClient.setData(ZkStateReader.CLUSTER_STATE,
+            ZkStateReader.toJSON(clusterState), true);
+      }
+    }
+
+    private int stateFormat(ClusterState.CollectionRef ref) {
+      // only collections with their own state node are loaded lazily
+      if (ref.isLazilyLoaded()) return 2;
+      DocCollection coll = ref.get();
+      return coll == null ? 1 : coll.getStateFormat();
+    }
+
     private ClusterState processMessage(ClusterState clusterState,
         final ZkNodeProps message, final String operation) {
       if ("state".equals(operation)) {
@@ -249,6 +361,8 @@ public class Overseer implements Closeable {
         clusterState = updateShardState(clusterState, message);
       } else if (OverseerCollectionProcessor.CREATECOLLECTION.equals(operation)) {
          clusterState = buildCollection(clusterState, message);
+      } else if (OverseerCollectionProcessor.MIGRATESTATEFORMAT.equals(operation)) {
+        clusterState = migrateStateFormat(clusterState, message);
       } else {
         throw new RuntimeException("unknown operation:" + operation
             + " contents:" + message.getProperties());
@@ -256,6 +370,30 @@ public class Overseer implements Closeable {
       return clusterState;
     }
 
+    /*
+     * Move the state of a collection from clusterstate.json to its own state node
+     */
+    private ClusterState migrateStateFormat(ClusterState clusterState, ZkNodeProps message) {
+      final String collection = message.getStr("name");
+      checkKeyExistence(message, "name");
+
+      DocCollection coll = clusterState.getCollectionOrNull(collection);
+      if (coll == null) {
+        log.error("Could not migrate the state of non existing collection:" + collection);
+        return clusterState;
+      }
+      if (coll.getStateFormat() > 1) {
+        log.info("The state of collection {} is already in its own state node", collection);
+        return clusterState;
+      }
+
+      log.info("Migrating the state of collection {} to {}", collection, ZkStateReader.getCollectionPath(collection));
+      Map<String,Object> props = new LinkedHashMap<String,Object>(coll.getProperties());
+      props.put(DocCollection.STATE_FORMAT, 2);
+      DocCollection newCollection = new DocCollection(coll.getName(), coll.getSlicesMap(), props, coll.getRouter());
+      return clusterState.copyWith(collection, newCollection);
+    }
+
     private ClusterState buildCollection(ClusterState clusterState, ZkNodeProps message) {
       String collection = message.getStr("name");
       log.info("building a new collection: " + collection);
@@ -489,11 +627,7 @@ public class Overseer implements Closeable {
 
         List<DocRouter.Range> ranges = router.partitionRange(shards.size(), router.fullRange());
 
-        Map<String, DocCollection> newCollections = new LinkedHashMap<String,DocCollection>();
-
-
         Map<String, Slice> newSlices = new LinkedHashMap<String,Slice>();
-        newCollections.putAll(state.getCollectionStates());
         for (int i = 0; i < shards.size(); i++) {
           String sliceName = shards.get(i);
         /*}
@@ -517,12 +651,14 @@ public class Overseer implements Closeable {
           if(val != null) collectionProps.put(e.getKey(),val);
         }
         collectionProps.put(DocCollection.DOC_ROUTER, routerName);
+        String stateFormat = message.getStr(DocCollection.STATE_FORMAT);
+        if (stateFormat != null) {
+          collectionProps.put(DocCollection.STATE_FORMAT, Integer.parseInt(stateFormat));
+        }
 
         DocCollection newCollection = new DocCollection(collectionName, newSlices, collectionProps, router);
 
-        newCollections.put(collectionName, newCollection);
-        ClusterState newClusterState = new ClusterState(state.getZkClusterStateVersion(), state.getLiveNodes(), newCollections);
-        return newClusterState;
+        return state.copyWith(collectionName, newCollection);
       }
 
       /*
@@ -564,8 +700,7 @@ public class Overseer implements Closeable {
       private ClusterState updateSlice(ClusterState state, String collectionName, Slice slice) {
         // System.out.println("###!!!### OLD CLUSTERSTATE: " + JSONUtil.toJSON(state.getCollectionStates()));
         // System.out.println("Updating slice:" + slice);
-        Map<String, DocCollection> newCollections = new LinkedHashMap<String,DocCollection>(state.getCollectionStates());  // make a shallow copy
-        DocCollection coll = newCollections.get(collectionName);
+        DocCollection coll = state.getCollectionOrNull(collectionName);
         Map<String,Slice> slices;
         Map<String,Object> props;
         DocRouter router;
@@ -584,17 +719,15 @@ public class Overseer implements Closeable {
         }
         slices.put(slice.getName(), slice);
         DocCollection newCollection = new DocCollection(collectionName, slices, props, router);
-        newCollections.put(collectionName, newCollection);
 
-        // System.out.println("###!!!### NEW CLUSTERSTATE: " + JSONUtil.toJSON(newCollections));
+        // System.out.println("###!!!### NEW CLUSTERSTATE: " + JSONUtil.toJSON(newCollection));
 
-        return new ClusterState(state.getZkClusterStateVersion(), state.getLiveNodes(), newCollections);
+        return state.copyWith(collectionName, newCollection);
       }
       
       private ClusterState setShardLeader(ClusterState state, String collectionName, String sliceName, String leaderUrl) {
 
-        final Map<String, DocCollection> newCollections = new LinkedHashMap<String,DocCollection>(state.getCollectionStates());
-        DocCollection coll = newCollections.get(collectionName);
+        DocCollection coll = state.getCollectionOrNull(collectionName);
         if(coll == null) {
           log.error("Could not mark shard leader for non existing collection:" + collectionName);
           return state;
@@ -645,8 +778,7 @@ public class Overseer implements Closeable {
 
 
         DocCollection newCollection = new DocCollection(coll.getName(), slices, coll.getProperties(), coll.getRouter());
-        newCollections.put(collectionName, newCollection);
-        return new ClusterState(state.getZkClusterStateVersion(), state.getLiveNodes(), newCollections);
+        return state.copyWith(collectionName, newCollection);
       }
 
       /*
@@ -656,11 +788,7 @@ public class Overseer implements Closeable {
         final String collection = message.getStr("name");
         checkKeyExistence(message, "name");
         
-        final Map<String, DocCollection> newCollections = new LinkedHashMap<String,DocCollection>(clusterState.getCollectionStates()); // shallow copy
-        newCollections.remove(collection);
-
-        ClusterState newState = new ClusterState(clusterState.getZkClusterStateVersion(), clusterState.getLiveNodes(), newCollections);
-        return newState;
+        return clusterState.copyWith(collection, null);
       }
 
     /*
@@ -672,16 +800,13 @@ public class Overseer implements Closeable {
       final String collection = message.getStr(ZkStateReader.COLLECTION_PROP);
       if (!checkCollectionKeyExistence(message)) return clusterState;
 
-      final Map<String, DocCollection> newCollections = new LinkedHashMap<String,DocCollection>(clusterState.getCollectionStates()); // shallow copy
-      DocCollection coll = newCollections.get(collection);
+      DocCollection coll = clusterState.getCollectionOrNull(collection);
 
       Map<String, Slice> newSlices = new LinkedHashMap<String, Slice>(coll.getSlicesMap());
       newSlices.remove(sliceId);
 
       DocCollection newCollection = new DocCollection(coll.getName(), newSlices, coll.getProperties(), coll.getRouter());
-      newCollections.put(newCollection.getName(), newCollection);
-
-      return new ClusterState(clusterState.getZkClusterStateVersion(), clusterState.getLiveNodes(), newCollections);
+      return clusterState.copyWith(collection, newCollection);
     }
 
     /*
@@ -692,8 +817,7 @@ public class Overseer implements Closeable {
         final String collection = message.getStr(ZkStateReader.COLLECTION_PROP);
         if (!checkCollectionKeyExistence(message)) return clusterState;
 
-        final Map<String, DocCollection> newCollections = new LinkedHashMap<String,DocCollection>(clusterState.getCollectionStates()); // shallow copy
-        DocCollection coll = newCollections.get(collection);
+        DocCollection coll = clusterState.getCollectionOrNull(collection);
         if (coll == null) {
           // TODO: log/error that we didn't find it?
           // just in case, remove the zk collection node
@@ -741,8 +865,9 @@ public class Overseer implements Closeable {
         }
 
         // if there are no slices left in the collection, remove it?
+        ClusterState newState;
         if (newSlices.size() == 0) {
-          newCollections.remove(coll.getName());
+          newState = clusterState.copyWith(coll.getName(), null);
 
           // TODO: it might be better logically to have this in ZkController
           // but for tests (it's easier) it seems better for the moment to leave CoreContainer and/or
@@ -759,10 +884,9 @@ public class Overseer implements Closeable {
 
         } else {
           DocCollection newCollection = new DocCollection(coll.getName(), newSlices, coll.getProperties(), coll.getRouter());
-          newCollections.put(newCollection.getName(), newCollection);
+          newState = clusterState.copyWith(coll.getName(), newCollection);
         }
 
-        ClusterState newState = new ClusterState(clusterState.getZkClusterStateVersion(), clusterState.getLiveNodes(), newCollections);
         return newState;
      }
 
@@ -846,7 +970,7 @@ public class Overseer implements Closeable {
 
   private final ZkStateReader reader;
 
-  private final ShardHandler shardHandler;
+  private final ShardHandlerFactory shardHandlerFactory;
   
   private final UpdateShardHandler updateShardHandler;
 
@@ -859,12 +983,12 @@ public class Overseer implements Closeable {
   private ConfigSolr config;
 
   // overseer not responsible for closing reader
-  public Overseer(ShardHandler shardHandler,
+  public Overseer(ShardHandlerFactory shardHandlerFactory,
       UpdateShardHandler updateShardHandler, String adminPath,
       final ZkStateReader reader, ZkController zkController, ConfigSolr config)
       throws KeeperException, InterruptedException {
     this.reader = reader;
-    this.shardHandler = shardHandler;
+    this.shardHandlerFactory = shardHandlerFactory;
     this.updateShardHandler = updateShardHandler;
     this.adminPath = adminPath;
     this.config = config;
@@ -878,12 +1002,14 @@ public class Overseer implements Closeable {
     createOverseerNode(reader.getZkClient());
     //launch cluster state updater thread
     ThreadGroup tg = new ThreadGroup("Overseer state updater.");
-    updaterThread = new OverseerThread(tg, new ClusterStateUpdater(reader, id), "OverseerStateUpdate-" + id);
+    Stats stats = new Stats();
+    updaterThread = new OverseerThread(tg, new ClusterStateUpdater(reader, id, stats), "OverseerStateUpdate-" + id);
     updaterThread.setDaemon(true);
 
     ThreadGroup ccTg = new ThreadGroup("Overseer collection creation process.");
 
-    overseerCollectionProcessor = new OverseerCollectionProcessor(reader, id, shardHandler, adminPath);
+    overseerCollectionProcessor = new OverseerCollectionProcessor(reader, id, shardHandlerFactory, adminPath,
+        config.getOverseerCollectionThreads(), stats);
     ccThread = new OverseerThread(ccTg, overseerCollectionProcessor, "OverseerCollectionProcessor-" + id);
     ccThread.setDaemon(true);
     
@@ -957,6 +1083,64 @@ public class Overseer implements Closeable {
     return new DistributedQueue(zkClient, "/overseer/collection-queue-work", null);
   }
   
+  /**
+   * Counts and times the operations of the Overseer by name, for the
+   * OVERSEERSTATUS collections API action.
+   */
+  public static class Stats {
+    private final ConcurrentMap<String, Stat> stats = new ConcurrentHashMap<String, Stat>();
+
+    public TimerContext time(String operation) {
+      return getStat(operation).requestTime.time();
+    }
+
+    public void success(String operation) {
+      getStat(operation).success.incrementAndGet();
+    }
+
+    public void error(String operation) {
+      getStat(operation).errors.incrementAndGet();
+    }
+
+    private Stat getStat(String operation) {
+      operation = String.valueOf(operation);
+      Stat stat = stats.get(operation);
+      if (stat == null) {
+        stat = new Stat();
+        Stat existing = stats.putIfAbsent(operation, stat);
+        if (existing != null) stat = existing;
+      }
+      return stat;
+    }
+
+    public NamedList<Object> getStatistics() {
+      NamedList<Object> result = new SimpleOrderedMap<Object>();
+      for (Entry<String, Stat> entry : new TreeMap<String, Stat>(stats).entrySet()) {
+        Stat stat = entry.getValue();
+        Snapshot snapshot = stat.requestTime.getSnapshot();
+        NamedList<Object> lst = new SimpleOrderedMap<Object>();
+        lst.add("requests", stat.requestTime.getCount());
+        lst.add("successes", stat.success.get());
+        lst.add("errors", stat.errors.get());
+        lst.add("totalTime", stat.requestTime.getSum());
+        lst.add("avgRequestsPerSecond", stat.requestTime.getMeanRate());
+        lst.add("5minRateReqsPerSecond", stat.requestTime.getFiveMinuteRate());
+        lst.add("avgTimePerRequest", stat.requestTime.getMean());
+        lst.add("medianRequestTime", snapshot.getMedian());
+        lst.add("95thPcRequestTime", snapshot.get95thPercentile());
+        lst.add("99thPcRequestTime", snapshot.get99thPercentile());
+        result.add(entry.getKey(), lst);
+      }
+      return result;
+    }
+  }
+
+  private static class Stat {
+    final AtomicInteger success = new AtomicInteger();
+    final AtomicInteger errors = new AtomicInteger();
+    final Timer requestTime = new Timer();
+  }
+
   private static void createOverseerNode(final SolrZkClient zkClient) {
     try {
       zkClient.create("/overseer", new byte[0], CreateMode.PERSISTENT, true);
@@ -26,9 +26,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.solr.client.solrj.SolrResponse;
 import org.apache.solr.client.solrj.SolrServerException;
@@ -59,13 +62,19 @@ import org.apache.solr.common.params.CoreAdminParams;
 import org.apache.solr.common.params.CoreAdminParams.CoreAdminAction;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.UpdateParams;
+import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
 import org.apache.solr.common.util.StrUtils;
 import org.apache.solr.handler.component.ShardHandler;
+import org.apache.solr.handler.component.ShardHandlerFactory;
 import org.apache.solr.handler.component.ShardRequest;
 import org.apache.solr.handler.component.ShardResponse;
+import org.apache.solr.util.DefaultSolrThreadFactory;
+import org.apache.solr.util.stats.TimerContext;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -105,6 +114,10 @@ public class OverseerCollectionProcessor implements Runnable, Closeable {
 
   public static final String CREATESHARD = "createshard";
 
+  public static final String MIGRATESTATEFORMAT = "migratestateformat";
+
+  public static final String OVERSEERSTATUS = "overseerstatus";
+
   public static final String COLL_CONF = "collection.configName";
 
 
@@ -131,12 +144,56 @@ public class OverseerCollectionProcessor implements Runnable, Closeable {
 
   private ZkStateReader zkStateReader;
 
-  private boolean isClosed;
+  private volatile boolean isClosed;
+
+  // to run operations on different collections in parallel, each with its own
+  // ShardHandler; null if operations run one at a time
+  private ShardHandlerFactory shardHandlerFactory;
+
+  private int maxParallelThreads = 1;
+
+  // how long processInParallel waits at most for a change before checking again that it still leads
+  private static final long PARALLEL_WAIT_MS = 2000;
+
+  // the ids of the queue elements being processed
+  private final Set<String> runningTasks = new HashSet<String>();
+
+  // counts the operations that completed and the changes of the queue, guarded by runningTasks
+  private long changes;
+
+  // notifies processInParallel of a change of the queue
+  private final Watcher queueWatcher = new Watcher() {
+    @Override
+    public void process(WatchedEvent event) {
+      changed();
+    }
+  };
+
+  // the collections (or other names, see getLockKey) operations are running on
+  private final Set<String> collectionWip = new HashSet<String>();
+
+  private Overseer.Stats stats = new Overseer.Stats();
+
+  private Overseer.Stats updaterStats;
   
   public OverseerCollectionProcessor(ZkStateReader zkStateReader, String myId, ShardHandler shardHandler, String adminPath) {
     this(zkStateReader, myId, shardHandler, adminPath, Overseer.getCollectionQueue(zkStateReader.getZkClient()));
   }
 
+  /**
+   * Runs up to <code>maxParallelThreads</code> operations at the same time, as
+   * long as they are on different collections.
+   *
+   * @param updaterStats the stats of the Overseer state updates, for OVERSEERSTATUS
+   */
+  public OverseerCollectionProcessor(ZkStateReader zkStateReader, String myId, ShardHandlerFactory shardHandlerFactory,
+      String adminPath, int maxParallelThreads, Overseer.Stats updaterStats) {
+    this(zkStateReader, myId, (ShardHandler) null, adminPath, Overseer.getCollectionQueue(zkStateReader.getZkClient()));
+    this.shardHandlerFactory = shardHandlerFactory;
+    this.maxParallelThreads = Math.max(1, maxParallelThreads);
+    this.updaterStats = updaterStats;
+  }
+
   protected OverseerCollectionProcessor(ZkStateReader zkStateReader, String myId, ShardHandler shardHandler, String adminPath, DistributedQueue workQueue) {
     this.zkStateReader = zkStateReader;
     this.myId = myId;
@@ -144,33 +201,50 @@ public class OverseerCollectionProcessor implements Runnable, Closeable {
     this.adminPath = adminPath;
     this.workQueue = workQueue;
   }
+
+  /** A processor for a single operation, sharing everything but the ShardHandler */
+  private OverseerCollectionProcessor(OverseerCollectionProcessor parent, ShardHandler shardHandler) {
+    this(parent.zkStateReader, parent.myId, shardHandler, parent.adminPath, parent.workQueue);
+    this.stats = parent.stats;
+    this.updaterStats = parent.updaterStats;
+  }
   
   @Override
   public void run() {
-       log.info("Process current queue of collection creations");
-       LeaderStatus isLeader = amILeader();
-       while (isLeader == LeaderStatus.DONT_KNOW) {
-         log.debug("am_i_leader unclear {}", isLeader);
-         isLeader = amILeader();  // not a no, not a yes, try ask again
-       }
-       while (!this.isClosed) {
-         try {
-           isLeader = amILeader();
-           if (LeaderStatus.NO == isLeader) {
-             break;
-           }
-           else if (LeaderStatus.YES != isLeader) {
-             log.debug("am_i_leader unclear {}", isLeader);                  
-             continue; // not a no, not a yes, try asking again
-           }
-           
-           QueueEvent head = workQueue.peek(true);
-           final ZkNodeProps message = ZkNodeProps.load(head.getBytes());
-           log.info("Overseer Collection Processor: Get the message id:" + head.getId() + " message:" + message.toString());
-           final String operation = message.getStr(QUEUE_OPERATION);
-           SolrResponse response = processMessage(message, operation);
-           head.setBytes(SolrResponse.serializable(response));
-           workQueue.remove(head);
+    log.info("Process current queue of collection creations");
+    if (shardHandlerFactory != null) {
+      tpe = Executors.newFixedThreadPool(maxParallelThreads,
+          new DefaultSolrThreadFactory("OverseerCollectionProcessor"));
+    }
+    try {
+      LeaderStatus isLeader = amILeader();
+      while (isLeader == LeaderStatus.DONT_KNOW) {
+        log.debug("am_i_leader unclear {}", isLeader);
+        isLeader = amILeader();  // not a no, not a yes, try ask again
+      }
+      while (!this.isClosed) {
+        try {
+          isLeader = amILeader();
+          if (LeaderStatus.NO == isLeader) {
+            break;
+          }
+          else if (LeaderStatus.YES != isLeader) {
+            log.debug("am_i_leader unclear {}", isLeader);                  
+            continue; // not a no, not a yes, try asking again
+          }
+          
+          if (tpe != null) {
+            processInParallel();
+            continue;
+          }
+          
+          QueueEvent head = workQueue.peek(true);
+          final ZkNodeProps message = ZkNodeProps.load(head.getBytes());
+          log.info("Overseer Collection Processor: Get the message id:" + head.getId() + " message:" + message.toString());
+          final String operation = message.getStr(QUEUE_OPERATION);
+          SolrResponse response = processMessage(message, operation);
+          head.setBytes(SolrResponse.serializable(response));
+          workQueue.remove(head);
           log.info("Overseer Collection Processor: Message id:" + head.getId() + " complete, response:"+ response.getResponse().toString());
         } catch (KeeperException e) {
           if (e.code() == KeeperException.Code.SESSIONEXPIRED) {
@@ -178,17 +252,158 @@ public class OverseerCollectionProcessor implements Runnable, Closeable {
             return;
           }
           SolrException.log(log, "", e);
-         } catch (InterruptedException e) {
-           Thread.currentThread().interrupt();
-           return;
-         } catch (Exception e) {
-           SolrException.log(log, "", e);
-         }
-       }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        } catch (Exception e) {
+          SolrException.log(log, "", e);
+        }
+      }
+    } finally {
+      // no longer the leader or closed: the operations still running are
+      // picked up again from the queue by the next Overseer
+      if (tpe != null) {
+        ExecutorUtil.shutdownNowAndAwaitTermination(tpe);
+      }
+    }
   }
   
   public void close() {
     isClosed = true;
+    if (tpe != null) {
+      tpe.shutdownNow();
+    }
+    changed();
+  }
+
+  /** Wakes up processInParallel, if it waits for an operation to complete or the queue to change */
+  private void changed() {
+    synchronized (runningTasks) {
+      changes++;
+      runningTasks.notifyAll();
+    }
+  }
+
+  // runs the operations when they run in parallel, from the start to the end of run()
+  private volatile ExecutorService tpe;
+
+  /**
+   * Starts the operations at the head of the queue that can run now: those on
+   * collections no other operation runs on, while there are threads free.
+   * Operations on the same collection keep their order.
+   */
+  private void processInParallel() throws KeeperException, InterruptedException {
+    Set<String> excluded;
+    long seen;
+    synchronized (runningTasks) {
+      excluded = new HashSet<String>(runningTasks);
+      seen = changes;
+    }
+    // set before looking at the queue, so that no element added after it is missed
+    workQueue.watch(queueWatcher);
+    List<QueueEvent> heads = workQueue.peekTopN(maxParallelThreads, excluded, 2000);
+
+    boolean submitted = false;
+    // the collections with an earlier operation that has to wait
+    Set<String> blocked = new HashSet<String>();
+    for (QueueEvent head : heads) {
+      synchronized (runningTasks) {
+        if (runningTasks.size() >= maxParallelThreads) break;
+      }
+      final ZkNodeProps message = ZkNodeProps.load(head.getBytes());
+      final String operation = message.getStr(QUEUE_OPERATION);
+      final String lockKey = getLockKey(message, operation);
+      if (lockKey != null) {
+        if (blocked.contains(lockKey) || !tryLock(lockKey)) {
+          blocked.add(lockKey);
+          continue;
+        }
+      }
+      log.info("Overseer Collection Processor: Get the message id:" + head.getId() + " message:" + message.toString());
+      synchronized (runningTasks) {
+        runningTasks.add(head.getId());
+      }
+      tpe.execute(new Runner(head, message, operation, lockKey));
+      submitted = true;
+    }
+
+    if (!submitted && !heads.isEmpty()) {
+      // nothing can run until an operation completes and unlocks its collection or
+      // frees a thread, or an operation on another collection is added
+      long waitUntil = System.currentTimeMillis() + PARALLEL_WAIT_MS;
+      synchronized (runningTasks) {
+        long left;
+        while (changes == seen && !isClosed && (left = waitUntil - System.currentTimeMillis()) > 0) {
+          runningTasks.wait(left);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the name operations on the same thing are serialized by, or null
+   * if the operation can run with any other.
+   */
+  private String getLockKey(ZkNodeProps message, String operation) {
+    if (CREATEALIAS.equals(operation) || DELETEALIAS.equals(operation)) {
+      // all aliases are kept in one node
+      return ZkStateReader.ALIASES;
+    }
+    String collection = message.getStr(ZkStateReader.COLLECTION_PROP);
+    return collection != null ? collection : message.getStr("name");
+  }
+
+  private boolean tryLock(String lockKey) {
+    synchronized (collectionWip) {
+      return collectionWip.add(lockKey);
+    }
+  }
+
+  private void unlock(String lockKey) {
+    synchronized (collectionWip) {
+      collectionWip.remove(lockKey);
+    }
+  }
+
+  /** Processes one operation with its own ShardHandler, and stores the response */
+  private class Runner implements Runnable {
+    private final QueueEvent head;
+    private final ZkNodeProps message;
+    private final String operation;
+    private final String lockKey;
+
+    Runner(QueueEvent head, ZkNodeProps message, String operation, String lockKey) {
+      this.head = head;
+      this.message = message;
+      this.operation = operation;
+      this.lockKey = lockKey;
+    }
+
+    @Override
+    public void run() {
+      try {
+        OverseerCollectionProcessor processor = new OverseerCollectionProcessor(
+            OverseerCollectionProcessor.this, shardHandlerFactory.getShardHandler());
+        SolrResponse response = processor.processMessage(message, operation);
+        head.setBytes(SolrResponse.serializable(response));
+        workQueue.remove(head);
+        log.info("Overseer Collection Processor: Message id:" + head.getId() + " complete, response:"+ response.getResponse().toString());
+      } catch (KeeperException e) {
+        SolrException.log(log, "", e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Exception e) {
+        SolrException.log(log, "", e);
+      } finally {
+        if (lockKey != null) {
+          unlock(lockKey);
+        }
+        synchronized (runningTasks) {
+          runningTasks.remove(head.getId());
+        }
+        changed();
+      }
+    }
   }
   
   public static String getLeaderNode(SolrZkClient zkClient) throws KeeperException, InterruptedException {
@@ -237,6 +452,7 @@ public class OverseerCollectionProcessor implements Runnable, Closeable {
     log.warn("OverseerCollectionProcessor.processMessage : "+ operation + " , "+ message.toString());
 
     NamedList results = new NamedList();
+    TimerContext timer = stats.time(operation);
     try {
       if (CREATECOLLECTION.equals(operation)) {
         createCollection(zkStateReader.getClusterState(), message, results);
@@ -256,14 +472,20 @@ public class OverseerCollectionProcessor implements Runnable, Closeable {
         createShard(zkStateReader.getClusterState(), message, results);
       } else if (DELETESHARD.equals(operation)) {
         deleteShard(zkStateReader.getClusterState(), message, results);
+      } else if (MIGRATESTATEFORMAT.equals(operation)) {
+        migrateStateFormat(message, results);
+      } else if (OVERSEERSTATUS.equals(operation)) {
+        getOverseerStatus(results);
       } else if(LIST.equals(CollectionAction.get(operation))) {
         listCollections(zkStateReader.getClusterState(), results);
       } else {
         throw new SolrException(ErrorCode.BAD_REQUEST, "Unknown operation:"
             + operation);
       }
+      stats.success(operation);
 
     } catch (Exception e) {
+      stats.error(operation);
       SolrException.log(log, "Collection " + operation + " of " + operation
           + " failed", e);
       results.add("Operation " + operation + " caused exception:", e);
@@ -271,7 +493,9 @@ public class OverseerCollectionProcessor implements Runnable, Closeable {
       nl.add("msg", e.getMessage());
       nl.add("rspCode", e instanceof SolrException ? ((SolrException)e).code() : -1);
       results.add("exception", nl);
-    } 
+    } finally {
+      timer.stop();
+    }
     
     return new OverseerSolrResponse(results);
   }
@@ -339,6 +563,50 @@ public class OverseerCollectionProcessor implements Runnable, Closeable {
     }
   }
 
+  private void getOverseerStatus(NamedList results) throws KeeperException, InterruptedException {
+    SolrZkClient zkClient = zkStateReader.getZkClient();
+    results.add("leader", getLeaderNode(zkClient));
+    results.add("overseer_queue_size", Overseer.getInQueue(zkClient).size());
+    results.add("overseer_work_queue_size", Overseer.getInternalQueue(zkClient).size());
+    results.add("overseer_collection_queue_size", workQueue.size());
+    if (updaterStats != null) {
+      results.add("overseer_operations", updaterStats.getStatistics());
+    }
+    results.add("collection_operations", stats.getStatistics());
+  }
+
+  private void migrateStateFormat(ZkNodeProps message, NamedList results)
+      throws KeeperException, InterruptedException {
+    String collection = message.getStr("name");
+    if (!zkStateReader.getClusterState().getCollections().contains(collection)) {
+      throw new SolrException(ErrorCode.BAD_REQUEST,
+          "No collection with the specified name exists: " + collection);
+    }
+
+    Overseer.getInQueue(zkStateReader.getZkClient()).offer(
+        ZkStateReader.toJSON(message));
+
+    // wait for a while until the collection has its own state node
+    long now = System.currentTimeMillis();
+    long timeout = now + 30000;
+    boolean migrated = false;
+    while (System.currentTimeMillis() < timeout) {
+      Thread.sleep(100);
+      DocCollection coll = zkStateReader.getClusterState().getCollectionOrNull(collection);
+      migrated = coll != null && coll.getStateFormat() > 1;
+      if (migrated) {
+        Thread.sleep(100); // just a bit of time so it's more likely other
+                           // readers see on return
+        break;
+      }
+    }
+    if (!migrated) {
+      throw new SolrException(ErrorCode.SERVER_ERROR,
+          "Could not migrate the state format of collection: " + collection);
+    }
+    results.add("success", "");
+  }
+
   private void createAlias(Aliases aliases, ZkNodeProps message) {
     String aliasName = message.getStr("name");
     String collections = message.getStr("collections");
@@ -29,6 +29,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
@@ -65,6 +66,7 @@ import org.apache.solr.core.CoreContainer;
 import org.apache.solr.core.CoreDescriptor;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.handler.component.ShardHandler;
+import org.apache.solr.handler.component.ShardHandlerFactory;
 import org.apache.solr.update.UpdateLog;
 import org.apache.solr.update.UpdateShardHandler;
 import org.apache.solr.util.PropertiesUtil;
@@ -185,6 +187,9 @@ public final class ZkController {
 
   private UpdateShardHandler updateShardHandler;
 
+  // the core node names registered here per collection, whose state is watched as long as there are any
+  private final Map<String,Set<String>> localCoreNodes = new HashMap<String,Set<String>>();
+
   public ZkController(final CoreContainer cc, String zkServerAddress, int zkClientTimeout, int zkClientConnectTimeout, String localHost, String locaHostPort,
       String localHostContext, String leaderVoteWait, int leaderConflictResolveWait, boolean genericCoreNodeNames, int distribUpdateConnTimeout, int distribUpdateSoTimeout, final CurrentCoreDescriptorProvider registerOnReconnect) throws InterruptedException,
       TimeoutException, IOException {
@@ -559,16 +564,16 @@ public final class ZkController {
       createEphemeralLiveNode();
       cmdExecutor.ensureExists(ZkStateReader.COLLECTIONS_ZKNODE, zkClient);
 
-      ShardHandler shardHandler;
+      ShardHandlerFactory shardHandlerFactory;
       UpdateShardHandler updateShardHandler;
       String adminPath;
-      shardHandler = cc.getShardHandlerFactory().getShardHandler();
+      shardHandlerFactory = cc.getShardHandlerFactory();
       updateShardHandler = this.updateShardHandler;
       adminPath = cc.getAdminPath();
       
       if (!zkRunOnly) {
         overseerElector = new LeaderElector(zkClient);
-        this.overseer = new Overseer(shardHandler, updateShardHandler,
+        this.overseer = new Overseer(shardHandlerFactory, updateShardHandler,
             adminPath, zkStateReader, this, cc.getConfig());
         ElectionContext context = new OverseerElectionContext(zkClient,
             overseer, getNodeName());
@@ -1139,7 +1144,7 @@ public final class ZkController {
 
     final CloudDescriptor cloudDesc = desc.getCloudDescriptor();
     
-    final String shardId = state.getShardId(getNodeName(), desc.getName());
+    final String shardId = state.getShardId(cloudDesc.getCollectionName(), getNodeName(), desc.getName());
 
     if (shardId != null) {
       cloudDesc.setShardId(shardId);
@@ -1173,6 +1178,15 @@ public final class ZkController {
         ZkStateReader.COLLECTION_PROP, cloudDescriptor.getCollectionName(),
         ZkStateReader.CORE_NODE_NAME_PROP, coreNodeName);
     overseerJobQueue.offer(ZkStateReader.toJSON(m));
+
+    // the state of collections no longer hosted here is only read when needed
+    synchronized (localCoreNodes) {
+      Set<String> coreNodes = localCoreNodes.get(collection);
+      if (coreNodes != null && coreNodes.remove(coreNodeName) && coreNodes.isEmpty()) {
+        localCoreNodes.remove(collection);
+        zkStateReader.removeCollectionWatch(collection);
+      }
+    }
   }
   
   public void createCollection(String collection) throws KeeperException,
@@ -1390,7 +1404,7 @@ public final class ZkController {
     log.info("waiting to find shard id in clusterstate for " + cd.getName());
     int retryCount = 320;
     while (retryCount-- > 0) {
-      final String shardId = zkStateReader.getClusterState().getShardId(getNodeName(), cd.getName());
+      final String shardId = zkStateReader.getClusterState().getShardId(cd.getCloudDescriptor().getCollectionName(), getNodeName(), cd.getName());
       if (shardId != null) {
         cd.getCloudDescriptor().setShardId(shardId);
         return;
@@ -1472,6 +1486,18 @@ public final class ZkController {
         cloudDesc.setCoreNodeName(coreNodeName);
       }
 
+      // keep the state of the collections hosted here up to date, even if
+      // they have their own state node
+      synchronized (localCoreNodes) {
+        Set<String> coreNodes = localCoreNodes.get(cloudDesc.getCollectionName());
+        if (coreNodes == null) {
+          coreNodes = new HashSet<String>();
+          localCoreNodes.put(cloudDesc.getCollectionName(), coreNodes);
+        }
+        coreNodes.add(cloudDesc.getCoreNodeName());
+      }
+      zkStateReader.addCollectionWatch(cloudDesc.getCollectionName());
+
       publish(cd, ZkStateReader.DOWN, false, true);
     } catch (KeeperException e) {
       log.error("", e);
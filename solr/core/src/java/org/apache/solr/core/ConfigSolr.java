@@ -60,6 +60,10 @@ public abstract class ConfigSolr {
   private static final int DEFAULT_AUTO_REPLICA_FAILOVER_WORKLOOP_DELAY = 10000;
   private static final int DEFAULT_AUTO_REPLICA_FAILOVER_BAD_NODE_EXPIRATION = 60000;
 
+  private static final int DEFAULT_OVERSEER_STATE_UPDATE_BATCH_SIZE = 10000;
+  private static final int DEFAULT_OVERSEER_STATE_UPDATE_FLUSH_INTERVAL = 1500;
+  private static final int DEFAULT_OVERSEER_COLLECTION_THREADS = 10;
+
   public static ConfigSolr fromFile(SolrResourceLoader loader, File configFile) {
     log.info("Loading container configuration from {}", configFile.getAbsolutePath());
 
@@ -155,6 +159,21 @@ public abstract class ConfigSolr {
     return getInt(CfgProp.SOLR_AUTOREPLICAFAILOVERBADNODEEXPIRATION, DEFAULT_AUTO_REPLICA_FAILOVER_BAD_NODE_EXPIRATION);
   }
 
+  /** The most state updates the Overseer applies before writing the cluster state */
+  public int getOverseerStateUpdateBatchSize() {
+    return getInt(CfgProp.SOLR_OVERSEERSTATEUPDATEBATCHSIZE, DEFAULT_OVERSEER_STATE_UPDATE_BATCH_SIZE);
+  }
+
+  /** The least time in ms between two writes of the cluster state by the Overseer, unless a batch is full */
+  public int getOverseerStateUpdateFlushInterval() {
+    return getInt(CfgProp.SOLR_OVERSEERSTATEUPDATEFLUSHINTERVAL, DEFAULT_OVERSEER_STATE_UPDATE_FLUSH_INTERVAL);
+  }
+
+  /** The most collection API operations the Overseer runs at the same time, on different collections */
+  public int getOverseerCollectionThreads() {
+    return getInt(CfgProp.SOLR_OVERSEERCOLLECTIONTHREADS, DEFAULT_OVERSEER_COLLECTION_THREADS);
+  }
+
   public PluginInfo getShardHandlerFactoryPluginInfo() {
     Node node = config.getNode(getShardHandlerFactoryConfigPath(), false);
     return (node == null) ? null : new PluginInfo(node, "shardHandlerFactory", false, true);
@@ -217,6 +236,10 @@ public abstract class ConfigSolr {
     SOLR_AUTOREPLICAFAILOVERWAITAFTEREXPIRATION,
     SOLR_AUTOREPLICAFAILOVERWORKLOOPDELAY,
     SOLR_AUTOREPLICAFAILOVERBADNODEEXPIRATION,
+
+    SOLR_OVERSEERSTATEUPDATEBATCHSIZE,
+    SOLR_OVERSEERSTATEUPDATEFLUSHINTERVAL,
+    SOLR_OVERSEERCOLLECTIONTHREADS,
     
     //TODO: Remove all of these elements for 5.0
     SOLR_PERSISTENT,
@@ -130,6 +130,10 @@ public class ConfigSolrXml extends ConfigSolr {
     propMap.put(CfgProp.SOLR_AUTOREPLICAFAILOVERBADNODEEXPIRATION, doSub("solr/solrcloud/int[@name='autoReplicaFailoverBadNodeExpiration']"));
     propMap.put(CfgProp.SOLR_AUTOREPLICAFAILOVERWAITAFTEREXPIRATION, doSub("solr/solrcloud/int[@name='autoReplicaFailoverWaitAfterExpiration']"));
     propMap.put(CfgProp.SOLR_AUTOREPLICAFAILOVERWORKLOOPDELAY, doSub("solr/solrcloud/int[@name='autoReplicaFailoverWorkLoopDelay']"));
+
+    propMap.put(CfgProp.SOLR_OVERSEERSTATEUPDATEBATCHSIZE, doSub("solr/solrcloud/int[@name='overseerStateUpdateBatchSize']"));
+    propMap.put(CfgProp.SOLR_OVERSEERSTATEUPDATEFLUSHINTERVAL, doSub("solr/solrcloud/int[@name='overseerStateUpdateFlushInterval']"));
+    propMap.put(CfgProp.SOLR_OVERSEERCOLLECTIONTHREADS, doSub("solr/solrcloud/int[@name='overseerCollectionThreads']"));
     
     propMap.put(CfgProp.SOLR_MANAGEMENTPATH, doSub("solr/str[@name='managementPath']"));
     propMap.put(CfgProp.SOLR_SHAREDLIB, doSub("solr/str[@name='sharedLib']"));
@@ -144,6 +144,13 @@ public class ConfigSolrXmlOld extends ConfigSolr {
         config.getVal("solr/cores/@autoReplicaFailoverWaitAfterExpiration", false));
     propMap.put(CfgProp.SOLR_AUTOREPLICAFAILOVERWORKLOOPDELAY,
         config.getVal("solr/cores/@autoReplicaFailoverWorkLoopDelay", false));
+
+    propMap.put(CfgProp.SOLR_OVERSEERSTATEUPDATEBATCHSIZE,
+        config.getVal("solr/cores/@overseerStateUpdateBatchSize", false));
+    propMap.put(CfgProp.SOLR_OVERSEERSTATEUPDATEFLUSHINTERVAL,
+        config.getVal("solr/cores/@overseerStateUpdateFlushInterval", false));
+    propMap.put(CfgProp.SOLR_OVERSEERCOLLECTIONTHREADS,
+        config.getVal("solr/cores/@overseerCollectionThreads", false));
     
     propMap.put(CfgProp.SOLR_MANAGEMENTPATH,
         config.getVal("solr/cores/@managementPath", false));
@@ -267,7 +267,9 @@ public class SolrConfig extends Config {
             getInt("updateHandler/commitIntervalLowerBound",-1),
             getInt("updateHandler/autoSoftCommit/maxDocs",-1),
             getInt("updateHandler/autoSoftCommit/maxTime",-1),
-            getBool("updateHandler/commitWithin/softCommit",true));
+            getBool("updateHandler/commitWithin/softCommit",true),
+            getInt("updateHandler/maxBulkUpdateThreads",-1),
+            getInt("updateHandler/autoSoftCommit/maxAdaptiveTime",-1));
   }
 
   private void loadPluginInfo(Class clazz, String tag, boolean requireName, boolean requireClass) {
@@ -432,6 +434,8 @@ public class SolrConfig extends Config {
         autoSoftCommmitMaxDocs,autoSoftCommmitMaxTime;
     public final boolean openSearcher;  // is opening a new searcher part of hard autocommit?
     public final boolean commitWithinSoftCommit;
+    public final int maxBulkUpdateThreads;
+    public final int autoSoftCommitMaxAdaptiveTime;  // how far the soft autocommit maxTime may widen under load
 
     /**
      * @param autoCommmitMaxDocs set -1 as default
@@ -440,6 +444,17 @@ public class SolrConfig extends Config {
      */
     public UpdateHandlerInfo(String className, int autoCommmitMaxDocs, int autoCommmitMaxTime, boolean openSearcher, int commitIntervalLowerBound,
         int autoSoftCommmitMaxDocs, int autoSoftCommmitMaxTime, boolean commitWithinSoftCommit) {
+      this(className, autoCommmitMaxDocs, autoCommmitMaxTime, openSearcher, commitIntervalLowerBound,
+          autoSoftCommmitMaxDocs, autoSoftCommmitMaxTime, commitWithinSoftCommit, -1, -1);
+    }
+
+    /**
+     * @param maxBulkUpdateThreads set -1 as default
+     * @param autoSoftCommitMaxAdaptiveTime set -1 as default
+     */
+    public UpdateHandlerInfo(String className, int autoCommmitMaxDocs, int autoCommmitMaxTime, boolean openSearcher, int commitIntervalLowerBound,
+        int autoSoftCommmitMaxDocs, int autoSoftCommmitMaxTime, boolean commitWithinSoftCommit, int maxBulkUpdateThreads,
+        int autoSoftCommitMaxAdaptiveTime) {
       this.className = className;
       this.autoCommmitMaxDocs = autoCommmitMaxDocs;
       this.autoCommmitMaxTime = autoCommmitMaxTime;
@@ -450,6 +465,8 @@ public class SolrConfig extends Config {
       this.autoSoftCommmitMaxTime = autoSoftCommmitMaxTime;
       
       this.commitWithinSoftCommit = commitWithinSoftCommit;
+      this.maxBulkUpdateThreads = maxBulkUpdateThreads;
+      this.autoSoftCommitMaxAdaptiveTime = autoSoftCommitMaxAdaptiveTime;
     } 
   }
 
@@ -24,6 +24,7 @@ import org.apache.solr.common.util.NamedList;
 import org.apache.solr.handler.loader.ContentStreamLoader;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.update.processor.PipelinedUpdateProcessor;
 import org.apache.solr.update.processor.UpdateRequestProcessor;
 import org.apache.solr.update.processor.UpdateRequestProcessorChain;
 import org.slf4j.Logger;
@@ -37,6 +38,9 @@ import org.slf4j.LoggerFactory;
 public abstract class ContentStreamHandlerBase extends RequestHandlerBase {
   public static Logger log = LoggerFactory.getLogger(ContentStreamHandlerBase.class);
 
+  // the most threads the update.threads parameter may ask for
+  private int maxUpdateThreads = PipelinedUpdateProcessor.MAX_THREADS;
+
   @Override
   public void init(NamedList args) {
     super.init(args);
@@ -48,6 +52,11 @@ public abstract class ContentStreamHandlerBase extends RequestHandlerBase {
       if(caching!=null) {
         httpCaching = Boolean.parseBoolean(caching.toString());
       }
+      // can only lower the default
+      Object maxThreads = args.get("maxUpdateThreads");
+      if (maxThreads != null) {
+        maxUpdateThreads = Math.min(Integer.parseInt(maxThreads.toString()), PipelinedUpdateProcessor.MAX_THREADS);
+      }
     }
   }
   
@@ -58,6 +67,11 @@ public abstract class ContentStreamHandlerBase extends RequestHandlerBase {
             req.getCore().getUpdateProcessingChain(params.get(UpdateParams.UPDATE_CHAIN));
 
     UpdateRequestProcessor processor = processorChain.createProcessor(req, rsp);
+    int threads = Math.min(params.getInt(UpdateParams.UPDATE_THREADS, 1), maxUpdateThreads);
+    if (threads > 1) {
+      // parse on this thread while the documents are processed and indexed on others
+      processor = new PipelinedUpdateProcessor(processorChain, req, rsp, threads, processor);
+    }
 
     try {
       ContentStreamLoader documentLoader = newLoader(req, processor);
@@ -0,0 +1,559 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.handler;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.TrieDateField;
+import org.apache.solr.schema.TrieField;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.QParser;
+import org.apache.solr.search.QParserPlugin;
+import org.apache.solr.search.QueryParsing;
+import org.apache.solr.search.ReturnFields;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SolrReturnFields;
+import org.apache.solr.search.SortSpec;
+import org.apache.solr.search.SyntaxError;
+
+/**
+ * Streams the complete, sorted result set of a query straight out of doc values.
+ * <p>
+ * Unlike paging with <code>start</code>/<code>rows</code> or <code>cursorMark</code>,
+ * the query and filters are executed exactly once.  The matching documents are
+ * kept as one bit per document and segment, and are emitted in sort order in
+ * bounded batches: each batch is gathered with a priority queue of at most
+ * <code>export.batchSize</code> entries across all segments, written, and then
+ * cleared from the bit sets.  Memory use is therefore independent of the number
+ * of rows exported, and no stored fields are ever loaded.
+ * <p>
+ * The response contains a <code>numFound</code> entry followed by a
+ * <code>docs</code> entry that is an {@link Iterator} of documents, which the
+ * JSON, XML and javabin response writers serialize incrementally as it is consumed.
+ * <p>
+ * Every field named in <code>sort</code> and <code>fl</code> must have
+ * <code>docValues="true"</code>; sort fields must also be single valued.
+ * Sorting by score is not supported.
+ *
+ * <pre class="prettyprint">
+ * &lt;requestHandler name="/export" class="solr.ExportHandler"&gt;
+ *   &lt;lst name="invariants"&gt;
+ *     &lt;str name="distrib"&gt;false&lt;/str&gt;
+ *   &lt;/lst&gt;
+ * &lt;/requestHandler&gt;
+ * </pre>
+ */
+public class ExportHandler extends RequestHandlerBase {
+
+  /** The maximum number of documents gathered (and buffered) per sorted batch */
+  public static final String BATCH_SIZE = "export.batchSize";
+  public static final int DEFAULT_BATCH_SIZE = 30000;
+
+  @Override
+  public void handleRequestBody(SolrQueryRequest req, SolrQueryResponse rsp) throws Exception {
+    SolrParams params = req.getParams();
+    IndexSchema schema = req.getSchema();
+    SolrIndexSearcher searcher = req.getSearcher();
+
+    String sortStr = params.get(CommonParams.SORT);
+    if (sortStr == null || sortStr.trim().length() == 0) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "export requires the sort parameter");
+    }
+    SortSpec sortSpec = QueryParsing.parseSortSpec(sortStr, req);
+    if (sortSpec.getSort() == null) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "export requires a field sort: " + sortStr);
+    }
+
+    ReturnFields returnFields = new SolrReturnFields(req);
+    Set<String> fieldNames = returnFields.getLuceneFieldNames();
+    if (returnFields.wantsAllFields() || fieldNames == null || fieldNames.isEmpty()) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "export requires the fl parameter to list the fields to return");
+    }
+    rsp.setReturnFields(returnFields);
+
+    int batchSize = params.getInt(BATCH_SIZE, DEFAULT_BATCH_SIZE);
+    if (batchSize <= 0) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, BATCH_SIZE + " must be positive: " + batchSize);
+    }
+
+    List<Query> queries = new ArrayList<Query>();
+    try {
+      String defType = params.get(QueryParsing.DEFTYPE, QParserPlugin.DEFAULT_QTYPE);
+      String q = params.get(CommonParams.Q, "*:*");
+      Query query = QParser.getParser(q, defType, req).getQuery();
+      // normalize a null query to a query that matches nothing
+      queries.add(query == null ? new BooleanQuery() : query);
+      String[] fqs = params.getParams(CommonParams.FQ);
+      if (fqs != null) {
+        for (String fq : fqs) {
+          if (fq != null && fq.trim().length() != 0) {
+            queries.add(QParser.getParser(fq, null, req).getQuery());
+          }
+        }
+      }
+    } catch (SyntaxError e) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, e);
+    }
+
+    SortField[] sortFields = sortSpec.getSort().getSort();
+    SortValue[] sortValues = new SortValue[sortFields.length];
+    for (int i = 0; i < sortFields.length; i++) {
+      sortValues[i] = getSortValue(searcher, schema, sortFields[i]);
+    }
+
+    FieldWriter[] writers = new FieldWriter[fieldNames.size()];
+    int w = 0;
+    for (String fieldName : fieldNames) {
+      writers[w++] = getFieldWriter(searcher, schema, fieldName);
+    }
+
+    DocSet docs = searcher.getDocSet(queries);
+
+    rsp.add("numFound", docs.size());
+    rsp.add("docs", new ExportIterator(searcher, docs, sortValues, writers, batchSize));
+  }
+
+  private static void checkDocValues(SchemaField sf, String what) {
+    if (!sf.hasDocValues()) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+          "export " + what + " field " + sf.getName() + " must have docValues=true");
+    }
+  }
+
+  private static SortValue getSortValue(SolrIndexSearcher searcher, IndexSchema schema, SortField sortField) throws IOException {
+    if (sortField.getField() == null || sortField.getType() == SortField.Type.SCORE || sortField.getType() == SortField.Type.DOC) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "export can only sort by docValues fields: " + sortField);
+    }
+    SchemaField sf = schema.getField(sortField.getField());
+    checkDocValues(sf, "sort");
+    if (sf.multiValued()) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+          "export cannot sort on multiValued field " + sf.getName());
+    }
+    TrieField.TrieTypes type = getTrieType(sf);
+    if (type != null) {
+      List<AtomicReaderContext> leaves = searcher.getTopReaderContext().leaves();
+      NumericDocValues[] values = new NumericDocValues[leaves.size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = leaves.get(i).reader().getNumericDocValues(sf.getName());
+      }
+      return new NumericSortValue(values, type, sortField.getReverse());
+    }
+    // global ordinals, so that values from different segments compare directly
+    SortedDocValues ords = searcher.getAtomicReader().getSortedDocValues(sf.getName());
+    return new OrdSortValue(ords, searcher.getTopReaderContext().leaves(), sortField.getReverse());
+  }
+
+  private static FieldWriter getFieldWriter(SolrIndexSearcher searcher, IndexSchema schema, String fieldName) throws IOException {
+    SchemaField sf = schema.getField(fieldName);
+    checkDocValues(sf, "fl");
+    List<AtomicReaderContext> leaves = searcher.getTopReaderContext().leaves();
+    TrieField.TrieTypes type = getTrieType(sf);
+    if (sf.multiValued()) {
+      SortedSetDocValues[] values = new SortedSetDocValues[leaves.size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = leaves.get(i).reader().getSortedSetDocValues(fieldName);
+      }
+      return new MultiValuedWriter(sf, values);
+    } else if (type != null) {
+      NumericDocValues[] values = new NumericDocValues[leaves.size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = leaves.get(i).reader().getNumericDocValues(fieldName);
+      }
+      // numeric doc values read as 0 for documents without a value; declared fields that are
+      // required or have a default always have one, for the others the terms tell if the
+      // field is indexed (if not, a missing value can't be told from 0)
+      DocSet docsWithField = null;
+      if (sf.indexed() && !schema.getRequiredFields().contains(sf)) {
+        docsWithField = searcher.getDocSet(sf.getType().getRangeQuery(null, sf, null, null, true, true));
+      }
+      return new NumericWriter(sf, values, type, docsWithField, leaves);
+    } else {
+      SortedDocValues[] values = new SortedDocValues[leaves.size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = leaves.get(i).reader().getSortedDocValues(fieldName);
+      }
+      return new SortedWriter(sf, values);
+    }
+  }
+
+  private static TrieField.TrieTypes getTrieType(SchemaField sf) {
+    if (sf.getType() instanceof TrieDateField) {
+      return TrieField.TrieTypes.DATE;
+    } else if (sf.getType() instanceof TrieField) {
+      return ((TrieField)sf.getType()).getType();
+    }
+    return null;
+  }
+
+  /** Converts a raw numeric doc value to a long that sorts in natural order */
+  static long toSortableLong(long raw, TrieField.TrieTypes type) {
+    switch (type) {
+      case FLOAT:
+        return NumericUtils.floatToSortableInt(Float.intBitsToFloat((int)raw));
+      case DOUBLE:
+        return NumericUtils.doubleToSortableLong(Double.longBitsToDouble(raw));
+      default:
+        return raw;
+    }
+  }
+
+  /** Converts a raw numeric doc value to the external object for the field type */
+  static Object toObject(long raw, TrieField.TrieTypes type) {
+    switch (type) {
+      case INTEGER:
+        return (int)raw;
+      case LONG:
+        return raw;
+      case FLOAT:
+        return Float.intBitsToFloat((int)raw);
+      case DOUBLE:
+        return Double.longBitsToDouble(raw);
+      case DATE:
+        return new Date(raw);
+      default:
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Unknown type for trie field: " + type);
+    }
+  }
+
+  /** Produces a comparable long for one sort field of a document */
+  static abstract class SortValue {
+    final boolean reverse;
+
+    SortValue(boolean reverse) {
+      this.reverse = reverse;
+    }
+
+    abstract long get(int leaf, int doc);
+  }
+
+  static class NumericSortValue extends SortValue {
+    private final NumericDocValues[] values;
+    private final TrieField.TrieTypes type;
+
+    NumericSortValue(NumericDocValues[] values, TrieField.TrieTypes type, boolean reverse) {
+      super(reverse);
+      this.values = values;
+      this.type = type;
+    }
+
+    @Override
+    long get(int leaf, int doc) {
+      NumericDocValues v = values[leaf];
+      return v == null ? 0 : toSortableLong(v.get(doc), type);
+    }
+  }
+
+  static class OrdSortValue extends SortValue {
+    private final SortedDocValues ords;
+    private final int[] docBases;
+
+    OrdSortValue(SortedDocValues ords, List<AtomicReaderContext> leaves, boolean reverse) {
+      super(reverse);
+      this.ords = ords;
+      this.docBases = new int[leaves.size()];
+      for (int i = 0; i < docBases.length; i++) {
+        docBases[i] = leaves.get(i).docBase;
+      }
+    }
+
+    @Override
+    long get(int leaf, int doc) {
+      // missing values have ord -1 and sort first, as with the FieldCache
+      return ords == null ? -1 : ords.getOrd(docBases[leaf] + doc);
+    }
+  }
+
+  /** Reads the value of one returned field of a document */
+  static abstract class FieldWriter {
+    final SchemaField sf;
+
+    FieldWriter(SchemaField sf) {
+      this.sf = sf;
+    }
+
+    /** returns the value of the field, or null if the document has none */
+    abstract Object get(int leaf, int doc);
+  }
+
+  static class NumericWriter extends FieldWriter {
+    private final NumericDocValues[] values;
+    private final TrieField.TrieTypes type;
+    private final DocSet docsWithField;  // null if every document has a value
+    private final int[] docBases;
+
+    NumericWriter(SchemaField sf, NumericDocValues[] values, TrieField.TrieTypes type,
+        DocSet docsWithField, List<AtomicReaderContext> leaves) {
+      super(sf);
+      this.values = values;
+      this.type = type;
+      this.docsWithField = docsWithField;
+      this.docBases = new int[leaves.size()];
+      for (int i = 0; i < docBases.length; i++) {
+        docBases[i] = leaves.get(i).docBase;
+      }
+    }
+
+    @Override
+    Object get(int leaf, int doc) {
+      NumericDocValues v = values[leaf];
+      if (v == null) return null;
+      if (docsWithField != null && !docsWithField.exists(docBases[leaf] + doc)) return null;
+      return toObject(v.get(doc), type);
+    }
+  }
+
+  static class SortedWriter extends FieldWriter {
+    private final SortedDocValues[] values;
+    private final BytesRef scratch = new BytesRef();
+
+    SortedWriter(SchemaField sf, SortedDocValues[] values) {
+      super(sf);
+      this.values = values;
+    }
+
+    @Override
+    Object get(int leaf, int doc) {
+      SortedDocValues v = values[leaf];
+      if (v == null) return null;
+      int ord = v.getOrd(doc);
+      if (ord == -1) return null;
+      v.lookupOrd(ord, scratch);
+      return sf.getType().toObject(sf, scratch);
+    }
+  }
+
+  static class MultiValuedWriter extends FieldWriter {
+    private final SortedSetDocValues[] values;
+    private final BytesRef scratch = new BytesRef();
+
+    MultiValuedWriter(SchemaField sf, SortedSetDocValues[] values) {
+      super(sf);
+      this.values = values;
+    }
+
+    @Override
+    Object get(int leaf, int doc) {
+      SortedSetDocValues v = values[leaf];
+      if (v == null) return null;
+      v.setDocument(doc);
+      List<Object> vals = null;
+      for (long ord = v.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = v.nextOrd()) {
+        if (vals == null) vals = new ArrayList<Object>(4);
+        v.lookupOrd(ord, scratch);
+        vals.add(sf.getType().toObject(sf, scratch));
+      }
+      return vals;
+    }
+  }
+
+  /** A matching document and its sort values */
+  static class SortDoc {
+    int leaf;
+    int doc;
+    final long[] values;
+
+    SortDoc(int numValues) {
+      values = new long[numValues];
+    }
+
+    void copyFrom(SortDoc other) {
+      leaf = other.leaf;
+      doc = other.doc;
+      System.arraycopy(other.values, 0, values, 0, values.length);
+    }
+  }
+
+  /** Orders {@link SortDoc}s so that the top of the queue is the document that sorts last */
+  static class SortQueue extends PriorityQueue<SortDoc> {
+    private final SortValue[] sortValues;
+
+    SortQueue(int maxSize, SortValue[] sortValues) {
+      super(maxSize);
+      this.sortValues = sortValues;
+    }
+
+    @Override
+    protected boolean lessThan(SortDoc a, SortDoc b) {
+      return compare(a, b, sortValues) > 0;
+    }
+  }
+
+  static int compare(SortDoc a, SortDoc b, SortValue[] sortValues) {
+    for (int i = 0; i < sortValues.length; i++) {
+      int cmp = a.values[i] < b.values[i] ? -1 : (a.values[i] == b.values[i] ? 0 : 1);
+      if (cmp != 0) {
+        return sortValues[i].reverse ? -cmp : cmp;
+      }
+    }
+    // ties are broken by index order
+    if (a.leaf != b.leaf) return a.leaf < b.leaf ? -1 : 1;
+    return a.doc < b.doc ? -1 : (a.doc == b.doc ? 0 : 1);
+  }
+
+  /**
+   * Lazily produces the sorted documents one batch at a time.  Documents are
+   * only materialized as they are handed to the response writer.
+   */
+  static class ExportIterator implements Iterator<SolrDocument> {
+    private final SortValue[] sortValues;
+    private final FieldWriter[] writers;
+    private final FixedBitSet[] sets;
+    private final SortQueue queue;
+    private final SortDoc scratch;
+    /** holds the current batch in sort order; the same instances are recycled for every batch */
+    private final SortDoc[] batch;
+    private int batchPos;
+    private int batchEnd;
+
+    ExportIterator(SolrIndexSearcher searcher, DocSet docs, SortValue[] sortValues, FieldWriter[] writers, int batchSize) throws IOException {
+      this.sortValues = sortValues;
+      this.writers = writers;
+
+      List<AtomicReaderContext> leaves = searcher.getTopReaderContext().leaves();
+      Filter filter = docs.getTopFilter();
+      sets = new FixedBitSet[leaves.size()];
+      long total = 0;
+      for (int i = 0; i < sets.length; i++) {
+        AtomicReaderContext leaf = leaves.get(i);
+        AtomicReader reader = leaf.reader();
+        DocIdSet idSet = filter.getDocIdSet(leaf, reader.getLiveDocs());
+        DocIdSetIterator it = idSet == null ? null : idSet.iterator();
+        if (it == null || reader.maxDoc() == 0) continue;
+        FixedBitSet bits = new FixedBitSet(reader.maxDoc());
+        bits.or(it);
+        sets[i] = bits;
+        total += bits.cardinality();
+      }
+
+      int size = (int)Math.max(1, Math.min(batchSize, total));
+      queue = new SortQueue(size, sortValues);
+      batch = new SortDoc[size];
+      for (int i = 0; i < size; i++) {
+        batch[i] = new SortDoc(sortValues.length);
+      }
+      scratch = new SortDoc(sortValues.length);
+    }
+
+    /** Gathers the next batch of documents in sort order and removes them from the bit sets */
+    private void nextBatch() {
+      queue.clear();
+      for (int i = 0; i < sets.length; i++) {
+        FixedBitSet bits = sets[i];
+        if (bits == null) continue;
+        int max = bits.length();
+        for (int doc = bits.nextSetBit(0); doc != -1; doc = doc + 1 < max ? bits.nextSetBit(doc + 1) : -1) {
+          scratch.leaf = i;
+          scratch.doc = doc;
+          for (int j = 0; j < sortValues.length; j++) {
+            scratch.values[j] = sortValues[j].get(i, doc);
+          }
+          if (queue.size() < batch.length) {
+            SortDoc sd = batch[queue.size()];
+            sd.copyFrom(scratch);
+            queue.add(sd);
+          } else if (compare(scratch, queue.top(), sortValues) < 0) {
+            queue.top().copyFrom(scratch);
+            queue.updateTop();
+          }
+        }
+      }
+
+      batchPos = 0;
+      batchEnd = queue.size();
+      for (int i = batchEnd - 1; i >= 0; i--) {
+        SortDoc sd = queue.pop();
+        sets[sd.leaf].clear(sd.doc);
+        batch[i] = sd;
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (batchPos < batchEnd) return true;
+      nextBatch();
+      return batchPos < batchEnd;
+    }
+
+    @Override
+    public SolrDocument next() {
+      if (!hasNext()) throw new NoSuchElementException();
+      SortDoc sd = batch[batchPos++];
+      SolrDocument doc = new SolrDocument();
+      for (FieldWriter writer : writers) {
+        Object val = writer.get(sd.leaf, sd.doc);
+        if (val != null) {
+          doc.setField(writer.sf.getName(), val);
+        }
+      }
+      return doc;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  //////////////////////// SolrInfoMBeans methods //////////////////////
+
+  @Override
+  public String getDescription() {
+    return "Streams sorted result sets from doc values";
+  }
+
+  @Override
+  public String getSource() {
+    return "$URL$";
+  }
+
+  @Override
+  public URL[] getDocs() {
+    return null;
+  }
+}
@@ -47,6 +47,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.IndexDeletionPolicy;
+import org.apache.lucene.index.IndexFileNames;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
@@ -305,6 +306,61 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
     return null;
   }
 
+  static long getCheckSum(Checksum checksum, Directory dir, String fileName) throws IOException {
+    checksum.reset();
+    byte[] buffer = new byte[64 * 1024];
+    IndexInput in = dir.openInput(fileName, IOContext.READONCE);
+    try {
+      long remaining = in.length();
+      while (remaining > 0) {
+        int len = (int) Math.min(buffer.length, remaining);
+        in.readBytes(buffer, 0, len);
+        checksum.update(buffer, 0, len);
+        remaining -= len;
+      }
+    } finally {
+      in.close();
+    }
+    return checksum.getValue();
+  }
+
+  /**
+   * Index files whose content can't be told from their name and size: the
+   * segment infos, which tell segments with the same name apart, and the
+   * deletes of a segment, written for each commit as <code>_N_gen.del</code>.
+   * The other files of a segment, like <code>_N_Lucene41_0.tim</code> of a
+   * per-field format, are written once with it, so they are the same on the
+   * master and the slave when the segment infos are.
+   */
+  static boolean isChecksummedIndexFile(String fileName) {
+    if (IndexFileNames.matchesExtension(fileName, SEGMENT_INFO_EXTENSION)) {
+      return true;
+    }
+    return (IndexFileNames.matchesExtension(fileName, DELETES_EXTENSION)
+        || IndexFileNames.matchesExtension(fileName, LIVE_DOCS_EXTENSION))
+        && parseGeneration(fileName) > 0;
+  }
+
+  /**
+   * Returns the generation of a file written with
+   * {@link IndexFileNames#fileNameFromGeneration}, <code>_N_gen.ext</code>, or 0
+   * for the other files of a segment.
+   */
+  static long parseGeneration(String fileName) {
+    if (!fileName.startsWith("_")) return 0;
+    String[] parts = IndexFileNames.stripExtension(fileName).substring(1).split("_");
+    if (parts.length != 2) return 0;
+    try {
+      return Long.parseLong(parts[1], Character.MAX_RADIX);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  static final String SEGMENT_INFO_EXTENSION = "si";
+  private static final String DELETES_EXTENSION = "del";
+  private static final String LIVE_DOCS_EXTENSION = "liv";
+
   private volatile SnapPuller tempSnapPuller;
 
   public boolean doFetch(SolrParams solrParams, boolean forceReplication) {
@@ -316,6 +372,12 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
       if (masterUrl != null) {
         NamedList<Object> nl = solrParams.toNamedList();
         nl.remove(SnapPuller.POLL_INTERVAL);
+        // e.g. recovery in SolrCloud, which only gives the master: use the download settings of this handler
+        for (String name : SnapPuller.DOWNLOAD_ARGS) {
+          if (nl.get(name) == null && initArgs.get(name) != null) {
+            nl.add(name, initArgs.get(name));
+          }
+        }
         tempSnapPuller = new SnapPuller(nl, this, core);
       }
       return tempSnapPuller.fetchLatestIndex(core, forceReplication);
@@ -412,11 +474,16 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
       dir = core.getDirectoryFactory().get(core.getNewIndexDir(), DirContext.DEFAULT, core.getSolrConfig().indexConfig.lockType);
       try {
         
+        Checksum checksum = new Adler32();
+        boolean allChecksums = solrParams.getBool(CHECKSUM, false);
         for (String fileName : files) {
           if (fileName.endsWith(".lock")) continue;
           Map<String,Object> fileMeta = new HashMap<String,Object>();
           fileMeta.put(NAME, fileName);
           fileMeta.put(SIZE, dir.fileLength(fileName));
+          if (allChecksums || isChecksummedIndexFile(fileName)) {
+            fileMeta.put(CHECKSUM, getCheckSum(checksum, dir, fileName));
+          }
           result.add(fileMeta);
         }
       } finally {
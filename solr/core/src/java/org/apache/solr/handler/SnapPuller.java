@@ -57,6 +57,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -74,10 +75,13 @@ import java.util.zip.InflaterInputStream;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.client.HttpClient;
 import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexFileNames;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RateLimiter;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpClientUtil;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
@@ -157,6 +161,13 @@ public class SnapPuller {
 
   private boolean useExternal = false;
 
+  private final int maxParallelDownloads;
+
+  // 0 if downloads aren't throttled
+  private final double maxMBPerSec;
+
+  private final boolean verifyChecksums;
+
   /**
    * Disable the timer task for polling
    */
@@ -208,6 +219,9 @@ public class SnapPuller {
     String httpBasicAuthUser = (String) initArgs.get(HttpClientUtil.PROP_BASIC_AUTH_USER);
     String httpBasicAuthPassword = (String) initArgs.get(HttpClientUtil.PROP_BASIC_AUTH_PASS);
     myHttpClient = createHttpClient(connTimeout, readTimeout, httpBasicAuthUser, httpBasicAuthPassword, useExternal);
+    maxParallelDownloads = Math.max(1, params.getInt(MAX_PARALLEL_DOWNLOADS, 1));
+    maxMBPerSec = params.getDouble(MAX_MB_PER_SEC, 0);
+    verifyChecksums = params.getBool(VERIFY_CHECKSUMS, false);
     if (pollInterval != null && pollInterval > 0) {
       startExecutorService();
     } else {
@@ -271,6 +285,10 @@ public class SnapPuller {
     ModifiableSolrParams params = new ModifiableSolrParams();
     params.set(COMMAND,  CMD_GET_FILE_LIST);
     params.set(GENERATION, String.valueOf(gen));
+    if (verifyChecksums) {
+      // ask for the checksums of all the files, not only the ones needed to compare indexes
+      params.set(CHECKSUM, true);
+    }
     params.set(CommonParams.WT, "javabin");
     params.set(CommonParams.QT, "/replication");
     QueryRequest req = new QueryRequest(params);
@@ -768,21 +786,144 @@ public class SnapPuller {
     if (LOG.isDebugEnabled()) {
       LOG.debug("Download files to dir: " + Arrays.asList(indexDir.listAll()));
     }
+    Map<String,Map<String,Object>> filesByName = new HashMap<String,Map<String,Object>>();
     for (Map<String,Object> file : filesToDownload) {
-      if (!indexDir.fileExists((String) file.get(NAME))
-          || downloadCompleteIndex) {
-        dirFileFetcher = new DirectoryFileFetcher(tmpIndexDir, file,
-            (String) file.get(NAME), false, latestGeneration);
-        currentFile = file;
-        dirFileFetcher.fetchFile();
-        filesDownloaded.add(new HashMap<String,Object>(file));
-      } else {
-        LOG.info("Skipping download for " + file.get(NAME)
+      filesByName.put((String) file.get(NAME), file);
+    }
+    Map<String,Boolean> reusable = new HashMap<String,Boolean>();
+    int numReused = 0;
+    long bytesReused = 0;
+    List<Map<String,Object>> files = new ArrayList<Map<String,Object>>();
+    for (Map<String,Object> file : filesToDownload) {
+      String name = (String) file.get(NAME);
+      if (!downloadCompleteIndex && indexDir.fileExists(name)) {
+        LOG.info("Skipping download for " + name
             + " because it already exists");
+      } else if (downloadCompleteIndex && isReusable(indexDir, name, filesByName, reusable)) {
+        // same segment file as the master's: copy it locally rather than over the network
+        indexDir.copy(tmpIndexDir, name, name, IOContext.DEFAULT);
+        numReused++;
+        bytesReused += (Long) file.get(SIZE);
+      } else {
+        files.add(file);
+      }
+    }
+    if (numReused > 0) {
+      LOG.info("Copied " + numReused + " files (" + bytesReused
+          + " bytes) from the local index instead of downloading them");
+    }
+    fetchIndexFiles(files, tmpIndexDir, latestGeneration);
+  }
+
+  /**
+   * Downloads the files, up to {@link #MAX_PARALLEL_DOWNLOADS} at a time.  If a
+   * download fails, the others are aborted and the first failure is thrown.
+   */
+  private void fetchIndexFiles(List<Map<String,Object>> files,
+      final Directory tmpIndexDir, final long latestGeneration) throws Exception {
+    final int numThreads = Math.min(maxParallelDownloads, files.size());
+    if (numThreads <= 1) {
+      RateLimiter rateLimiter = newRateLimiter(1);
+      for (Map<String,Object> file : files) {
+        fetchIndexFile(file, tmpIndexDir, latestGeneration, rateLimiter);
+      }
+      return;
+    }
+
+    // SimpleRateLimiter isn't thread safe: each thread gets its own, with its share of the rate
+    final ThreadLocal<RateLimiter> rateLimiters = new ThreadLocal<RateLimiter>() {
+      @Override
+      protected RateLimiter initialValue() {
+        return newRateLimiter(numThreads);
+      }
+    };
+
+    LOG.info("Downloading " + files.size() + " files with " + numThreads + " threads");
+    ExecutorService downloadService = Executors.newFixedThreadPool(numThreads,
+        new DefaultSolrThreadFactory("snapPullerDownload"));
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>(files.size());
+      for (final Map<String,Object> file : files) {
+        futures.add(downloadService.submit(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            fetchIndexFile(file, tmpIndexDir, latestGeneration, rateLimiters.get());
+            return null;
+          }
+        }));
       }
+      Exception failure = null;
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            // abort the other downloads, and wait for them to stop
+            stop = true;
+            Throwable cause = e.getCause();
+            failure = cause instanceof Exception ? (Exception) cause
+                : new SolrException(ErrorCode.SERVER_ERROR, cause);
+          }
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+    } finally {
+      downloadService.shutdown();
     }
   }
 
+  /**
+   * A rate limiter for one of <code>numThreads</code> downloads that share
+   * {@link #MAX_MB_PER_SEC}, or null if downloads aren't throttled.
+   */
+  private RateLimiter newRateLimiter(int numThreads) {
+    return maxMBPerSec > 0 ? new RateLimiter.SimpleRateLimiter(maxMBPerSec / numThreads) : null;
+  }
+
+  private void fetchIndexFile(Map<String,Object> file, Directory tmpIndexDir,
+      long latestGeneration, RateLimiter rateLimiter) throws Exception {
+    DirectoryFileFetcher fetcher = new DirectoryFileFetcher(tmpIndexDir, file,
+        (String) file.get(NAME), false, latestGeneration, rateLimiter);
+    currentFile = file;
+    dirFileFetcher = fetcher;
+    fetcher.fetchFile();
+    filesDownloaded.add(new HashMap<String,Object>(file));
+  }
+
+  /**
+   * Whether the local file is the same as the master's.  Segment infos and
+   * files of a generation of a segment (see
+   * {@link ReplicationHandler#isChecksummedIndexFile}) must have the same
+   * checksum; the other files of a segment are the same if the segment infos are.
+   * The segments_N files are always downloaded.  Package private for tests.
+   */
+  static boolean isReusable(Directory indexDir, String name,
+      Map<String,Map<String,Object>> filesByName, Map<String,Boolean> reusable) throws IOException {
+    Boolean cached = reusable.get(name);
+    if (cached != null) return cached;
+
+    boolean result = false;
+    Map<String,Object> file = filesByName.get(name);
+    if (file != null && !name.startsWith(IndexFileNames.SEGMENTS)
+        && indexDir.fileExists(name)
+        && indexDir.fileLength(name) == (Long) file.get(SIZE)) {
+      if (ReplicationHandler.isChecksummedIndexFile(name)) {
+        // masters of older versions don't send checksums
+        Long checksum = (Long) file.get(CHECKSUM);
+        result = checksum != null
+            && checksum == ReplicationHandler.getCheckSum(new Adler32(), indexDir, name);
+      } else {
+        String segmentInfo = IndexFileNames.segmentFileName(IndexFileNames.parseSegmentName(name),
+            "", ReplicationHandler.SEGMENT_INFO_EXTENSION);
+        result = !segmentInfo.equals(name) && isReusable(indexDir, segmentInfo, filesByName, reusable);
+      }
+    }
+    reusable.put(name, result);
+    return result;
+  }
+
   /**
    * All the files which are common between master and slave must have same size else we assume they are
    * not compatible (stale).
@@ -1139,6 +1280,13 @@ public class SnapPuller {
 
     Checksum checksum;
 
+    // the checksum of the whole file, if the master sent one
+    Long expectedFileChecksum;
+
+    Checksum fileChecksum;
+
+    boolean corrupt = false;
+
     int errorCount = 0;
 
     private boolean isConf;
@@ -1149,9 +1297,13 @@ public class SnapPuller {
 
     private IndexOutput outStream;
 
+    // null if the download isn't throttled
+    private final RateLimiter rateLimiter;
+
     DirectoryFileFetcher(Directory tmpIndexDir, Map<String, Object> fileDetails, String saveAs,
-                boolean isConf, long latestGen) throws IOException {
+                boolean isConf, long latestGen, RateLimiter rateLimiter) throws IOException {
       this.copy2Dir = tmpIndexDir;
+      this.rateLimiter = rateLimiter;
       this.fileName = (String) fileDetails.get(NAME);
       this.size = (Long) fileDetails.get(SIZE);
       this.isConf = isConf;
@@ -1163,6 +1315,10 @@ public class SnapPuller {
 
       if (includeChecksum)
         checksum = new Adler32();
+
+      expectedFileChecksum = (Long) fileDetails.get(CHECKSUM);
+      if (expectedFileChecksum != null)
+        fileChecksum = new Adler32();
     }
 
     /**
@@ -1171,13 +1327,29 @@ public class SnapPuller {
     void fetchFile() throws Exception {
       try {
         while (true) {
-          final FastInputStream is = getStream();
+          final FastInputStream is;
+          try {
+            is = getStream();
+          } catch (IOException e) {
+            //the connection failed, retry from where the download stopped
+            errorCount++;
+            if (errorCount > MAX_RETRIES) {
+              throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+                  "Fetch failed for file:" + fileName, e);
+            }
+            LOG.warn("Error opening the stream for " + fileName + ", retrying at offset " + bytesDownloaded, e);
+            Thread.sleep(RETRY_DELAY * errorCount);
+            continue;
+          }
           int result;
           try {
             //fetch packets one by one in a single request
             result = fetchPackets(is);
             if (result == 0 || result == NO_CONTENT) {
-
+              if (fileChecksum != null && bytesDownloaded == size
+                  && fileChecksum.getValue() != expectedFileChecksum) {
+                corrupt = true;
+              }
               return;
             }
             //if there is an error continue. But continue from the point where it got broken
@@ -1207,7 +1379,6 @@ public class SnapPuller {
       try {
         while (true) {
           if (stop) {
-            stop = false;
             aborted = true;
             throw new ReplicationHandlerException("User aborted replication");
           }
@@ -1216,7 +1387,7 @@ public class SnapPuller {
           //read the size of the packet
           int packetSize = readInt(intbytes);
           if (packetSize <= 0) {
-            LOG.warn("No content recieved for file: " + currentFile);
+            LOG.warn("No content recieved for file: " + fileName);
             return NO_CONTENT;
           }
           if (buf.length < packetSize)
@@ -1234,11 +1405,13 @@ public class SnapPuller {
             checksum.update(buf, 0, packetSize);
             long checkSumClient = checksum.getValue();
             if (checkSumClient != checkSumServer) {
-              LOG.error("Checksum not matched between client and server for: " + currentFile);
-              //if checksum is wrong it is a problem return for retry
-              return 1;
+              //if checksum is wrong it is a problem, retry this packet
+              throw new IOException("Checksum not matched between client and server for: " + fileName);
             }
           }
+          if (fileChecksum != null) {
+            fileChecksum.update(buf, 0, packetSize);
+          }
           //if everything is fine, write down the packet to the file
           writeBytes(packetSize);
           bytesDownloaded += packetSize;
@@ -1263,6 +1436,9 @@ public class SnapPuller {
     }
 
     protected void writeBytes(int packetSize) throws IOException {
+      if (rateLimiter != null) {
+        rateLimiter.pause(packetSize);
+      }
       outStream.writeBytes(buf, 0, packetSize);
     }
 
@@ -1296,7 +1472,7 @@ public class SnapPuller {
       } catch (Exception e) {/* noop */
           LOG.error("Error closing the file stream: "+ this.saveAs ,e);
       }
-      if (bytesDownloaded != size) {
+      if (bytesDownloaded != size || corrupt) {
         //if the download is not complete then
         //delete the file being downloaded
         try {
@@ -1304,6 +1480,9 @@ public class SnapPuller {
         } catch (Exception e) {
           LOG.error("Error deleting file in cleanup" + e.getMessage());
         }
+        if (corrupt)
+          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+                  "Checksum of " + fileName + " doesn't match the master's");
         //if the failure is due to a user abort it is returned nomally else an exception is thrown
         if (!aborted)
           throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
@@ -1707,6 +1886,9 @@ public class SnapPuller {
 
   private static final int MAX_RETRIES = 5;
 
+  // ms, times the number of consecutive errors
+  private static final int RETRY_DELAY = 1000;
+
   private static final int NO_CONTENT = 1;
 
   private static final int ERR = 2;
@@ -1715,6 +1897,17 @@ public class SnapPuller {
 
   public static final String POLL_INTERVAL = "pollInterval";
 
+  /** The number of index files downloaded at once, defaults to 1 */
+  public static final String MAX_PARALLEL_DOWNLOADS = "maxParallelDownloads";
+
+  /** The rate at which index files are downloaded, in MB/sec, not throttled by default */
+  public static final String MAX_MB_PER_SEC = "maxMBPerSec";
+
+  /** Whether each downloaded index file is checked against the checksum of the master's, defaults to false */
+  public static final String VERIFY_CHECKSUMS = "verifyChecksums";
+
+  static final String[] DOWNLOAD_ARGS = {MAX_PARALLEL_DOWNLOADS, MAX_MB_PER_SEC, VERIFY_CHECKSUMS};
+
   public static final String INTERVAL_ERR_MSG = "The " + POLL_INTERVAL + " must be in this format 'HH:mm:ss'";
 
   private static final Pattern INTERVAL_PATTERN = Pattern.compile("(\\d*?):(\\d*?):(\\d*)");
@@ -28,6 +28,7 @@ import org.apache.solr.cloud.OverseerCollectionProcessor;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrException.ErrorCode;
 import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.DocCollection;
 import org.apache.solr.common.cloud.ImplicitDocRouter;
 import org.apache.solr.common.cloud.ZkCoreNodeProps;
 import org.apache.solr.common.cloud.ZkNodeProps;
@@ -161,6 +162,14 @@ public class CollectionsHandler extends RequestHandlerBase {
         this.handleListAction(req, rsp);
         break;
       }
+      case MIGRATESTATEFORMAT: {
+        this.handleMigrateStateFormat(req, rsp);
+        break;
+      }
+      case OVERSEERSTATUS: {
+        this.handleOverseerStatus(req, rsp);
+        break;
+      }
       default: {
           throw new RuntimeException("Unknown action: " + action);
       }
@@ -301,7 +310,14 @@ public class CollectionsHandler extends RequestHandlerBase {
         CREATE_NODE_SET ,
         ROUTER,
         SHARDS_PROP,
-        ROUTE_FIELD);
+        ROUTE_FIELD,
+        DocCollection.STATE_FORMAT);
+
+    String stateFormat = req.getParams().get(DocCollection.STATE_FORMAT);
+    if (stateFormat != null && !"1".equals(stateFormat) && !"2".equals(stateFormat)) {
+      throw new SolrException(ErrorCode.BAD_REQUEST,
+          DocCollection.STATE_FORMAT + " must be 1 or 2: " + stateFormat);
+    }
 
 
     ZkNodeProps m = new ZkNodeProps(props);
@@ -379,6 +395,31 @@ public class CollectionsHandler extends RequestHandlerBase {
   }
 
 
+  /**
+   * Moves the state of a collection from clusterstate.json to its own state node,
+   * see {@link DocCollection#STATE_FORMAT}
+   */
+  private void handleMigrateStateFormat(SolrQueryRequest req, SolrQueryResponse rsp) throws KeeperException, InterruptedException {
+    log.info("Migrating the state format of collection : " + req.getParamString());
+    String name = req.getParams().required().get("collection");
+
+    ZkNodeProps m = new ZkNodeProps(Overseer.QUEUE_OPERATION,
+        OverseerCollectionProcessor.MIGRATESTATEFORMAT, "name", name);
+
+    handleResponse(OverseerCollectionProcessor.MIGRATESTATEFORMAT, m, rsp);
+  }
+
+  /**
+   * Returns the queue sizes of the Overseer, and the counts and times of its
+   * state updates and collection operations since it became the Overseer
+   */
+  private void handleOverseerStatus(SolrQueryRequest req, SolrQueryResponse rsp) throws KeeperException, InterruptedException {
+    ZkNodeProps m = new ZkNodeProps(Overseer.QUEUE_OPERATION,
+        OverseerCollectionProcessor.OVERSEERSTATUS);
+
+    handleResponse(OverseerCollectionProcessor.OVERSEERSTATUS, m, rsp);
+  }
+
   public static ModifiableSolrParams params(String... params) {
     ModifiableSolrParams msp = new ModifiableSolrParams();
     for (int i=0; i<params.length; i+=2) {
@@ -22,6 +22,7 @@ import org.apache.solr.client.solrj.SolrResponse;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
 import org.apache.solr.client.solrj.impl.LBHttpSolrServer;
+import org.apache.solr.client.solrj.impl.ResponseTimeTracker;
 import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.cloud.CloudDescriptor;
@@ -43,7 +44,10 @@ import org.apache.solr.core.CoreDescriptor;
 import org.apache.solr.request.SolrQueryRequest;
 
 import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -53,14 +57,27 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class HttpShardHandler extends ShardHandler {
 
   private HttpShardHandlerFactory httpShardHandlerFactory;
   private CompletionService<ShardResponse> completionService;
   private Set<Future<ShardResponse>> pending;
+  // the shard requests that are hedged or may time out, and the request to a replica each future is for
+  private List<HedgedRequest> hedgedRequests = new ArrayList<HedgedRequest>();
+  private Map<Future<ShardResponse>,HedgedRequest> attempts = new HashMap<Future<ShardResponse>,HedgedRequest>();
   private Map<String,List<String>> shardToURLs;
   private HttpClient httpClient;
+  // the base url of this node, if replicas hosted here should be queried first
+  private String preferredBaseUrl;
+  // ms after which a request is also sent to the next replica, or -1 to only do so if it fails
+  private int hedgeDelay;
+  // ms after which a shard request fails, or 0 to wait as long as it takes
+  private int timeout;
+
+  // failures of a replica worth retrying on the next one, as in LBHttpSolrServer
+  private static final Set<Integer> RETRY_CODES = new HashSet<Integer>(Arrays.asList(404, 403, 503, 500));
 
 
   public HttpShardHandler(HttpShardHandlerFactory httpShardHandlerFactory, HttpClient httpClient) {
@@ -68,6 +85,8 @@ public class HttpShardHandler extends ShardHandler {
     this.httpShardHandlerFactory = httpShardHandlerFactory;
     completionService = httpShardHandlerFactory.newCompletionService();
     pending = new HashSet<Future<ShardResponse>>();
+    hedgeDelay = httpShardHandlerFactory.hedgeDelay;
+    timeout = httpShardHandlerFactory.shardTimeout;
 
     // maps "localhost:8983|localhost:7574" to a shuffled List("http://localhost:8983","http://localhost:7574")
     // This is primarily to keep track of what order we should use to query the replicas of a shard
@@ -104,35 +123,57 @@ public class HttpShardHandler extends ShardHandler {
     List<String> urls = shardToURLs.get(shard);
     if (urls == null) {
       urls = httpShardHandlerFactory.makeURLList(shard);
+      if (preferredBaseUrl != null && urls.size() > 1) {
+        preferLocalURLs(urls);
+      }
       shardToURLs.put(shard, urls);
     }
     return urls;
   }
 
 
+  // Moves the urls of the replicas hosted by this node to the front, keeping the
+  // shuffled order otherwise, so the others are only tried if they fail.
+  private void preferLocalURLs(List<String> urls) {
+    String prefix = preferredBaseUrl + "/";
+    int numLocal = 0;
+    for (int i = 0; i < urls.size(); i++) {
+      String url = urls.get(i);
+      if (url.startsWith(prefix)) {
+        urls.remove(i);
+        urls.add(numLocal++, url);
+      }
+    }
+  }
+
+
   @Override
   public void submit(final ShardRequest sreq, final String shard, final ModifiableSolrParams params) {
     // do this outside of the callable for thread safety reasons
     final List<String> urls = getURLs(shard);
+    params.remove(CommonParams.WT); // use default (currently javabin)
+    params.remove(CommonParams.VERSION);
+
+    if (urls.size() > 0 && (hedgeDelay >= 0 && urls.size() > 1 || timeout > 0)) {
+      HedgedRequest hedged = new HedgedRequest(sreq, shard, params, urls);
+      hedgedRequests.add(hedged);
+      hedged.sendNext();
+    } else {
+      pending.add(completionService.submit(newTask(sreq, shard, params, urls)));
+    }
+  }
 
-    Callable<ShardResponse> task = new Callable<ShardResponse>() {
+  private Callable<ShardResponse> newTask(final ShardRequest sreq, final String shard,
+      final ModifiableSolrParams params, final List<String> urls) {
+    return new Callable<ShardResponse>() {
       @Override
       public ShardResponse call() throws Exception {
 
-        ShardResponse srsp = new ShardResponse();
-        if (sreq.nodeName != null) {
-          srsp.setNodeName(sreq.nodeName);
-        }
-        srsp.setShardRequest(sreq);
-        srsp.setShard(shard);
-        SimpleSolrResponse ssr = new SimpleSolrResponse();
-        srsp.setSolrResponse(ssr);
+        ShardResponse srsp = newShardResponse(sreq, shard);
+        SimpleSolrResponse ssr = (SimpleSolrResponse) srsp.getSolrResponse();
         long startTime = System.currentTimeMillis();
 
         try {
-          params.remove(CommonParams.WT); // use default (currently javabin)
-          params.remove(CommonParams.VERSION);
-
           // SolrRequest req = new QueryRequest(SolrRequest.METHOD.POST, "/select");
           // use generic request to avoid extra processing of queries
           QueryRequest req = new QueryRequest(params);
@@ -152,7 +193,13 @@ public class HttpShardHandler extends ShardHandler {
             String url = urls.get(0);
             srsp.setShardAddress(url);
             SolrServer server = new HttpSolrServer(url, httpClient);
-            ssr.nl = server.request(req);
+            ResponseTimeTracker tracker = httpShardHandlerFactory.getResponseTimeTracker();
+            long requestStart = tracker.started(url);
+            try {
+              ssr.nl = server.request(req);
+            } finally {
+              tracker.finished(url, requestStart);
+            }
           } else {
             LBHttpSolrServer.Rsp rsp = httpShardHandlerFactory.makeLoadBalancedRequest(req, urls);
             ssr.nl = rsp.getResponse();
@@ -175,8 +222,100 @@ public class HttpShardHandler extends ShardHandler {
         return srsp;
       }
     };
+  }
+
+  private static ShardResponse newShardResponse(ShardRequest sreq, String shard) {
+    ShardResponse srsp = new ShardResponse();
+    if (sreq.nodeName != null) {
+      srsp.setNodeName(sreq.nodeName);
+    }
+    srsp.setShardRequest(sreq);
+    srsp.setShard(shard);
+    srsp.setSolrResponse(new SimpleSolrResponse());
+    return srsp;
+  }
+
+  /**
+   * A shard request sent to the urls of the shard in turn, without waiting for a slow
+   * replica: if it did not respond after {@link #hedgeDelay} ms the request is also
+   * sent to the next url, and the first response wins.  Like the load balancer, a
+   * request that failed on a replica is retried on the next one right away.  Gives
+   * up after {@link #timeout} ms, if set.
+   * <p>
+   * The request to each replica is submitted like any other shard request; the
+   * hedging and the timeout are taken care of while waiting for the responses, so
+   * no thread of the pool waits for another.
+   */
+  private class HedgedRequest {
+    private final ShardRequest sreq;
+    private final String shard;
+    private final ModifiableSolrParams params;
+    private final List<String> urls;
+    private final long startTime = System.nanoTime();
+    private final long deadline = startTime + TimeUnit.NANOSECONDS.convert(timeout, TimeUnit.MILLISECONDS);
+    private final Map<Future<ShardResponse>,String> inFlight = new HashMap<Future<ShardResponse>,String>();
+    private int next;
+    // when to send the request to the next url, if there is one
+    private long hedgeAt;
+
+    HedgedRequest(ShardRequest sreq, String shard, ModifiableSolrParams params, List<String> urls) {
+      this.sreq = sreq;
+      this.shard = shard;
+      this.params = params;
+      this.urls = urls;
+    }
+
+    void sendNext() {
+      String url = urls.get(next++);
+      Future<ShardResponse> future = completionService.submit(newTask(sreq, shard, params, Collections.singletonList(url)));
+      pending.add(future);
+      attempts.put(future, this);
+      inFlight.put(future, url);
+      hedgeAt = System.nanoTime() + TimeUnit.NANOSECONDS.convert(hedgeDelay, TimeUnit.MILLISECONDS);
+    }
+
+    boolean canHedge() {
+      return hedgeDelay >= 0 && next < urls.size();
+    }
 
-    pending.add( completionService.submit(task) );
+    /** Returns the response of the shard, or null if another replica has to respond */
+    ShardResponse completed(Future<ShardResponse> future, ShardResponse rsp) {
+      inFlight.remove(future);
+      Throwable e = rsp.getException();
+      if (e == null || e instanceof SolrException && !RETRY_CODES.contains(((SolrException)e).code())) {
+        // a response, or the replica is alive but the request is invalid
+        return finish(rsp);
+      }
+      if (inFlight.isEmpty()) {
+        if (next == urls.size()) {
+          return finish(rsp);
+        }
+        sendNext();
+      }
+      return null;
+    }
+
+    ShardResponse timedOut() {
+      ShardResponse srsp = newShardResponse(sreq, shard);
+      SolrException e = new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+          "Timeout after " + timeout + "ms waiting for a response from: " + inFlight.values());
+      srsp.setException(e);
+      srsp.setResponseCode(e.code());
+      return finish(srsp);
+    }
+
+    private ShardResponse finish(ShardResponse rsp) {
+      hedgedRequests.remove(this);
+      for (Future<ShardResponse> future : inFlight.keySet()) {
+        pending.remove(future);
+        attempts.remove(future);
+        future.cancel(true);
+      }
+      inFlight.clear();
+      ((SimpleSolrResponse) rsp.getSolrResponse()).elapsedTime =
+          TimeUnit.MILLISECONDS.convert(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+      return rsp;
+    }
   }
 
   /** returns a ShardResponse of the last response correlated with a ShardRequest.  This won't 
@@ -200,9 +339,8 @@ public class HttpShardHandler extends ShardHandler {
     
     while (pending.size() > 0) {
       try {
-        Future<ShardResponse> future = completionService.take();
-        pending.remove(future);
-        ShardResponse rsp = future.get();
+        ShardResponse rsp = nextResponse();
+        if (rsp == null) continue;
         if (bailOnError && rsp.getException() != null) return rsp; // if exception, return immediately
         // add response to the response list... we do this after the take() and
         // not after the completion of "call" so we know when the last response
@@ -223,6 +361,44 @@ public class HttpShardHandler extends ShardHandler {
     return null;
   }
 
+  /**
+   * Waits for the next shard response, meanwhile hedging the slow shard requests
+   * and failing those that timed out.  Returns null if there is none yet.
+   */
+  private ShardResponse nextResponse() throws InterruptedException, ExecutionException {
+    Future<ShardResponse> future;
+    if (hedgedRequests.isEmpty()) {
+      future = completionService.take();
+    } else {
+      long now = System.nanoTime();
+      long wait = Long.MAX_VALUE;
+      for (HedgedRequest hedged : hedgedRequests) {
+        if (timeout > 0) {
+          if (hedged.deadline - now <= 0) {
+            return hedged.timedOut();
+          }
+          wait = Math.min(wait, hedged.deadline - now);
+        }
+        if (hedged.canHedge()) {
+          if (hedged.hedgeAt - now <= 0) {
+            // the replicas in flight are slow, hedge on the next one
+            hedged.sendNext();
+          }
+          if (hedged.canHedge()) {
+            wait = Math.min(wait, Math.max(0, hedged.hedgeAt - now));
+          }
+        }
+      }
+      future = wait == Long.MAX_VALUE ? completionService.take() : completionService.poll(wait, TimeUnit.NANOSECONDS);
+      if (future == null) return null;
+    }
+    // a request to a replica that was cancelled since, once another one responded
+    if (!pending.remove(future)) return null;
+    ShardResponse rsp = future.get();
+    HedgedRequest hedged = attempts.remove(future);
+    return hedged == null ? rsp : hedged.completed(future, rsp);
+  }
+
 
   @Override
   public void cancelAll() {
@@ -231,6 +407,8 @@ public class HttpShardHandler extends ShardHandler {
       // there are finally blocks to release connections.
       future.cancel(true);
     }
+    hedgedRequests.clear();
+    attempts.clear();
   }
 
   @Override
@@ -256,6 +434,12 @@ public class HttpShardHandler extends ShardHandler {
       CloudDescriptor cloudDescriptor = coreDescriptor.getCloudDescriptor();
       ZkController zkController = coreDescriptor.getCoreContainer().getZkController();
 
+      hedgeDelay = params.getInt(ShardParams.SHARDS_HEDGE_DELAY, hedgeDelay);
+      timeout = params.getInt(ShardParams.SHARDS_TIMEOUT, timeout);
+
+      if (zkController != null && params.getBool(ShardParams.SHARDS_PREFER_LOCAL, false)) {
+        preferredBaseUrl = zkController.getBaseUrl();
+      }
 
       if (shards != null) {
         List<String> lst = StrUtils.splitSmart(shards, ",", true);
@@ -33,6 +33,7 @@ import org.apache.http.client.HttpClient;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpClientUtil;
 import org.apache.solr.client.solrj.impl.LBHttpSolrServer;
+import org.apache.solr.client.solrj.impl.ResponseTimeTracker;
 import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.ModifiableSolrParams;
@@ -73,6 +74,9 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
   int keepAliveTime = 5;
   int queueSize = -1;
   boolean accessPolicy = false;
+  int hedgeDelay = -1;
+  int shardTimeout = 0;
+  boolean adaptiveSelection = true;
 
   private String scheme = "http://"; //current default values
 
@@ -96,6 +100,15 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
   // Configure if the threadpool favours fairness over throughput
   static final String INIT_FAIRNESS_POLICY = "fairnessPolicy";
 
+  // Default ms after which a request is also sent to the next replica of a shard (-1 to only do so on failure)
+  static final String INIT_HEDGE_DELAY = "hedgeDelay";
+
+  // Default ms after which a shard request fails (0 to wait as long as it takes)
+  static final String INIT_SHARD_TIMEOUT = "shardTimeout";
+
+  // Whether to query the replicas likely to answer first, rather than random ones
+  static final String INIT_ADAPTIVE_SELECTION = "adaptiveSelection";
+
   /**
    * Get {@link ShardHandler} that uses the default http client.
    */
@@ -124,6 +137,9 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
     this.keepAliveTime = getParameter(args, MAX_THREAD_IDLE_TIME, keepAliveTime);
     this.queueSize = getParameter(args, INIT_SIZE_OF_QUEUE, queueSize);
     this.accessPolicy = getParameter(args, INIT_FAIRNESS_POLICY, accessPolicy);
+    this.hedgeDelay = getParameter(args, INIT_HEDGE_DELAY, hedgeDelay);
+    this.shardTimeout = getParameter(args, INIT_SHARD_TIMEOUT, shardTimeout);
+    this.adaptiveSelection = getParameter(args, INIT_ADAPTIVE_SELECTION, adaptiveSelection);
     
     // magic sysprop to make tests reproducible: set by SolrTestCaseJ4.
     String v = System.getProperty("tests.shardhandler.randomSeed");
@@ -208,7 +224,8 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
   }
 
   /**
-   * Creates a randomized list of urls for the given shard.
+   * Creates a randomized list of urls for the given shard, ranked by response times if
+   * adaptive selection is enabled.
    *
    * @param shard the urls for the shard (minus "http://"), separated by '|'
    * @return A list of valid urls (including protocol) that are replicas for the shard
@@ -229,9 +246,21 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
     if (urls.size() > 1)
       Collections.shuffle(urls, r);
 
+    // the shuffled order is kept for replicas with equal ranks, e.g. unknown ones
+    if (adaptiveSelection && urls.size() > 1)
+      urls = getResponseTimeTracker().rank(urls);
+
     return urls;
   }
 
+  /**
+   * Returns the response times of the replicas queried, which rank the replicas of a shard
+   * if adaptive selection is enabled.
+   */
+  public ResponseTimeTracker getResponseTimeTracker() {
+    return loadbalancer.getResponseTimeTracker();
+  }
+
   /**
    * Creates a new completion service for use by a single set of distributed requests.
    */
@@ -55,6 +55,7 @@ import org.apache.solr.search.Grouping;
 import org.apache.solr.search.QParser;
 import org.apache.solr.search.QParserPlugin;
 import org.apache.solr.search.QueryParsing;
+import org.apache.solr.search.RankQuery;
 import org.apache.solr.search.ReturnFields;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.SolrReturnFields;
@@ -96,6 +97,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * TODO!
@@ -145,10 +147,37 @@ public class QueryComponent extends SearchComponent
         // normalize a null query to a query that matches nothing
         q = new BooleanQuery();
       }
+
+      String rankQueryString = params.get(CommonParams.RQ);
+      if (rankQueryString != null) {
+        QParser rqparser = QParser.getParser(rankQueryString, defType, req);
+        Query rq = rqparser.getQuery();
+        if (!(rq instanceof RankQuery)) {
+          throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "rq parameter must be a RankQuery: " + rankQueryString);
+        }
+        if (params.get(CursorMarkParams.CURSOR_MARK_PARAM) != null) {
+          throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "rq cannot be combined with " + CursorMarkParams.CURSOR_MARK_PARAM);
+        }
+        q = ((RankQuery)rq).wrap(q);
+      }
+
       rb.setQuery( q );
       rb.setSortSpec( parser.getSort(true) );
       rb.setQparser(parser);
 
+      if (q instanceof RankQuery) {
+        // the top documents are re-ranked by score, which would silently override any other sort
+        Sort sort = rb.getSortSpec().getSort();
+        if (sort != null) {
+          SortField first = sort.getSort()[0];
+          if (first.getType() != SortField.Type.SCORE || first.getReverse()) {
+            throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+                "rq re-ranks by score and cannot be combined with sort=" + params.get(CommonParams.SORT)
+                + "; the sort must start with score desc");
+          }
+        }
+      }
+
       final String cursorStr = rb.req.getParams().get(CursorMarkParams.CURSOR_MARK_PARAM);
       if (null != cursorStr) {
         final CursorMark cursorMark = new CursorMark(rb.req.getSchema(),
@@ -626,7 +655,9 @@ public class QueryComponent extends SearchComponent
     }
     if (rb.stage < ResponseBuilder.STAGE_GET_FIELDS) return ResponseBuilder.STAGE_GET_FIELDS;
     if (rb.stage == ResponseBuilder.STAGE_GET_FIELDS) {
-      createRetrieveDocs(rb);
+      if (!rb.onePassDistributedQuery) {
+        createRetrieveDocs(rb);
+      }
       return ResponseBuilder.STAGE_DONE;
     }
     return ResponseBuilder.STAGE_DONE;
@@ -767,19 +798,64 @@ public class QueryComponent extends SearchComponent
       sreq.params.set(CommonParams.ROWS, rb.getSortSpec().getOffset() + rb.getSortSpec().getCount());
     }
 
-    // in this first phase, request only the unique key field
-    // and any fields needed for merging.
     sreq.params.set(ResponseBuilder.FIELD_SORT_VALUES,"true");
 
-    if ( (rb.getFieldFlags() & SolrIndexSearcher.GET_SCORES)!=0 || rb.getSortSpec().includesScore()) {
-      sreq.params.set(CommonParams.FL, rb.req.getSchema().getUniqueKeyField().getName() + ",score");
+    String keyFieldName = rb.req.getSchema().getUniqueKeyField().getName();
+    boolean needScores = (rb.getFieldFlags() & SolrIndexSearcher.GET_SCORES)!=0 || rb.getSortSpec().includesScore();
+
+    rb.onePassDistributedQuery = isOnePassDistributedQuery(rb, keyFieldName);
+    if (rb.onePassDistributedQuery) {
+      // retrieve the requested fields right away, along with the fields needed for merging.
+      sreq.purpose |= ShardRequest.PURPOSE_GET_FIELDS;
+      ReturnFields returnFields = rb.rsp.getReturnFields();
+      if (!returnFields.wantsField(keyFieldName)) {
+        sreq.params.add(CommonParams.FL, keyFieldName);
+      }
+      if (needScores && !returnFields.wantsScore()) {
+        sreq.params.add(CommonParams.FL, "score");
+      }
     } else {
-      sreq.params.set(CommonParams.FL, rb.req.getSchema().getUniqueKeyField().getName());
+      // in this first phase, request only the unique key field
+      // and any fields needed for merging.
+      if (needScores) {
+        sreq.params.set(CommonParams.FL, keyFieldName + ",score");
+      } else {
+        sreq.params.set(CommonParams.FL, keyFieldName);
+      }
     }
 
     rb.addRequest(this, sreq);
   }
 
+  /**
+   * Returns true if the stored fields should be retrieved along with the top ids,
+   * saving the second round trip to the shards.  That's the case if asked to with
+   * {@link ShardParams#DISTRIB_SINGLE_PASS}, or if only the unique key and the score
+   * are requested, which the first phase returns anyway.  Each shard then returns
+   * the fields of start+rows documents, so this pays off for small pages.
+   */
+  private boolean isOnePassDistributedQuery(ResponseBuilder rb, String keyFieldName) {
+    // these components need the docs of the page in STAGE_GET_FIELDS
+    if (rb.doHighlights || rb.isDebug() || rb.req.getParams().getBool(TermVectorComponent.COMPONENT_NAME, false)) {
+      return false;
+    }
+    if (rb.req.getParams().getBool(ShardParams.DISTRIB_SINGLE_PASS, false)) {
+      return true;
+    }
+
+    ReturnFields returnFields = rb.rsp.getReturnFields();
+    Set<String> fieldNames = returnFields.getRequestedFieldNames();
+    if (fieldNames == null || returnFields.hasPatternMatching()) {
+      return false;
+    }
+    for (String fieldName : fieldNames) {
+      if (!fieldName.equals(keyFieldName) && !fieldName.equals("score")) {
+        return false;
+      }
+    }
+    return true;
+  }
+
 
 
 
@@ -844,6 +920,8 @@ public class QueryComponent extends SearchComponent
         }
         // now that we've added the shard info, let's only proceed if we have no error.
         if (srsp.getException() != null) {
+          // with shards.tolerant, e.g. a shard that was down or timed out
+          partialResults = true;
           continue;
         }
 
@@ -1100,24 +1178,35 @@ public class QueryComponent extends SearchComponent
     if ((sreq.purpose & ShardRequest.PURPOSE_GET_FIELDS) != 0) {
       boolean returnScores = (rb.getFieldFlags() & SolrIndexSearcher.GET_SCORES) != 0;
 
-      assert(sreq.responses.size() == 1);
-      ShardResponse srsp = sreq.responses.get(0);
-      SolrDocumentList docs = (SolrDocumentList)srsp.getSolrResponse().getResponse().get("response");
+      // a single response, unless the fields were retrieved along with the top ids
+      assert(sreq.responses.size() == 1 || rb.onePassDistributedQuery);
 
       String keyFieldName = rb.req.getSchema().getUniqueKeyField().getName();
       boolean removeKeyField = !rb.rsp.getReturnFields().wantsField(keyFieldName);
 
-      for (SolrDocument doc : docs) {
-        Object id = doc.getFieldValue(keyFieldName);
-        ShardDoc sdoc = rb.resultIds.get(id.toString());
-        if (sdoc != null) {
-          if (returnScores && sdoc.score != null) {
-              doc.setField("score", sdoc.score);
-          }
-          if(removeKeyField) {
-            doc.removeFields(keyFieldName);
+      for (ShardResponse srsp : sreq.responses) {
+        if (srsp.getException() != null) {
+          // the shard failed with shards.tolerant, mergeIds skipped it already
+          continue;
+        }
+        SolrDocumentList docs = (SolrDocumentList)srsp.getSolrResponse().getResponse().get("response");
+
+        for (SolrDocument doc : docs) {
+          Object id = doc.getFieldValue(keyFieldName);
+          ShardDoc sdoc = rb.resultIds.get(id.toString());
+          // in a single pass, also skip the duplicates of docs on other shards
+          if (sdoc != null && sdoc.shard.equals(srsp.getShard())) {
+            if (returnScores && sdoc.score != null) {
+                doc.setField("score", sdoc.score);
+            } else if (rb.onePassDistributedQuery) {
+              // only requested for merging
+              doc.removeFields("score");
+            }
+            if(removeKeyField) {
+              doc.removeFields(keyFieldName);
+            }
+            rb._responseDocs.set(sdoc.positionInResponse, doc);
           }
-          rb._responseDocs.set(sdoc.positionInResponse, doc);
         }
       }
     }
@@ -25,7 +25,12 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.util.BytesRef;
 import org.apache.solr.client.solrj.SolrResponse;
@@ -51,6 +56,8 @@ import org.apache.solr.response.transform.TransformContext;
 import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.TrieDateField;
+import org.apache.solr.schema.TrieField;
 import org.apache.solr.search.ReturnFields;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.SolrReturnFields;
@@ -242,6 +249,7 @@ public class RealTimeGetComponent extends SearchComponent
         if (docid < 0) return null;
         Document luceneDocument = searcher.doc(docid);
         sid = toSolrInputDocument(luceneDocument, core.getLatestSchema());
+        addDocValues(sid, searcher, docid, core.getLatestSchema());
       }
     } finally {
       if (searcherHolder != null) {
@@ -252,6 +260,34 @@ public class RealTimeGetComponent extends SearchComponent
     return sid;
   }
 
+  /**
+   * Adds the values of fields that only have single-valued numeric docValues, which aren't
+   * in the stored document, so that atomic updates can modify them without losing them.
+   */
+  private static void addDocValues(SolrInputDocument sid, SolrIndexSearcher searcher, int docid, IndexSchema schema) throws IOException {
+    List<AtomicReaderContext> leaves = searcher.getTopReaderContext().leaves();
+    AtomicReaderContext leaf = leaves.get(ReaderUtil.subIndex(docid, leaves));
+    AtomicReader reader = leaf.reader();
+
+    // only fields declared in the schema: they always have a value, because the schema refuses
+    // single-valued docValues fields that are neither required nor have a default (see
+    // TrieField.checkSchemaField), while a missing value would read as 0 for a dynamic field
+    for (SchemaField sf : schema.getFields().values()) {
+      if (sf.stored() || !sf.hasDocValues() || sf.multiValued() || schema.isCopyFieldTarget(sf)) continue;
+      FieldInfo fi = reader.getFieldInfos().fieldInfo(sf.getName());
+      if (fi == null || fi.getDocValuesType() != FieldInfo.DocValuesType.NUMERIC) continue;
+      NumericDocValues values = reader.getNumericDocValues(sf.getName());
+      if (values == null) continue;
+
+      long value = values.get(docid - leaf.docBase);
+      if (sf.getType() instanceof TrieField) {
+        sid.setField(sf.getName(), ((TrieField) sf.getType()).toObject(sf, value));
+      } else if (sf.getType() instanceof TrieDateField) {
+        sid.setField(sf.getName(), ((TrieDateField) sf.getType()).toObject(sf, value));
+      }
+    }
+  }
+
   private static SolrInputDocument toSolrInputDocument(Document doc, IndexSchema schema) {
     SolrInputDocument out = new SolrInputDocument();
     for( IndexableField f : doc.getFields() ) {
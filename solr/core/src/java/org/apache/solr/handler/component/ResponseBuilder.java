@@ -34,6 +34,7 @@ import org.apache.solr.search.DocListAndSet;
 import org.apache.solr.search.QParser;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.SortSpec;
+import org.apache.solr.search.facet.FacetModule;
 import org.apache.solr.search.grouping.GroupingSpecification;
 import org.apache.solr.search.grouping.distributed.command.QueryCommandResult;
 
@@ -157,8 +158,12 @@ public class ResponseBuilder
   // returned sequence.
   // Only valid after STAGE_EXECUTE_QUERY has completed.
 
+  // true if the stored fields were retrieved along with the top ids,
+  // so there are no requests for them in STAGE_GET_FIELDS
+  public boolean onePassDistributedQuery;
 
   public FacetComponent.FacetInfo _facetInfo;
+  public FacetModule.FacetInfo _jsonFacetInfo;
   /* private... components that don't own these shouldn't use them */
   SolrDocumentList _responseDocs;
   StatsInfo _statsInfo;
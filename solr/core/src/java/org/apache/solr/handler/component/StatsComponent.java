@@ -19,8 +19,8 @@ package org.apache.solr.handler.component;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -162,13 +162,14 @@ class StatsInfo {
   Map<String, StatsValues> statsFields;
 
   void parse(SolrParams params, ResponseBuilder rb) {
-    statsFields = new HashMap<String, StatsValues>();
+    // keep the order of the request, like the non-distributed response
+    statsFields = new LinkedHashMap<String, StatsValues>();
 
     String[] statsFs = params.getParams(StatsParams.STATS_FIELD);
     if (statsFs != null) {
       for (String field : statsFs) {
         SchemaField sf = rb.req.getSchema().getField(field);
-        statsFields.put(field, StatsValuesFactory.createStatsValues(sf));
+        statsFields.put(field, StatsValuesFactory.createStatsValues(sf, params));
       }
     }
   }
@@ -218,7 +219,7 @@ class SimpleStats {
         if (sf.multiValued() || ft.multiValuedFieldCache()) {
           //use UnInvertedField for multivalued fields
           UnInvertedField uif = UnInvertedField.getUnInvertedField(f, searcher);
-          stv = uif.getStats(searcher, docs, facets).getStatsValues();
+          stv = uif.getStats(searcher, docs, facets, params).getStatsValues();
         } else {
           stv = getFieldCacheStats(f, facets);
         }
@@ -236,7 +237,7 @@ class SimpleStats {
     IndexSchema schema = searcher.getSchema();
     final SchemaField sf = schema.getField(fieldName);
 
-    final StatsValues allstats = StatsValuesFactory.createStatsValues(sf);
+    final StatsValues allstats = StatsValuesFactory.createStatsValues(sf, params);
 
     List<FieldFacetStats> facetStats = new ArrayList<FieldFacetStats>();
     for( String facetField : facet ) {
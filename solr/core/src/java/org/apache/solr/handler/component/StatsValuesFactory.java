@@ -18,8 +18,10 @@
 package org.apache.solr.handler.component;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -28,9 +30,14 @@ import org.apache.lucene.queries.function.FunctionValues;
 import org.apache.lucene.queries.function.ValueSource;
 import org.apache.lucene.util.BytesRef;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.params.StatsParams;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
 import org.apache.solr.schema.*;
+import org.apache.solr.util.HyperLogLog;
+import org.apache.solr.util.TDigest;
 
 /**
  * Factory class for creating instance of {@link org.apache.solr.handler.component.StatsValues}
@@ -66,6 +73,37 @@ public class StatsValuesFactory {
       throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Field type " + fieldType + " is not currently supported");
     }
   }
+
+  /**
+   * Creates an instance of StatsValues for the given field that also collects the approximate
+   * statistics requested by {@link StatsParams#STATS_CARDINALITY} and {@link StatsParams#STATS_PERCENTILES}.
+   * In a shard request these are returned as serialized sketches, which are merged by
+   * {@link StatsValues#accumulate(NamedList)}.
+   *
+   * @param sf SchemaField for the field whose statistics will be created by the resulting StatsValues
+   * @param params the request parameters
+   * @return Instance of StatsValues that will create statistics from values from a field of the given type
+   */
+  public static StatsValues createStatsValues(SchemaField sf, SolrParams params) {
+    StatsValues stv = createStatsValues(sf);
+    AbstractStatsValues<?> astv = (AbstractStatsValues<?>) stv;
+    astv.isShard = params.getBool(ShardParams.IS_SHARD, false);
+
+    String field = sf.getName();
+    if (params.getFieldBool(field, StatsParams.STATS_CARDINALITY, false)) {
+      astv.hll = new HyperLogLog();
+    }
+
+    String percentiles = params.getFieldParam(field, StatsParams.STATS_PERCENTILES);
+    if (percentiles != null) {
+      if (!(stv instanceof NumericStatsValues)) {
+        throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+            StatsParams.STATS_PERCENTILES + " is only supported on numeric fields, not: " + field);
+      }
+      ((NumericStatsValues) stv).setPercentiles(Arrays.asList(percentiles.trim().split("\\s*,\\s*")));
+    }
+    return stv;
+  }
 }
 
 /**
@@ -77,6 +115,7 @@ public class StatsValuesFactory {
  */
 abstract class AbstractStatsValues<T> implements StatsValues {
   private static final String FACETS = "facets";
+  private static final String CARDINALITY = "cardinality";
   final protected SchemaField sf;
   final protected FieldType ft;
   protected T max;
@@ -85,6 +124,11 @@ abstract class AbstractStatsValues<T> implements StatsValues {
   protected long count;
   private ValueSource valueSource;
   protected FunctionValues values;
+
+  // approximate stats, only collected when requested
+  protected HyperLogLog hll;
+  // return the sketches of the approximate stats rather than their estimates
+  protected boolean isShard;
   
   // facetField   facetValue
   protected Map<String, Map<String, StatsValues>> facets = new HashMap<String, Map<String, StatsValues>>();
@@ -105,6 +149,13 @@ abstract class AbstractStatsValues<T> implements StatsValues {
     updateMinMax((T) stv.get("min"), (T) stv.get("max"));
     updateTypeSpecificStats(stv);
 
+    if (hll != null) {
+      byte[] sketch = (byte[]) stv.get(CARDINALITY);
+      if (sketch != null) {
+        hll.merge(HyperLogLog.fromBytes(sketch));
+      }
+    }
+
     NamedList f = (NamedList) stv.get(FACETS);
     if (f == null) {
       return;
@@ -143,6 +194,20 @@ abstract class AbstractStatsValues<T> implements StatsValues {
     this.count += count;
     updateMinMax(value, value);
     updateTypeSpecificStats(value, count);
+    if (hll != null) {
+      hll.addHash(hash(value));
+    }
+  }
+
+  private static long hash(Object value) {
+    if (value instanceof Double || value instanceof Float) {
+      return HyperLogLog.hash(Double.doubleToLongBits(((Number) value).doubleValue()));
+    } else if (value instanceof Number) {
+      return HyperLogLog.hash(((Number) value).longValue());
+    } else if (value instanceof Date) {
+      return HyperLogLog.hash(((Date) value).getTime());
+    }
+    return HyperLogLog.hash(value.toString());
   }
 
   /**
@@ -181,6 +246,13 @@ abstract class AbstractStatsValues<T> implements StatsValues {
     res.add("count", count);
     res.add("missing", missing);
     addTypeSpecificStats(res);
+    if (hll != null) {
+      if (isShard) {
+        res.add(CARDINALITY, hll.toBytes());
+      } else {
+        res.add(CARDINALITY, hll.cardinality());
+      }
+    }
 
      // add the facet stats
     NamedList<NamedList<?>> nl = new SimpleOrderedMap<NamedList<?>>();
@@ -237,10 +309,16 @@ abstract class AbstractStatsValues<T> implements StatsValues {
  * Implementation of StatsValues that supports Double values
  */
 class NumericStatsValues extends AbstractStatsValues<Number> {
+  private static final String PERCENTILES = "percentiles";
 
   double sum;
   double sumOfSquares;
 
+  // the requested percentiles as given, and the digest estimating them
+  List<String> percentiles;
+  double[] quantiles;
+  TDigest digest;
+
   public NumericStatsValues(SchemaField sf) {
     super(sf);
     min = Double.POSITIVE_INFINITY;
@@ -256,6 +334,25 @@ class NumericStatsValues extends AbstractStatsValues<Number> {
     }
   }
 
+  void setPercentiles(List<String> percentiles) {
+    quantiles = new double[percentiles.size()];
+    for (int i = 0; i < quantiles.length; i++) {
+      double p;
+      try {
+        p = Double.parseDouble(percentiles.get(i));
+      } catch (NumberFormatException e) {
+        p = Double.NaN;
+      }
+      if (!(p >= 0 && p <= 100)) {
+        throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+            "Percentiles must be numbers between 0 and 100, not: " + percentiles.get(i));
+      }
+      quantiles[i] = p / 100;
+    }
+    this.percentiles = percentiles;
+    this.digest = new TDigest();
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -263,6 +360,12 @@ class NumericStatsValues extends AbstractStatsValues<Number> {
   public void updateTypeSpecificStats(NamedList stv) {
     sum += ((Number)stv.get("sum")).doubleValue();
     sumOfSquares += ((Number)stv.get("sumOfSquares")).doubleValue();
+    if (digest != null) {
+      byte[] sketch = (byte[]) stv.get(PERCENTILES);
+      if (sketch != null) {
+        digest.merge(TDigest.fromBytes(sketch));
+      }
+    }
   }
 
   /**
@@ -273,6 +376,9 @@ class NumericStatsValues extends AbstractStatsValues<Number> {
     double value = v.doubleValue();
     sumOfSquares += (value * value * count); // for std deviation
     sum += value * count;
+    if (digest != null) {
+      digest.add(value, count);
+    }
   }
 
    /**
@@ -285,7 +391,8 @@ class NumericStatsValues extends AbstractStatsValues<Number> {
   }
 
   /**
-   * Adds sum, sumOfSquares, mean and standard deviation statistics to the given NamedList
+   * Adds sum, sumOfSquares, mean and standard deviation statistics to the given NamedList,
+   * and the requested percentiles
    *
    * @param res NamedList to add the type specific statistics too
    */
@@ -295,6 +402,18 @@ class NumericStatsValues extends AbstractStatsValues<Number> {
     res.add("sumOfSquares", sumOfSquares);
     res.add("mean", sum / count);
     res.add("stddev", getStandardDeviation());
+    if (digest == null) {
+      return;
+    }
+    if (isShard) {
+      res.add(PERCENTILES, digest.toBytes());
+    } else {
+      NamedList<Double> nl = new SimpleOrderedMap<Double>();
+      for (int i = 0; i < quantiles.length; i++) {
+        nl.add(percentiles.get(i), digest.quantile(quantiles[i]));
+      }
+      res.add(PERCENTILES, nl);
+    }
   }
 
   /**
@@ -36,6 +36,7 @@ import org.apache.lucene.util.OpenBitSet;
 import org.apache.lucene.util.UnicodeUtil;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.handler.component.FieldFacetStats;
@@ -466,6 +467,22 @@ public class UnInvertedField extends DocTermOrds {
    * @throws IOException If there is a low-level I/O error.
    */
   public StatsValues getStats(SolrIndexSearcher searcher, DocSet baseDocs, String[] facet) throws IOException {
+    return getStats(searcher, baseDocs, facet, null);
+  }
+
+  /**
+   * Collect statistics about the UninvertedField, including the approximate statistics
+   * requested by the given params.
+   *
+   * @param searcher The Searcher to use to gather the statistics
+   * @param baseDocs The {@link org.apache.solr.search.DocSet} to gather the stats on
+   * @param facet One or more fields to facet on.
+   * @param params The request params, or null for the exact statistics only
+   * @return The {@link org.apache.solr.handler.component.StatsValues} collected
+   * @throws IOException If there is a low-level I/O error.
+   * @see #getStats(SolrIndexSearcher, DocSet, String[])
+   */
+  public StatsValues getStats(SolrIndexSearcher searcher, DocSet baseDocs, String[] facet, SolrParams params) throws IOException {
     //this function is ripped off nearly wholesale from the getCounts function to use
     //for multiValued fields within the StatsComponent.  may be useful to find common
     //functionality between the two and refactor code somewhat
@@ -474,7 +491,8 @@ public class UnInvertedField extends DocTermOrds {
     SchemaField sf = searcher.getSchema().getField(field);
    // FieldType ft = sf.getType();
 
-    StatsValues allstats = StatsValuesFactory.createStatsValues(sf);
+    StatsValues allstats = params == null ? StatsValuesFactory.createStatsValues(sf)
+        : StatsValuesFactory.createStatsValues(sf, params);
 
 
     DocSet docs = baseDocs;
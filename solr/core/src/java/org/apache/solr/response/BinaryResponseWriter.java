@@ -141,11 +141,18 @@ public class BinaryResponseWriter implements BinaryQueryResponseWriter {
       }
       
       Set<String> fnames = returnFields.getLuceneFieldNames();
+      // large pages are read straight from the stored fields instead of through the document cache
+      SolrDocumentVisitor visitor = searcher.useDocumentCache(sz) ? null : new ValueVisitor();
       context.iterator = ids.iterator();
       for (int i = 0; i < sz; i++) {
         int id = context.iterator.nextDoc();
-        Document doc = searcher.doc(id, fnames);
-        SolrDocument sdoc = getDoc(doc);
+        SolrDocument sdoc;
+        if (visitor == null) {
+          Document doc = searcher.doc(id, fnames);
+          sdoc = getDoc(doc);
+        } else {
+          sdoc = visitor.visit(searcher, id);
+        }
         if( transformer != null ) {
           transformer.transform(sdoc, id);
         }
@@ -204,6 +211,23 @@ public class BinaryResponseWriter implements BinaryQueryResponseWriter {
       return solrDoc;
     }
     
+    /** Reads the returned fields of a document as {@link #getDoc} does */
+    private class ValueVisitor extends SolrDocumentVisitor {
+      ValueVisitor() {
+        super(schema, returnFields);
+      }
+
+      @Override
+      protected Object getValue(SchemaField sf, IndexableField f) {
+        try {
+          return Resolver.this.getValue(sf, f);
+        } catch (Exception e) {
+          LOG.warn("Error reading a field : " + f, e);
+          return null;
+        }
+      }
+    }
+
     public Object getValue(SchemaField sf, IndexableField f) throws Exception {
       FieldType ft = null;
       if(sf != null) ft =sf.getType();
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.ReturnFields;
+import org.apache.solr.search.SolrIndexSearcher;
+
+/**
+ * Reads the stored fields that are to be returned straight into a {@link SolrDocument},
+ * without building a Lucene {@link org.apache.lucene.document.Document} or going through
+ * the document cache.  Used by the response writers for pages of results that are too
+ * large to be worth caching.
+ * <p>
+ * Multi-valued fields are always represented as lists, as with
+ * {@link TextResponseWriter#toSolrDocument}.
+ */
+public class SolrDocumentVisitor extends StoredFieldVisitor {
+  private final IndexSchema schema;
+  private final ReturnFields returnFields;
+  private SolrDocument doc;
+
+  public SolrDocumentVisitor(IndexSchema schema, ReturnFields returnFields) {
+    this.schema = schema;
+    this.returnFields = returnFields;
+  }
+
+  /** Reads the returned stored fields of a document into a new SolrDocument */
+  public SolrDocument visit(SolrIndexSearcher searcher, int docid) throws IOException {
+    doc = new SolrDocument();
+    try {
+      searcher.doc(docid, this);
+      return doc;
+    } finally {
+      doc = null;
+    }
+  }
+
+  /**
+   * Returns the value to add to the document for a stored field, or null to skip it.
+   * By default the field itself is added, for {@link org.apache.solr.schema.FieldType#write}.
+   */
+  protected Object getValue(SchemaField sf, IndexableField f) {
+    return f;
+  }
+
+  @Override
+  public Status needsField(FieldInfo fieldInfo) {
+    return returnFields.wantsField(fieldInfo.name) ? Status.YES : Status.NO;
+  }
+
+  @Override
+  public void binaryField(FieldInfo fieldInfo, byte[] value) {
+    add(new StoredField(fieldInfo.name, value));
+  }
+
+  @Override
+  public void stringField(FieldInfo fieldInfo, String value) {
+    add(new StoredField(fieldInfo.name, value));
+  }
+
+  @Override
+  public void intField(FieldInfo fieldInfo, int value) {
+    add(new StoredField(fieldInfo.name, value));
+  }
+
+  @Override
+  public void longField(FieldInfo fieldInfo, long value) {
+    add(new StoredField(fieldInfo.name, value));
+  }
+
+  @Override
+  public void floatField(FieldInfo fieldInfo, float value) {
+    add(new StoredField(fieldInfo.name, value));
+  }
+
+  @Override
+  public void doubleField(FieldInfo fieldInfo, double value) {
+    add(new StoredField(fieldInfo.name, value));
+  }
+
+  private void add(IndexableField f) {
+    String name = f.name();
+    SchemaField sf = schema.getFieldOrNull(name);
+    Object val = getValue(sf, f);
+    if (val == null) return;
+    if (sf != null && sf.multiValued() && !doc.containsKey(name)) {
+      List<Object> vals = new ArrayList<Object>();
+      vals.add(val);
+      doc.setField(name, vals);
+    } else {
+      doc.addField(name, val);
+    }
+  }
+}
@@ -265,10 +265,17 @@ public abstract class TextResponseWriter {
     }
     int sz = ids.size();
     Set<String> fnames = fields.getLuceneFieldNames();
+    // large pages are read straight from the stored fields instead of through the document cache
+    SolrDocumentVisitor visitor = context.searcher.useDocumentCache(sz) ? null : new SolrDocumentVisitor(schema, fields);
     for (int i=0; i<sz; i++) {
       int id = context.iterator.nextDoc();
-      Document doc = context.searcher.doc(id, fnames);
-      SolrDocument sdoc = toSolrDocument( doc );
+      SolrDocument sdoc;
+      if (visitor == null) {
+        Document doc = context.searcher.doc(id, fnames);
+        sdoc = toSolrDocument( doc );
+      } else {
+        sdoc = visitor.visit(context.searcher, id);
+      }
       if( transformer != null ) {
         transformer.transform( sdoc, id);
       }
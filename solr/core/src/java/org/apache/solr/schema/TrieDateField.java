@@ -75,6 +75,11 @@ public class TrieDateField extends DateField implements DateValueFieldType {
     return wrappedField.toObject(sf, term);
   }
 
+  /** @see TrieField#toObject(SchemaField, long) */
+  public Date toObject(SchemaField sf, long docValue) {
+    return (Date) wrappedField.toObject(sf, docValue);
+  }
+
   @Override
   public SortField getSortField(SchemaField field, boolean top) {
     return wrappedField.getSortField(field, top);
@@ -485,6 +485,27 @@ public class TrieField extends PrimitiveFieldType {
     }
   }
 
+  /**
+   * Converts the value of a single-valued numeric docValues field, as written by
+   * {@link #createFields}, back to the value it was created from.
+   */
+  public Object toObject(SchemaField sf, long docValue) {
+    switch (type) {
+      case INTEGER:
+        return (int) docValue;
+      case FLOAT:
+        return Float.intBitsToFloat((int) docValue);
+      case LONG:
+        return docValue;
+      case DOUBLE:
+        return Double.longBitsToDouble(docValue);
+      case DATE:
+        return new Date(docValue);
+      default:
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Unknown type for trie field: " + type);
+    }
+  }
+
   @Override
   public String storedToIndexed(IndexableField f) {
     final BytesRef bytes = new BytesRef(NumericUtils.BUF_SIZE_LONG);
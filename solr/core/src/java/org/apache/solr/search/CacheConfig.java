@@ -103,6 +103,12 @@ public class CacheConfig {
     return config;
   }
 
+  /** The configured maximum number of entries, or 1024 (the default of the caches included with Solr) if not set */
+  public int getSize() {
+    String str = args == null ? null : args.get("size");
+    return str == null ? 1024 : Integer.parseInt(str);
+  }
+
   public SolrCache newInstance() {
     try {
       SolrCache cache = clazz.newInstance();
@@ -0,0 +1,429 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.queries.function.FunctionValues;
+import org.apache.lucene.queries.function.ValueSource;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.StrField;
+
+/**
+ * The <b>CollapsingQParserPlugin</b> is a PostFilter that collapses the result set
+ * on a single valued string field, keeping only the head document of each group.
+ * Because it is a filter it composes with any sort and with faceting, which then
+ * counts only the group heads.
+ * <p>
+ * The group head is tracked in primitive arrays indexed by the field's ordinal
+ * (from the FieldCache or doc values), so memory use is O(number of unique values)
+ * rather than a collector per group as with {@link Grouping}.
+ * <p>
+ * Local params:
+ * <ul>
+ *   <li><b>field</b>: the field to collapse on (required).</li>
+ *   <li><b>min</b> | <b>max</b>: a numeric field; the document with the min/max
+ *   value becomes the group head.  Without either, the highest scoring document is
+ *   the head.</li>
+ *   <li><b>nullPolicy</b>: what to do with documents that have no value in the field:
+ *   <i>ignore</i> (drop them, the default), <i>expand</i> (keep every one of them) or
+ *   <i>collapse</i> (treat them as one group).</li>
+ * </ul>
+ * Example: <code>fq={!collapse field=product_id max=price}</code>
+ */
+public class CollapsingQParserPlugin extends QParserPlugin {
+
+  public static final String NAME = "collapse";
+  public static final String NULL_IGNORE = "ignore";
+  public static final String NULL_EXPAND = "expand";
+  public static final String NULL_COLLAPSE = "collapse";
+
+  @Override
+  public void init(NamedList args) {
+  }
+
+  @Override
+  public QParser createParser(String qstr, SolrParams localParams, SolrParams params, SolrQueryRequest req) {
+    return new QParser(qstr, localParams, params, req) {
+      @Override
+      public Query parse() throws SyntaxError {
+        String field = localParams == null ? null : localParams.get("field");
+        if (field == null) {
+          throw new SyntaxError("collapse requires the field param");
+        }
+        SchemaField sf = req.getSchema().getFieldOrNull(field);
+        if (sf == null || sf.multiValued() || !(sf.getType() instanceof StrField)) {
+          throw new SyntaxError("collapse field must be a single valued string field: " + field);
+        }
+
+        String min = localParams.get("min");
+        String max = localParams.get("max");
+        if (min != null && max != null) {
+          throw new SyntaxError("collapse accepts only one of min or max");
+        }
+        String selectField = min != null ? min : max;
+        ValueSource selectSource = null;
+        if (selectField != null) {
+          SchemaField selectSf = req.getSchema().getFieldOrNull(selectField);
+          if (selectSf == null) {
+            throw new SyntaxError("undefined collapse min/max field: " + selectField);
+          }
+          FieldType ft = selectSf.getType();
+          selectSource = ft.getValueSource(selectSf, this);
+        }
+
+        String nullPolicy = localParams.get("nullPolicy", NULL_IGNORE);
+        if (!NULL_IGNORE.equals(nullPolicy) && !NULL_EXPAND.equals(nullPolicy) && !NULL_COLLAPSE.equals(nullPolicy)) {
+          throw new SyntaxError("unknown collapse nullPolicy: " + nullPolicy);
+        }
+
+        return new CollapsingPostFilter(field, selectSource, max != null, nullPolicy);
+      }
+    };
+  }
+
+  private static boolean needsScores() {
+    SolrRequestInfo info = SolrRequestInfo.getRequestInfo();
+    ResponseBuilder rb = info == null ? null : info.getResponseBuilder();
+    if (rb == null || rb.getSortSpec() == null) return true;
+    return rb.getSortSpec().includesScore() || (rb.getFieldFlags() & SolrIndexSearcher.GET_SCORES) != 0;
+  }
+
+  public static class CollapsingPostFilter extends ExtendedQueryBase implements PostFilter {
+    private final String field;
+    private final ValueSource selectSource;
+    private final boolean selectMax;
+    private final String nullPolicy;
+
+    public CollapsingPostFilter(String field, ValueSource selectSource, boolean selectMax, String nullPolicy) {
+      this.field = field;
+      this.selectSource = selectSource;
+      this.selectMax = selectMax;
+      this.nullPolicy = nullPolicy;
+    }
+
+    @Override
+    public void setCache(boolean cache) {
+      // the collapse depends on the whole result set, so it can never be cached as an independent filter
+    }
+
+    @Override
+    public boolean getCache() {
+      return false;
+    }
+
+    @Override
+    public int getCost() {
+      return Math.max(super.getCost(), 100);
+    }
+
+    @Override
+    public DelegatingCollector getFilterCollector(IndexSearcher indexSearcher) {
+      SolrIndexSearcher searcher = (SolrIndexSearcher)indexSearcher;
+      try {
+        // top level ordinals, so that a group is the same slot in every segment
+        SortedDocValues ords = FieldCache.DEFAULT.getTermsIndex(searcher.getAtomicReader(), field);
+        List<AtomicReaderContext> leaves = searcher.getTopReaderContext().leaves();
+        if (selectSource == null) {
+          return new ScoreCollapsingCollector(ords, leaves, searcher.maxDoc(), nullPolicy);
+        } else {
+          Map fcontext = ValueSource.newContext(searcher);
+          selectSource.createWeight(fcontext, searcher);
+          return new ValueCollapsingCollector(ords, leaves, searcher.maxDoc(), nullPolicy,
+                                              fcontext, selectSource, selectMax, needsScores());
+        }
+      } catch (IOException e) {
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+      }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!super.equals(o)) return false;
+      CollapsingPostFilter other = (CollapsingPostFilter)o;
+      return field.equals(other.field)
+          && selectMax == other.selectMax
+          && nullPolicy.equals(other.nullPolicy)
+          && (selectSource == null ? other.selectSource == null : selectSource.equals(other.selectSource));
+    }
+
+    @Override
+    public int hashCode() {
+      int h = super.hashCode();
+      h = 31 * h + field.hashCode();
+      h = 31 * h + (selectSource == null ? 0 : selectSource.hashCode());
+      h = 31 * h + (selectMax ? 1 : 0);
+      h = 31 * h + nullPolicy.hashCode();
+      return h;
+    }
+
+    @Override
+    public String toString(String s) {
+      return "{!collapse field=" + field
+          + (selectSource == null ? "" : (selectMax ? " max=" : " min=") + selectSource.description())
+          + " nullPolicy=" + nullPolicy + "}";
+    }
+  }
+
+  /** Replays the stored score of a group head to the delegate collectors */
+  private static class ReplayScorer extends Scorer {
+    float score;
+    int doc = -1;
+
+    ReplayScorer() {
+      super(null);
+    }
+
+    @Override
+    public float score() {
+      return score;
+    }
+
+    @Override
+    public int freq() {
+      return 0;
+    }
+
+    @Override
+    public int docID() {
+      return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int advance(int target) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long cost() {
+      return 0;
+    }
+  }
+
+  /**
+   * Buffers the current head of every group (by global doc id) while collecting,
+   * and passes only the heads on to the delegate in {@link #finish}.
+   */
+  private static abstract class CollapsingCollector extends DelegatingCollector {
+    protected final SortedDocValues ords;
+    protected final List<AtomicReaderContext> leaves;
+    protected final String nullPolicy;
+    protected final int maxDoc;
+    /** head doc of each group, or -1 */
+    protected final int[] heads;
+    /** score of each group head */
+    protected final float[] scores;
+    /** docs without a value; only used when nullPolicy=expand */
+    protected FixedBitSet nullDocs;
+    protected float[] nullScores;
+    protected int nullHead = -1;
+    protected float nullScore;
+
+    CollapsingCollector(SortedDocValues ords, List<AtomicReaderContext> leaves, int maxDoc, String nullPolicy, boolean storeScores) {
+      this.ords = ords;
+      this.leaves = leaves;
+      this.nullPolicy = nullPolicy;
+      this.maxDoc = maxDoc;
+      this.heads = new int[ords.getValueCount()];
+      Arrays.fill(heads, -1);
+      this.scores = storeScores ? new float[heads.length] : null;
+      if (NULL_EXPAND.equals(nullPolicy)) {
+        nullDocs = new FixedBitSet(maxDoc);
+        nullScores = storeScores ? new float[maxDoc] : null;
+      }
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) {
+      // the delegate gets the ReplayScorer in finish()
+      this.scorer = scorer;
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) throws IOException {
+      this.context = context;
+      this.docBase = context.docBase;
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+      // ties are resolved in favor of the lowest doc id
+      return false;
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+      int globalDoc = docBase + doc;
+      int ord = ords.getOrd(globalDoc);
+      if (ord >= 0) {
+        collectGroup(ord, doc, globalDoc);
+      } else if (NULL_EXPAND.equals(nullPolicy)) {
+        nullDocs.set(globalDoc);
+        if (nullScores != null) nullScores[globalDoc] = scorer.score();
+      } else if (NULL_COLLAPSE.equals(nullPolicy)) {
+        collectNull(doc, globalDoc);
+      }
+    }
+
+    /** Decides whether doc becomes the head of group ord */
+    protected abstract void collectGroup(int ord, int doc, int globalDoc) throws IOException;
+
+    /** Decides whether doc becomes the head of the group of documents without a value */
+    protected abstract void collectNull(int doc, int globalDoc) throws IOException;
+
+    @Override
+    public void finish() throws IOException {
+      FixedBitSet collapsed = nullDocs != null ? nullDocs : new FixedBitSet(maxDoc);
+      for (int ord = 0; ord < heads.length; ord++) {
+        if (heads[ord] >= 0) collapsed.set(heads[ord]);
+      }
+      if (nullHead >= 0) collapsed.set(nullHead);
+
+      ReplayScorer replay = new ReplayScorer();
+      for (AtomicReaderContext leaf : leaves) {
+        int base = leaf.docBase;
+        int end = base + leaf.reader().maxDoc();
+        if (base >= end) continue;
+        int doc = collapsed.nextSetBit(base);
+        if (doc == -1 || doc >= end) continue;
+        delegate.setNextReader(leaf);
+        delegate.setScorer(replay);
+        for (; doc != -1 && doc < end; doc = doc + 1 < maxDoc ? collapsed.nextSetBit(doc + 1) : -1) {
+          if (scores != null) {
+            replay.score = getScore(doc);
+          }
+          replay.doc = doc - base;
+          delegate.collect(doc - base);
+        }
+      }
+
+      super.finish();
+    }
+
+    /** the score recorded for a collected head doc */
+    private float getScore(int globalDoc) {
+      if (globalDoc == nullHead) return nullScore;
+      int ord = ords.getOrd(globalDoc);
+      if (ord < 0) return nullScores[globalDoc];
+      return scores[ord];
+    }
+  }
+
+  /** Selects the highest scoring document of each group */
+  private static class ScoreCollapsingCollector extends CollapsingCollector {
+
+    ScoreCollapsingCollector(SortedDocValues ords, List<AtomicReaderContext> leaves, int maxDoc, String nullPolicy) {
+      super(ords, leaves, maxDoc, nullPolicy, true);
+    }
+
+    @Override
+    protected void collectGroup(int ord, int doc, int globalDoc) throws IOException {
+      float score = scorer.score();
+      if (heads[ord] == -1 || score > scores[ord]) {
+        heads[ord] = globalDoc;
+        scores[ord] = score;
+      }
+    }
+
+    @Override
+    protected void collectNull(int doc, int globalDoc) throws IOException {
+      float score = scorer.score();
+      if (nullHead == -1 || score > nullScore) {
+        nullHead = globalDoc;
+        nullScore = score;
+      }
+    }
+  }
+
+  /**
+   * Selects the document with the min or max value of a numeric field in each group.
+   * Values are compared as doubles.
+   */
+  private static class ValueCollapsingCollector extends CollapsingCollector {
+    private final Map fcontext;
+    private final ValueSource valueSource;
+    private final boolean max;
+    private final boolean needsScores;
+    private final double[] values;
+    private double nullValue;
+    private FunctionValues functionValues;
+
+    ValueCollapsingCollector(SortedDocValues ords, List<AtomicReaderContext> leaves, int maxDoc, String nullPolicy,
+                             Map fcontext, ValueSource valueSource, boolean max, boolean needsScores) {
+      super(ords, leaves, maxDoc, nullPolicy, needsScores);
+      this.fcontext = fcontext;
+      this.valueSource = valueSource;
+      this.max = max;
+      this.needsScores = needsScores;
+      this.values = new double[heads.length];
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) throws IOException {
+      super.setNextReader(context);
+      functionValues = valueSource.getValues(fcontext, context);
+    }
+
+    private boolean better(double val, double current) {
+      return max ? val > current : val < current;
+    }
+
+    @Override
+    protected void collectGroup(int ord, int doc, int globalDoc) throws IOException {
+      double val = functionValues.doubleVal(doc);
+      if (heads[ord] == -1 || better(val, values[ord])) {
+        heads[ord] = globalDoc;
+        values[ord] = val;
+        if (needsScores) scores[ord] = scorer.score();
+      }
+    }
+
+    @Override
+    protected void collectNull(int doc, int globalDoc) throws IOException {
+      double val = functionValues.doubleVal(doc);
+      if (nullHead == -1 || better(val, nullValue)) {
+        nullHead = globalDoc;
+        nullValue = val;
+        if (needsScores) nullScore = scorer.score();
+      }
+    }
+  }
+}
@@ -75,5 +75,16 @@ public class DelegatingCollector extends Collector {
   public boolean acceptsDocsOutOfOrder() {
     return delegate.acceptsDocsOutOfOrder();
   }
+
+  /**
+   * Called once after all segments have been collected.  Collectors that buffer
+   * documents instead of passing them on as they are collected must forward them
+   * to the delegate here.  The default implementation propagates the call down the chain.
+   */
+  public void finish() throws IOException {
+    if (delegate instanceof DelegatingCollector) {
+      ((DelegatingCollector)delegate).finish();
+    }
+  }
 }
 
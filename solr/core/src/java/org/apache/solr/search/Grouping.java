@@ -408,6 +408,7 @@ public class Grouping {
    * If a time limit has been specified, wrap the collector in a TimeLimitingCollector
    */
   private void searchWithTimeLimiter(final Filter luceneFilter, Collector collector) throws IOException {
+    final Collector chain = collector;
     if (cmd.getTimeAllowed() > 0) {
       if (timeLimitingCollector == null) {
         timeLimitingCollector = new TimeLimitingCollector(collector, TimeLimitingCollector.getGlobalCounter(), cmd.getTimeAllowed());
@@ -424,6 +425,9 @@ public class Grouping {
     }
     try {
       searcher.search(query, luceneFilter, collector);
+      if (chain instanceof DelegatingCollector) {
+        ((DelegatingCollector)chain).finish();
+      }
     } catch (TimeLimitingCollector.TimeExceededException x) {
       logger.warn( "Query: " + query + "; " + x.getMessage() );
       qr.setPartialResults(true);
@@ -47,7 +47,9 @@ public abstract class QParserPlugin implements NamedListInitializedPlugin, SolrI
     JoinQParserPlugin.NAME, JoinQParserPlugin.class,
     SurroundQParserPlugin.NAME, SurroundQParserPlugin.class,
     SwitchQParserPlugin.NAME, SwitchQParserPlugin.class,
-    MaxScoreQParserPlugin.NAME, MaxScoreQParserPlugin.class
+    MaxScoreQParserPlugin.NAME, MaxScoreQParserPlugin.class,
+    CollapsingQParserPlugin.NAME, CollapsingQParserPlugin.class,
+    ReRankQParserPlugin.NAME, ReRankQParserPlugin.class
   };
 
   /** return a {@link QParser} */
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import java.io.IOException;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocsCollector;
+
+/**
+ * A RankQuery wraps the main query of a request (see the <code>rq</code> param)
+ * and takes over ranking of its results: documents are matched and scored by the
+ * main query, but {@link SolrIndexSearcher} collects them with the
+ * {@link TopDocsCollector} supplied by the RankQuery.
+ * <p>
+ * Since the RankQuery is the query that is searched, it is part of the
+ * queryResultCache key, so implementations must define equals and hashCode
+ * over all of their parameters, including the wrapped main query.
+ */
+public abstract class RankQuery extends ExtendedQueryBase {
+
+  /** Returns the collector that ranks the top <code>len</code> documents for <code>cmd</code> */
+  public abstract TopDocsCollector getTopDocsCollector(int len, SolrIndexSearcher.QueryCommand cmd, IndexSearcher searcher) throws IOException;
+
+  /** Returns a RankQuery with the same ranking parameters that matches and scores like <code>mainQuery</code> */
+  public abstract RankQuery wrap(Query mainQuery);
+}
@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.Weight;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.SolrQueryRequest;
+
+/**
+ * Re-ranks the top documents of the main query with a second, usually more
+ * expensive, query.  The main query matches and scores every document as usual;
+ * only its top <code>reRankDocs</code> documents are then scored by
+ * <code>reRankQuery</code>, segment by segment in doc id order, and their new score
+ * is the main score plus <code>reRankWeight</code> times the re-rank score.
+ * <p>
+ * It is used through the <code>rq</code> parameter, e.g.
+ * <code>q=ipod&amp;rq={!rerank reRankQuery=$rqq reRankDocs=500 reRankWeight=3}&amp;rqq=(name:"ipod nano")</code>
+ * <p>
+ * Since the re-ranked documents are ordered by score, the request must be sorted by
+ * score, optionally followed by other fields that break ties.
+ * <p>
+ * Results are cached in the queryResultCache under the combined query.  In distributed
+ * search every shard re-ranks its own top documents and returns the new scores, which
+ * the normal merge by score combines.
+ */
+public class ReRankQParserPlugin extends QParserPlugin {
+
+  public static final String NAME = "rerank";
+  public static final String RERANK_QUERY = "reRankQuery";
+  public static final String RERANK_DOCS = "reRankDocs";
+  public static final int RERANK_DOCS_DEFAULT = 200;
+  public static final String RERANK_WEIGHT = "reRankWeight";
+  public static final double RERANK_WEIGHT_DEFAULT = 2.0d;
+
+  @Override
+  public void init(NamedList args) {
+  }
+
+  @Override
+  public QParser createParser(String qstr, SolrParams localParams, SolrParams params, SolrQueryRequest req) {
+    return new QParser(qstr, localParams, params, req) {
+      @Override
+      public Query parse() throws SyntaxError {
+        String reRankQueryString = localParams == null ? null : localParams.get(RERANK_QUERY);
+        if (reRankQueryString == null || reRankQueryString.trim().length() == 0) {
+          throw new SyntaxError("rerank requires the " + RERANK_QUERY + " param");
+        }
+        Query reRankQuery = subQuery(reRankQueryString, null).getQuery();
+        int reRankDocs = localParams.getInt(RERANK_DOCS, RERANK_DOCS_DEFAULT);
+        if (reRankDocs <= 0) {
+          throw new SyntaxError(RERANK_DOCS + " must be positive: " + reRankDocs);
+        }
+        double reRankWeight = localParams.getDouble(RERANK_WEIGHT, RERANK_WEIGHT_DEFAULT);
+        return new ReRankQuery(null, reRankQuery, reRankDocs, reRankWeight);
+      }
+    };
+  }
+
+  public static class ReRankQuery extends RankQuery {
+    private final Query mainQuery;
+    private final Query reRankQuery;
+    private final int reRankDocs;
+    private final double reRankWeight;
+
+    public ReRankQuery(Query mainQuery, Query reRankQuery, int reRankDocs, double reRankWeight) {
+      this.mainQuery = mainQuery;
+      this.reRankQuery = reRankQuery;
+      this.reRankDocs = reRankDocs;
+      this.reRankWeight = reRankWeight;
+    }
+
+    @Override
+    public RankQuery wrap(Query mainQuery) {
+      return new ReRankQuery(mainQuery, reRankQuery, reRankDocs, reRankWeight);
+    }
+
+    @Override
+    public TopDocsCollector getTopDocsCollector(int len, SolrIndexSearcher.QueryCommand cmd, IndexSearcher searcher) throws IOException {
+      int mainLen = Math.max(len, reRankDocs);
+      TopDocsCollector mainCollector;
+      Sort sort = cmd.getSort();
+      if (sort == null) {
+        mainCollector = TopScoreDocCollector.create(mainLen, true);
+      } else {
+        if (searcher instanceof SolrIndexSearcher) {
+          sort = ((SolrIndexSearcher)searcher).weightSort(sort);
+        }
+        // the sort starts with score desc (see QueryComponent); scores are always
+        // tracked, since the re-ranked score is added to them
+        mainCollector = TopFieldCollector.create(sort, mainLen, false, true, true, true);
+      }
+      return new ReRankCollector(mainCollector, searcher, reRankQuery, reRankDocs, reRankWeight);
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher) throws IOException {
+      return mainQuery.createWeight(searcher);
+    }
+
+    @Override
+    public Query rewrite(IndexReader reader) throws IOException {
+      Query rewritten = mainQuery.rewrite(reader);
+      if (rewritten != mainQuery) {
+        ReRankQuery clone = (ReRankQuery)wrap(rewritten);
+        clone.setBoost(getBoost());
+        return clone;
+      }
+      return this;
+    }
+
+    @Override
+    public void extractTerms(Set<Term> terms) {
+      mainQuery.extractTerms(terms);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!super.equals(o)) return false;
+      ReRankQuery other = (ReRankQuery)o;
+      return reRankDocs == other.reRankDocs
+          && reRankWeight == other.reRankWeight
+          && reRankQuery.equals(other.reRankQuery)
+          && (mainQuery == null ? other.mainQuery == null : mainQuery.equals(other.mainQuery));
+    }
+
+    @Override
+    public int hashCode() {
+      int h = super.hashCode();
+      h = 31 * h + (mainQuery == null ? 0 : mainQuery.hashCode());
+      h = 31 * h + reRankQuery.hashCode();
+      h = 31 * h + reRankDocs;
+      long bits = Double.doubleToLongBits(reRankWeight);
+      h = 31 * h + (int)(bits ^ (bits >>> 32));
+      return h;
+    }
+
+    @Override
+    public String toString(String field) {
+      StringBuilder sb = new StringBuilder();
+      sb.append("{!").append(NAME);
+      sb.append(" mainQuery='").append(mainQuery == null ? "" : mainQuery.toString(field)).append("'");
+      sb.append(" ").append(RERANK_QUERY).append("='").append(reRankQuery.toString(field)).append("'");
+      sb.append(" ").append(RERANK_DOCS).append("=").append(reRankDocs);
+      sb.append(" ").append(RERANK_WEIGHT).append("=").append(reRankWeight);
+      sb.append("}");
+      return sb.toString();
+    }
+  }
+
+  private static final Comparator<ScoreDoc> BY_DOC = new Comparator<ScoreDoc>() {
+    @Override
+    public int compare(ScoreDoc a, ScoreDoc b) {
+      return a.doc < b.doc ? -1 : (a.doc == b.doc ? 0 : 1);
+    }
+  };
+
+  // ties are left in the order of the main query, see the stable sort in rescore
+  private static final Comparator<ScoreDoc> BY_SCORE = new Comparator<ScoreDoc>() {
+    @Override
+    public int compare(ScoreDoc a, ScoreDoc b) {
+      return Float.compare(b.score, a.score);
+    }
+  };
+
+  /**
+   * Collects the top documents of the main query with the wrapped collector, and
+   * re-scores the first <code>reRankDocs</code> of them when the top docs are requested.
+   */
+  static class ReRankCollector extends TopDocsCollector<ScoreDoc> {
+    private final TopDocsCollector mainCollector;
+    private final IndexSearcher searcher;
+    private final Query reRankQuery;
+    private final int reRankDocs;
+    private final double reRankWeight;
+
+    ReRankCollector(TopDocsCollector mainCollector, IndexSearcher searcher, Query reRankQuery, int reRankDocs, double reRankWeight) {
+      super(null);
+      this.mainCollector = mainCollector;
+      this.searcher = searcher;
+      this.reRankQuery = reRankQuery;
+      this.reRankDocs = reRankDocs;
+      this.reRankWeight = reRankWeight;
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+      mainCollector.setScorer(scorer);
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+      mainCollector.collect(doc);
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) throws IOException {
+      mainCollector.setNextReader(context);
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+      return mainCollector.acceptsDocsOutOfOrder();
+    }
+
+    @Override
+    public int getTotalHits() {
+      return mainCollector.getTotalHits();
+    }
+
+    @Override
+    public TopDocs topDocs() {
+      return topDocs(0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public TopDocs topDocs(int start) {
+      return topDocs(start, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public TopDocs topDocs(int start, int howMany) {
+      TopDocs mainDocs = mainCollector.topDocs();
+      ScoreDoc[] docs = mainDocs.scoreDocs;
+      if (docs.length == 0) {
+        return mainDocs;
+      }
+
+      int rescoreLen = Math.min(reRankDocs, docs.length);
+      ScoreDoc[] rescored = Arrays.copyOf(docs, rescoreLen);
+      try {
+        rescore(rescored);
+      } catch (IOException e) {
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+      }
+      System.arraycopy(rescored, 0, docs, 0, rescoreLen);
+
+      float maxScore = Float.NEGATIVE_INFINITY;
+      for (ScoreDoc doc : docs) {
+        maxScore = Math.max(maxScore, doc.score);
+      }
+
+      int end = (int)Math.min((long)start + howMany, docs.length);
+      if (start >= end) {
+        return new TopDocs(mainDocs.totalHits, new ScoreDoc[0], maxScore);
+      }
+      return new TopDocs(mainDocs.totalHits, Arrays.copyOfRange(docs, start, end), maxScore);
+    }
+
+    /**
+     * Adds the weighted re-rank score to each doc, visiting the docs segment by segment
+     * in doc order, and sorts them by their new score.  Docs with the same new score keep
+     * their relative order from the main query, so the rest of a sort starting with
+     * score desc still breaks ties.
+     */
+    private void rescore(ScoreDoc[] rankedDocs) throws IOException {
+      ScoreDoc[] docs = rankedDocs.clone();
+      Arrays.sort(docs, BY_DOC);
+      Weight weight = searcher.createNormalizedWeight(reRankQuery);
+      List<AtomicReaderContext> leaves = searcher.getIndexReader().leaves();
+
+      int leaf = -1;
+      int docBase = 0;
+      int endDoc = 0;
+      Scorer scorer = null;
+      for (ScoreDoc sd : docs) {
+        while (sd.doc >= endDoc) {
+          AtomicReaderContext context = leaves.get(++leaf);
+          docBase = context.docBase;
+          endDoc = docBase + context.reader().maxDoc();
+          scorer = weight.scorer(context, true, false, context.reader().getLiveDocs());
+        }
+        if (scorer == null) continue;
+        int target = sd.doc - docBase;
+        int current = scorer.docID();
+        if (current < target) {
+          current = scorer.advance(target);
+        }
+        if (current == target) {
+          sd.score += (float)(reRankWeight * scorer.score());
+        }
+      }
+      // Arrays.sort is stable for objects
+      Arrays.sort(rankedDocs, BY_SCORE);
+    }
+  }
+}
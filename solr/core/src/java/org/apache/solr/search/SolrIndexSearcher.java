@@ -146,6 +146,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
   private final SolrCache<Query,DocSet> filterCache;
   private final SolrCache<QueryResultKey,DocList> queryResultCache;
   private final SolrCache<Integer,Document> documentCache;
+  private final int documentCacheSize;
   private final SolrCache<String,UnInvertedField> fieldValueCache;
 
   private final LuceneQueryOptimizer optimizer;
@@ -257,6 +258,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       cacheMap = noGenericCaches;
       cacheList= noCaches;
     }
+    documentCacheSize = documentCache == null ? 0 : solrConfig.documentCacheConfig.getSize();
 
     // TODO: This option has been dead/noop since 3.1, should we re-enable it?
 //    optimizer = solrConfig.filtOptEnabled ? new LuceneQueryOptimizer(solrConfig.filtOptCacheSize,solrConfig.filtOptThreshold) : null;
@@ -670,6 +672,18 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
     return d;
   }
 
+  /**
+   * Returns true if <code>numDocs</code> documents that are retrieved one after the other,
+   * such as a page of results being written, should be loaded with {@link #doc(int, Set)}
+   * and put in the document cache.  This is not worthwhile when there is no document cache,
+   * or when the documents alone would fill it: they would only evict each other and
+   * everything else in the cache.  Such documents are better read with
+   * {@link #doc(int, StoredFieldVisitor)}.
+   */
+  public boolean useDocumentCache(int numDocs) {
+    return documentCache != null && numDocs <= documentCacheSize;
+  }
+
   /**
    * Takes a list of docs (the doc ids actually), and reads them into an array
    * of Documents.
@@ -914,6 +928,10 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       }
     }
 
+    if (pf.postFilter != null) {
+      pf.postFilter.finish();
+    }
+
     return setCollector.getDocSet();
   }
 
@@ -1327,7 +1345,8 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
 
     // check if we should try and use the filter cache
     boolean useFilterCache=false;
-    if ((flags & (GET_SCORES|NO_CHECK_FILTERCACHE))==0 && useFilterForSortedQuery && cmd.getSort() != null && filterCache != null) {
+    if ((flags & (GET_SCORES|NO_CHECK_FILTERCACHE))==0 && useFilterForSortedQuery && cmd.getSort() != null && filterCache != null
+        && !(cmd.getQuery() instanceof RankQuery)) {
       useFilterCache=true;
       SortField[] sfields = cmd.getSort().getSort();
       for (SortField sf : sfields) {
@@ -1445,6 +1464,11 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
    */
   private TopDocsCollector buildTopDocsCollector(int len, QueryCommand cmd) throws IOException {
 
+    Query q = cmd.getQuery();
+    if (q instanceof RankQuery) {
+      return ((RankQuery)q).getTopDocsCollector(len, cmd, this);
+    }
+
     if (null == cmd.getSort()) {
       assert null == cmd.getCursorMark() : "have cursor but no sort";
       return TopScoreDocCollector.create(len, true);
@@ -1542,6 +1566,9 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
 
       try {
         super.search(query, luceneFilter, collector);
+        if (collector instanceof DelegatingCollector) {
+          ((DelegatingCollector)collector).finish();
+        }
       }
       catch( TimeLimitingCollector.TimeExceededException x ) {
         log.warn( "Query: " + query + "; " + x.getMessage() );
@@ -1570,6 +1597,9 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       }
       try {
         super.search(query, luceneFilter, collector);
+        if (collector instanceof DelegatingCollector) {
+          ((DelegatingCollector)collector).finish();
+        }
       }
       catch( TimeLimitingCollector.TimeExceededException x ) {
         log.warn( "Query: " + query + "; " + x.getMessage() );
@@ -1664,6 +1694,9 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
 
        try {
          super.search(query, luceneFilter, collector);
+         if (collector instanceof DelegatingCollector) {
+           ((DelegatingCollector)collector).finish();
+         }
        }
        catch( TimeLimitingCollector.TimeExceededException x ) {
          log.warn( "Query: " + query + "; " + x.getMessage() );
@@ -1696,6 +1729,9 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       }
       try {
         super.search(query, luceneFilter, collector);
+        if (collector instanceof DelegatingCollector) {
+          ((DelegatingCollector)collector).finish();
+        }
       }
       catch( TimeLimitingCollector.TimeExceededException x ) {
         log.warn( "Query: " + query + "; " + x.getMessage() );
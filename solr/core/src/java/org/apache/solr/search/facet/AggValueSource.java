@@ -0,0 +1,32 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+
+/**
+ * A stat of the docs in a facet bucket, such as <code>avg(price)</code>.  It creates
+ * the {@link SlotAcc} that computes the stat for all buckets of a facet in one pass,
+ * and the {@link FacetMerger} that combines the values returned by the shards.
+ */
+public abstract class AggValueSource {
+
+  public abstract SlotAcc createSlotAcc(FacetContext fcontext, int numSlots) throws IOException;
+
+  public abstract FacetMerger createFacetMerger();
+}
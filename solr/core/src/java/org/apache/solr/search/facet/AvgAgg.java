@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.queries.function.ValueSource;
+
+/** <code>avg(f)</code>: the average of the function over the docs of a bucket that have a value */
+class AvgAgg extends AggValueSource {
+  private final ValueSource vs;
+
+  AvgAgg(ValueSource vs) {
+    this.vs = vs;
+  }
+
+  @Override
+  public SlotAcc createSlotAcc(FacetContext fcontext, int numSlots) throws IOException {
+    return new AvgSlotAcc(vs, fcontext, numSlots);
+  }
+
+  @Override
+  public FacetMerger createFacetMerger() {
+    return new AvgMerger();
+  }
+}
+
+
+class AvgSlotAcc extends FuncSlotAcc {
+  private final double[] sum;
+  private final int[] counts;
+
+  AvgSlotAcc(ValueSource vs, FacetContext fcontext, int numSlots) throws IOException {
+    super(vs, fcontext);
+    sum = new double[numSlots];
+    counts = new int[numSlots];
+  }
+
+  @Override
+  public void collect(int doc, int slot) {
+    if (values.exists(doc)) {
+      sum[slot] += values.doubleVal(doc);
+      counts[slot]++;
+    }
+  }
+
+  private double avg(int slot) {
+    return counts[slot] == 0 ? Double.NEGATIVE_INFINITY : sum[slot] / counts[slot];
+  }
+
+  @Override
+  public int compare(int slotA, int slotB) {
+    return Double.compare(avg(slotA), avg(slotB));
+  }
+
+  @Override
+  public Object getValue(int slot) {
+    if (fcontext.isShard) {
+      List<Object> lst = new ArrayList<Object>(2);
+      lst.add((long)counts[slot]);
+      lst.add(sum[slot]);
+      return lst;
+    }
+    return counts[slot] == 0 ? null : sum[slot] / counts[slot];
+  }
+}
+
+
+class AvgMerger extends FacetMerger {
+  private long count;
+  private double sum;
+
+  @Override
+  public void merge(Object facetResult, int shardNum) {
+    List<?> lst = (List<?>)facetResult;
+    count += ((Number)lst.get(0)).longValue();
+    sum += ((Number)lst.get(1)).doubleValue();
+  }
+
+  @Override
+  public Object getMergedResult() {
+    return count == 0 ? null : sum / count;
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+
+/** Merges a single bucket: its count, its stats and its nested facets */
+class FacetBucketMerger extends FacetMerger {
+  final FacetRequest freq;
+  final Object val;
+  long count;
+  /** The merged value of the stat the parent facet sorts by, set before sorting */
+  Object sortVal;
+  private final Map<String,FacetMerger> mergers = new HashMap<String,FacetMerger>();
+
+  FacetBucketMerger(FacetRequest freq) {
+    this(freq, null);
+  }
+
+  FacetBucketMerger(FacetRequest freq, Object val) {
+    this.freq = freq;
+    this.val = val;
+  }
+
+  @Override
+  public void merge(Object facetResult, int shardNum) {
+    @SuppressWarnings("unchecked")
+    NamedList<Object> bucket = (NamedList<Object>)facetResult;
+    for (int i = 0; i < bucket.size(); i++) {
+      String key = bucket.getName(i);
+      Object value = bucket.getVal(i);
+      if ("count".equals(key)) {
+        count += ((Number)value).longValue();
+      } else if (!"val".equals(key)) {
+        FacetMerger merger = getMerger(key);
+        if (merger != null) {
+          merger.merge(value, shardNum);
+        }
+      }
+    }
+  }
+
+  FacetMerger getMerger(String key) {
+    FacetMerger merger = mergers.get(key);
+    if (merger == null) {
+      AggValueSource stat = freq.getFacetStats().get(key);
+      if (stat != null) {
+        merger = stat.createFacetMerger();
+      } else {
+        FacetRequest sub = freq.getSubFacets().get(key);
+        if (sub == null) return null;
+        merger = sub.createFacetMerger();
+      }
+      mergers.put(key, merger);
+    }
+    return merger;
+  }
+
+  @Override
+  public Object getMergedResult() {
+    SimpleOrderedMap<Object> result = new SimpleOrderedMap<Object>();
+    if (val != null) {
+      result.add("val", val);
+    }
+    result.add("count", count);
+    for (String name : freq.getFacetStats().keySet()) {
+      FacetMerger merger = mergers.get(name);
+      Object value = merger == null ? null : merger.getMergedResult();
+      if (value != null) {
+        result.add(name, value);
+      }
+    }
+    for (String name : freq.getSubFacets().keySet()) {
+      FacetMerger merger = mergers.get(name);
+      if (merger != null) {
+        result.add(name, merger.getMergedResult());
+      }
+    }
+    return result;
+  }
+
+  /** The top level merger also collects the buckets its terms facets need refined on every shard */
+  Map<Integer,Map<String,List<Object>>> getRefinements() {
+    Map<Integer,Map<String,List<Object>>> refinements = new HashMap<Integer,Map<String,List<Object>>>();
+    for (Map.Entry<String,FacetMerger> entry : mergers.entrySet()) {
+      if (!(entry.getValue() instanceof FacetTermsMerger)) continue;
+      Map<Integer,List<Object>> facetRefinements = ((FacetTermsMerger)entry.getValue()).getRefinements();
+      for (Map.Entry<Integer,List<Object>> shardEntry : facetRefinements.entrySet()) {
+        Map<String,List<Object>> shardRefinements = refinements.get(shardEntry.getKey());
+        if (shardRefinements == null) {
+          shardRefinements = new LinkedHashMap<String,List<Object>>();
+          refinements.put(shardEntry.getKey(), shardRefinements);
+        }
+        shardRefinements.put(entry.getKey(), shardEntry.getValue());
+      }
+    }
+    return refinements;
+  }
+}
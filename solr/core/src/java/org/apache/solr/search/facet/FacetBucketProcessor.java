@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.solr.search.DocSet;
+
+/**
+ * A processor that splits its domain into many buckets, and collects the count
+ * and the stats of all of them in a single pass over the domain.
+ */
+abstract class FacetBucketProcessor<FacetRequestT extends FacetRequest> extends FacetProcessor<FacetRequestT> {
+
+  FacetBucketProcessor(FacetContext fcontext, FacetRequestT freq) {
+    super(fcontext, freq);
+  }
+
+  /** Collects every doc of <code>docs</code> into the slots of its buckets through {@link #collectBucketDoc} */
+  protected void collectBuckets(DocSet docs, SlotAcc[] accs) throws IOException {
+    collect(docs, accs, this);
+  }
+
+  /** Positions this processor on the segment of the docs collected next */
+  protected abstract void setNextReader(AtomicReaderContext context) throws IOException;
+
+  /** Counts the top level <code>doc</code> in the slots of its buckets, and collects its segment doc <code>segDoc</code> into <code>accs</code> */
+  protected abstract void collectBucketDoc(int doc, int segDoc, SlotAcc[] accs) throws IOException;
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+
+/** Merges the buckets of a facet by their value */
+abstract class FacetBucketsMerger<FacetRequestT extends FacetRequest> extends FacetMerger {
+  final FacetRequestT freq;
+  final Map<Object,FacetBucketMerger> buckets = new LinkedHashMap<Object,FacetBucketMerger>();
+
+  FacetBucketsMerger(FacetRequestT freq) {
+    this.freq = freq;
+  }
+
+  @Override
+  public void merge(Object facetResult, int shardNum) {
+    @SuppressWarnings("unchecked")
+    List<NamedList<Object>> shardBuckets = (List<NamedList<Object>>)((NamedList<?>)facetResult).get("buckets");
+    List<Object> vals = new ArrayList<Object>(shardBuckets.size());
+    for (NamedList<Object> bucket : shardBuckets) {
+      Object val = bucket.get("val");
+      FacetBucketMerger merger = buckets.get(val);
+      if (merger == null) {
+        merger = new FacetBucketMerger(freq, val);
+        buckets.put(val, merger);
+      }
+      merger.merge(bucket, shardNum);
+      vals.add(val);
+    }
+    mergedShardBuckets(shardNum, vals);
+  }
+
+  /** Called with the values of the buckets a shard returned */
+  protected void mergedShardBuckets(int shardNum, List<Object> vals) {
+  }
+
+  protected SimpleOrderedMap<Object> result(List<FacetBucketMerger> sorted, long mincount, int offset, int limit) {
+    List<Object> results = new ArrayList<Object>();
+    int skipped = 0;
+    for (FacetBucketMerger bucket : sorted) {
+      if (limit >= 0 && results.size() >= limit) break;
+      if (bucket.count < mincount) continue;
+      if (skipped < offset) {
+        skipped++;
+        continue;
+      }
+      results.add(bucket.getMergedResult());
+    }
+    SimpleOrderedMap<Object> result = new SimpleOrderedMap<Object>();
+    result.add("buckets", results);
+    return result;
+  }
+}
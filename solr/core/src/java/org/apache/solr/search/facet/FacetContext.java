@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrIndexSearcher;
+
+/**
+ * The state a facet is computed with: the domain of documents it splits into
+ * buckets, and whether the response is for a shard of a distributed request,
+ * in which case stats are returned in a mergeable form.
+ */
+public class FacetContext {
+  public final SolrQueryRequest req;
+  public final SolrIndexSearcher searcher;
+  public final DocSet base;
+  public final boolean isShard;
+
+  /** The buckets to refine per top level terms facet, or null for a normal request */
+  Map<String,List<Object>> refine;
+
+  public FacetContext(SolrQueryRequest req, DocSet base, boolean isShard) {
+    this.req = req;
+    this.searcher = req.getSearcher();
+    this.base = base;
+    this.isShard = isShard;
+  }
+
+  /** Returns the context for a nested facet computed over <code>domain</code> */
+  public FacetContext sub(DocSet domain) {
+    return new FacetContext(req, domain, isShard);
+  }
+}
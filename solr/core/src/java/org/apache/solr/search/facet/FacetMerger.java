@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.util.List;
+
+/**
+ * Combines the responses of the shards of a distributed request for a facet
+ * or a stat.  Shards return stats in a mergeable form (see {@link SlotAcc#getValue}),
+ * and more buckets than requested for terms facets.
+ */
+public abstract class FacetMerger {
+
+  public abstract void merge(Object facetResult, int shardNum);
+
+  public abstract Object getMergedResult();
+
+  /** Compares merged stats in ascending order, missing values first */
+  static int compareStats(Object a, Object b) {
+    if (a instanceof List) a = ((List<?>)a).isEmpty() ? null : ((List<?>)a).get(0);
+    if (b instanceof List) b = ((List<?>)b).isEmpty() ? null : ((List<?>)b).get(0);
+    if (a == null) return b == null ? 0 : -1;
+    if (b == null) return 1;
+    return Double.compare(((Number)a).doubleValue(), ((Number)b).doubleValue());
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.handler.component.SearchComponent;
+import org.apache.solr.handler.component.ShardRequest;
+import org.apache.solr.handler.component.ShardResponse;
+import org.noggit.JSONUtil;
+import org.noggit.ObjectBuilder;
+
+/**
+ * Computes the nested facets and stats described by the JSON of the
+ * <code>json.facet</code> parameter, e.g.
+ * <pre>
+ * json.facet={"categories":{"terms":{"field":"cat", "facet":{"avg_price":"avg(price)", "top_brands":{"terms":"brand"}}}}}
+ * </pre>
+ * The parameter must be strict JSON, with double quoted keys and strings.
+ * The counts and stats of all buckets of a facet are collected in a single pass
+ * over the docs, and the response is added under <code>facets</code>.
+ * <p>
+ * In a distributed request shards return more terms buckets than requested and
+ * their stats in a mergeable form.  The top buckets of top level terms facets that
+ * some shards did not return are then refined in a second phase, sent along with
+ * the requests for stored fields.
+ *
+ * @see FacetRequest
+ */
+public class FacetModule extends SearchComponent {
+
+  public static final String COMPONENT_NAME = "facet_module";
+
+  /** The JSON facet request */
+  public static final String JSON_FACET = "json.facet";
+
+  /** The buckets of top level terms facets a shard is asked to refine, as JSON */
+  public static final String JSON_FACET_REFINE = "json.facet.refine";
+
+  public static class FacetInfo {
+    FacetRequest freq;
+    FacetBucketMerger merger;
+  }
+
+  @Override
+  public void prepare(ResponseBuilder rb) throws IOException {
+    String json = rb.req.getParams().get(JSON_FACET);
+    if (json == null) return;
+
+    FacetInfo fi = new FacetInfo();
+    fi.freq = FacetRequest.parse(rb.req, fromJSON(json, JSON_FACET));
+    rb._jsonFacetInfo = fi;
+    rb.setNeedDocSet(true);
+  }
+
+  private static Object fromJSON(String json, String param) {
+    try {
+      return ObjectBuilder.fromJSON(json);
+    } catch (Exception e) {
+      // syntax errors are runtime exceptions of the JSON parser
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Error parsing JSON of " + param, e);
+    }
+  }
+
+  @Override
+  public void process(ResponseBuilder rb) throws IOException {
+    FacetInfo fi = rb._jsonFacetInfo;
+    if (fi == null) return;
+
+    SolrParams params = rb.req.getParams();
+    FacetContext fcontext = new FacetContext(rb.req, rb.getResults().docSet, params.getBool(ShardParams.IS_SHARD, false));
+    String refine = params.get(JSON_FACET_REFINE);
+    if (refine != null) {
+      @SuppressWarnings("unchecked")
+      Map<String,List<Object>> refineVals = (Map<String,List<Object>>)fromJSON(refine, JSON_FACET_REFINE);
+      fcontext.refine = refineVals;
+    }
+
+    FacetProcessor<?> proc = fi.freq.createFacetProcessor(fcontext);
+    proc.process();
+    rb.rsp.add("facets", proc.getResponse());
+  }
+
+  @Override
+  public int distributedProcess(ResponseBuilder rb) throws IOException {
+    FacetInfo fi = rb._jsonFacetInfo;
+    if (fi == null || fi.merger == null || rb.stage != ResponseBuilder.STAGE_GET_FIELDS) {
+      return ResponseBuilder.STAGE_DONE;
+    }
+
+    // refine the top buckets along with the requests for stored fields where possible,
+    // like FacetComponent does
+    Map<Integer,Map<String,List<Object>>> refinements = fi.merger.getRefinements();
+    for (Map.Entry<Integer,Map<String,List<Object>>> entry : refinements.entrySet()) {
+      String shard = rb.shards[entry.getKey()];
+
+      ShardRequest refineRequest = null;
+      for (ShardRequest sreq : rb.outgoing) {
+        if ((sreq.purpose & ShardRequest.PURPOSE_GET_FIELDS) != 0
+            && sreq.shards != null
+            && sreq.shards.length == 1
+            && sreq.shards[0].equals(shard)) {
+          refineRequest = sreq;
+          break;
+        }
+      }
+
+      boolean newRequest = refineRequest == null;
+      if (newRequest) {
+        refineRequest = new ShardRequest();
+        refineRequest.shards = new String[] { shard };
+        refineRequest.params = new ModifiableSolrParams(rb.req.getParams());
+        // don't request any documents
+        refineRequest.params.remove(CommonParams.START);
+        refineRequest.params.set(CommonParams.ROWS, "0");
+      }
+
+      refineRequest.purpose |= ShardRequest.PURPOSE_REFINE_JSON_FACETS;
+      refineRequest.params.set(JSON_FACET, rb.req.getParams().get(JSON_FACET));
+      refineRequest.params.set(JSON_FACET_REFINE, JSONUtil.toJSON(entry.getValue(), -1));
+
+      if (newRequest) {
+        rb.addRequest(this, refineRequest);
+      }
+    }
+
+    return ResponseBuilder.STAGE_DONE;
+  }
+
+  @Override
+  public void modifyRequest(ResponseBuilder rb, SearchComponent who, ShardRequest sreq) {
+    FacetInfo fi = rb._jsonFacetInfo;
+    if (fi == null) return;
+
+    if ((sreq.purpose & ShardRequest.PURPOSE_GET_TOP_IDS) != 0) {
+      sreq.purpose |= ShardRequest.PURPOSE_GET_JSON_FACETS;
+      if (fi.merger == null) {
+        fi.merger = new FacetBucketMerger(fi.freq);
+      }
+    } else if ((sreq.purpose & ShardRequest.PURPOSE_REFINE_JSON_FACETS) == 0) {
+      // turn off facets on other requests
+      sreq.params.remove(JSON_FACET);
+      sreq.params.remove(JSON_FACET_REFINE);
+    }
+  }
+
+  @Override
+  public void handleResponses(ResponseBuilder rb, ShardRequest sreq) {
+    FacetInfo fi = rb._jsonFacetInfo;
+    if (fi == null || fi.merger == null
+        || (sreq.purpose & (ShardRequest.PURPOSE_GET_JSON_FACETS | ShardRequest.PURPOSE_REFINE_JSON_FACETS)) == 0) {
+      return;
+    }
+
+    for (ShardResponse srsp : sreq.responses) {
+      @SuppressWarnings("unchecked")
+      NamedList<Object> facets = (NamedList<Object>)srsp.getSolrResponse().getResponse().get("facets");
+      if (facets == null) continue;  // e.g. a shard that failed with shards.tolerant
+      fi.merger.merge(facets, rb.getShardNum(srsp.getShard()));
+    }
+  }
+
+  @Override
+  public void finishStage(ResponseBuilder rb) {
+    FacetInfo fi = rb._jsonFacetInfo;
+    if (fi == null || fi.merger == null || rb.stage != ResponseBuilder.STAGE_GET_FIELDS) return;
+    // wait until STAGE_GET_FIELDS, when the refinements are in
+
+    rb.rsp.add("facets", fi.merger.getMergedResult());
+    rb._jsonFacetInfo = null;
+  }
+
+  /////////////////////////////////////////////
+  ///  SolrInfoMBean
+  ////////////////////////////////////////////
+
+  @Override
+  public String getDescription() {
+    return "JSON nested facets and stats";
+  }
+
+  @Override
+  public String getSource() {
+    return "$URL$";
+  }
+}
@@ -0,0 +1,316 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.queries.function.ValueSource;
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.StrField;
+import org.apache.solr.schema.TrieField;
+import org.apache.solr.search.FunctionQParser;
+import org.apache.solr.search.QParser;
+import org.apache.solr.search.QueryParsing;
+import org.apache.solr.search.SyntaxError;
+
+/**
+ * Parses the JSON facet syntax:
+ * <pre>
+ * {
+ *   "avg_price" : "avg(price)",
+ *   "categories" : { "terms" : { "field":"cat", "limit":5, "sort":"avg_price desc",
+ *                                "facet" : { "avg_price":"avg(price)", "brands":{"terms":"brand"} } } },
+ *   "prices" : { "range" : { "field":"price", "start":0, "end":100, "gap":20 } },
+ *   "cheap" : { "query" : { "q":"price:[0 TO 10]", "facet":{ "popular":"max(popularity)" } } }
+ * }
+ * </pre>
+ */
+class FacetParser {
+  private static final int MAX_RANGE_BUCKETS = 10000;
+
+  private final SolrQueryRequest req;
+
+  FacetParser(SolrQueryRequest req) {
+    this.req = req;
+  }
+
+  void parseSubs(FacetRequest parent, Object json) {
+    if (json == null) return;
+    if (!(json instanceof Map)) {
+      throw err("Expected a map of facets and stats, got " + json);
+    }
+    @SuppressWarnings("unchecked")
+    Map<String,Object> map = (Map<String,Object>)json;
+    for (Map.Entry<String,Object> entry : map.entrySet()) {
+      String key = entry.getKey();
+      Object value = entry.getValue();
+      if (value instanceof String) {
+        parent.facetStats.put(key, parseStat(key, (String)value));
+      } else if (value instanceof Map) {
+        parent.subFacets.put(key, parseFacet(key, getArgs(key, value)));
+      } else {
+        throw err("Expected a facet or a stat for '" + key + "', got " + value);
+      }
+    }
+  }
+
+  private FacetRequest parseFacet(String key, Map<String,Object> map) {
+    if (map.size() != 1) {
+      throw err("Expected exactly one facet type (terms, range or query) for '" + key + "', got " + map.keySet());
+    }
+    Map.Entry<String,Object> entry = map.entrySet().iterator().next();
+    String type = entry.getKey();
+    Object args = entry.getValue();
+    if ("terms".equals(type)) {
+      return parseTerms(key, args);
+    } else if ("range".equals(type)) {
+      return parseRange(key, args);
+    } else if ("query".equals(type)) {
+      return parseQuery(key, args);
+    }
+    throw err("Unknown facet type '" + type + "' for '" + key + "'");
+  }
+
+  private FacetTerms parseTerms(String key, Object args) {
+    FacetTerms facet = new FacetTerms();
+    Map<String,Object> m;
+    if (args instanceof String) {
+      facet.field = (String)args;
+      m = null;
+    } else {
+      m = getArgs(key, args);
+      facet.field = getString(key, m, "field", null);
+      facet.offset = (int)getLong(key, m, "offset", facet.offset);
+      facet.limit = (int)getLong(key, m, "limit", facet.limit);
+      facet.mincount = getLong(key, m, "mincount", facet.mincount);
+      parseSort(key, facet, getString(key, m, "sort", null));
+    }
+
+    SchemaField sf = getField(key, facet.field);
+    if (!(sf.getType() instanceof StrField)) {
+      throw err("terms facet '" + key + "' requires a string field, got " + sf.getName() + " of type " + sf.getType().getTypeName());
+    }
+    if (facet.offset < 0) {
+      throw err("offset of '" + key + "' must not be negative");
+    }
+
+    if (m != null) parseSubs(facet, m.get("facet"));
+
+    if (!FacetTerms.SORT_COUNT.equals(facet.sortVariable) && !FacetTerms.SORT_INDEX.equals(facet.sortVariable)
+        && !facet.facetStats.containsKey(facet.sortVariable)) {
+      throw err("terms facet '" + key + "' is sorted by '" + facet.sortVariable + "', which is not one of its stats");
+    }
+    return facet;
+  }
+
+  private void parseSort(String key, FacetTerms facet, String sort) {
+    if (sort == null) return;
+    String[] parts = sort.trim().split("\\s+");
+    if (parts.length > 2) {
+      throw err("Invalid sort '" + sort + "' for '" + key + "'");
+    }
+    facet.sortVariable = parts[0];
+    if (parts.length == 2) {
+      if ("asc".equals(parts[1])) {
+        facet.sortDescending = false;
+      } else if ("desc".equals(parts[1])) {
+        facet.sortDescending = true;
+      } else {
+        throw err("Invalid sort direction '" + parts[1] + "' for '" + key + "'");
+      }
+    } else {
+      // index order is ascending by default, everything else descending
+      facet.sortDescending = !FacetTerms.SORT_INDEX.equals(facet.sortVariable);
+    }
+  }
+
+  private FacetRange parseRange(String key, Object args) {
+    Map<String,Object> m = getArgs(key, args);
+    FacetRange facet = new FacetRange();
+    facet.field = getString(key, m, "field", null);
+    facet.start = getDouble(key, m, "start");
+    facet.end = getDouble(key, m, "end");
+    facet.gap = getDouble(key, m, "gap");
+    facet.mincount = getLong(key, m, "mincount", facet.mincount);
+
+    SchemaField sf = getField(key, facet.field);
+    FieldType ft = sf.getType();
+    if (!(ft instanceof TrieField) || ((TrieField)ft).getType() == TrieField.TrieTypes.DATE || sf.multiValued()) {
+      throw err("range facet '" + key + "' requires a single valued numeric trie field, got " + sf.getName());
+    }
+    if (!(facet.gap > 0)) {
+      throw err("gap of range facet '" + key + "' must be positive");
+    }
+    if (!(facet.end > facet.start)) {
+      throw err("end of range facet '" + key + "' must be greater than its start");
+    }
+    if ((facet.end - facet.start) / facet.gap > MAX_RANGE_BUCKETS) {
+      throw err("range facet '" + key + "' has more than " + MAX_RANGE_BUCKETS + " buckets");
+    }
+    TrieField.TrieTypes type = ((TrieField)ft).getType();
+    if ((type == TrieField.TrieTypes.INTEGER || type == TrieField.TrieTypes.LONG)
+        && (facet.start != Math.floor(facet.start) || facet.end != Math.floor(facet.end) || facet.gap != Math.floor(facet.gap))) {
+      throw err("start, end and gap of range facet '" + key + "' must be integers for field " + sf.getName());
+    }
+
+    parseSubs(facet, m.get("facet"));
+    return facet;
+  }
+
+  private FacetQuery parseQuery(String key, Object args) {
+    Map<String,Object> m;
+    String qstring;
+    if (args instanceof String) {
+      qstring = (String)args;
+      m = null;
+    } else {
+      m = getArgs(key, args);
+      qstring = getString(key, m, "q", null);
+    }
+    if (qstring == null) {
+      throw err("Missing q for query facet '" + key + "'");
+    }
+    Query q;
+    try {
+      q = QParser.getParser(qstring, null, req).getQuery();
+    } catch (SyntaxError e) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Error parsing query of facet '" + key + "'", e);
+    }
+    FacetQuery facet = new FacetQuery(q);
+    if (m != null) parseSubs(facet, m.get("facet"));
+    return facet;
+  }
+
+  /**
+   * Parses a stat, a function of the values in the bucket such as <code>sum(price)</code>
+   * or <code>percentile(price,50,99)</code>.  The argument of the numeric stats may be
+   * any function query.
+   */
+  AggValueSource parseStat(String key, String stat) {
+    stat = stat.trim();
+    int lparen = stat.indexOf('(');
+    if (lparen <= 0 || !stat.endsWith(")")) {
+      throw err("Invalid stat '" + stat + "' for '" + key + "'");
+    }
+    String name = stat.substring(0, lparen).trim();
+    // keep the closing paren, the function parser stops there
+    String args = stat.substring(lparen + 1);
+
+    if ("unique".equals(name)) {
+      String field = args.substring(0, args.length() - 1).trim();
+      SchemaField sf = getField(key, field);
+      if (!(sf.getType() instanceof StrField)) {
+        throw err("unique() of '" + key + "' requires a string field, got " + field);
+      }
+      return new UniqueAgg(field);
+    }
+
+    try {
+      FunctionQParser fp = new FunctionQParser(args, null, req.getParams(), req);
+      fp.sp = new QueryParsing.StrParser(args);
+      ValueSource vs = fp.parseValueSource();
+      if ("sum".equals(name)) {
+        return new SumAgg(vs);
+      } else if ("avg".equals(name)) {
+        return new AvgAgg(vs);
+      } else if ("min".equals(name)) {
+        return new MinMaxAgg(vs, true);
+      } else if ("max".equals(name)) {
+        return new MinMaxAgg(vs, false);
+      } else if ("percentile".equals(name)) {
+        List<Double> percentiles = new ArrayList<Double>();
+        while (fp.hasMoreArguments()) {
+          double p = fp.parseDouble();
+          if (p < 0 || p > 100) {
+            throw err("percentile of '" + key + "' must be between 0 and 100, got " + p);
+          }
+          percentiles.add(p);
+        }
+        if (percentiles.isEmpty()) {
+          throw err("percentile() of '" + key + "' requires at least one percentile");
+        }
+        double[] arr = new double[percentiles.size()];
+        for (int i = 0; i < arr.length; i++) {
+          arr[i] = percentiles.get(i);
+        }
+        return new PercentileAgg(vs, arr);
+      }
+    } catch (SyntaxError e) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Error parsing stat '" + stat + "' of '" + key + "'", e);
+    }
+    throw err("Unknown stat '" + name + "' for '" + key + "'");
+  }
+
+  private SchemaField getField(String key, String field) {
+    if (field == null) {
+      throw err("Missing field for '" + key + "'");
+    }
+    SchemaField sf = req.getSchema().getFieldOrNull(field);
+    if (sf == null) {
+      throw err("Unknown field '" + field + "' for '" + key + "'");
+    }
+    if (!sf.indexed() && !sf.hasDocValues()) {
+      throw err("Field '" + field + "' of '" + key + "' must be indexed or have docValues");
+    }
+    return sf;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<String,Object> getArgs(String key, Object args) {
+    if (!(args instanceof Map)) {
+      throw err("Expected a map of arguments for '" + key + "', got " + args);
+    }
+    return (Map<String,Object>)args;
+  }
+
+  private String getString(String key, Map<String,Object> m, String name, String def) {
+    Object o = m.get(name);
+    if (o == null) return def;
+    if (!(o instanceof String)) {
+      throw err("Expected a string for " + name + " of '" + key + "', got " + o);
+    }
+    return (String)o;
+  }
+
+  private long getLong(String key, Map<String,Object> m, String name, long def) {
+    Object o = m.get(name);
+    if (o == null) return def;
+    if (!(o instanceof Long) && !(o instanceof Integer)) {
+      throw err("Expected an integer for " + name + " of '" + key + "', got " + o);
+    }
+    return ((Number)o).longValue();
+  }
+
+  private double getDouble(String key, Map<String,Object> m, String name) {
+    Object o = m.get(name);
+    if (!(o instanceof Number)) {
+      throw err("Expected a number for " + name + " of '" + key + "', got " + o);
+    }
+    return ((Number)o).doubleValue();
+  }
+
+  private static SolrException err(String msg) {
+    return new SolrException(SolrException.ErrorCode.BAD_REQUEST, msg);
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.search.DocIterator;
+import org.apache.solr.search.DocSet;
+
+/**
+ * Computes the response of a {@link FacetRequest} over the domain of its
+ * {@link FacetContext}.  The counts and stats of all buckets of a facet are
+ * collected in a single pass over the domain, with one slot per bucket in
+ * every {@link SlotAcc}; nested facets are then computed over the domain of
+ * every returned bucket.
+ */
+public abstract class FacetProcessor<FacetRequestT extends FacetRequest> {
+  protected final FacetContext fcontext;
+  protected final FacetRequestT freq;
+  protected SimpleOrderedMap<Object> response;
+
+  FacetProcessor(FacetContext fcontext, FacetRequestT freq) {
+    this.fcontext = fcontext;
+    this.freq = freq;
+  }
+
+  public abstract void process() throws IOException;
+
+  public Object getResponse() {
+    return response;
+  }
+
+  protected SlotAcc[] createAccs(int numSlots) throws IOException {
+    SlotAcc[] accs = new SlotAcc[freq.getFacetStats().size()];
+    int i = 0;
+    for (AggValueSource agg : freq.getFacetStats().values()) {
+      accs[i++] = agg.createSlotAcc(fcontext, numSlots);
+    }
+    return accs;
+  }
+
+  /** Fills <code>bucket</code> with the count, the stats and the nested facets of <code>domain</code> */
+  protected void fillBucket(SimpleOrderedMap<Object> bucket, DocSet domain) throws IOException {
+    bucket.add("count", (long)domain.size());
+    if (!freq.getFacetStats().isEmpty()) {
+      SlotAcc[] accs = createAccs(1);
+      collect(domain, accs);
+      addStats(bucket, accs, 0);
+    }
+    processSubs(bucket, domain);
+  }
+
+  protected void addStats(SimpleOrderedMap<Object> bucket, SlotAcc[] accs, int slot) throws IOException {
+    int i = 0;
+    for (String name : freq.getFacetStats().keySet()) {
+      Object val = accs[i++].getValue(slot);
+      if (val != null) {
+        bucket.add(name, val);
+      }
+    }
+  }
+
+  protected void processSubs(SimpleOrderedMap<Object> bucket, DocSet domain) throws IOException {
+    for (Map.Entry<String,FacetRequest> entry : freq.getSubFacets().entrySet()) {
+      FacetProcessor<?> sub = entry.getValue().createFacetProcessor(fcontext.sub(domain));
+      sub.process();
+      bucket.add(entry.getKey(), sub.getResponse());
+    }
+  }
+
+  /** Collects every doc of <code>docs</code> into slot 0 of <code>accs</code> */
+  protected void collect(DocSet docs, SlotAcc[] accs) throws IOException {
+    collect(docs, accs, null);
+  }
+
+  /**
+   * Visits every doc of <code>docs</code> once, positioning the accumulators (and
+   * <code>buckets</code>) on the segment of the doc first.  Docs are collected into
+   * slot 0, or into the slots of their buckets if <code>buckets</code> is not null.
+   */
+  void collect(DocSet docs, SlotAcc[] accs, FacetBucketProcessor<?> buckets) throws IOException {
+    List<AtomicReaderContext> leaves = fcontext.searcher.getTopReaderContext().leaves();
+    int segBase = 0;
+    int segEnd = -1;
+    for (DocIterator iter = docs.iterator(); iter.hasNext();) {
+      int doc = iter.nextDoc();
+      // most DocSets iterate in order, but not all of them
+      if (doc >= segEnd || doc < segBase) {
+        AtomicReaderContext context = leaves.get(ReaderUtil.subIndex(doc, leaves));
+        segBase = context.docBase;
+        segEnd = segBase + context.reader().maxDoc();
+        for (SlotAcc acc : accs) {
+          acc.setNextReader(context);
+        }
+        if (buckets != null) {
+          buckets.setNextReader(context);
+        }
+      }
+
+      int segDoc = doc - segBase;
+      if (buckets != null) {
+        buckets.collectBucketDoc(doc, segDoc, accs);
+      } else {
+        for (SlotAcc acc : accs) {
+          acc.collect(segDoc, 0);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.search.DocSet;
+
+/** Computes a single bucket, of the docs of the domain that match the query of the facet */
+class FacetQueryProcessor extends FacetProcessor<FacetQuery> {
+
+  FacetQueryProcessor(FacetContext fcontext, FacetQuery freq) {
+    super(fcontext, freq);
+  }
+
+  @Override
+  public void process() throws IOException {
+    DocSet domain = freq.q == null ? fcontext.base : fcontext.searcher.getDocSet(freq.q, fcontext.base);
+    response = new SimpleOrderedMap<Object>();
+    if (fcontext.refine != null) {
+      refine(domain);
+    } else {
+      fillBucket(response, domain);
+    }
+  }
+
+  /** Computes only the requested buckets of the top level terms facets */
+  private void refine(DocSet domain) throws IOException {
+    for (Map.Entry<String,List<Object>> entry : fcontext.refine.entrySet()) {
+      FacetRequest sub = freq.getSubFacets().get(entry.getKey());
+      if (!(sub instanceof FacetTerms)) continue;
+      FacetTermsProcessor proc = new FacetTermsProcessor(fcontext.sub(domain), (FacetTerms)sub);
+      proc.refineVals = entry.getValue();
+      proc.process();
+      response.add(entry.getKey(), proc.getResponse());
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+/** One bucket per range of <code>gap</code> between <code>start</code> and <code>end</code> of a numeric field */
+class FacetRange extends FacetRequest {
+  String field;
+  double start;
+  double end;
+  double gap;
+  long mincount = 0;
+
+  @Override
+  public FacetProcessor<?> createFacetProcessor(FacetContext fcontext) {
+    return new FacetRangeProcessor(fcontext, this);
+  }
+
+  @Override
+  public FacetMerger createFacetMerger() {
+    return new FacetRangeMerger(this);
+  }
+}
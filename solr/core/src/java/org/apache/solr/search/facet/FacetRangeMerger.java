@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/** Merges the buckets of a range facet, which all shards return */
+class FacetRangeMerger extends FacetBucketsMerger<FacetRange> {
+
+  FacetRangeMerger(FacetRange freq) {
+    super(freq);
+  }
+
+  @Override
+  public Object getMergedResult() {
+    List<FacetBucketMerger> sorted = new ArrayList<FacetBucketMerger>(buckets.values());
+    Collections.sort(sorted, new Comparator<FacetBucketMerger>() {
+      @Override
+      public int compare(FacetBucketMerger a, FacetBucketMerger b) {
+        return Double.compare(((Number)a.val).doubleValue(), ((Number)b.val).doubleValue());
+      }
+    });
+    return result(sorted, freq.mincount, 0, -1);
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.queries.function.FunctionValues;
+import org.apache.lucene.queries.function.ValueSource;
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.TrieField;
+
+/** Computes one bucket per range of a numeric field */
+class FacetRangeProcessor extends FacetBucketProcessor<FacetRange> {
+  private SchemaField sf;
+  private TrieField.TrieTypes type;
+  private int numBuckets;
+  private int[] counts;
+  private ValueSource vs;
+  @SuppressWarnings("rawtypes")  // the function query API uses raw maps
+  private Map vsContext;
+  private FunctionValues values;
+
+  FacetRangeProcessor(FacetContext fcontext, FacetRange freq) {
+    super(fcontext, freq);
+  }
+
+  @Override
+  public void process() throws IOException {
+    sf = fcontext.searcher.getSchema().getField(freq.field);
+    TrieField ft = (TrieField)sf.getType();
+    type = ft.getType();
+    numBuckets = (int)Math.ceil((freq.end - freq.start) / freq.gap);
+    counts = new int[numBuckets];
+
+    vs = ft.getValueSource(sf, null);
+    vsContext = ValueSource.newContext(fcontext.searcher);
+    vs.createWeight(vsContext, fcontext.searcher);
+
+    SlotAcc[] accs = createAccs(numBuckets);
+    collectBuckets(fcontext.base, accs);
+
+    long mincount = fcontext.isShard ? Math.min(freq.mincount, 1) : freq.mincount;
+    List<SimpleOrderedMap<Object>> buckets = new ArrayList<SimpleOrderedMap<Object>>();
+    for (int slot = 0; slot < numBuckets; slot++) {
+      if (counts[slot] < mincount) continue;
+      Object low = toValue(freq.start + slot * freq.gap);
+      SimpleOrderedMap<Object> bucket = new SimpleOrderedMap<Object>();
+      bucket.add("val", low);
+      bucket.add("count", (long)counts[slot]);
+      addStats(bucket, accs, slot);
+      if (!freq.getSubFacets().isEmpty()) {
+        Object high = toValue(Math.min(freq.start + (slot + 1) * freq.gap, freq.end));
+        Query q = ft.getRangeQuery(null, sf, low.toString(), high.toString(), true, false);
+        processSubs(bucket, fcontext.searcher.getDocSet(q, fcontext.base));
+      }
+      buckets.add(bucket);
+    }
+    response = new SimpleOrderedMap<Object>();
+    response.add("buckets", buckets);
+  }
+
+  private Object toValue(double val) {
+    switch (type) {
+      case INTEGER:
+        return (int)val;
+      case LONG:
+        return (long)val;
+      case FLOAT:
+        return (float)val;
+      default:
+        return val;
+    }
+  }
+
+  @Override
+  protected void setNextReader(AtomicReaderContext context) throws IOException {
+    values = vs.getValues(vsContext, context);
+  }
+
+  @Override
+  protected void collectBucketDoc(int doc, int segDoc, SlotAcc[] accs) throws IOException {
+    if (!values.exists(segDoc)) return;
+    double val = values.doubleVal(segDoc);
+    if (val < freq.start || val >= freq.end) return;
+    int slot = Math.min((int)((val - freq.start) / freq.gap), numBuckets - 1);
+    counts[slot]++;
+    for (SlotAcc acc : accs) {
+      acc.collect(segDoc, slot);
+    }
+  }
+}
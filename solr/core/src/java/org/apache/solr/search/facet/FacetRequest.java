@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.solr.request.SolrQueryRequest;
+
+/**
+ * A facet request parsed from the <code>json.facet</code> parameter.  Every facet
+ * request describes how to split its domain into buckets, and may carry stats
+ * (<code>"avg(price)"</code>) and nested facets that are computed for every bucket.
+ * <p>
+ * The top level request is a query facet without a query, whose domain is the
+ * set of documents matching the main query and filters.
+ */
+public abstract class FacetRequest {
+  protected Map<String,AggValueSource> facetStats = new LinkedHashMap<String,AggValueSource>();
+  protected Map<String,FacetRequest> subFacets = new LinkedHashMap<String,FacetRequest>();
+
+  public Map<String,AggValueSource> getFacetStats() {
+    return facetStats;
+  }
+
+  public Map<String,FacetRequest> getSubFacets() {
+    return subFacets;
+  }
+
+  /** Creates the processor that computes this facet over the domain of <code>fcontext</code> */
+  public abstract FacetProcessor<?> createFacetProcessor(FacetContext fcontext);
+
+  /** Creates the merger that combines the responses of the shards for this facet */
+  public abstract FacetMerger createFacetMerger();
+
+  /**
+   * Parses the top level facet request from the already parsed JSON of the
+   * <code>json.facet</code> parameter.
+   */
+  public static FacetRequest parse(SolrQueryRequest req, Object json) {
+    FacetQuery top = new FacetQuery(null);
+    new FacetParser(req).parseSubs(top, json);
+    return top;
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+/** One bucket per indexed term of a string field */
+class FacetTerms extends FacetRequest {
+  static final String SORT_COUNT = "count";
+  static final String SORT_INDEX = "index";
+
+  String field;
+  int offset;
+  int limit = 10;
+  long mincount = 1;
+  String sortVariable = SORT_COUNT;
+  boolean sortDescending = true;
+
+  /**
+   * The number of buckets asked from every shard: the top <code>offset+limit</code>
+   * buckets over all shards are likely to be among the top buckets of each shard,
+   * but not certain to be, so more are requested to reduce the refinement needed.
+   */
+  int getShardLimit() {
+    if (limit < 0) return -1;
+    return (int)Math.min(Integer.MAX_VALUE, (long)((offset + (long)limit) * 1.5) + 10);
+  }
+
+  @Override
+  public FacetProcessor<?> createFacetProcessor(FacetContext fcontext) {
+    return new FacetTermsProcessor(fcontext, this);
+  }
+
+  @Override
+  public FacetMerger createFacetMerger() {
+    return new FacetTermsMerger(this);
+  }
+}
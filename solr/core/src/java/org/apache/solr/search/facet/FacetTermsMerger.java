@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Merges the buckets of a terms facet, and finds the top buckets that some shards have to refine */
+class FacetTermsMerger extends FacetBucketsMerger<FacetTerms> {
+
+  private static class ShardInfo {
+    final Set<Object> vals = new HashSet<Object>();
+    /** True if the shard returned all of its buckets, so none of them need refinement */
+    boolean exhaustive;
+  }
+
+  private final Map<Integer,ShardInfo> shards = new HashMap<Integer,ShardInfo>();
+
+  FacetTermsMerger(FacetTerms freq) {
+    super(freq);
+  }
+
+  @Override
+  protected void mergedShardBuckets(int shardNum, List<Object> vals) {
+    ShardInfo info = shards.get(shardNum);
+    if (info == null) {
+      // the first response of the shard; refinement responses come after it
+      info = new ShardInfo();
+      int shardLimit = freq.getShardLimit();
+      info.exhaustive = shardLimit < 0 || vals.size() < shardLimit;
+      shards.put(shardNum, info);
+    }
+    info.vals.addAll(vals);
+  }
+
+  private List<FacetBucketMerger> sortedBuckets() {
+    List<FacetBucketMerger> sorted = new ArrayList<FacetBucketMerger>(buckets.values());
+    final boolean byCount = FacetTerms.SORT_COUNT.equals(freq.sortVariable);
+    final boolean byIndex = FacetTerms.SORT_INDEX.equals(freq.sortVariable);
+    if (!byCount && !byIndex) {
+      for (FacetBucketMerger bucket : sorted) {
+        FacetMerger stat = bucket.getMerger(freq.sortVariable);
+        bucket.sortVal = stat == null ? null : stat.getMergedResult();
+      }
+    }
+    final int sign = freq.sortDescending ? -1 : 1;
+    Collections.sort(sorted, new Comparator<FacetBucketMerger>() {
+      @Override
+      public int compare(FacetBucketMerger a, FacetBucketMerger b) {
+        int cmp = 0;
+        if (byCount) {
+          cmp = a.count < b.count ? -1 : (a.count == b.count ? 0 : 1);
+        } else if (!byIndex) {
+          cmp = compareStats(a.sortVal, b.sortVal);
+        }
+        if (cmp != 0) {
+          return sign * cmp;
+        }
+        // ties are broken by index order, which is the only order for index sorts
+        @SuppressWarnings("unchecked")
+        Comparable<Object> aval = (Comparable<Object>)a.val;
+        cmp = aval.compareTo(b.val);
+        return byIndex ? sign * cmp : cmp;
+      }
+    });
+    return sorted;
+  }
+
+  @Override
+  public Object getMergedResult() {
+    return result(sortedBuckets(), freq.mincount, freq.offset, freq.limit);
+  }
+
+  /**
+   * Returns, per shard, the values of the top buckets that the shard did not return
+   * although it may have them.  Their counts and stats are requested in a second phase.
+   */
+  Map<Integer,List<Object>> getRefinements() {
+    Map<Integer,List<Object>> refinements = new HashMap<Integer,List<Object>>();
+    if (freq.limit < 0) return refinements;
+    List<FacetBucketMerger> sorted = sortedBuckets();
+    int numTop = (int)Math.min((long)freq.offset + freq.limit, sorted.size());
+    for (FacetBucketMerger bucket : sorted.subList(0, numTop)) {
+      for (Map.Entry<Integer,ShardInfo> entry : shards.entrySet()) {
+        ShardInfo info = entry.getValue();
+        if (info.exhaustive || info.vals.contains(bucket.val)) continue;
+        List<Object> vals = refinements.get(entry.getKey());
+        if (vals == null) {
+          vals = new ArrayList<Object>();
+          refinements.put(entry.getKey(), vals);
+        }
+        vals.add(bucket.val);
+      }
+    }
+    return refinements;
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.DocSet;
+
+/** Computes one bucket per term of a string field, over the top level ords of the field */
+class FacetTermsProcessor extends FacetBucketProcessor<FacetTerms> {
+  /** When set, only the buckets of these values are computed, for distributed refinement */
+  List<Object> refineVals;
+
+  private SchemaField sf;
+  private SortedDocValues si;
+  private SortedSetDocValues msi;
+  private int[] counts;
+
+  FacetTermsProcessor(FacetContext fcontext, FacetTerms freq) {
+    super(fcontext, freq);
+  }
+
+  @Override
+  public void process() throws IOException {
+    sf = fcontext.searcher.getSchema().getField(freq.field);
+    response = new SimpleOrderedMap<Object>();
+    if (refineVals != null) {
+      refine();
+      return;
+    }
+
+    // top level ords, so that every term has a single slot across segments
+    AtomicReader reader = fcontext.searcher.getAtomicReader();
+    int numSlots;
+    if (sf.multiValued()) {
+      msi = FieldCache.DEFAULT.getDocTermOrds(reader, freq.field);
+      numSlots = (int)msi.getValueCount();
+    } else {
+      si = FieldCache.DEFAULT.getTermsIndex(reader, freq.field);
+      numSlots = si.getValueCount();
+    }
+
+    counts = new int[numSlots];
+    SlotAcc[] accs = createAccs(numSlots);
+    if (numSlots > 0) {
+      collectBuckets(fcontext.base, accs);
+    }
+
+    // shards return more buckets with any count, the totals are only known after merging
+    long mincount = fcontext.isShard ? Math.min(freq.mincount, 1) : freq.mincount;
+    int offset = fcontext.isShard ? 0 : freq.offset;
+    int limit = fcontext.isShard ? freq.getShardLimit() : freq.limit;
+    int[] slots = topSlots(accs, mincount, offset, limit);
+
+    List<SimpleOrderedMap<Object>> buckets = new ArrayList<SimpleOrderedMap<Object>>(slots.length);
+    BytesRef term = new BytesRef();
+    for (int slot : slots) {
+      if (si != null) {
+        si.lookupOrd(slot, term);
+      } else {
+        msi.lookupOrd(slot, term);
+      }
+      Object val = sf.getType().toObject(sf, term);
+      SimpleOrderedMap<Object> bucket = new SimpleOrderedMap<Object>();
+      bucket.add("val", val);
+      bucket.add("count", (long)counts[slot]);
+      addStats(bucket, accs, slot);
+      if (!freq.getSubFacets().isEmpty()) {
+        processSubs(bucket, getBucketDomain(val));
+      }
+      buckets.add(bucket);
+    }
+    response.add("buckets", buckets);
+  }
+
+  private void refine() throws IOException {
+    List<SimpleOrderedMap<Object>> buckets = new ArrayList<SimpleOrderedMap<Object>>(refineVals.size());
+    for (Object val : refineVals) {
+      SimpleOrderedMap<Object> bucket = new SimpleOrderedMap<Object>();
+      bucket.add("val", val);
+      fillBucket(bucket, getBucketDomain(val));
+      buckets.add(bucket);
+    }
+    response.add("buckets", buckets);
+  }
+
+  private DocSet getBucketDomain(Object val) throws IOException {
+    Query q = sf.getType().getFieldQuery(null, sf, val.toString());
+    return fcontext.searcher.getDocSet(q, fcontext.base);
+  }
+
+  @Override
+  protected void setNextReader(AtomicReaderContext context) {
+    // the ords are top level, looked up with the top level doc
+  }
+
+  @Override
+  protected void collectBucketDoc(int doc, int segDoc, SlotAcc[] accs) throws IOException {
+    if (si != null) {
+      int ord = si.getOrd(doc);
+      if (ord < 0) return;
+      counts[ord]++;
+      for (SlotAcc acc : accs) {
+        acc.collect(segDoc, ord);
+      }
+    } else {
+      msi.setDocument(doc);
+      long ord;
+      while ((ord = msi.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+        counts[(int)ord]++;
+        for (SlotAcc acc : accs) {
+          acc.collect(segDoc, (int)ord);
+        }
+      }
+    }
+  }
+
+  private static class Slot {
+    int slot;
+  }
+
+  /** Returns the slots of the buckets to return, in order */
+  private int[] topSlots(SlotAcc[] accs, long mincount, int offset, int limit) {
+    final int numSlots = counts.length;
+    SlotAcc sortAcc = null;
+    int i = 0;
+    for (String name : freq.getFacetStats().keySet()) {
+      if (name.equals(freq.sortVariable)) {
+        sortAcc = accs[i];
+      }
+      i++;
+    }
+    final SlotAcc sortBy = sortAcc;
+    final boolean byCount = sortBy == null && FacetTerms.SORT_COUNT.equals(freq.sortVariable);
+    final boolean descending = freq.sortDescending;
+
+    int maxQueueSize = limit < 0 ? numSlots : (int)Math.min((long)offset + limit, numSlots);
+    if (maxQueueSize <= 0) {
+      return new int[0];
+    }
+
+    // the top of the queue is the least competitive bucket
+    PriorityQueue<Slot> queue = new PriorityQueue<Slot>(maxQueueSize) {
+      @Override
+      protected boolean lessThan(Slot a, Slot b) {
+        int cmp;
+        if (sortBy != null) {
+          cmp = sortBy.compare(a.slot, b.slot);
+        } else if (byCount) {
+          cmp = counts[a.slot] < counts[b.slot] ? -1 : (counts[a.slot] == counts[b.slot] ? 0 : 1);
+        } else {
+          cmp = 0;
+        }
+        if (cmp == 0) {
+          // ties are broken by index order, which is the only order for index sorts
+          return byCount || sortBy != null || !descending ? a.slot > b.slot : a.slot < b.slot;
+        }
+        return descending ? cmp < 0 : cmp > 0;
+      }
+    };
+
+    Slot spare = null;
+    for (int slot = 0; slot < numSlots; slot++) {
+      if (counts[slot] < mincount) continue;
+      if (spare == null) {
+        spare = new Slot();
+      }
+      spare.slot = slot;
+      spare = queue.insertWithOverflow(spare);
+    }
+
+    int size = queue.size();
+    int[] sorted = new int[size];
+    for (int j = size - 1; j >= 0; j--) {
+      sorted[j] = queue.pop().slot;
+    }
+    if (offset >= size) {
+      return new int[0];
+    }
+    int[] slots = new int[size - offset];
+    System.arraycopy(sorted, offset, slots, 0, slots.length);
+    return slots;
+  }
+}
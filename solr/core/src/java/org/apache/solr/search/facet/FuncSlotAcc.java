@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.queries.function.FunctionValues;
+import org.apache.lucene.queries.function.ValueSource;
+
+/** An accumulator over the values of a function */
+abstract class FuncSlotAcc extends SlotAcc {
+  protected final ValueSource vs;
+  @SuppressWarnings("rawtypes")  // the function query API uses raw maps
+  protected final Map vsContext;
+  protected FunctionValues values;
+
+  FuncSlotAcc(ValueSource vs, FacetContext fcontext) throws IOException {
+    super(fcontext);
+    this.vs = vs;
+    this.vsContext = ValueSource.newContext(fcontext.searcher);
+    vs.createWeight(vsContext, fcontext.searcher);
+  }
+
+  @Override
+  public void setNextReader(AtomicReaderContext readerContext) throws IOException {
+    values = vs.getValues(vsContext, readerContext);
+  }
+}
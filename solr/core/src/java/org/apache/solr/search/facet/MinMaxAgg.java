@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.queries.function.ValueSource;
+
+/** <code>min(f)</code> and <code>max(f)</code>: the extremes of the function over the docs of a bucket */
+class MinMaxAgg extends AggValueSource {
+  private final ValueSource vs;
+  private final boolean min;
+
+  MinMaxAgg(ValueSource vs, boolean min) {
+    this.vs = vs;
+    this.min = min;
+  }
+
+  @Override
+  public SlotAcc createSlotAcc(FacetContext fcontext, int numSlots) throws IOException {
+    return new MinMaxSlotAcc(vs, fcontext, numSlots, min);
+  }
+
+  @Override
+  public FacetMerger createFacetMerger() {
+    return new MinMaxMerger(min);
+  }
+}
+
+
+class MinMaxSlotAcc extends FuncSlotAcc {
+  private final double[] result;
+  private final boolean min;
+
+  MinMaxSlotAcc(ValueSource vs, FacetContext fcontext, int numSlots, boolean min) throws IOException {
+    super(vs, fcontext);
+    this.min = min;
+    result = new double[numSlots];
+    Arrays.fill(result, Double.NaN);
+  }
+
+  @Override
+  public void collect(int doc, int slot) {
+    if (!values.exists(doc)) return;
+    double val = values.doubleVal(doc);
+    double current = result[slot];
+    if (Double.isNaN(current) || (min ? val < current : val > current)) {
+      result[slot] = val;
+    }
+  }
+
+  @Override
+  public int compare(int slotA, int slotB) {
+    double a = result[slotA];
+    double b = result[slotB];
+    if (Double.isNaN(a)) return Double.isNaN(b) ? 0 : -1;
+    if (Double.isNaN(b)) return 1;
+    return Double.compare(a, b);
+  }
+
+  @Override
+  public Object getValue(int slot) {
+    return Double.isNaN(result[slot]) ? null : result[slot];
+  }
+}
+
+
+class MinMaxMerger extends FacetMerger {
+  private final boolean min;
+  private double val = Double.NaN;
+
+  MinMaxMerger(boolean min) {
+    this.min = min;
+  }
+
+  @Override
+  public void merge(Object facetResult, int shardNum) {
+    double shardVal = ((Number)facetResult).doubleValue();
+    if (Double.isNaN(val) || (min ? shardVal < val : shardVal > val)) {
+      val = shardVal;
+    }
+  }
+
+  @Override
+  public Object getMergedResult() {
+    return Double.isNaN(val) ? null : val;
+  }
+}
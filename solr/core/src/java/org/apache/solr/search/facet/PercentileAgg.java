@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.queries.function.ValueSource;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.solr.util.TDigest;
+
+/** <code>percentile(f,p1,p2,...)</code>: percentiles of the function over the docs of a bucket */
+class PercentileAgg extends AggValueSource {
+  /** Slots with more values than this estimate their percentiles with a t-digest */
+  static final int EXACT_LIMIT = 1000;
+
+  private final ValueSource vs;
+  private final double[] percentiles;
+
+  PercentileAgg(ValueSource vs, double[] percentiles) {
+    this.vs = vs;
+    this.percentiles = percentiles;
+  }
+
+  @Override
+  public SlotAcc createSlotAcc(FacetContext fcontext, int numSlots) throws IOException {
+    return new PercentileSlotAcc(vs, fcontext, numSlots, percentiles);
+  }
+
+  @Override
+  public FacetMerger createFacetMerger() {
+    return new PercentileMerger(percentiles);
+  }
+
+  /** Returns the nearest rank percentile <code>p</code> of the first <code>size</code> values of <code>sorted</code> */
+  static double percentile(double[] sorted, int size, double p) {
+    int idx = (int)Math.round(p / 100 * (size - 1));
+    return sorted[idx];
+  }
+
+  /** Returns a single percentile as a number, several ones as a list */
+  static Object getPercentiles(double[] sorted, int size, double[] percentiles) {
+    if (percentiles.length == 1) {
+      return percentile(sorted, size, percentiles[0]);
+    }
+    List<Double> lst = new ArrayList<Double>(percentiles.length);
+    for (double p : percentiles) {
+      lst.add(percentile(sorted, size, p));
+    }
+    return lst;
+  }
+
+  /** Returns the estimates of a single percentile as a number, of several ones as a list */
+  static Object getPercentiles(TDigest digest, double[] percentiles) {
+    if (percentiles.length == 1) {
+      return digest.quantile(percentiles[0] / 100);
+    }
+    List<Double> lst = new ArrayList<Double>(percentiles.length);
+    for (double p : percentiles) {
+      lst.add(digest.quantile(p / 100));
+    }
+    return lst;
+  }
+}
+
+
+/**
+ * Computes the percentiles of every slot.  A slot keeps its values, for exact nearest
+ * rank percentiles, until it has more than {@link PercentileAgg#EXACT_LIMIT} of them, and
+ * then summarizes them with a {@link TDigest}.  Shards always return the serialized
+ * digest, which the {@link PercentileMerger} merges.
+ */
+class PercentileSlotAcc extends FuncSlotAcc {
+  private final double[] percentiles;
+  private final double[][] vals;  // the values of a slot, until it switches to a digest
+  private final int[] sizes;
+  private final boolean[] sorted;
+  private final TDigest[] digests;
+
+  PercentileSlotAcc(ValueSource vs, FacetContext fcontext, int numSlots, double[] percentiles) throws IOException {
+    super(vs, fcontext);
+    this.percentiles = percentiles;
+    vals = new double[numSlots][];
+    sizes = new int[numSlots];
+    sorted = new boolean[numSlots];
+    digests = new TDigest[numSlots];
+  }
+
+  @Override
+  public void collect(int doc, int slot) {
+    if (!values.exists(doc)) return;
+    double val = values.doubleVal(doc);
+    TDigest digest = digests[slot];
+    if (digest != null) {
+      digest.add(val);
+      return;
+    }
+    double[] arr = vals[slot];
+    int size = sizes[slot];
+    if (arr == null) {
+      vals[slot] = arr = new double[8];
+    } else if (size == arr.length) {
+      vals[slot] = arr = ArrayUtil.grow(arr, size + 1);
+    }
+    arr[size] = val;
+    sizes[slot] = size + 1;
+    if (size + 1 > PercentileAgg.EXACT_LIMIT) {
+      digests[slot] = toDigest(slot);
+      vals[slot] = null;
+    }
+  }
+
+  private TDigest toDigest(int slot) {
+    TDigest digest = new TDigest();
+    double[] arr = vals[slot];
+    for (int i = 0; i < sizes[slot]; i++) {
+      digest.add(arr[i]);
+    }
+    return digest;
+  }
+
+  private double[] sortedValues(int slot) {
+    if (!sorted[slot] && vals[slot] != null) {
+      Arrays.sort(vals[slot], 0, sizes[slot]);
+      sorted[slot] = true;
+    }
+    return vals[slot];
+  }
+
+  private double percentile(int slot, double p) {
+    if (digests[slot] != null) {
+      return digests[slot].quantile(p / 100);
+    }
+    return sizes[slot] == 0 ? Double.NEGATIVE_INFINITY : PercentileAgg.percentile(sortedValues(slot), sizes[slot], p);
+  }
+
+  @Override
+  public int compare(int slotA, int slotB) {
+    return Double.compare(percentile(slotA, percentiles[0]), percentile(slotB, percentiles[0]));
+  }
+
+  @Override
+  public Object getValue(int slot) {
+    TDigest digest = digests[slot];
+    if (digest == null && sizes[slot] == 0) return null;
+    if (fcontext.isShard) {
+      return (digest != null ? digest : toDigest(slot)).toBytes();
+    }
+    if (digest != null) {
+      return PercentileAgg.getPercentiles(digest, percentiles);
+    }
+    return PercentileAgg.getPercentiles(sortedValues(slot), sizes[slot], percentiles);
+  }
+}
+
+
+class PercentileMerger extends FacetMerger {
+  private final double[] percentiles;
+  private TDigest digest;
+
+  PercentileMerger(double[] percentiles) {
+    this.percentiles = percentiles;
+  }
+
+  @Override
+  public void merge(Object facetResult, int shardNum) {
+    TDigest shardDigest = TDigest.fromBytes((byte[])facetResult);
+    if (digest == null) {
+      digest = shardDigest;
+    } else {
+      digest.merge(shardDigest);
+    }
+  }
+
+  @Override
+  public Object getMergedResult() {
+    return digest == null ? null : PercentileAgg.getPercentiles(digest, percentiles);
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.AtomicReaderContext;
+
+/**
+ * Accumulates a stat for many buckets at once, with one slot per bucket kept
+ * in primitive arrays.  Docs are collected with their segment doc id after the
+ * accumulator has been positioned on the segment by {@link #setNextReader}.
+ */
+public abstract class SlotAcc {
+  protected final FacetContext fcontext;
+
+  protected SlotAcc(FacetContext fcontext) {
+    this.fcontext = fcontext;
+  }
+
+  public void setNextReader(AtomicReaderContext readerContext) throws IOException {
+  }
+
+  public abstract void collect(int doc, int slot) throws IOException;
+
+  /** Compares the values of two slots, in ascending order; slots without a value sort first */
+  public abstract int compare(int slotA, int slotB);
+
+  /**
+   * Returns the value of the slot, or null if it has none.  For shards of a distributed
+   * request the value is returned in a form that {@link AggValueSource#createFacetMerger}
+   * can merge.
+   */
+  public abstract Object getValue(int slot) throws IOException;
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+
+import org.apache.lucene.queries.function.ValueSource;
+
+/** <code>sum(f)</code>: the sum of the function over the docs of a bucket */
+class SumAgg extends AggValueSource {
+  private final ValueSource vs;
+
+  SumAgg(ValueSource vs) {
+    this.vs = vs;
+  }
+
+  @Override
+  public SlotAcc createSlotAcc(FacetContext fcontext, int numSlots) throws IOException {
+    return new SumSlotAcc(vs, fcontext, numSlots);
+  }
+
+  @Override
+  public FacetMerger createFacetMerger() {
+    return new SumMerger();
+  }
+}
+
+
+class SumSlotAcc extends FuncSlotAcc {
+  private final double[] result;
+
+  SumSlotAcc(ValueSource vs, FacetContext fcontext, int numSlots) throws IOException {
+    super(vs, fcontext);
+    result = new double[numSlots];
+  }
+
+  @Override
+  public void collect(int doc, int slot) {
+    if (values.exists(doc)) {
+      result[slot] += values.doubleVal(doc);
+    }
+  }
+
+  @Override
+  public int compare(int slotA, int slotB) {
+    return Double.compare(result[slotA], result[slotB]);
+  }
+
+  @Override
+  public Object getValue(int slot) {
+    return result[slot];
+  }
+}
+
+
+class SumMerger extends FacetMerger {
+  private double sum;
+
+  @Override
+  public void merge(Object facetResult, int shardNum) {
+    sum += ((Number)facetResult).doubleValue();
+  }
+
+  @Override
+  public Object getMergedResult() {
+    return sum;
+  }
+}
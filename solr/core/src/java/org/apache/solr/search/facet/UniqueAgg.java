@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.SentinelIntSet;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.util.HyperLogLog;
+
+/** <code>unique(field)</code>: the number of distinct values of a string field in a bucket */
+class UniqueAgg extends AggValueSource {
+  /** Slots with more distinct values than this estimate their count with a sketch */
+  static final int EXACT_LIMIT = 512;
+  /** 4KB sketches, with a relative standard error of about 1.6% */
+  static final int LOG2M = 12;
+
+  private final String field;
+
+  UniqueAgg(String field) {
+    this.field = field;
+  }
+
+  @Override
+  public SlotAcc createSlotAcc(FacetContext fcontext, int numSlots) throws IOException {
+    return new UniqueSlotAcc(field, fcontext, numSlots);
+  }
+
+  @Override
+  public FacetMerger createFacetMerger() {
+    return new UniqueMerger();
+  }
+}
+
+
+/**
+ * Counts the distinct terms of a string field per slot.  A slot counts exactly, with
+ * the set of top level ords it has seen, until it sees more than
+ * {@link UniqueAgg#EXACT_LIMIT} of them, and then estimates with a {@link HyperLogLog}
+ * sketch of the terms.  Shards always return the serialized sketch, so that the
+ * {@link UniqueMerger} does not depend on how the values are spread over shards.
+ */
+class UniqueSlotAcc extends SlotAcc {
+  private final SortedDocValues si;
+  private final SortedSetDocValues msi;
+  private final SentinelIntSet[] ords;  // the ords of a slot, until it switches to a sketch
+  private final HyperLogLog[] sketches;
+  private final BytesRef term = new BytesRef();
+  private long[] cardinalities;
+  private int docBase;
+
+  UniqueSlotAcc(String field, FacetContext fcontext, int numSlots) throws IOException {
+    super(fcontext);
+    SchemaField sf = fcontext.searcher.getSchema().getField(field);
+    if (sf.multiValued()) {
+      si = null;
+      msi = FieldCache.DEFAULT.getDocTermOrds(fcontext.searcher.getAtomicReader(), field);
+    } else {
+      si = FieldCache.DEFAULT.getTermsIndex(fcontext.searcher.getAtomicReader(), field);
+      msi = null;
+    }
+    ords = new SentinelIntSet[numSlots];
+    sketches = new HyperLogLog[numSlots];
+  }
+
+  @Override
+  public void setNextReader(AtomicReaderContext readerContext) {
+    docBase = readerContext.docBase;
+  }
+
+  @Override
+  public void collect(int doc, int slot) {
+    int globalDoc = docBase + doc;
+    if (si != null) {
+      int ord = si.getOrd(globalDoc);
+      if (ord >= 0) {
+        add(slot, ord);
+      }
+    } else {
+      msi.setDocument(globalDoc);
+      long ord;
+      while ((ord = msi.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+        add(slot, (int)ord);
+      }
+    }
+  }
+
+  private void add(int slot, int ord) {
+    HyperLogLog sketch = sketches[slot];
+    if (sketch != null) {
+      sketch.addHash(hash(ord));
+      return;
+    }
+    SentinelIntSet set = ords[slot];
+    if (set == null) {
+      ords[slot] = set = new SentinelIntSet(8, -1);
+    }
+    set.put(ord);
+    if (set.size() > UniqueAgg.EXACT_LIMIT) {
+      sketches[slot] = toSketch(set);
+      ords[slot] = null;
+    }
+  }
+
+  private HyperLogLog toSketch(SentinelIntSet set) {
+    HyperLogLog sketch = new HyperLogLog(UniqueAgg.LOG2M);
+    if (set != null) {
+      for (int ord : set.keys) {
+        if (ord != set.emptyVal) {
+          sketch.addHash(hash(ord));
+        }
+      }
+    }
+    return sketch;
+  }
+
+  /** Hashes the term rather than the ord, which is only meaningful within this index */
+  private long hash(int ord) {
+    if (si != null) {
+      si.lookupOrd(ord, term);
+    } else {
+      msi.lookupOrd(ord, term);
+    }
+    return HyperLogLog.hash(term);
+  }
+
+  private long cardinality(int slot) {
+    if (cardinalities == null) {
+      cardinalities = new long[ords.length];
+      for (int i = 0; i < ords.length; i++) {
+        if (sketches[i] != null) {
+          cardinalities[i] = sketches[i].cardinality();
+        } else if (ords[i] != null) {
+          cardinalities[i] = ords[i].size();
+        }
+      }
+    }
+    return cardinalities[slot];
+  }
+
+  @Override
+  public int compare(int slotA, int slotB) {
+    long a = cardinality(slotA);
+    long b = cardinality(slotB);
+    return a < b ? -1 : (a == b ? 0 : 1);
+  }
+
+  @Override
+  public Object getValue(int slot) {
+    if (!fcontext.isShard) {
+      return cardinality(slot);
+    }
+    HyperLogLog sketch = sketches[slot];
+    return (sketch != null ? sketch : toSketch(ords[slot])).toBytes();
+  }
+}
+
+
+class UniqueMerger extends FacetMerger {
+  private HyperLogLog sketch;
+
+  @Override
+  public void merge(Object facetResult, int shardNum) {
+    HyperLogLog shardSketch = HyperLogLog.fromBytes((byte[])facetResult);
+    if (sketch == null) {
+      sketch = shardSketch;
+    } else {
+      sketch.merge(shardSketch);
+    }
+  }
+
+  @Override
+  public Object getMergedResult() {
+    return sketch == null ? null : sketch.cardinality();
+  }
+}
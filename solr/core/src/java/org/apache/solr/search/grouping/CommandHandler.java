@@ -210,6 +210,9 @@ public class CommandHandler {
 
     try {
       searcher.search(query, luceneFilter, collector);
+      if (collector instanceof DelegatingCollector) {
+        ((DelegatingCollector)collector).finish();
+      }
     } catch (TimeLimitingCollector.TimeExceededException x) {
       partialResults = true;
       logger.warn( "Query: " + query + "; " + x.getMessage() );
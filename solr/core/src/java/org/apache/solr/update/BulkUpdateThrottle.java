@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.update;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.params.UpdateParams;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.util.RefCounted;
+
+/**
+ * Keeps the adds and deletes of bulk update requests, those sent with
+ * <code>update.priority=bulk</code>, from crowding out interactive ones in
+ * {@link DirectUpdateHandler2}.
+ * <ul>
+ * <li>At most <code>maxBulkUpdateThreads</code> bulk commands are applied to the
+ * IndexWriter at the same time, and the others wait for their turn in arrival order.
+ * The rest of the writer's indexing threads are left to interactive updates,
+ * which never wait here.</li>
+ * <li>While the IndexWriter is stalled, because flushing can't keep up, bulk commands
+ * wait before adding anything, so that the stall clears as soon as possible for
+ * interactive updates.</li>
+ * </ul>
+ * <p>
+ * Requests without the parameter are interactive.
+ * <p>
+ * The distributed update processor waits here before taking the version locks of
+ * the document, so that bulk commands that wait never block interactive ones on the
+ * same bucket, nor deletes by query.
+ */
+public class BulkUpdateThrottle {
+  public static final String INTERACTIVE = "interactive";
+  public static final String BULK = "bulk";
+
+  /** How long a bulk command sleeps before checking again if the writer is still stalled */
+  static final long STALL_WAIT_MS = 10;
+
+  private final int maxThreads;
+  private final Semaphore permits;  // null if the number of bulk threads is not limited
+
+  private final AtomicLong numQueued = new AtomicLong();
+  private final AtomicLong numStalled = new AtomicLong();
+
+  /**
+   * @param maxThreads the maximum number of bulk commands applied at the same time,
+   * or -1 for no limit
+   */
+  public BulkUpdateThrottle(int maxThreads) {
+    this.maxThreads = maxThreads;
+    this.permits = maxThreads > 0 ? new Semaphore(maxThreads, true) : null;
+  }
+
+  /** Returns true if the request is a bulk update request */
+  public static boolean isBulk(SolrQueryRequest req) {
+    String priority = req == null ? null : req.getParams().get(UpdateParams.UPDATE_PRIORITY);
+    if (priority == null || INTERACTIVE.equals(priority)) {
+      return false;
+    }
+    if (BULK.equals(priority)) {
+      return true;
+    }
+    throw new SolrException(ErrorCode.BAD_REQUEST,
+        "Unknown " + UpdateParams.UPDATE_PRIORITY + ": " + priority + ", expected " + INTERACTIVE + " or " + BULK);
+  }
+
+  /**
+   * Waits until a bulk command may be applied.  Must be followed by {@link #release},
+   * and called before taking any lock or IndexWriter, so that waiting commands don't hold them.
+   */
+  public void acquire() {
+    if (permits == null) return;
+    if (!permits.tryAcquire()) {
+      numQueued.incrementAndGet();
+      try {
+        permits.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SolrException(ErrorCode.SERVICE_UNAVAILABLE, "Interrupted while waiting to apply a bulk update", e);
+      }
+    }
+  }
+
+  public void release() {
+    if (permits != null) permits.release();
+  }
+
+  /**
+   * Waits until the core's IndexWriter is no longer stalled.  The writer is only held
+   * while checking, so that it can be closed or rolled back in the meantime.
+   */
+  public void awaitNotStalled(SolrCore core) throws IOException {
+    if (!isStalled(core)) return;
+    numStalled.incrementAndGet();
+    try {
+      do {
+        Thread.sleep(STALL_WAIT_MS);
+      } while (isStalled(core));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(ErrorCode.SERVICE_UNAVAILABLE, "Interrupted while waiting to apply a bulk update", e);
+    }
+  }
+
+  private static boolean isStalled(SolrCore core) throws IOException {
+    RefCounted<IndexWriter> iw = core.getSolrCoreState().getIndexWriter(core);
+    try {
+      return iw.get().isIndexingStalled();
+    } finally {
+      iw.decref();
+    }
+  }
+
+  /** Returns the maximum number of bulk commands applied at the same time, or -1 for no limit */
+  public int getMaxThreads() {
+    return maxThreads;
+  }
+
+  /** Returns the number of bulk commands that had to wait for another one to be applied */
+  public long getNumQueued() {
+    return numQueued.get();
+  }
+
+  /** Returns the number of bulk commands that had to wait for the writer to no longer be stalled */
+  public long getNumStalled() {
+    return numStalled.get();
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.update;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+
+/**
+ * Merges commits of the same kind that are requested while one is already running
+ * into a single one, instead of committing and opening a new searcher once for each
+ * of them, one after the other.
+ * <p>
+ * A commit request returns without committing as soon as a commit that started
+ * after the request was made has succeeded, since that commit made all of the
+ * request's updates durable or visible.  Requests that wait for the running commit
+ * elect one of them to run the next one, which also opens and waits for a new
+ * searcher if any of them asked to.
+ * <p>
+ * Usage:
+ * <pre>
+ *   if (coalescer.start(cmd)) {
+ *     boolean success = false;
+ *     try {
+ *       ... commit ...
+ *       success = true;
+ *     } finally {
+ *       coalescer.finish(success);
+ *     }
+ *   }
+ * </pre>
+ */
+public class CommitCoalescer {
+  private long started;        // number of commits started
+  private long lastSucceeded;  // number of the last commit that succeeded
+  private boolean committing;
+
+  // what the commands waiting for the next commit need from it
+  private boolean openSearcherRequested;
+  private boolean waitSearcherRequested;
+  // what the running commit does
+  private boolean openSearcher;
+  private boolean waitSearcher;
+
+  private final AtomicLong numCoalesced = new AtomicLong();
+
+  /**
+   * Waits for the running commit, if any.  Returns true if the caller has to commit now,
+   * with the options of <code>cmd</code> possibly raised to those of the commands that
+   * are coalesced with it, and then call {@link #finish}.  Returns false if another commit
+   * that started after this call took care of <code>cmd</code>.
+   */
+  public synchronized boolean start(CommitUpdateCommand cmd) {
+    long needed = started + 1;
+    for (;;) {
+      if (lastSucceeded >= needed) {
+        numCoalesced.incrementAndGet();
+        return false;
+      }
+      if (!committing) {
+        committing = true;
+        started++;
+        cmd.openSearcher |= openSearcherRequested;
+        cmd.waitSearcher |= waitSearcherRequested;
+        openSearcherRequested = waitSearcherRequested = false;
+        openSearcher = cmd.openSearcher;
+        waitSearcher = cmd.waitSearcher;
+        return true;
+      }
+      if (started < needed) {
+        // the running commit started before cmd; ask the next one for what cmd needs
+        openSearcherRequested |= cmd.openSearcher;
+        waitSearcherRequested |= cmd.waitSearcher;
+      }
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SolrException(ErrorCode.SERVICE_UNAVAILABLE, "Interrupted while waiting for a commit", e);
+      }
+    }
+  }
+
+  /** Ends the commit started by {@link #start}, and wakes up the commands waiting for it */
+  public synchronized void finish(boolean success) {
+    committing = false;
+    if (success) {
+      lastSucceeded = started;
+    } else {
+      // the commands waiting for this commit now need the next one
+      openSearcherRequested |= openSearcher;
+      waitSearcherRequested |= waitSearcher;
+    }
+    notifyAll();
+  }
+
+  /** Returns the number of commit requests that were taken care of by another commit */
+  public long getNumCoalesced() {
+    return numCoalesced.get();
+  }
+}
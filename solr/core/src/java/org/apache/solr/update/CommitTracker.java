@@ -48,10 +48,15 @@ public final class CommitTracker implements Runnable {
   
   // scheduler delay for maxDoc-triggered autocommits
   public final int DOC_COMMIT_DELAY_MS = 1;
+
+  // with an adaptive maxTime, commits are at least this many times as far apart as the
+  // last one took, so that no more than about a fifth of the time is spent committing
+  static final int ADAPTIVE_TIME_FACTOR = 4;
   
   // settings, not final so we can change them in testing
   private int docsUpperBound;
   private long timeUpperBound;
+  private long maxAdaptiveTime;
   
   private final ScheduledExecutorService scheduler = 
       Executors.newScheduledThreadPool(1, new DefaultSolrThreadFactory("commitScheduler"));
@@ -60,6 +65,12 @@ public final class CommitTracker implements Runnable {
   // state
   private AtomicLong docsSinceCommit = new AtomicLong(0);
   private AtomicInteger autoCommitCount = new AtomicInteger(0);
+  private volatile long adaptiveTimeUpperBound;
+
+  // how long commits took, including opening and warming a new searcher when waited for
+  private volatile long lastCommitTime = -1;
+  private AtomicLong commitTimeCumulative = new AtomicLong(0);
+  private AtomicLong timedCommitCount = new AtomicLong(0);
 
   private final SolrCore core;
 
@@ -70,12 +81,24 @@ public final class CommitTracker implements Runnable {
   private String name;
   
   public CommitTracker(String name, SolrCore core, int docsUpperBound, int timeUpperBound, boolean openSearcher, boolean softCommit) {
+    this(name, core, docsUpperBound, timeUpperBound, -1, openSearcher, softCommit);
+  }
+
+  /**
+   * @param maxAdaptiveTime if greater than timeUpperBound, the time based autocommits
+   * are spread further apart, up to this many ms, when commits get expensive, and come
+   * back to timeUpperBound when they get cheap again. -1 to always use timeUpperBound.
+   */
+  public CommitTracker(String name, SolrCore core, int docsUpperBound, int timeUpperBound, int maxAdaptiveTime,
+      boolean openSearcher, boolean softCommit) {
     this.core = core;
     this.name = name;
     pending = null;
     
     this.docsUpperBound = docsUpperBound;
     this.timeUpperBound = timeUpperBound;
+    this.maxAdaptiveTime = maxAdaptiveTime;
+    this.adaptiveTimeUpperBound = timeUpperBound;
     
     this.softCommit = softCommit;
     this.openSearcher = openSearcher;
@@ -112,7 +135,7 @@ public final class CommitTracker implements Runnable {
   }
   
   private void _scheduleCommitWithinIfNeeded(long commitWithin) {
-    long ctime = (commitWithin > 0) ? commitWithin : timeUpperBound;
+    long ctime = (commitWithin > 0) ? commitWithin : getCurrentTimeUpperBound();
 
     if (ctime > 0) {
       _scheduleCommitWithin(ctime);
@@ -179,6 +202,26 @@ public final class CommitTracker implements Runnable {
   /** Inform tracker that a commit has occurred */
   public void didCommit() {
   }
+
+  /**
+   * Inform tracker how long a commit took.  Under heavy indexing, commits flush more
+   * and opening a new searcher costs more, so an adaptive maxTime is widened to keep
+   * the commits from taking most of the time; once they are cheap again it narrows
+   * back to the configured maxTime.
+   */
+  public void didCommit(long commitTime) {
+    lastCommitTime = commitTime;
+    commitTimeCumulative.addAndGet(commitTime);
+    timedCommitCount.incrementAndGet();
+
+    if (isAdaptive()) {
+      long adaptiveTime = Math.max(timeUpperBound, Math.min(maxAdaptiveTime, commitTime * ADAPTIVE_TIME_FACTOR));
+      if (adaptiveTime != adaptiveTimeUpperBound) {
+        log.info(name + " AutoCommit maxTime is now " + adaptiveTime + "ms, last commit took " + commitTime + "ms");
+        adaptiveTimeUpperBound = adaptiveTime;
+      }
+    }
+  }
   
   /** Inform tracker that a rollback has occurred, cancel any pending commits */
   public void didRollback() {
@@ -230,7 +273,8 @@ public final class CommitTracker implements Runnable {
   @Override
   public String toString() {
     if (timeUpperBound > 0 || docsUpperBound > 0) {
-      return (timeUpperBound > 0 ? ("if uncommited for " + timeUpperBound + "ms; ")
+      return (timeUpperBound > 0 ? ("if uncommited for " + timeUpperBound + "ms"
+          + (isAdaptive() ? (" (up to " + maxAdaptiveTime + "ms under load)") : "") + "; ")
           : "")
           + (docsUpperBound > 0 ? ("if " + docsUpperBound + " uncommited docs ")
               : "");
@@ -244,6 +288,31 @@ public final class CommitTracker implements Runnable {
     return timeUpperBound;
   }
 
+  /** Returns the maxTime that an adaptive maxTime may widen to, or -1 */
+  public long getMaxAdaptiveTime() {
+    return maxAdaptiveTime;
+  }
+
+  private boolean isAdaptive() {
+    return timeUpperBound > 0 && maxAdaptiveTime > timeUpperBound;
+  }
+
+  /** Returns the maxTime currently used for time based autocommits */
+  public long getCurrentTimeUpperBound() {
+    return isAdaptive() ? adaptiveTimeUpperBound : timeUpperBound;
+  }
+
+  /** Returns how long the last commit took in ms, or -1 if there was none */
+  public long getLastCommitTime() {
+    return lastCommitTime;
+  }
+
+  /** Returns the average time commits took in ms */
+  public long getAverageCommitTime() {
+    long count = timedCommitCount.get();
+    return count == 0 ? 0 : commitTimeCumulative.get() / count;
+  }
+
   int getDocsUpperBound() {
     return docsUpperBound;
   }
@@ -255,5 +324,11 @@ public final class CommitTracker implements Runnable {
   // only for testing - not thread safe
   public void setTimeUpperBound(long timeUpperBound) {
     this.timeUpperBound = timeUpperBound;
+    this.adaptiveTimeUpperBound = timeUpperBound;
+  }
+
+  // only for testing - not thread safe
+  void setMaxAdaptiveTime(long maxAdaptiveTime) {
+    this.maxAdaptiveTime = maxAdaptiveTime;
   }
 }
@@ -28,6 +28,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.document.Document;
@@ -93,6 +94,13 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
   
   protected boolean commitWithinSoftCommit;
 
+  // holds back the adds and deletes of bulk update requests, see DistributedUpdateProcessor
+  protected final BulkUpdateThrottle bulkUpdateThrottle;
+
+  // merge overlapping commits
+  protected final CommitCoalescer commitCoalescer = new CommitCoalescer();
+  protected final CommitCoalescer softCommitCoalescer = new CommitCoalescer();
+
   public DirectUpdateHandler2(SolrCore core) {
     super(core);
    
@@ -106,9 +114,11 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
     
     int softCommitDocsUpperBound = updateHandlerInfo.autoSoftCommmitMaxDocs; // getInt("updateHandler/autoSoftCommit/maxDocs", -1);
     int softCommitTimeUpperBound = updateHandlerInfo.autoSoftCommmitMaxTime; // getInt("updateHandler/autoSoftCommit/maxTime", -1);
-    softCommitTracker = new CommitTracker("Soft", core, softCommitDocsUpperBound, softCommitTimeUpperBound, true, true);
+    int softCommitMaxAdaptiveTime = updateHandlerInfo.autoSoftCommitMaxAdaptiveTime; // getInt("updateHandler/autoSoftCommit/maxAdaptiveTime", -1);
+    softCommitTracker = new CommitTracker("Soft", core, softCommitDocsUpperBound, softCommitTimeUpperBound, softCommitMaxAdaptiveTime, true, true);
     
     commitWithinSoftCommit = updateHandlerInfo.commitWithinSoftCommit;
+    bulkUpdateThrottle = new BulkUpdateThrottle(updateHandlerInfo.maxBulkUpdateThreads);
 
 
   }
@@ -125,9 +135,11 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
     
     int softCommitDocsUpperBound = updateHandlerInfo.autoSoftCommmitMaxDocs; // getInt("updateHandler/autoSoftCommit/maxDocs", -1);
     int softCommitTimeUpperBound = updateHandlerInfo.autoSoftCommmitMaxTime; // getInt("updateHandler/autoSoftCommit/maxTime", -1);
-    softCommitTracker = new CommitTracker("Soft", core, softCommitDocsUpperBound, softCommitTimeUpperBound, updateHandlerInfo.openSearcher, true);
+    int softCommitMaxAdaptiveTime = updateHandlerInfo.autoSoftCommitMaxAdaptiveTime; // getInt("updateHandler/autoSoftCommit/maxAdaptiveTime", -1);
+    softCommitTracker = new CommitTracker("Soft", core, softCommitDocsUpperBound, softCommitTimeUpperBound, softCommitMaxAdaptiveTime, updateHandlerInfo.openSearcher, true);
     
     commitWithinSoftCommit = updateHandlerInfo.commitWithinSoftCommit;
+    bulkUpdateThrottle = new BulkUpdateThrottle(updateHandlerInfo.maxBulkUpdateThreads);
 
     UpdateLog existingLog = updateHandler.getUpdateLog();
     if (this.ulog != null && this.ulog == existingLog) {
@@ -279,7 +291,7 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
       
       if (softCommitTracker.getTimeUpperBound() > 0) {
         softCommitTracker.scheduleCommitWithin(softCommitTracker
-            .getTimeUpperBound());
+            .getCurrentTimeUpperBound());
       }
     }
   }
@@ -451,7 +463,7 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
     if (rc == 1 && commitTracker.getTimeUpperBound() > 0) {
       commitTracker.scheduleCommitWithin(commitTracker.getTimeUpperBound());
     } else if (rc == 1 && softCommitTracker.getTimeUpperBound() > 0) {
-      softCommitTracker.scheduleCommitWithin(softCommitTracker.getTimeUpperBound());
+      softCommitTracker.scheduleCommitWithin(softCommitTracker.getCurrentTimeUpperBound());
     }
 
     return rc;
@@ -490,6 +502,32 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
       return;
     }
 
+    // plain commits that overlap are merged; optimizes and expungeDeletes always run
+    CommitCoalescer coalescer = null;
+    if (!cmd.optimize && !cmd.expungeDeletes) {
+      coalescer = cmd.softCommit ? softCommitCoalescer : commitCoalescer;
+      if (!coalescer.start(cmd)) {
+        return;
+      }
+    }
+
+    boolean success = false;
+    try {
+      long start = System.nanoTime();
+      doCommit(cmd);
+      long commitTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      if (cmd.softCommit) {
+        softCommitTracker.didCommit(commitTime);
+      } else {
+        commitTracker.didCommit(commitTime);
+      }
+      success = true;
+    } finally {
+      if (coalescer != null) coalescer.finish(success);
+    }
+  }
+
+  private void doCommit(CommitUpdateCommand cmd) throws IOException {
     if (cmd.optimize) {
       optimizeCommands.incrementAndGet();
     } else {
@@ -824,7 +862,18 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
     if (softCommitTracker.getTimeUpperBound() > 0) {
       lst.add("soft autocommit maxTime", "" + softCommitTracker.getTimeUpperBound() + "ms");
     }
+    if (softCommitTracker.getTimeUpperBound() > 0
+        && softCommitTracker.getMaxAdaptiveTime() > softCommitTracker.getTimeUpperBound()) {
+      lst.add("soft autocommit maxAdaptiveTime", "" + softCommitTracker.getMaxAdaptiveTime() + "ms");
+      lst.add("soft autocommit currentMaxTime", "" + softCommitTracker.getCurrentTimeUpperBound() + "ms");
+    }
     lst.add("soft autocommits", softCommitTracker.getCommitCount());
+    lst.add("commit lastTime", "" + commitTracker.getLastCommitTime() + "ms");
+    lst.add("commit avgTime", "" + commitTracker.getAverageCommitTime() + "ms");
+    lst.add("soft commit lastTime", "" + softCommitTracker.getLastCommitTime() + "ms");
+    lst.add("soft commit avgTime", "" + softCommitTracker.getAverageCommitTime() + "ms");
+    lst.add("coalesced commits", commitCoalescer.getNumCoalesced());
+    lst.add("coalesced soft commits", softCommitCoalescer.getNumCoalesced());
     lst.add("optimizes", optimizeCommands.get());
     lst.add("rollbacks", rollbackCommands.get());
     lst.add("expungeDeletes", expungeDeleteCommands.get());
@@ -839,6 +888,11 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
     lst.add("cumulative_deletesById", deleteByIdCommandsCumulative.get());
     lst.add("cumulative_deletesByQuery", deleteByQueryCommandsCumulative.get());
     lst.add("cumulative_errors", numErrorsCumulative.get());
+    if (bulkUpdateThrottle.getMaxThreads() > 0) {
+      lst.add("bulk maxThreads", bulkUpdateThrottle.getMaxThreads());
+    }
+    lst.add("bulk queued", bulkUpdateThrottle.getNumQueued());
+    lst.add("bulk stalled", bulkUpdateThrottle.getNumStalled());
     return lst;
   }
 
@@ -861,4 +915,8 @@ public class DirectUpdateHandler2 extends UpdateHandler implements SolrCoreState
   public CommitTracker getSoftCommitTracker() {
     return softCommitTracker;
   }
+
+  public BulkUpdateThrottle getBulkUpdateThrottle() {
+    return bulkUpdateThrottle;
+  }
 }
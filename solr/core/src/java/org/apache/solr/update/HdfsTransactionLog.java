@@ -159,15 +159,18 @@ public class HdfsTransactionLog extends TransactionLog {
   // This should only be used to roll back buffered updates, not actually applied updates.
   @Override
   public void rollback(long pos) throws IOException {
-    synchronized (this) {
-      assert snapshot_size == pos;
-      fos.flush();
-      tlogOutStream.hflush();
-      // TODO: how do we rollback with hdfs?? We need HDFS-3107
-      //raf.setLength(pos);
-      fos.setWritten(pos);
-      assert fos.size() == pos;
-      numRecords = snapshot_numRecords;
+    synchronized (syncLock) {
+      synchronized (this) {
+        assert snapshot_size == pos;
+        fos.flush();
+        tlogOutStream.hflush();
+        // TODO: how do we rollback with hdfs?? We need HDFS-3107
+        //raf.setLength(pos);
+        fos.setWritten(pos);
+        assert fos.size() == pos;
+        numRecords = snapshot_numRecords;
+        if (syncedPosition > pos) syncedPosition = pos;
+      }
     }
   }
 
@@ -272,12 +275,14 @@ public class HdfsTransactionLog extends TransactionLog {
   public void finish(UpdateLog.SyncLevel syncLevel) {
     if (syncLevel == UpdateLog.SyncLevel.NONE) return;
     try {
+      long pos;
       synchronized (this) {
         fos.flushBuffer();
+        pos = fos.size();
       }
 
       if (syncLevel == UpdateLog.SyncLevel.FSYNC) {
-        tlogOutStream.hsync();
+        sync(pos);
       } else {
         tlogOutStream.hflush();
       }
@@ -286,6 +291,11 @@ public class HdfsTransactionLog extends TransactionLog {
       throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
     }
   }
+
+  @Override
+  protected void doSync() throws IOException {
+    tlogOutStream.hsync();
+  }
   
   @Override
   protected void close() {
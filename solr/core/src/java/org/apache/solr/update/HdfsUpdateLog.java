@@ -81,6 +81,8 @@ public class HdfsUpdateLog extends UpdateLog {
     defaultSyncLevel = SyncLevel.getSyncLevel((String) info.initArgs
         .get("syncLevel"));
     
+    initRetention(info);
+    initReplay(info);
   }
 
   private Configuration getConf() {
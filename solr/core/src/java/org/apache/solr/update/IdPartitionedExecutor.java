@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.update;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+
+/**
+ * Applies adds and deletes by id on several threads, each through its own instance of
+ * an update processor chain.  The commands are partitioned by the hash of their indexed
+ * id, so those for the same document are applied in the order they were submitted.
+ * Commands that may affect any document must {@link #drain()} first.
+ * <p>
+ * The first failure of a partition stops all of them from applying anything more; the
+ * submitter finds it with {@link #getFailure()}.
+ */
+public class IdPartitionedExecutor<P extends IdPartitionedExecutor.Partition> {
+  private static final Object STOP = new Object();
+
+  private final List<P> partitions;
+  private volatile Exception failure;
+
+  /** Runs each partition on a thread of <code>executor</code>, queueing up to <code>queueSize</code> commands */
+  public IdPartitionedExecutor(List<P> partitions, int queueSize, Executor executor) {
+    this.partitions = partitions;
+    for (P partition : partitions) {
+      partition.owner = this;
+      partition.queue = new ArrayBlockingQueue<Object>(queueSize);
+    }
+    for (P partition : partitions) {
+      executor.execute(partition);
+    }
+  }
+
+  public List<P> getPartitions() {
+    return partitions;
+  }
+
+  /** The first exception of a partition, or null */
+  public Exception getFailure() {
+    return failure;
+  }
+
+  synchronized void fail(Exception e) {
+    if (failure == null) failure = e;
+  }
+
+  /** Queues an add or a delete by id on the partition for its id */
+  public void submit(BytesRef indexedId, UpdateCommand cmd) throws InterruptedException {
+    int hash = indexedId == null ? 0 : indexedId.hashCode() & 0x7fffffff;
+    partitions.get(hash % partitions.size()).put(cmd);
+  }
+
+  /** Waits until the partitions have applied everything submitted so far */
+  public void drain() throws InterruptedException {
+    List<CountDownLatch> barriers = new ArrayList<CountDownLatch>(partitions.size());
+    for (P partition : partitions) {
+      CountDownLatch barrier = new CountDownLatch(1);
+      barriers.add(barrier);
+      partition.put(barrier);
+    }
+    for (int i = 0; i < barriers.size(); i++) {
+      partitions.get(i).await(barriers.get(i));
+    }
+  }
+
+  /** Lets the partitions apply everything submitted so far, and waits for their threads to exit */
+  public void stop() throws InterruptedException {
+    for (P partition : partitions) {
+      partition.put(STOP);
+    }
+    for (P partition : partitions) {
+      partition.done.await();
+    }
+  }
+
+  /** Applies the commands of one hash partition of the ids, in order */
+  public static class Partition implements Runnable {
+    public final SolrQueryRequest req;
+    public final SolrQueryResponse rsp;
+    public final UpdateRequestProcessor proc;
+
+    final CountDownLatch done = new CountDownLatch(1);
+    IdPartitionedExecutor<?> owner;
+    BlockingQueue<Object> queue;
+
+    public Partition(SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor proc) {
+      this.req = req;
+      this.rsp = rsp;
+      this.proc = proc;
+    }
+
+    /** Applies an add or a delete by id; an exception stops all the partitions */
+    protected void apply(UpdateCommand cmd) throws IOException {
+      if (cmd instanceof AddUpdateCommand) {
+        proc.processAdd((AddUpdateCommand) cmd);
+      } else {
+        proc.processDelete((DeleteUpdateCommand) cmd);
+      }
+    }
+
+    /** Called once everything submitted before {@link IdPartitionedExecutor#stop()} has been applied */
+    protected void finish() throws IOException {
+    }
+
+    /** Called when the thread of the partition exits */
+    protected void close() {
+    }
+
+    void put(Object o) throws InterruptedException {
+      while (!queue.offer(o, 100, TimeUnit.MILLISECONDS)) {
+        if (done.getCount() == 0) return;  // the thread is gone and nobody will take it
+      }
+    }
+
+    void await(CountDownLatch barrier) throws InterruptedException {
+      while (!barrier.await(100, TimeUnit.MILLISECONDS)) {
+        if (done.getCount() == 0) return;
+      }
+    }
+
+    @Override
+    public void run() {
+      SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, rsp));
+      try {
+        for (;;) {
+          Object o = queue.take();
+          if (o == STOP) break;
+          if (o instanceof CountDownLatch) {
+            ((CountDownLatch) o).countDown();
+          } else if (owner.failure == null) {
+            try {
+              apply((UpdateCommand) o);
+            } catch (Exception e) {
+              owner.fail(e);
+            }
+          }
+        }
+        finish();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        owner.fail(new SolrException(ErrorCode.SERVICE_UNAVAILABLE, "Interrupted while applying updates", e));
+      } catch (Exception e) {
+        owner.fail(e);
+      } finally {
+        // release anyone waiting on a barrier we will never get to
+        for (Object o : queue) {
+          if (o instanceof CountDownLatch) ((CountDownLatch) o).countDown();
+        }
+        SolrRequestInfo.clearRequestInfo();
+        close();
+        done.countDown();
+      }
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package org.apache.solr.update;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.request.RequestWriter;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+
+/**
+ * An {@link UpdateRequest} sent to several nodes, e.g. by a leader to all its
+ * replicas, which is serialized only once: the first time it is written, the
+ * bytes are kept and written again as is to the other nodes.
+ * <p>
+ * The request must not be modified once it is submitted, and may be written by
+ * several threads at once.
+ */
+public class SharedUpdateRequest extends UpdateRequest {
+  private byte[] bytes;
+
+  /** Returns the UTF-8 bytes of the XML of this request */
+  public synchronized byte[] getXMLBytes() throws IOException {
+    if (bytes == null) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      OutputStreamWriter writer = new OutputStreamWriter(out, RequestWriter.UTF_8);
+      super.writeXML(writer);
+      writer.flush();
+      bytes = out.toByteArray();
+    }
+    return bytes;
+  }
+
+  @Override
+  public void writeXML(Writer writer) throws IOException {
+    writer.write(new String(getXMLBytes(), RequestWriter.UTF_8));
+  }
+
+  /**
+   * Writes the bytes of a {@link SharedUpdateRequest}, rather than serializing
+   * it again, and other requests as usual.
+   */
+  public static class SharedRequestWriter extends RequestWriter {
+    @Override
+    public void write(SolrRequest request, OutputStream os) throws IOException {
+      if (request instanceof SharedUpdateRequest) {
+        os.write(((SharedUpdateRequest) request).getXMLBytes());
+      } else {
+        super.write(request, os);
+      }
+    }
+  }
+}
@@ -169,15 +169,16 @@ public class SolrCmdDistributor {
   
   public void distribDelete(DeleteUpdateCommand cmd, List<Node> nodes, ModifiableSolrParams params, boolean sync) throws IOException {
     
+    // serialized once for all the nodes
+    UpdateRequest uReq = new SharedUpdateRequest();
+    uReq.setParams(params);
+    if (cmd.isDeleteById()) {
+      uReq.deleteById(cmd.getId(), cmd.getVersion());
+    } else {
+      uReq.deleteByQuery(cmd.query);
+    }
+    
     for (Node node : nodes) {
-      UpdateRequest uReq = new UpdateRequest();
-      uReq.setParams(params);
-      if (cmd.isDeleteById()) {
-        uReq.deleteById(cmd.getId(), cmd.getVersion());
-      } else {
-        uReq.deleteByQuery(cmd.query);
-      }
-      
       submit(new Req(cmd.toString(), node, uReq, sync), false);
     }
   }
@@ -188,10 +189,12 @@ public class SolrCmdDistributor {
   
   public void distribAdd(AddUpdateCommand cmd, List<Node> nodes, ModifiableSolrParams params, boolean synchronous) throws IOException {
 
+    // serialized once for all the nodes
+    UpdateRequest uReq = new SharedUpdateRequest();
+    uReq.setParams(params);
+    uReq.add(cmd.solrDoc, cmd.commitWithin, cmd.overwrite);
+
     for (Node node : nodes) {
-      UpdateRequest uReq = new UpdateRequest();
-      uReq.setParams(params);
-      uReq.add(cmd.solrDoc, cmd.commitWithin, cmd.overwrite);
       submit(new Req(cmd.toString(), node, uReq, synchronous), false);
     }
     
@@ -84,6 +84,8 @@ public class StreamingSolrServers {
       // Cloudera: We cannot use binary yet, requires other changes
       // server.setParser(new BinaryResponseParser());
       // server.setRequestWriter(new BinaryRequestWriter());
+      // write the bytes of updates sent to several replicas, serialized once
+      server.setRequestWriter(new SharedUpdateRequest.SharedRequestWriter());
       server.setPollQueueTime(0);
       Set<String> queryParams = new HashSet<String>(2);
       queryParams.add(DistributedUpdateProcessor.DISTRIB_FROM);
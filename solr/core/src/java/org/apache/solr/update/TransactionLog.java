@@ -82,6 +82,13 @@ public class TransactionLog {
 
   long snapshot_size;
   int snapshot_numRecords;
+
+  // Group commit: fsyncs are serialized on syncLock, and each one first flushes everything
+  // written so far.  A request whose records were already covered by a concurrent fsync
+  // can then return without issuing its own.
+  protected final Object syncLock = new Object();
+  protected volatile long syncedPosition;  // everything before this position has been fsync'd
+  protected volatile long numSyncs;
   
   // write a BytesRef as a byte array
   JavaBinCodec.ObjectResolver resolver = new JavaBinCodec.ObjectResolver() {
@@ -235,13 +242,16 @@ public class TransactionLog {
   // This could mess with any readers or reverse readers that are open, or anything that might try to do a log lookup.
   // This should only be used to roll back buffered updates, not actually applied updates.
   public void rollback(long pos) throws IOException {
-    synchronized (this) {
-      assert snapshot_size == pos;
-      fos.flush();
-      raf.setLength(pos);
-      fos.setWritten(pos);
-      assert fos.size() == pos;
-      numRecords = snapshot_numRecords;
+    synchronized (syncLock) {
+      synchronized (this) {
+        assert snapshot_size == pos;
+        fos.flush();
+        raf.setLength(pos);
+        fos.setWritten(pos);
+        assert fos.size() == pos;
+        numRecords = snapshot_numRecords;
+        if (syncedPosition > pos) syncedPosition = pos;
+      }
     }
   }
 
@@ -515,15 +525,14 @@ public class TransactionLog {
   public void finish(UpdateLog.SyncLevel syncLevel) {
     if (syncLevel == UpdateLog.SyncLevel.NONE) return;
     try {
+      long pos;
       synchronized (this) {
         fos.flushBuffer();
+        pos = fos.size();
       }
 
       if (syncLevel == UpdateLog.SyncLevel.FSYNC) {
-        // Since fsync is outside of synchronized block, we can end up with a partial
-        // last record on power failure (which is OK, and does not represent an error...
-        // we just need to be aware of it when reading).
-        raf.getFD().sync();
+        sync(pos);
       }
 
     } catch (IOException e) {
@@ -531,6 +540,38 @@ public class TransactionLog {
     }
   }
 
+  /** Makes sure everything before pos is on stable storage, sharing the fsync with any
+   * other requests that are waiting at the same time. */
+  protected void sync(long pos) throws IOException {
+    if (syncedPosition >= pos) return;
+    synchronized (syncLock) {
+      if (syncedPosition >= pos) return;  // covered by the fsync we were waiting on
+
+      // pick up what other requests wrote while we waited, so they can skip their own fsync
+      long end;
+      synchronized (this) {
+        fos.flushBuffer();
+        end = fos.size();
+      }
+
+      // Since fsync is outside of the synchronized(this) block, we can end up with a partial
+      // last record on power failure (which is OK, and does not represent an error...
+      // we just need to be aware of it when reading).
+      doSync();
+      syncedPosition = end;
+      numSyncs++;
+    }
+  }
+
+  protected void doSync() throws IOException {
+    raf.getFD().sync();
+  }
+
+  /** returns the number of fsyncs done for this log, each of which may cover several requests */
+  public long getNumSyncs() {
+    return numSyncs;
+  }
+
   protected void close() {
     try {
       if (debug) {
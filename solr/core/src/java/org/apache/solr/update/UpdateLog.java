@@ -37,11 +37,13 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.lucene.util.BytesRef;
@@ -109,6 +111,8 @@ public class UpdateLog implements PluginInfoInitialized {
   public static final int FLAG_GAP = 0x10;
   public static final int OPERATION_MASK = 0x0f;  // mask off flags to get the operation
 
+  private static final int REPLAY_QUEUE_SIZE = 1000;  // updates queued per replay thread
+
   public static class RecoveryInfo {
     public long positionOfStart;
 
@@ -119,9 +123,15 @@ public class UpdateLog implements PluginInfoInitialized {
 
     public boolean failed;
 
+    // progress through the log currently being replayed, updated every 1000 records
+    public volatile long currentLogPos;
+    public volatile long currentLogSize;
+    public int replayThreads = 1;
+
     @Override
     public String toString() {
-      return "RecoveryInfo{adds="+adds+" deletes="+deletes+ " deleteByQuery="+deleteByQuery+" errors="+errors + " positionOfStart="+positionOfStart+"}";
+      return "RecoveryInfo{adds="+adds+" deletes="+deletes+ " deleteByQuery="+deleteByQuery+" errors="+errors + " positionOfStart="+positionOfStart
+          + " currentLogPos="+currentLogPos + " currentLogSize="+currentLogSize + " replayThreads="+replayThreads+"}";
     }
   }
 
@@ -129,21 +139,30 @@ public class UpdateLog implements PluginInfoInitialized {
   protected State state = State.ACTIVE;
   protected int operationFlags;  // flags to write in the transaction log with operations (i.e. FLAG_GAP)
 
-  protected TransactionLog tlog;
+  protected volatile TransactionLog tlog;
   protected TransactionLog prevTlog;
   protected Deque<TransactionLog> logs = new LinkedList<TransactionLog>();  // list of recent logs, newest first
   protected LinkedList<TransactionLog> newestLogsOnStartup = new LinkedList<TransactionLog>();
   protected int numOldRecords;  // number of records in the recent logs
 
-  protected Map<BytesRef,LogPtr> map = new HashMap<BytesRef, LogPtr>();
-  protected Map<BytesRef,LogPtr> prevMap;  // used while committing/reopening is happening
-  protected Map<BytesRef,LogPtr> prevMap2;  // used while committing/reopening is happening
-  protected TransactionLog prevMapLog;  // the transaction log used to look up entries found in prevMap
-  protected TransactionLog prevMapLog2;  // the transaction log used to look up entries found in prevMap
+  // The maps are only modified while holding the UpdateLog monitor, but lookup() and lookupVersion()
+  // read them without it.  Any change that swaps or clears the maps is bracketed by
+  // beginMapChange()/endMapChange() so that a reader can detect it and retry under the monitor.
+  protected volatile Map<BytesRef,LogPtr> map = newLookupMap();
+  protected volatile Map<BytesRef,LogPtr> prevMap;  // used while committing/reopening is happening
+  protected volatile Map<BytesRef,LogPtr> prevMap2;  // used while committing/reopening is happening
+  protected volatile TransactionLog prevMapLog;  // the transaction log used to look up entries found in prevMap
+  protected volatile TransactionLog prevMapLog2;  // the transaction log used to look up entries found in prevMap
+  private volatile int mapChanges;  // odd while a change to the maps is in progress
 
   protected final int numDeletesToKeep = 1000;
   protected final int numDeletesByQueryToKeep = 100;
-  public final int numRecordsToKeep = 100;
+  public static final int DEFAULT_NUM_RECORDS_TO_KEEP = 100;
+  public static final int DEFAULT_MAX_NUM_LOGS_TO_KEEP = 10;
+  protected int numRecordsToKeep = DEFAULT_NUM_RECORDS_TO_KEEP;
+  protected int maxNumLogsToKeep = DEFAULT_MAX_NUM_LOGS_TO_KEEP;
+  protected int numReplayThreads = 1;
+  protected String replayUpdateChain;  // null for the default chain
 
   // keep track of deletes only... this is not updated on an add
   protected LinkedHashMap<BytesRef, LogPtr> oldDeletes = new LinkedHashMap<BytesRef, LogPtr>(numDeletesToKeep) {
@@ -205,6 +224,52 @@ public class UpdateLog implements PluginInfoInitialized {
   public void init(PluginInfo info) {
     dataDir = (String)info.initArgs.get("dir");
     defaultSyncLevel = SyncLevel.getSyncLevel((String)info.initArgs.get("syncLevel"));
+    initRetention(info);
+    initReplay(info);
+  }
+
+  /**
+   * Reads how many updates are kept in old logs: at least "numRecordsToKeep"
+   * (so peers that missed fewer updates can catch up with PeerSync rather than
+   * replicating the index), in at most "maxNumLogsToKeep" logs.
+   */
+  protected void initRetention(PluginInfo info) {
+    numRecordsToKeep = objToInt(info.initArgs.get("numRecordsToKeep"), DEFAULT_NUM_RECORDS_TO_KEEP);
+    maxNumLogsToKeep = objToInt(info.initArgs.get("maxNumLogsToKeep"), DEFAULT_MAX_NUM_LOGS_TO_KEEP);
+    if (numRecordsToKeep < 1 || maxNumLogsToKeep < 1) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+          "numRecordsToKeep and maxNumLogsToKeep must be positive: " + numRecordsToKeep + ", " + maxNumLogsToKeep);
+    }
+    log.info("Initializing UpdateLog: numRecordsToKeep=" + numRecordsToKeep + " maxNumLogsToKeep=" + maxNumLogsToKeep);
+  }
+
+  /**
+   * Reads how logs are replayed on startup and recovery: adds and deletes can be applied by
+   * "numReplayThreads" threads, partitioned by id so that updates to the same document stay
+   * in order, through the update processor chain named by "replayUpdateChain" (which can
+   * leave out processors that already ran when the updates were first logged).
+   */
+  protected void initReplay(PluginInfo info) {
+    numReplayThreads = objToInt(info.initArgs.get("numReplayThreads"), 1);
+    replayUpdateChain = (String)info.initArgs.get("replayUpdateChain");
+    if (numReplayThreads < 1) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+          "numReplayThreads must be positive: " + numReplayThreads);
+    }
+  }
+
+  private static int objToInt(Object obj, int def) {
+    if (obj == null) return def;
+    return obj instanceof Number ? ((Number) obj).intValue() : Integer.parseInt(obj.toString());
+  }
+
+  /** Returns the number of recent updates kept for peers to sync with */
+  public int getNumRecordsToKeep() {
+    return numRecordsToKeep;
+  }
+
+  public int getMaxNumLogsToKeep() {
+    return maxNumLogsToKeep;
   }
 
   /* Note, when this is called, uhandler is not completely constructed.
@@ -328,8 +393,8 @@ public class UpdateLog implements PluginInfoInitialized {
       TransactionLog log = logs.peekLast();
       int nrec = log.numRecords();
       // remove oldest log if we don't need it to keep at least numRecordsToKeep, or if
-      // we already have the limit of 10 log files.
-      if (currRecords - nrec >= numRecordsToKeep || logs.size() >= 10) {
+      // we already have the limit of maxNumLogsToKeep log files.
+      if (currRecords - nrec >= numRecordsToKeep || logs.size() >= maxNumLogsToKeep) {
         currRecords -= nrec;
         numOldRecords -= nrec;
         logs.removeLast().decref();  // dereference so it will be deleted when no longer in use
@@ -404,15 +469,20 @@ public class UpdateLog implements PluginInfoInitialized {
       } else {
         // replicate the deleteByQuery logic.  See deleteByQuery for comments.
 
-        if (map != null) map.clear();
-        if (prevMap != null) prevMap.clear();
-        if (prevMap2 != null) prevMap2.clear();
-
+        beginMapChange();
         try {
-          RefCounted<SolrIndexSearcher> holder = uhandler.core.openNewSearcher(true, true);
-          holder.decref();
-        } catch (Exception e) {
-          SolrException.log(log, "Error opening realtime searcher for deleteByQuery", e);
+          if (map != null) map.clear();
+          if (prevMap != null) prevMap.clear();
+          if (prevMap2 != null) prevMap2.clear();
+
+          try {
+            RefCounted<SolrIndexSearcher> holder = uhandler.core.openNewSearcher(true, true);
+            holder.decref();
+          } catch (Exception e) {
+            SolrException.log(log, "Error opening realtime searcher for deleteByQuery", e);
+          }
+        } finally {
+          endMapChange();
         }
 
         if (trace) {
@@ -465,24 +535,30 @@ public class UpdateLog implements PluginInfoInitialized {
       // only change our caches if we are not buffering
       if ((cmd.getFlags() & UpdateCommand.BUFFERING) == 0) {
         // given that we just did a delete-by-query, we don't know what documents were
-        // affected and hence we must purge our caches.
-        if (map != null) map.clear();
-        if (prevMap != null) prevMap.clear();
-        if (prevMap2 != null) prevMap2.clear();
+        // affected and hence we must purge our caches.  Lookups that don't hold the
+        // monitor must not see the empty maps until the new searcher is open.
+        beginMapChange();
+        try {
+          if (map != null) map.clear();
+          if (prevMap != null) prevMap.clear();
+          if (prevMap2 != null) prevMap2.clear();
 
-        trackDeleteByQuery(cmd.getQuery(), cmd.getVersion());
+          trackDeleteByQuery(cmd.getQuery(), cmd.getVersion());
 
-        // oldDeletes.clear();
+          // oldDeletes.clear();
 
-        // We must cause a new IndexReader to be opened before anything looks at these caches again
-        // so that a cache miss will read fresh data.
-        //
-        // TODO: FUTURE: open a new searcher lazily for better throughput with delete-by-query commands
-        try {
-          RefCounted<SolrIndexSearcher> holder = uhandler.core.openNewSearcher(true, true);
-          holder.decref();
-        } catch (Exception e) {
-          SolrException.log(log, "Error opening realtime searcher for deleteByQuery", e);
+          // We must cause a new IndexReader to be opened before anything looks at these caches again
+          // so that a cache miss will read fresh data.
+          //
+          // TODO: FUTURE: open a new searcher lazily for better throughput with delete-by-query commands
+          try {
+            RefCounted<SolrIndexSearcher> holder = uhandler.core.openNewSearcher(true, true);
+            holder.decref();
+          } catch (Exception e) {
+            SolrException.log(log, "Error opening realtime searcher for deleteByQuery", e);
+          }
+        } finally {
+          endMapChange();
         }
 
       }
@@ -498,20 +574,24 @@ public class UpdateLog implements PluginInfoInitialized {
   /** currently for testing only */
   public void deleteAll() {
     synchronized (this) {
-
+      beginMapChange();
       try {
-        RefCounted<SolrIndexSearcher> holder = uhandler.core.openNewSearcher(true, true);
-        holder.decref();
-      } catch (Exception e) {
-        SolrException.log(log, "Error opening realtime searcher for deleteByQuery", e);
-      }
+        try {
+          RefCounted<SolrIndexSearcher> holder = uhandler.core.openNewSearcher(true, true);
+          holder.decref();
+        } catch (Exception e) {
+          SolrException.log(log, "Error opening realtime searcher for deleteByQuery", e);
+        }
 
-      if (map != null) map.clear();
-      if (prevMap != null) prevMap.clear();
-      if (prevMap2 != null) prevMap2.clear();
+        if (map != null) map.clear();
+        if (prevMap != null) prevMap.clear();
+        if (prevMap2 != null) prevMap2.clear();
 
-      oldDeletes.clear();
-      deleteByQueries.clear();
+        oldDeletes.clear();
+        deleteByQueries.clear();
+      } finally {
+        endMapChange();
+      }
     }
   }
 
@@ -572,7 +652,7 @@ public class UpdateLog implements PluginInfoInitialized {
     prevMap = map;
     prevMapLog = tlog;
 
-    map = new HashMap<BytesRef, LogPtr>();
+    map = newLookupMap();
   }
 
   private void clearOldMaps() {
@@ -580,6 +660,19 @@ public class UpdateLog implements PluginInfoInitialized {
     prevMap2 = null;
   }
 
+  protected Map<BytesRef,LogPtr> newLookupMap() {
+    return new ConcurrentHashMap<BytesRef, LogPtr>();
+  }
+
+  /** Must be called while holding the UpdateLog monitor, followed by {@link #endMapChange()} in a finally block. */
+  protected void beginMapChange() {
+    mapChanges++;
+  }
+
+  protected void endMapChange() {
+    mapChanges++;
+  }
+
   public boolean hasUncommittedChanges() {
     return tlog != null;
   }
@@ -599,19 +692,24 @@ public class UpdateLog implements PluginInfoInitialized {
         return;
       }
 
-      // since we're changing the log, we must change the map.
-      newMap();
+      beginMapChange();
+      try {
+        // since we're changing the log, we must change the map.
+        newMap();
 
-      if (prevTlog != null) {
-        globalStrings = prevTlog.getGlobalStrings();
-      }
+        if (prevTlog != null) {
+          globalStrings = prevTlog.getGlobalStrings();
+        }
 
-      // since document additions can happen concurrently with commit, create
-      // a new transaction log first so that we know the old one is definitely
-      // in the index.
-      prevTlog = tlog;
-      tlog = null;
-      id++;
+        // since document additions can happen concurrently with commit, create
+        // a new transaction log first so that we know the old one is definitely
+        // in the index.
+        prevTlog = tlog;
+        tlog = null;
+        id++;
+      } finally {
+        endMapChange();
+      }
     }
   }
 
@@ -640,13 +738,18 @@ public class UpdateLog implements PluginInfoInitialized {
     synchronized (this) {
 
       if (!cmd.softCommit) return;  // already handled this at the start of the hard commit
-      newMap();
+      beginMapChange();
+      try {
+        newMap();
 
-      // start adding documents to a new map since we won't know if
-      // any added documents will make it into this commit or not.
-      // But we do know that any updates already added will definitely
-      // show up in the latest reader after the commit succeeds.
-      map = new HashMap<BytesRef, LogPtr>();
+        // start adding documents to a new map since we won't know if
+        // any added documents will make it into this commit or not.
+        // But we do know that any updates already added will definitely
+        // show up in the latest reader after the commit succeeds.
+        map = newLookupMap();
+      } finally {
+        endMapChange();
+      }
 
       if (debug) {
         log.debug("TLOG: preSoftCommit: prevMap="+ System.identityHashCode(prevMap) + " new map=" + System.identityHashCode(map));
@@ -665,7 +768,12 @@ public class UpdateLog implements PluginInfoInitialized {
       if (debug) {
         SolrCore.verbose("TLOG: postSoftCommit: disposing of prevMap="+ System.identityHashCode(prevMap) + ", prevMap2=" + System.identityHashCode(prevMap2));
       }
-      clearOldMaps();
+      beginMapChange();
+      try {
+        clearOldMaps();
+      } finally {
+        endMapChange();
+      }
     }
   }
 
@@ -673,6 +781,36 @@ public class UpdateLog implements PluginInfoInitialized {
     LogPtr entry;
     TransactionLog lookupLog;
 
+    // fast path: look in the maps without taking the monitor
+    int changes = mapChanges;
+    if ((changes & 1) == 0) {
+      entry = map.get(indexedId);
+      lookupLog = tlog;  // something found in "map" will always be in "tlog"
+      Map<BytesRef,LogPtr> m;
+      if (entry == null && (m = prevMap) != null) {
+        entry = m.get(indexedId);
+        lookupLog = prevMapLog;
+      }
+      if (entry == null && (m = prevMap2) != null) {
+        entry = m.get(indexedId);
+        lookupLog = prevMapLog2;
+      }
+
+      if (changes == mapChanges) {
+        if (entry == null) {
+          return null;
+        }
+        // a failed try_incref means the log was closed after we read it; retry under the monitor
+        if (lookupLog.try_incref()) {
+          try {
+            return lookupLog.lookup(entry.pointer);
+          } finally {
+            lookupLog.decref();
+          }
+        }
+      }
+    }
+
     synchronized (this) {
       entry = map.get(indexedId);
       lookupLog = tlog;  // something found in "map" will always be in "tlog"
@@ -710,24 +848,33 @@ public class UpdateLog implements PluginInfoInitialized {
   // that have already grabbed higher version numbers.  Higher level coordination or
   // synchronization is needed for stronger guarantees (as VersionUpdateProcessor does).
   public Long lookupVersion(BytesRef indexedId) {
-    LogPtr entry;
-    TransactionLog lookupLog;
+    LogPtr entry = null;
 
-    synchronized (this) {
+    // fast path: look in the maps without taking the monitor
+    int changes = mapChanges;
+    boolean consistent = false;
+    if ((changes & 1) == 0) {
       entry = map.get(indexedId);
-      lookupLog = tlog;  // something found in "map" will always be in "tlog"
-      // SolrCore.verbose("TLOG: lookup ver: for id ",indexedId.utf8ToString(),"in map",System.identityHashCode(map),"got",entry,"lookupLog=",lookupLog);
-      if (entry == null && prevMap != null) {
-        entry = prevMap.get(indexedId);
-        // something found in prevMap will always be found in preMapLog (which could be tlog or prevTlog)
-        lookupLog = prevMapLog;
-        // SolrCore.verbose("TLOG: lookup ver: for id ",indexedId.utf8ToString(),"in prevMap",System.identityHashCode(map),"got",entry,"lookupLog=",lookupLog);
+      Map<BytesRef,LogPtr> m;
+      if (entry == null && (m = prevMap) != null) {
+        entry = m.get(indexedId);
       }
-      if (entry == null && prevMap2 != null) {
-        entry = prevMap2.get(indexedId);
-        // something found in prevMap2 will always be found in preMapLog2 (which could be tlog or prevTlog)
-        lookupLog = prevMapLog2;
-        // SolrCore.verbose("TLOG: lookup ver: for id ",indexedId.utf8ToString(),"in prevMap2",System.identityHashCode(map),"got",entry,"lookupLog=",lookupLog);
+      if (entry == null && (m = prevMap2) != null) {
+        entry = m.get(indexedId);
+      }
+      consistent = changes == mapChanges;
+    }
+
+    if (!consistent) {
+      // the maps were swapped or cleared while we were reading them
+      synchronized (this) {
+        entry = map.get(indexedId);
+        if (entry == null && prevMap != null) {
+          entry = prevMap.get(indexedId);
+        }
+        if (entry == null && prevMap2 != null) {
+          entry = prevMap2.get(indexedId);
+        }
       }
     }
 
@@ -1188,6 +1335,9 @@ public class UpdateLog implements PluginInfoInitialized {
     private SolrQueryRequest req;
     private SolrQueryResponse rsp;
 
+    private IdPartitionedExecutor<ReplayPartition> partitions;  // null when replaying in a single thread
+    private final AtomicInteger partitionErrors = new AtomicInteger();
+
 
     @Override
     public void run() {
@@ -1247,8 +1397,11 @@ public class UpdateLog implements PluginInfoInitialized {
         // NOTE: we don't currently handle a core reload during recovery.  This would cause the core
         // to change underneath us.
 
-        UpdateRequestProcessorChain processorChain = req.getCore().getUpdateProcessingChain(null);
+        UpdateRequestProcessorChain processorChain = req.getCore().getUpdateProcessingChain(replayUpdateChain);
         UpdateRequestProcessor proc = processorChain.createProcessor(req, rsp);
+        if (numReplayThreads > 1) {
+          startPartitions(processorChain);
+        }
 
         long commitVersion = 0;
         int operationAndFlags = 0;
@@ -1260,11 +1413,13 @@ public class UpdateLog implements PluginInfoInitialized {
           try {
             if (testing_logReplayHook != null) testing_logReplayHook.run();
             if (nextCount++ % 1000 == 0) {
+              long cpos = tlogReader.currentPos();
+              long csize = tlogReader.currentSize();
+              recoveryInfo.currentLogPos = cpos;
+              recoveryInfo.currentLogSize = csize;
               long now = System.nanoTime();
               if (now - lastStatusTime > STATUS_TIME) {
                 lastStatusTime = now;
-                long cpos = tlogReader.currentPos();
-                long csize = tlogReader.currentSize();
                 loglog.info(
                         "log replay status {} active={} starting pos={} current pos={} current size={} % read={}",
                         translog, activeLog, recoveryInfo.positionOfStart, cpos, csize,
@@ -1277,6 +1432,10 @@ public class UpdateLog implements PluginInfoInitialized {
             o = tlogReader.next();
             if (o == null && activeLog) {
               if (!finishing) {
+                // the partition threads could not get past the lock we are about to take,
+                // so let them apply what they have and replay the rest of the log ourselves.
+                stopPartitions();
+
                 // block to prevent new adds, but don't immediately unlock since
                 // we could be starved from ever completing recovery.  Only unlock
                 // after we've finished this recovery.
@@ -1328,7 +1487,11 @@ public class UpdateLog implements PluginInfoInitialized {
                 cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
                 if (debug) log.debug("add " +  cmd);
 
-                proc.processAdd(cmd);
+                if (partitions != null) {
+                  dispatch(cmd.getIndexedId(), cmd);
+                } else {
+                  proc.processAdd(cmd);
+                }
                 break;
               }
               case UpdateLog.DELETE:
@@ -1340,7 +1503,11 @@ public class UpdateLog implements PluginInfoInitialized {
                 cmd.setVersion(version);
                 cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
                 if (debug) log.debug("delete " +  cmd);
-                proc.processDelete(cmd);
+                if (partitions != null) {
+                  dispatch(cmd.getIndexedId(), cmd);
+                } else {
+                  proc.processDelete(cmd);
+                }
                 break;
               }
 
@@ -1353,6 +1520,8 @@ public class UpdateLog implements PluginInfoInitialized {
                 cmd.setVersion(version);
                 cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
                 if (debug) log.debug("deleteByQuery " +  cmd);
+                // may affect any document, so everything before it must have been applied
+                drainPartitions();
                 proc.processDelete(cmd);
                 break;
               }
@@ -1393,6 +1562,9 @@ public class UpdateLog implements PluginInfoInitialized {
           }
         }
 
+        stopPartitions();
+        checkPartitions();
+
         CommitUpdateCommand cmd = new CommitUpdateCommand(req, false);
         cmd.setVersion(commitVersion);
         cmd.softCommit = false;
@@ -1423,10 +1595,107 @@ public class UpdateLog implements PluginInfoInitialized {
         }
 
       } finally {
+        stopPartitions();
         if (tlogReader != null) tlogReader.close();
         translog.decref();
       }
     }
+
+    private void startPartitions(UpdateRequestProcessorChain processorChain) {
+      recoveryInfo.replayThreads = numReplayThreads;
+      List<ReplayPartition> list = new ArrayList<ReplayPartition>(numReplayThreads);
+      for (int i = 0; i < numReplayThreads; i++) {
+        list.add(new ReplayPartition(processorChain));
+      }
+      partitions = new IdPartitionedExecutor<ReplayPartition>(list, REPLAY_QUEUE_SIZE, recoveryExecutor);
+    }
+
+    /** Queues an add or delete on the partition for its id, which applies them in log order */
+    private void dispatch(BytesRef indexedId, UpdateCommand cmd) throws InterruptedException {
+      checkPartitions();
+      partitions.submit(indexedId, cmd);
+    }
+
+    /** Waits until the partitions have applied everything queued so far */
+    private void drainPartitions() throws InterruptedException {
+      if (partitions == null) return;
+      partitions.drain();
+      recoveryInfo.errors += partitionErrors.getAndSet(0);
+      checkPartitions();
+    }
+
+    /** Lets the partitions apply everything queued so far and waits for their threads to exit */
+    private void stopPartitions() {
+      if (partitions == null) return;
+      try {
+        partitions.stop();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        SolrException.log(log, e);
+      }
+      recoveryInfo.errors += partitionErrors.getAndSet(0);
+      partitions = null;
+    }
+
+    private void checkPartitions() {
+      Exception failure = partitions == null ? null : partitions.getFailure();
+      if (failure instanceof SolrException) {
+        throw (SolrException) failure;
+      } else if (failure != null) {
+        throw new SolrException(ErrorCode.SERVER_ERROR, failure);
+      }
+    }
+
+    /**
+     * Applies the adds and deletes of one hash partition of the ids, in log order.  Only a
+     * SERVICE_UNAVAILABLE error stops the replay, the others are counted and skipped.
+     */
+    private class ReplayPartition extends IdPartitionedExecutor.Partition {
+      ReplayPartition(UpdateRequestProcessorChain processorChain) {
+        this(new LocalSolrQueryRequest(uhandler.core, LogReplayer.this.req.getParams()), new SolrQueryResponse(), processorChain);
+      }
+
+      private ReplayPartition(SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessorChain processorChain) {
+        super(req, rsp, processorChain.createProcessor(req, rsp));
+      }
+
+      @Override
+      protected void apply(UpdateCommand cmd) {
+        try {
+          cmd.setReq(req);
+          super.apply(cmd);
+
+          if (rsp.getException() != null) {
+            loglog.error("REPLAY_ERR: Exception replaying log", rsp.getException());
+            throw rsp.getException();
+          }
+        } catch (SolrException ex) {
+          if (ex.code() == ErrorCode.SERVICE_UNAVAILABLE.code) {
+            throw ex;
+          }
+          partitionErrors.incrementAndGet();
+          loglog.warn("REPLAY_ERR: Exception replaying log", ex);
+        } catch (Exception ex) {
+          partitionErrors.incrementAndGet();
+          loglog.warn("REPLAY_ERR: Exception replaying log", ex);
+        }
+      }
+
+      @Override
+      protected void finish() {
+        try {
+          proc.finish();
+        } catch (Exception e) {
+          partitionErrors.incrementAndGet();
+          loglog.error("Replay exception: finish()", e);
+        }
+      }
+
+      @Override
+      protected void close() {
+        req.close();
+      }
+    }
   }
 
   public void cancelApplyBufferedUpdates() {
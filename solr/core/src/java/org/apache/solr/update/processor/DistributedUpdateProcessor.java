@@ -64,8 +64,10 @@ import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.BulkUpdateThrottle;
 import org.apache.solr.update.CommitUpdateCommand;
 import org.apache.solr.update.DeleteUpdateCommand;
+import org.apache.solr.update.DirectUpdateHandler2;
 import org.apache.solr.update.SolrCmdDistributor;
 import org.apache.solr.update.SolrCmdDistributor.Error;
 import org.apache.solr.update.SolrCmdDistributor.Node;
@@ -456,7 +458,12 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
 
     boolean dropCmd = false;
     if (!forwardToLeader) {
-      dropCmd = versionAdd(cmd);
+      BulkUpdateThrottle throttle = startBulkUpdate(cmd);
+      try {
+        dropCmd = versionAdd(cmd);
+      } finally {
+        if (throttle != null) throttle.release();
+      }
     }
 
     if (dropCmd) {
@@ -605,6 +612,29 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
     super.processDelete(cmd);
   }
 
+  /**
+   * Holds back a command of a bulk update request before it takes the version locks,
+   * so that it doesn't block the other updates of its bucket, nor deletes by query,
+   * while it waits.
+   * @return the throttle to release once the command was applied locally, or null
+   * if the command was not held back
+   */
+  private BulkUpdateThrottle startBulkUpdate(UpdateCommand cmd) throws IOException {
+    if (!BulkUpdateThrottle.isBulk(cmd.getReq()) || !(updateHandler instanceof DirectUpdateHandler2)) {
+      return null;
+    }
+    BulkUpdateThrottle throttle = ((DirectUpdateHandler2) updateHandler).getBulkUpdateThrottle();
+    throttle.acquire();
+    boolean success = false;
+    try {
+      throttle.awaitNotStalled(req.getCore());
+      success = true;
+    } finally {
+      if (!success) throttle.release();
+    }
+    return throttle;
+  }
+
   /**
    * @return whether or not to drop this cmd
    * @throws IOException If there is a low-level I/O error.
@@ -886,7 +916,12 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
     
     boolean dropCmd = false;
     if (!forwardToLeader) {
-      dropCmd  = versionDelete(cmd);
+      BulkUpdateThrottle throttle = startBulkUpdate(cmd);
+      try {
+        dropCmd  = versionDelete(cmd);
+      } finally {
+        if (throttle != null) throttle.release();
+      }
     }
     
     if (dropCmd) {
@@ -940,6 +975,7 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
   private ModifiableSolrParams filterParams(SolrParams params) {
     ModifiableSolrParams fparams = new ModifiableSolrParams();
     passParam(params, fparams, UpdateParams.UPDATE_CHAIN);
+    passParam(params, fparams, UpdateParams.UPDATE_PRIORITY);
     passParam(params, fparams, TEST_DISTRIB_SKIP_SERVERS);
     return fparams;
   }
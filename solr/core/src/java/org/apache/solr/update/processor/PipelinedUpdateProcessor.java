@@ -0,0 +1,185 @@
+package org.apache.solr.update.processor;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.CommitUpdateCommand;
+import org.apache.solr.update.DeleteUpdateCommand;
+import org.apache.solr.update.IdPartitionedExecutor;
+import org.apache.solr.update.MergeIndexesCommand;
+import org.apache.solr.update.RollbackUpdateCommand;
+import org.apache.solr.update.UpdateCommand;
+import org.apache.solr.util.DefaultSolrThreadFactory;
+
+/**
+ * Runs the adds and deletes by id of a single update request through several instances of
+ * the update processor chain, each on its own thread, while the request thread keeps parsing.
+ * <p>
+ * Commands for the same id always go to the same thread, so they are applied in the order
+ * they were sent.  Deletes by query, commits, rollbacks and merges wait until everything
+ * sent before them has been applied, and then run on the request thread through
+ * the <code>next</code> processor.
+ * <p>
+ * Enabled with the <code>update.threads</code> parameter, up to the handler's
+ * <code>maxUpdateThreads</code>, which defaults to {@link #MAX_THREADS}.
+ * Each thread has its own response, which is merged into the request's response on
+ * {@link #finish()}.
+ * Processors in the chain must not depend on seeing every document of the request.
+ */
+public class PipelinedUpdateProcessor extends UpdateRequestProcessor {
+  static final int QUEUE_SIZE = 100;  // commands queued per thread
+
+  /** The most threads a request runs on by default: one per core, more only contend for them */
+  public static final int MAX_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+  private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(0,
+      Integer.MAX_VALUE, 1, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+      new DefaultSolrThreadFactory("pipelinedUpdates"));
+
+  private final SolrQueryResponse rsp;
+  private final IdPartitionedExecutor<IdPartitionedExecutor.Partition> partitions;
+  private boolean finished;
+
+  public PipelinedUpdateProcessor(UpdateRequestProcessorChain chain, SolrQueryRequest req,
+      SolrQueryResponse rsp, int numThreads, UpdateRequestProcessor next) {
+    super(next);
+    this.rsp = rsp;
+    numThreads = Math.max(1, numThreads);
+    List<IdPartitionedExecutor.Partition> list = new ArrayList<IdPartitionedExecutor.Partition>(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      SolrQueryResponse partitionRsp = new SolrQueryResponse();
+      list.add(new IdPartitionedExecutor.Partition(req, partitionRsp, chain.createProcessor(req, partitionRsp)));
+    }
+    partitions = new IdPartitionedExecutor<IdPartitionedExecutor.Partition>(list, QUEUE_SIZE, executor);
+  }
+
+  /** The number of threads the adds and deletes by id are applied on */
+  public int getNumThreads() {
+    return partitions.getPartitions().size();
+  }
+
+  @Override
+  public void processAdd(AddUpdateCommand cmd) throws IOException {
+    // loaders reuse their command objects
+    AddUpdateCommand copy = (AddUpdateCommand) cmd.clone();
+    dispatch(copy.getIndexedId(), copy);
+  }
+
+  @Override
+  public void processDelete(DeleteUpdateCommand cmd) throws IOException {
+    if (cmd.isDeleteById()) {
+      DeleteUpdateCommand copy = (DeleteUpdateCommand) cmd.clone();
+      dispatch(copy.getIndexedId(), copy);
+    } else {
+      drain();
+      super.processDelete(cmd);
+    }
+  }
+
+  @Override
+  public void processMergeIndexes(MergeIndexesCommand cmd) throws IOException {
+    drain();
+    super.processMergeIndexes(cmd);
+  }
+
+  @Override
+  public void processCommit(CommitUpdateCommand cmd) throws IOException {
+    drain();
+    super.processCommit(cmd);
+  }
+
+  @Override
+  public void processRollback(RollbackUpdateCommand cmd) throws IOException {
+    drain();
+    super.processRollback(cmd);
+  }
+
+  @Override
+  public void finish() throws IOException {
+    if (finished) return;
+    finished = true;
+
+    try {
+      partitions.stop();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(ErrorCode.SERVER_ERROR, e);
+    }
+
+    // the partition processors are finished here, one at a time, since they may all log
+    // to and modify the request
+    Exception failure = partitions.getFailure();
+    for (IdPartitionedExecutor.Partition partition : partitions.getPartitions()) {
+      try {
+        if (failure == null) {
+          partition.proc.finish();
+        }
+      } catch (Exception e) {
+        if (failure == null) failure = e;
+      }
+      rsp.getValues().addAll(partition.rsp.getValues());
+      rsp.getToLog().addAll(partition.rsp.getToLog());
+      if (partition.rsp.getException() != null && rsp.getException() == null) {
+        rsp.setException(partition.rsp.getException());
+      }
+    }
+
+    super.finish();
+    throwFailure(failure);
+  }
+
+  private void dispatch(BytesRef indexedId, UpdateCommand cmd) throws IOException {
+    throwFailure(partitions.getFailure());
+    try {
+      partitions.submit(indexedId, cmd);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(ErrorCode.SERVER_ERROR, e);
+    }
+  }
+
+  /** Waits until everything sent so far has been applied */
+  private void drain() throws IOException {
+    try {
+      partitions.drain();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(ErrorCode.SERVER_ERROR, e);
+    }
+    throwFailure(partitions.getFailure());
+  }
+
+  private static void throwFailure(Exception e) throws IOException {
+    if (e == null) return;
+    if (e instanceof IOException) throw (IOException) e;
+    if (e instanceof SolrException) throw (SolrException) e;
+    throw new SolrException(ErrorCode.SERVER_ERROR, e);
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.util;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.util.Hash;
+
+/**
+ * A HyperLogLog sketch estimating the number of distinct values added to it in
+ * a fixed amount of memory: <code>2^log2m</code> one byte registers, with a
+ * relative standard error of about <code>1.04/sqrt(2^log2m)</code>.
+ * <p>
+ * Sketches with the same <code>log2m</code> can be merged, the result being the
+ * same as if all values had been added to a single sketch.  {@link #toBytes()}
+ * stores only the non-empty registers when that is smaller, so sketches over
+ * few values stay small.
+ *
+ * @lucene.internal
+ */
+public class HyperLogLog {
+  public static final int DEFAULT_LOG2M = 14;
+
+  private static final byte SPARSE = 0;
+  private static final byte DENSE = 1;
+
+  private final int log2m;
+  private final byte[] registers;
+
+  public HyperLogLog() {
+    this(DEFAULT_LOG2M);
+  }
+
+  public HyperLogLog(int log2m) {
+    if (log2m < 4 || log2m > 16) {
+      throw new IllegalArgumentException("log2m must be between 4 and 16: " + log2m);
+    }
+    this.log2m = log2m;
+    this.registers = new byte[1 << log2m];
+  }
+
+  public int getLog2m() {
+    return log2m;
+  }
+
+  /** Adds a value given its 64 bit hash, e.g. from {@link #hash(long)} */
+  public void addHash(long hash) {
+    int idx = (int)(hash >>> (64 - log2m));
+    // the bit set past the remaining 64-log2m bits bounds the run of zeros
+    long w = (hash << log2m) | (1L << (log2m - 1));
+    byte rank = (byte)(Long.numberOfLeadingZeros(w) + 1);
+    if (rank > registers[idx]) {
+      registers[idx] = rank;
+    }
+  }
+
+  /** Merges the other sketch into this one */
+  public void merge(HyperLogLog other) {
+    if (other.log2m != log2m) {
+      throw new IllegalArgumentException("Can't merge sketches of different sizes: log2m=" + log2m + " and " + other.log2m);
+    }
+    byte[] otherRegisters = other.registers;
+    for (int i = 0; i < registers.length; i++) {
+      if (otherRegisters[i] > registers[i]) {
+        registers[i] = otherRegisters[i];
+      }
+    }
+  }
+
+  /** Returns the estimated number of distinct values added */
+  public long cardinality() {
+    int m = registers.length;
+    double sum = 0;
+    int zeros = 0;
+    for (byte r : registers) {
+      sum += 1.0 / (1L << r);
+      if (r == 0) zeros++;
+    }
+
+    double estimate = alpha(m) * m * m / sum;
+    if (estimate <= 2.5 * m && zeros > 0) {
+      // linear counting is more accurate for small cardinalities
+      estimate = m * Math.log((double)m / zeros);
+    }
+    // with 64 bit hashes no correction for large cardinalities is needed
+    return Math.round(estimate);
+  }
+
+  private static double alpha(int m) {
+    switch (m) {
+      case 16: return 0.673;
+      case 32: return 0.697;
+      case 64: return 0.709;
+      default: return 0.7213 / (1 + 1.079 / m);
+    }
+  }
+
+  /** Serializes the sketch, see {@link #fromBytes(byte[])} */
+  public byte[] toBytes() {
+    int nonEmpty = 0;
+    for (byte r : registers) {
+      if (r != 0) nonEmpty++;
+    }
+
+    byte[] bytes;
+    if (nonEmpty * 3 < registers.length) {
+      // 2 bytes of register index and 1 byte of value per non-empty register
+      bytes = new byte[2 + nonEmpty * 3];
+      bytes[1] = SPARSE;
+      int pos = 2;
+      for (int i = 0; i < registers.length; i++) {
+        if (registers[i] == 0) continue;
+        bytes[pos++] = (byte)(i >>> 8);
+        bytes[pos++] = (byte)i;
+        bytes[pos++] = registers[i];
+      }
+    } else {
+      bytes = new byte[2 + registers.length];
+      bytes[1] = DENSE;
+      System.arraycopy(registers, 0, bytes, 2, registers.length);
+    }
+    bytes[0] = (byte)log2m;
+    return bytes;
+  }
+
+  /** Deserializes a sketch serialized by {@link #toBytes()} */
+  public static HyperLogLog fromBytes(byte[] bytes) {
+    HyperLogLog hll = new HyperLogLog(bytes[0]);
+    byte[] registers = hll.registers;
+    if (bytes[1] == DENSE) {
+      if (bytes.length != 2 + registers.length) {
+        throw new IllegalArgumentException("Corrupt HyperLogLog sketch");
+      }
+      System.arraycopy(bytes, 2, registers, 0, registers.length);
+    } else {
+      if (bytes[1] != SPARSE || (bytes.length - 2) % 3 != 0) {
+        throw new IllegalArgumentException("Corrupt HyperLogLog sketch");
+      }
+      for (int pos = 2; pos < bytes.length; pos += 3) {
+        int idx = ((bytes[pos] & 0xff) << 8) | (bytes[pos + 1] & 0xff);
+        registers[idx] = bytes[pos + 2];
+      }
+    }
+    return hll;
+  }
+
+  /** Returns a well mixed 64 bit hash of a long value (the MurmurHash3 finalizer) */
+  public static long hash(long v) {
+    v ^= v >>> 33;
+    v *= 0xff51afd7ed558ccdL;
+    v ^= v >>> 33;
+    v *= 0xc4ceb9fe1a85ec53L;
+    v ^= v >>> 33;
+    return v;
+  }
+
+  /** Returns a 64 bit hash of the UTF-8 bytes of a string */
+  public static long hash(CharSequence s) {
+    int h1 = Hash.murmurhash3_x86_32(s, 0, s.length(), 0);
+    int h2 = Hash.murmurhash3_x86_32(s, 0, s.length(), 0x9747b28c);
+    return ((long)h1 << 32) | (h2 & 0xffffffffL);
+  }
+
+  /** Returns a 64 bit hash of UTF-8 bytes, the same as {@link #hash(CharSequence)} of the decoded string */
+  public static long hash(BytesRef utf8) {
+    int h1 = Hash.murmurhash3_x86_32(utf8.bytes, utf8.offset, utf8.length, 0);
+    int h2 = Hash.murmurhash3_x86_32(utf8.bytes, utf8.offset, utf8.length, 0x9747b28c);
+    return ((long)h1 << 32) | (h2 & 0xffffffffL);
+  }
+}
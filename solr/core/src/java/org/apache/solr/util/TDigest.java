@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.util;
+
+import java.nio.ByteBuffer;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.IntroSorter;
+
+/**
+ * A t-digest sketch of a distribution of doubles, estimating its quantiles.
+ * <p>
+ * Values are summarized by a sorted list of weighted centroids.  Centroids near
+ * the extremes of the distribution are kept small, so the estimates of high and
+ * low quantiles are the most accurate, and the number of centroids stays in the
+ * order of the <code>compression</code>, regardless of the number of values.
+ * As long as few values were added, each value is its own centroid and the
+ * quantiles are exact (interpolated between neighbouring values).
+ * <p>
+ * Digests can be merged and serialized with {@link #toBytes()}.
+ *
+ * @lucene.internal
+ */
+public class TDigest {
+  public static final double DEFAULT_COMPRESSION = 100;
+
+  private final double compression;
+
+  // the compressed centroids, sorted by mean
+  private double[] means;
+  private double[] weights;
+  private int numCentroids;
+
+  // values added since the last compression
+  private double[] bufMeans;
+  private double[] bufWeights;
+  private int bufSize;
+
+  private double totalWeight;
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+
+  public TDigest() {
+    this(DEFAULT_COMPRESSION);
+  }
+
+  public TDigest(double compression) {
+    if (!(compression >= 10)) {
+      throw new IllegalArgumentException("compression must be at least 10: " + compression);
+    }
+    this.compression = compression;
+    this.means = new double[16];
+    this.weights = new double[16];
+    int bufCapacity = (int)(5 * compression);
+    this.bufMeans = new double[bufCapacity];
+    this.bufWeights = new double[bufCapacity];
+  }
+
+  public void add(double value) {
+    add(value, 1);
+  }
+
+  public void add(double value, double weight) {
+    if (Double.isNaN(value)) {
+      throw new IllegalArgumentException("Can't add NaN");
+    }
+    if (bufSize == bufMeans.length) {
+      compress();
+    }
+    bufMeans[bufSize] = value;
+    bufWeights[bufSize] = weight;
+    bufSize++;
+    totalWeight += weight;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+  }
+
+  /** Merges the other digest into this one */
+  public void merge(TDigest other) {
+    other.compress();
+    for (int i = 0; i < other.numCentroids; i++) {
+      add(other.means[i], other.weights[i]);
+    }
+    // centroids don't carry the extremes
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  /** Returns the total weight of the values added */
+  public double size() {
+    return totalWeight;
+  }
+
+  /**
+   * Returns the estimated value at the given quantile, between 0 and 1,
+   * or NaN if no values were added.
+   */
+  public double quantile(double q) {
+    if (q < 0 || q > 1) {
+      throw new IllegalArgumentException("quantile must be between 0 and 1: " + q);
+    }
+    compress();
+    if (numCentroids == 0) return Double.NaN;
+    if (q == 0) return min;
+    if (q == 1) return max;
+    return interpolate(q);
+  }
+
+  private double interpolate(double q) {
+    int n = numCentroids;
+    double index = q * totalWeight;
+
+    // each centroid is considered centered at half of its weight
+    double firstHalf = weights[0] / 2;
+    if (index < firstHalf) {
+      return min + (means[0] - min) * index / firstHalf;
+    }
+
+    double soFar = firstHalf;
+    for (int i = 0; i < n - 1; i++) {
+      double dw = (weights[i] + weights[i + 1]) / 2;
+      if (soFar + dw > index) {
+        return means[i] + (means[i + 1] - means[i]) * (index - soFar) / dw;
+      }
+      soFar += dw;
+    }
+
+    double lastHalf = weights[n - 1] / 2;
+    double fraction = Math.min(1, (index - soFar) / lastHalf);
+    return means[n - 1] + (max - means[n - 1]) * fraction;
+  }
+
+  /** Merges the buffered values with the centroids */
+  private void compress() {
+    if (bufSize == 0) return;
+
+    // sort all centroids and buffered values by mean, in the buffer
+    int size = numCentroids + bufSize;
+    if (size > bufMeans.length) {
+      bufMeans = ArrayUtil.grow(bufMeans, size);
+      bufWeights = ArrayUtil.grow(bufWeights, size);
+    }
+    System.arraycopy(means, 0, bufMeans, bufSize, numCentroids);
+    System.arraycopy(weights, 0, bufWeights, bufSize, numCentroids);
+    final double[] sortMeans = bufMeans;
+    final double[] sortWeights = bufWeights;
+    new IntroSorter() {
+      double pivot;
+
+      @Override
+      protected int compare(int i, int j) {
+        return Double.compare(sortMeans[i], sortMeans[j]);
+      }
+
+      @Override
+      protected void swap(int i, int j) {
+        double tmp = sortMeans[i];
+        sortMeans[i] = sortMeans[j];
+        sortMeans[j] = tmp;
+        tmp = sortWeights[i];
+        sortWeights[i] = sortWeights[j];
+        sortWeights[j] = tmp;
+      }
+
+      @Override
+      protected void setPivot(int i) {
+        pivot = sortMeans[i];
+      }
+
+      @Override
+      protected int comparePivot(int j) {
+        return Double.compare(pivot, sortMeans[j]);
+      }
+    }.sort(0, size);
+
+    // greedily merge neighbours while the centroid stays under the size bound
+    // 4 * totalWeight * q * (1-q) / compression
+    if (means.length < size) {
+      means = new double[ArrayUtil.oversize(size, 8)];
+      weights = new double[means.length];
+    }
+    int n = 0;
+    double curMean = sortMeans[0];
+    double curWeight = sortWeights[0];
+    double soFar = 0;
+    for (int i = 1; i < size; i++) {
+      double proposed = curWeight + sortWeights[i];
+      double q0 = soFar / totalWeight;
+      double q2 = (soFar + proposed) / totalWeight;
+      double limit = 4 * totalWeight * Math.min(q0 * (1 - q0), q2 * (1 - q2)) / compression;
+      if (proposed <= limit) {
+        curMean += (sortMeans[i] - curMean) * sortWeights[i] / proposed;
+        curWeight = proposed;
+      } else {
+        means[n] = curMean;
+        weights[n] = curWeight;
+        n++;
+        soFar += curWeight;
+        curMean = sortMeans[i];
+        curWeight = sortWeights[i];
+      }
+    }
+    means[n] = curMean;
+    weights[n] = curWeight;
+    numCentroids = n + 1;
+    bufSize = 0;
+  }
+
+  /** Serializes the digest, see {@link #fromBytes(byte[])} */
+  public byte[] toBytes() {
+    compress();
+    ByteBuffer buf = ByteBuffer.allocate(8 * 3 + 4 + numCentroids * 16);
+    buf.putDouble(compression);
+    buf.putDouble(min);
+    buf.putDouble(max);
+    buf.putInt(numCentroids);
+    for (int i = 0; i < numCentroids; i++) {
+      buf.putDouble(means[i]);
+      buf.putDouble(weights[i]);
+    }
+    return buf.array();
+  }
+
+  /** Deserializes a digest serialized by {@link #toBytes()} */
+  public static TDigest fromBytes(byte[] bytes) {
+    ByteBuffer buf = ByteBuffer.wrap(bytes);
+    TDigest digest = new TDigest(buf.getDouble());
+    double min = buf.getDouble();
+    double max = buf.getDouble();
+    int n = buf.getInt();
+    if (n < 0 || buf.remaining() != n * 16) {
+      throw new IllegalArgumentException("Corrupt t-digest");
+    }
+    for (int i = 0; i < n; i++) {
+      digest.add(buf.getDouble(), buf.getDouble());
+    }
+    digest.min = min;
+    digest.max = max;
+    return digest;
+  }
+}
@@ -17,6 +17,8 @@
 
 package org.apache.solr;
 
+import java.net.InetAddress;
+import java.net.ServerSocket;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -28,6 +30,7 @@ import org.apache.lucene.util.LuceneTestCase.Slow;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.embedded.JettySolrRunner;
+import org.apache.solr.client.solrj.response.FieldStatsInfo;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.cloud.ChaosMonkey;
 import org.apache.solr.common.SolrException;
@@ -239,6 +242,11 @@ public class TestDistributedSearch extends BaseDistributedSearchTestCase {
     query("q","*:*", "fl", "id", "fl",nint, "fl",tint,"sort",i1 + " desc");
     query("q","*:*", "fl",nint, "fl", "id", "fl",tint,"sort",i1 + " desc");
 
+    // stored fields retrieved along with the top ids
+    query("q","*:*", "fl","*,score", "sort",i1 + " desc", ShardParams.DISTRIB_SINGLE_PASS, "true");
+    query("q","*:*", "fl",i1, "sort","score desc," + i1 + " desc", ShardParams.DISTRIB_SINGLE_PASS, "true");
+    query("q","all", "fl",nint + "," + tint, "start","5", "rows","5", "sort",i1 + " asc", ShardParams.DISTRIB_SINGLE_PASS, "true");
+
     stress=0;  // turn off stress... we want to tex max combos in min time
     for (int i=0; i<25*RANDOM_MULTIPLIER; i++) {
       String f = fieldNames[random().nextInt(fieldNames.length)];
@@ -278,6 +286,12 @@ public class TestDistributedSearch extends BaseDistributedSearchTestCase {
     query("q","*:*", "rows",100, "facet","true", "facet.field",oddField, "facet.mincount",2);
 
     query("q","*:*", "sort",i1+" desc", "stats", "true", "stats.field", i1);
+    // the approximate stats are merged from the sketches of the shards
+    QueryResponse statsRsp = query("q","*:*", "sort",i1+" desc", "stats", "true", "stats.field", i1, "stats.field", tlong,
+          "stats.cardinality", "true", "stats.percentiles", "1,50,99");
+    FieldStatsInfo stats = statsRsp.getFieldStatsInfo().get(i1);
+    assertNotNull(stats.getCardinality());
+    assertEquals(Arrays.asList(1.0, 50.0, 99.0), new ArrayList<Double>(stats.getPercentiles().keySet()));
 
     /*** TODO: the failure may come back in "exception"
     try {
@@ -347,6 +361,61 @@ public class TestDistributedSearch extends BaseDistributedSearchTestCase {
     
     assertNotNull("missing shard info", sinfo);
     assertEquals("should have an entry for each shard ["+sinfo+"] "+shards, cnt, sinfo.size());
+
+    // list every shard twice, as if it had two replicas, and hedge every request on the second one
+    StringBuilder replicatedShards = new StringBuilder();
+    for (String shard : shardsArr) {
+      if (replicatedShards.length() > 0) replicatedShards.append(',');
+      replicatedShards.append(shard).append('|').append(shard);
+    }
+    q = new ModifiableSolrParams();
+    q.set("q", "*:*");
+    q.set(ShardParams.SHARDS, replicatedShards.toString());
+    q.set(ShardParams.SHARDS_HEDGE_DELAY, 0);
+    q.set(ShardParams.SHARDS_TIMEOUT, 60000);
+    rsp = queryServer(q);
+    // the duplicate above is counted once per shard, so compare with a plain distributed request
+    long numFound = queryServer(params("q", "*:*", ShardParams.SHARDS, getShardsString())).getResults().getNumFound();
+    assertEquals(numFound, rsp.getResults().getNumFound());
+
+    // a shard that accepts connections but never responds
+    ServerSocket blackHole = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    try {
+      String slowShard = "127.0.0.1:" + blackHole.getLocalPort() + "/solr";
+
+      // the request is hedged on the replica that responds
+      StringBuilder slowReplicas = new StringBuilder();
+      for (String shard : shardsArr) {
+        if (slowReplicas.length() > 0) slowReplicas.append(',');
+        slowReplicas.append(slowShard).append('|').append(shard);
+      }
+      q = params("q", "*:*", ShardParams.SHARDS, slowReplicas.toString(),
+          ShardParams.SHARDS_HEDGE_DELAY, "100", ShardParams.SHARDS_TIMEOUT, "60000");
+      rsp = queryServer(q);
+      assertEquals(numFound, rsp.getResults().getNumFound());
+      assertNull(rsp.getHeader().get("partialResults"));
+
+      // the shard without another replica times out
+      String allShards = getShardsString() + "," + slowShard;
+      q = params("q", "*:*", ShardParams.SHARDS, allShards, ShardParams.SHARDS_TIMEOUT, "500");
+      ignoreException("Timeout after");
+      try {
+        queryServer(q);
+        fail("the request should have timed out");
+      } catch (SolrException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("Timeout after 500ms"));
+      } finally {
+        unIgnoreException("Timeout after");
+      }
+
+      // and the others' results are returned when partial results are acceptable
+      q.set(ShardParams.SHARDS_TOLERANT, true);
+      rsp = queryServer(q);
+      assertEquals(numFound, rsp.getResults().getNumFound());
+      assertEquals(Boolean.TRUE, rsp.getHeader().get("partialResults"));
+    } finally {
+      blackHole.close();
+    }
     
     // test shards.tolerant=true
     for(int numDownServers = 0; numDownServers < jettys.size()-1; numDownServers++)
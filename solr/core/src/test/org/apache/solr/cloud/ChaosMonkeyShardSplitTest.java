@@ -258,7 +258,7 @@ public class ChaosMonkeyShardSplitTest extends ShardSplitTest {
     UpdateShardHandler updateShardHandler = new UpdateShardHandler(30000, 60000);
     // TODO: close Overseer
     Overseer overseer = new Overseer(
-        new HttpShardHandlerFactory().getShardHandler(), updateShardHandler, "/admin/cores", reader, null, new MockConfigSolr());
+        new HttpShardHandlerFactory(), updateShardHandler, "/admin/cores", reader, null, new MockConfigSolr());
     overseer.close();
     ElectionContext ec = new OverseerElectionContext(zkClient, overseer,
         address.replaceAll("/", "_"));
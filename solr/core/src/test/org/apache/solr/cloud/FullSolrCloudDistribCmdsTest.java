@@ -23,6 +23,7 @@ import org.apache.lucene.util.LuceneTestCase.Slow;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.CloudSolrServer;
 import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrServer;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
 import org.apache.solr.client.solrj.request.UpdateRequest;
@@ -34,6 +35,7 @@ import org.apache.solr.common.cloud.SolrZkClient;
 import org.apache.solr.common.cloud.ZkNodeProps;
 import org.apache.solr.common.cloud.ZkStateReader;
 import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
 import org.apache.solr.update.VersionInfo;
 import org.apache.solr.update.processor.DistributedUpdateProcessor;
 import org.apache.zookeeper.CreateMode;
@@ -123,6 +125,8 @@ public class FullSolrCloudDistribCmdsTest extends AbstractFullDistribZkTestBase
     
     testIndexingWithSuss();
     
+    testDirectUpdatesToLeaders();
+    
     // TODO: testOptimisticUpdate(results);
     
     testDeleteByQueryDistrib();
@@ -250,6 +254,47 @@ public class FullSolrCloudDistribCmdsTest extends AbstractFullDistribZkTestBase
     checkShardConsistency();
   }
   
+  private void testDirectUpdatesToLeaders() throws Exception {
+    del("*:*");
+    // the shared cloudClient only sends updates to the leaders half of the time
+    CloudSolrServer leadersClient = new CloudSolrServer(zkServer.getZkAddress(), true);
+    try {
+      leadersClient.setDefaultCollection(DEFAULT_COLLECTION);
+      
+      // the docs are split between the leaders of both shards
+      UpdateRequest uReq = new UpdateRequest();
+      for (int i = 200; i < 250; i++) {
+        SolrInputDocument doc = new SolrInputDocument();
+        addFields(doc, id, i, t1, "routed");
+        uReq.add(doc);
+      }
+      uReq.deleteById("200");
+      NamedList<Object> rsp = leadersClient.request(uReq);
+      controlClient.request(uReq);
+      NamedList<?> routes = (NamedList<?>) rsp.get("routes");
+      assertNotNull("update was not routed by the client: " + rsp, routes);
+      assertNull(routes.get("nonRoutable"));
+      
+      // the delete by query and the commit can't be routed, so they are sent once
+      // after the delete by id, never together with added docs
+      uReq = new UpdateRequest();
+      uReq.deleteById("202");
+      uReq.deleteByQuery(id + ":201");
+      uReq.setAction(UpdateRequest.ACTION.COMMIT, false, true);
+      rsp = leadersClient.request(uReq);
+      controlClient.request(uReq);
+      routes = (NamedList<?>) rsp.get("routes");
+      assertNotNull("update was not routed by the client: " + rsp, routes);
+      assertNotNull(routes.get("nonRoutable"));
+      assertEquals(0, ((NamedList<?>) rsp.get("responseHeader")).get("status"));
+    } finally {
+      leadersClient.shutdown();
+    }
+    
+    assertEquals(47, query(cloudClient).getResults().getNumFound());
+    checkShardConsistency();
+  }
+  
   private void testOptimisticUpdate(QueryResponse results) throws Exception {
     SolrDocument doc = results.getResults().get(0);
     Long version = (Long) doc.getFieldValue(VersionInfo.VERSION_FIELD);
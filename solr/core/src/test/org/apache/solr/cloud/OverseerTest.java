@@ -887,6 +887,158 @@ public class OverseerTest extends SolrTestCaseJ4 {
   }
 
   
+  @Test
+  public void testStateFormat() throws Exception {
+    String zkDir = dataDir.getAbsolutePath() + File.separator
+        + "zookeeper/server1/data";
+    ZkTestServer server = new ZkTestServer(zkDir);
+    SolrZkClient zkClient = null;
+    SolrZkClient overseerClient = null;
+    ZkStateReader reader = null;
+
+    try {
+      server.run();
+      zkClient = new SolrZkClient(server.getZkAddress(), TIMEOUT);
+      AbstractZkTestCase.tryCleanSolrZkNode(server.getZkHost());
+      AbstractZkTestCase.makeSolrZkNode(server.getZkHost());
+      zkClient.makePath(ZkStateReader.LIVE_NODES_ZKNODE, true);
+
+      reader = new ZkStateReader(zkClient);
+      reader.createClusterStateWatchersAndUpdate();
+
+      overseerClient = electNewOverseer(server.getZkAddress());
+
+      DistributedQueue q = Overseer.getInQueue(zkClient);
+      ZkNodeProps m = new ZkNodeProps(Overseer.QUEUE_OPERATION, "state",
+          ZkStateReader.BASE_URL_PROP, "http://127.0.0.1/solr",
+          ZkStateReader.NODE_NAME_PROP, "node1",
+          ZkStateReader.COLLECTION_PROP, "collection1",
+          ZkStateReader.CORE_NAME_PROP, "core1",
+          ZkStateReader.ROLES_PROP, "",
+          ZkStateReader.STATE_PROP, ZkStateReader.ACTIVE);
+      q.offer(ZkStateReader.toJSON(m));
+      m = new ZkNodeProps(Overseer.QUEUE_OPERATION, OverseerCollectionProcessor.CREATECOLLECTION,
+          "name", "collection2",
+          ZkStateReader.NUM_SHARDS_PROP, "2",
+          DocCollection.STATE_FORMAT, "2");
+      q.offer(ZkStateReader.toJSON(m));
+
+      waitForCollections(reader, "collection1", "collection2");
+
+      // collection2 has its own state node, and is only read when asked for
+      assertNotNull(zkClient.exists(ZkStateReader.getCollectionPath("collection2"), null, true));
+      assertEquals(Collections.singleton("collection1"),
+          ClusterState.load(zkClient, Collections.<String>emptySet()).getCollections());
+      assertTrue(reader.getClusterState().getCollectionRef("collection2").isLazilyLoaded());
+      assertFalse(reader.getClusterState().getCollectionRef("collection1").isLazilyLoaded());
+      DocCollection coll = reader.getClusterState().getCollection("collection2");
+      assertEquals(2, coll.getStateFormat());
+      assertEquals(2, coll.getSlices().size());
+      assertEquals(1, reader.getClusterState().getCollection("collection1").getStateFormat());
+
+      // once watched, changes are seen without asking
+      reader.addCollectionWatch("collection2");
+      assertFalse(reader.getClusterState().getCollectionRef("collection2").isLazilyLoaded());
+      m = new ZkNodeProps(Overseer.QUEUE_OPERATION, "state",
+          ZkStateReader.BASE_URL_PROP, "http://127.0.0.1/solr",
+          ZkStateReader.NODE_NAME_PROP, "node1",
+          ZkStateReader.SHARD_ID_PROP, "shard1",
+          ZkStateReader.COLLECTION_PROP, "collection2",
+          ZkStateReader.CORE_NAME_PROP, "core2",
+          ZkStateReader.ROLES_PROP, "",
+          ZkStateReader.STATE_PROP, ZkStateReader.ACTIVE);
+      q.offer(ZkStateReader.toJSON(m));
+      for (int i = 0; i < 100; i++) {
+        Slice s = reader.getClusterState().getSlice("collection2", "shard1");
+        if (s != null && s.getReplicasMap().size() == 1) break;
+        Thread.sleep(100);
+      }
+      assertEquals(1, reader.getClusterState().getSlice("collection2", "shard1").getReplicasMap().size());
+      assertEquals(Collections.singleton("collection1"),
+          ClusterState.load(zkClient, Collections.<String>emptySet()).getCollections());
+
+      // and once no longer watched, it is read when asked for again
+      reader.removeCollectionWatch("collection2");
+      assertTrue(reader.getClusterState().getCollectionRef("collection2").isLazilyLoaded());
+      assertEquals(1, reader.getClusterState().getSlice("collection2", "shard1").getReplicasMap().size());
+
+      // move collection1 out of clusterstate.json
+      m = new ZkNodeProps(Overseer.QUEUE_OPERATION, OverseerCollectionProcessor.MIGRATESTATEFORMAT,
+          "name", "collection1");
+      q.offer(ZkStateReader.toJSON(m));
+      for (int i = 0; i < 100; i++) {
+        if (reader.getClusterState().getCollection("collection1").getStateFormat() == 2) break;
+        Thread.sleep(100);
+      }
+      assertEquals(2, reader.getClusterState().getCollection("collection1").getStateFormat());
+      assertNotNull(zkClient.exists(ZkStateReader.getCollectionPath("collection1"), null, true));
+      assertTrue(ClusterState.load(zkClient, Collections.<String>emptySet()).getCollections().isEmpty());
+      assertEquals(ZkStateReader.ACTIVE, reader.getClusterState().getSlice("collection1", "shard1")
+          .getReplicasMap().get("core_node1").getStr(ZkStateReader.STATE_PROP));
+    } finally {
+      close(overseerClient);
+      close(zkClient);
+      close(reader);
+      server.shutdown();
+    }
+  }
+
+  @Test
+  public void testBatchedStateUpdates() throws Exception {
+    String zkDir = dataDir.getAbsolutePath() + File.separator
+        + "zookeeper/server1/data";
+    ZkTestServer server = new ZkTestServer(zkDir);
+    SolrZkClient zkClient = null;
+    SolrZkClient overseerClient = null;
+    ZkStateReader reader = null;
+
+    try {
+      server.run();
+      zkClient = new SolrZkClient(server.getZkAddress(), TIMEOUT);
+      AbstractZkTestCase.tryCleanSolrZkNode(server.getZkHost());
+      AbstractZkTestCase.makeSolrZkNode(server.getZkHost());
+      zkClient.makePath(ZkStateReader.LIVE_NODES_ZKNODE, true);
+
+      reader = new ZkStateReader(zkClient);
+      reader.createClusterStateWatchersAndUpdate();
+      int version = getClusterStateVersion(zkClient);
+
+      // queue up the updates of a restarting node before there is an Overseer
+      final int numCores = 50;
+      DistributedQueue q = Overseer.getInQueue(zkClient);
+      for (int i = 0; i < numCores; i++) {
+        ZkNodeProps m = new ZkNodeProps(Overseer.QUEUE_OPERATION, "state",
+            ZkStateReader.BASE_URL_PROP, "http://127.0.0.1/solr",
+            ZkStateReader.NODE_NAME_PROP, "node1",
+            ZkStateReader.SHARD_ID_PROP, "shard1",
+            ZkStateReader.COLLECTION_PROP, "collection1",
+            ZkStateReader.CORE_NAME_PROP, "core" + i,
+            ZkStateReader.ROLES_PROP, "",
+            ZkStateReader.STATE_PROP, ZkStateReader.DOWN);
+        q.offer(ZkStateReader.toJSON(m));
+      }
+
+      overseerClient = electNewOverseer(server.getZkAddress());
+
+      for (int i = 0; i < 100; i++) {
+        Slice s = reader.getClusterState().getSlice("collection1", "shard1");
+        if (s != null && s.getReplicasMap().size() == numCores) break;
+        Thread.sleep(100);
+      }
+      assertEquals(numCores, reader.getClusterState().getSlice("collection1", "shard1").getReplicasMap().size());
+      assertEquals(0, q.size());
+
+      // the first update is written on its own, the rest are batched
+      int writes = getClusterStateVersion(zkClient) - version;
+      assertTrue("too many writes of the cluster state: " + writes, writes < numCores / 2);
+    } finally {
+      close(overseerClient);
+      close(zkClient);
+      close(reader);
+      server.shutdown();
+    }
+  }
+
   @Test
   public void testReplay() throws Exception{
     String zkDir = dataDir.getAbsolutePath() + File.separator
@@ -984,7 +1136,7 @@ public class OverseerTest extends SolrTestCaseJ4 {
       overseers.get(overseers.size() -1).close();
     }
     Overseer overseer = new Overseer(
-        new HttpShardHandlerFactory().getShardHandler(), updateShardHandler, "/admin/cores", reader, null, new MockConfigSolr());
+        new HttpShardHandlerFactory(), updateShardHandler, "/admin/cores", reader, null, new MockConfigSolr());
     overseers.add(overseer);
     ElectionContext ec = new OverseerElectionContext(zkClient, overseer, address.replaceAll("/", "_"));
     overseerElector.setup(ec);
@@ -64,6 +64,30 @@ public class TestCollectionAPI extends AbstractFullDistribZkTestBase {
     }
 
     listCollection();
+    overseerStatus();
+  }
+
+  private void overseerStatus() throws IOException, SolrServerException {
+    CloudSolrServer client = createCloudClient(null);
+    try {
+      ModifiableSolrParams params = new ModifiableSolrParams();
+      params.set("action", CollectionParams.CollectionAction.OVERSEERSTATUS.toString());
+      SolrRequest request = new QueryRequest(params);
+      request.setPath("/admin/collections");
+
+      NamedList<Object> rsp = client.request(request);
+      assertNotNull("leader was not found in overseer status", rsp.get("leader"));
+      assertNotNull(rsp.get("overseer_queue_size"));
+      NamedList<Object> collectionOps = (NamedList<Object>) rsp.get("collection_operations");
+      NamedList<Object> create = (NamedList<Object>) collectionOps.get(OverseerCollectionProcessor.CREATECOLLECTION);
+      assertNotNull("createcollection was not found in overseer status", create);
+      assertTrue(((Number) create.get("requests")).intValue() >= 2);
+      NamedList<Object> updateOps = (NamedList<Object>) rsp.get("overseer_operations");
+      assertNotNull("state updates were not found in overseer status", updateOps.get("state"));
+      assertNotNull("cluster state writes were not found in overseer status", updateOps.get(Overseer.WRITE_STATE));
+    } finally {
+      client.shutdown();
+    }
   }
 
   private void listCollection() throws IOException, SolrServerException {
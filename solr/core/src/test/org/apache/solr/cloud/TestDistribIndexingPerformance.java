@@ -0,0 +1,79 @@
+package org.apache.solr.cloud;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.util.LuceneTestCase.Slow;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.common.SolrInputDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the indexing throughput of a shard with a leader and two replicas,
+ * where the leader forwards every update to both replicas.
+ *
+ * $ ant test -Dtestcase=TestDistribIndexingPerformance -Dargs="-server -Diter=200000 -Dbatch=100"; grep throughput build/test-results/*TestDistribIndexingPerformance.xml
+ */
+@Slow
+public class TestDistribIndexingPerformance extends AbstractFullDistribZkTestBase {
+  private static Logger log = LoggerFactory.getLogger(TestDistribIndexingPerformance.class);
+
+  public TestDistribIndexingPerformance() {
+    super();
+    sliceCount = 1;
+    shardCount = 3;
+  }
+
+  @Override
+  public void doTest() throws Exception {
+    int iter = Integer.parseInt(System.getProperty("iter", "2000"));
+    int batch = Integer.parseInt(System.getProperty("batch", "100"));
+
+    waitForRecoveriesToFinish(false);
+
+    long start = System.currentTimeMillis();
+    List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(batch);
+    for (int i = 0; i < iter; i++) {
+      SolrInputDocument doc = new SolrInputDocument();
+      doc.addField(id, Integer.toString(i));
+      doc.addField(i1, i);
+      doc.addField(t1, "how now brown cow, just how fast is this text indexing?");
+      docs.add(doc);
+      if (docs.size() == batch) {
+        cloudClient.add(docs);
+        docs.clear();
+      }
+    }
+    if (!docs.isEmpty()) {
+      cloudClient.add(docs);
+    }
+    long end = System.currentTimeMillis();
+    log.info("iter=" + iter + " batch=" + batch + " replicas=" + shardCount + " time=" + (end - start)
+        + " throughput=" + ((long) iter * 1000) / Math.max(1, end - start));
+
+    commit();
+    assertEquals(iter, cloudClient.query(new SolrQuery("*:*")).getResults().getNumFound());
+    String fail = checkShardConsistency("shard1", false, false);
+    if (fail != null) {
+      fail(fail);
+    }
+  }
+}
@@ -29,6 +29,8 @@ import org.apache.solr.update.AddUpdateCommand;
 import org.apache.solr.update.CommitUpdateCommand;
 import org.apache.solr.update.DeleteUpdateCommand;
 import org.apache.solr.update.processor.BufferingRequestProcessor;
+import org.apache.solr.update.processor.PipelinedUpdateProcessor;
+import org.apache.solr.update.processor.UpdateRequestProcessorChain;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.xml.sax.SAXException;
@@ -242,6 +244,37 @@ public class JsonLoaderTest extends SolrTestCaseJ4 {
     );
   }
   
+  @Test
+  public void testPipelinedUpdates() throws Exception {
+    clearIndex();
+
+    // several adds for each id, which must be applied in the order they were sent
+    // (fields are multiValued in this schema version, hence the lists below)
+    StringBuilder json = new StringBuilder("{");
+    for (int i=0; i<500; i++) {
+      json.append("'add':{'doc':{'id':").append(i % 50).append(",'val_i':").append(i).append("}},");
+    }
+    json.append("'delete':{'id':3},'delete':{'query':'id:4'},'commit':{}}");
+
+    // built here rather than by the handler, which allows no more threads than there are cores
+    SolrQueryRequest req = req();
+    SolrQueryResponse rsp = new SolrQueryResponse();
+    UpdateRequestProcessorChain chain = h.getCore().getUpdateProcessingChain(null);
+    PipelinedUpdateProcessor p = new PipelinedUpdateProcessor(chain, req, rsp, 4, chain.createProcessor(req, rsp));
+    try {
+      assertEquals(4, p.getNumThreads());
+      new JsonLoader().load(req, rsp, new ContentStreamBase.StringStream(json.toString().replace('\'', '"')), p);
+    } finally {
+      p.finish();
+      req.close();
+    }
+    assertNull(rsp.getException());
+
+    assertJQ(req("q","id:[0 TO 49]"), "/response/numFound==48");
+    assertJQ(req("q","id:0", "fl","val_i"), "/response/docs/[0]=={'val_i':[450]}");
+    assertJQ(req("q","id:49", "fl","val_i"), "/response/docs/[0]=={'val_i':[499]}");
+  }
+
   @Test
   public void testBooleanValuesInAdd() throws Exception {
     String str = "{'add':[{'id':'1','b1':true,'b2':false,'b3':[false,true]}]}".replace('\'', '"');
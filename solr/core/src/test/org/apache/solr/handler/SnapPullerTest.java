@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.handler;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Adler32;
+
+import org.apache.lucene.store.BaseDirectoryWrapper;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class SnapPullerTest extends LuceneTestCase {
+
+  public void testChecksummedIndexFiles() {
+    assertTrue(ReplicationHandler.isChecksummedIndexFile("_0.si"));
+    assertTrue(ReplicationHandler.isChecksummedIndexFile("_0_1.del"));
+    assertTrue(ReplicationHandler.isChecksummedIndexFile("_a_z.del"));
+    // the files written once with a segment, including those of per-field formats
+    assertFalse(ReplicationHandler.isChecksummedIndexFile("_0.fdt"));
+    assertFalse(ReplicationHandler.isChecksummedIndexFile("_0_Lucene41_0.tim"));
+    assertFalse(ReplicationHandler.isChecksummedIndexFile("_0_Lucene41_0.doc"));
+    assertFalse(ReplicationHandler.isChecksummedIndexFile("_0_Lucene42_0.dvd"));
+    assertFalse(ReplicationHandler.isChecksummedIndexFile("_0_dv.cfs"));
+    assertFalse(ReplicationHandler.isChecksummedIndexFile("segments_2"));
+
+    assertEquals(1, ReplicationHandler.parseGeneration("_0_1.del"));
+    assertEquals(35, ReplicationHandler.parseGeneration("_a_z.del"));
+    assertEquals(0, ReplicationHandler.parseGeneration("_0.del"));
+    assertEquals(0, ReplicationHandler.parseGeneration("_0_Lucene41_0.tim"));
+  }
+
+  public void testIsReusable() throws Exception {
+    BaseDirectoryWrapper dir = newDirectory();
+    dir.setCheckIndexOnClose(false);
+    try {
+      write(dir, "_0.si", "segment info");
+      write(dir, "_0_Lucene41_0.tim", "terms");
+      write(dir, "_0_1.del", "deletes");
+      write(dir, "segments_2", "commit");
+
+      // the master has the same files
+      Map<String,Map<String,Object>> master = new HashMap<String,Map<String,Object>>();
+      for (String name : dir.listAll()) {
+        master.put(name, fileMeta(dir, name));
+      }
+      assertTrue(isReusable(dir, "_0.si", master));
+      assertTrue(isReusable(dir, "_0_Lucene41_0.tim", master));
+      assertTrue(isReusable(dir, "_0_1.del", master));
+      // the commit is always downloaded
+      assertFalse(isReusable(dir, "segments_2", master));
+
+      // the deletes changed, not the segment
+      master.get("_0_1.del").put(ReplicationHandler.CHECKSUM, 1L);
+      assertFalse(isReusable(dir, "_0_1.del", master));
+      assertTrue(isReusable(dir, "_0_Lucene41_0.tim", master));
+
+      // a segment with the same name but another content, as written by another IndexWriter
+      master.get("_0.si").put(ReplicationHandler.CHECKSUM, 1L);
+      assertFalse(isReusable(dir, "_0.si", master));
+      assertFalse(isReusable(dir, "_0_Lucene41_0.tim", master));
+
+      // a master of an older version sends no checksums
+      master.get("_0.si").remove(ReplicationHandler.CHECKSUM);
+      assertFalse(isReusable(dir, "_0_Lucene41_0.tim", master));
+
+      // a file of another size, or that isn't here, differs
+      master.put("_0.si", fileMeta(dir, "_0.si"));
+      master.get("_0_Lucene41_0.tim").put(ReplicationHandler.SIZE, 1L);
+      assertFalse(isReusable(dir, "_0_Lucene41_0.tim", master));
+      master.put("_1.si", fileMeta(dir, "_0.si"));
+      master.get("_1.si").put(ReplicationHandler.NAME, "_1.si");
+      assertFalse(isReusable(dir, "_1.si", master));
+    } finally {
+      dir.close();
+    }
+  }
+
+  private static boolean isReusable(Directory dir, String name, Map<String,Map<String,Object>> master)
+      throws IOException {
+    return SnapPuller.isReusable(dir, name, master, new HashMap<String,Boolean>());
+  }
+
+  private static void write(Directory dir, String name, String content) throws IOException {
+    IndexOutput out = dir.createOutput(name, IOContext.DEFAULT);
+    try {
+      out.writeString(content);
+    } finally {
+      out.close();
+    }
+  }
+
+  // the file list entry the master sends for the file
+  private static Map<String,Object> fileMeta(Directory dir, String name) throws IOException {
+    Map<String,Object> fileMeta = new HashMap<String,Object>();
+    fileMeta.put(ReplicationHandler.NAME, name);
+    fileMeta.put(ReplicationHandler.SIZE, dir.fileLength(name));
+    if (ReplicationHandler.isChecksummedIndexFile(name)) {
+      fileMeta.put(ReplicationHandler.CHECKSUM, ReplicationHandler.getCheckSum(new Adler32(), dir, name));
+    }
+    return fileMeta;
+  }
+}
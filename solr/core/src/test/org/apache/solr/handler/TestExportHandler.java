@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.handler;
+
+import org.apache.lucene.util.LuceneTestCase.SuppressCodecs;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+@SuppressCodecs("Lucene3x")
+public class TestExportHandler extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeTests() throws Exception {
+    initCore("solrconfig.xml", "schema-docValues.xml");
+  }
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    clearIndex();
+    assertU(adoc("id", "1", "intdv", "3", "floatdv", "2.5", "stringdv", "b"));
+    assertU(adoc("id", "2", "intdv", "1", "floatdv", "-1.5", "stringdv", "c"));
+    assertU(commit());
+    // a second segment, so sorting has to merge across segments
+    assertU(adoc("id", "3", "intdv", "2", "floatdv", "0.5", "stringdv", "a"));
+    assertU(adoc("id", "4", "intdv", "3", "floatdv", "7.0", "stringdv", "a"));
+    assertU(commit());
+  }
+
+  @Test
+  public void testSortedExport() throws Exception {
+    assertJQ(req("qt", "/export", "q", "*:*", "sort", "intdv asc", "fl", "intdv")
+        , "/numFound==4"
+        , "/docs==[{'intdv':1},{'intdv':2},{'intdv':3},{'intdv':3}]"
+    );
+
+    assertJQ(req("qt", "/export", "q", "*:*", "sort", "floatdv desc", "fl", "floatdv,stringdv")
+        , "/docs==[{'floatdv':7.0,'stringdv':'a'},{'floatdv':2.5,'stringdv':'b'},{'floatdv':0.5,'stringdv':'a'},{'floatdv':-1.5,'stringdv':'c'}]"
+    );
+
+    // multiple sort fields, with a string sort that spans segments
+    assertJQ(req("qt", "/export", "q", "*:*", "sort", "stringdv asc, intdv desc", "fl", "intdv")
+        , "/docs==[{'intdv':3},{'intdv':2},{'intdv':3},{'intdv':1}]"
+    );
+
+    // filters, and batches smaller than the result set
+    assertJQ(req("qt", "/export", "q", "*:*", "fq", "id:[2 TO 4]", "sort", "intdv desc", "fl", "intdv", ExportHandler.BATCH_SIZE, "1")
+        , "/numFound==3"
+        , "/docs==[{'intdv':3},{'intdv':2},{'intdv':1}]"
+    );
+  }
+
+  @Test
+  public void testMissingValues() throws Exception {
+    // in the same segment, one doc with a value and one without
+    assertU(adoc("id", "5", "intdv", "4", "opt_idv", "7"));
+    assertU(adoc("id", "6", "intdv", "5"));
+    assertU(commit());
+    // the docs without a value leave the field out, rather than returning 0
+    assertJQ(req("qt", "/export", "q", "*:*", "sort", "intdv asc", "fl", "intdv,opt_idv")
+        , "/docs==[{'intdv':1},{'intdv':2},{'intdv':3},{'intdv':3},{'intdv':4,'opt_idv':7},{'intdv':5}]"
+    );
+  }
+
+  @Test
+  public void testBadRequests() throws Exception {
+    ignoreException("export");
+    try {
+      assertQEx("no sort", req("qt", "/export", "q", "*:*", "fl", "intdv"), SolrException.ErrorCode.BAD_REQUEST);
+      assertQEx("no fl", req("qt", "/export", "q", "*:*", "sort", "intdv asc"), SolrException.ErrorCode.BAD_REQUEST);
+      assertQEx("no docValues", req("qt", "/export", "q", "*:*", "sort", "intdv asc", "fl", "id"), SolrException.ErrorCode.BAD_REQUEST);
+      assertQEx("score sort", req("qt", "/export", "q", "*:*", "sort", "score desc, intdv asc", "fl", "intdv"), SolrException.ErrorCode.BAD_REQUEST);
+    } finally {
+      resetExceptionIgnores();
+    }
+  }
+}
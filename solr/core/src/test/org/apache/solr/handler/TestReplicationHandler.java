@@ -741,6 +741,41 @@ public class TestReplicationHandler extends SolrTestCaseJ4 {
   }
   
   
+  @Test
+  public void doTestParallelSnapPull() throws Exception {
+    //this has no entry for pollinginterval
+    slave.copyConfigFile(CONF_DIR + "solrconfig-slave1.xml", "solrconfig.xml");
+    slaveJetty.stop();
+    slaveJetty = createJetty(slave);
+    slaveClient = createNewSolrServer(slaveJetty.getLocalPort());
+
+    masterClient.deleteByQuery("*:*");
+    slaveClient.deleteByQuery("*:*");
+    slaveClient.commit();
+    // a few segments, so there are several files to download at once
+    int numDocs = 0;
+    for (int commits = 0; commits < 4; commits++) {
+      for (int i = 0; i < 10; i++, numDocs++)
+        index(masterClient, "id", numDocs, "name", "name = " + numDocs);
+      masterClient.commit();
+    }
+    NamedList masterQueryRsp = rQuery(numDocs, "*:*", masterClient);
+    SolrDocumentList masterQueryResult = (SolrDocumentList) masterQueryRsp.get("response");
+
+    String url = "http://127.0.0.1:" + slaveJetty.getLocalPort() + "/solr/replication?wait=true&command=fetchindex"
+        + "&maxParallelDownloads=3&verifyChecksums=true&maxMBPerSec=100"
+        + "&masterUrl=http://127.0.0.1:" + masterJetty.getLocalPort() + "/solr/replication";
+    InputStream stream = new URL(url).openStream();
+    stream.close();
+
+    NamedList slaveQueryRsp = rQuery(numDocs, "*:*", slaveClient);
+    SolrDocumentList slaveQueryResult = (SolrDocumentList) slaveQueryRsp.get("response");
+    assertEquals(numDocs, slaveQueryResult.getNumFound());
+    String cmp = BaseDistributedSearchTestCase.compare(masterQueryResult, slaveQueryResult, 0, null);
+    assertEquals(null, cmp);
+    assertVersions(masterClient, slaveClient);
+  }
+
   @Test 
   public void doTestStressReplication() throws Exception {
     // change solrconfig on slave
@@ -349,6 +349,45 @@ public class StatsComponentTest extends AbstractSolrTestCase {
         "//null[@name='active_dt'][.='']");
   }
 
+  public void testApproximateStats() throws Exception {
+    assertU(adoc("id", "1", "stats_ti", "10", "stats_tis", "1", "stats_tis", "2", "active_s", "a"));
+    assertU(adoc("id", "2", "stats_ti", "20", "stats_tis", "2", "stats_tis", "3", "active_s", "b"));
+    assertU(commit());
+    assertU(adoc("id", "3", "stats_ti", "20", "active_s", "a"));
+    assertU(adoc("id", "4", "stats_ti", "30"));
+    assertU(adoc("id", "5", "stats_ti", "40"));
+    assertU(adoc("id", "6"));
+    assertU(commit());
+
+    assertQ("test approximate statistics values", req("q","*:*", "stats","true", "stats.field","stats_ti",
+                                                      "stats.cardinality","true", "stats.percentiles","0, 25,50,100")
+            , "//lst[@name='stats_ti']/long[@name='count'][.='5']"
+            , "//lst[@name='stats_ti']/long[@name='cardinality'][.='4']"
+            , "//lst[@name='stats_ti']/lst[@name='percentiles']/double[@name='0'][.='10.0']"
+            , "//lst[@name='stats_ti']/lst[@name='percentiles']/double[@name='25'][.='17.5']"
+            , "//lst[@name='stats_ti']/lst[@name='percentiles']/double[@name='50'][.='20.0']"
+            , "//lst[@name='stats_ti']/lst[@name='percentiles']/double[@name='100'][.='40.0']"
+    );
+
+    // multivalued and string fields, per field params
+    assertQ("test approximate statistics values", req("q","*:*", "stats","true", "stats.field","stats_tis", "stats.field","active_s",
+                                                      "stats.field","stats_ti", "stats.cardinality","true",
+                                                      "f.stats_tis.stats.percentiles","50", "f.stats_ti.stats.cardinality","false")
+            , "//lst[@name='stats_tis']/long[@name='cardinality'][.='3']"
+            , "//lst[@name='stats_tis']/lst[@name='percentiles']/double[@name='50'][.='2.0']"
+            , "//lst[@name='active_s']/long[@name='cardinality'][.='2']"
+            , "count(//lst[@name='stats_ti']/long[@name='cardinality'])=0"
+            , "count(//lst[@name='stats_ti']/lst[@name='percentiles'])=0"
+    );
+
+    assertQEx("percentiles of a string field",
+              req("q","*:*", "stats","true", "stats.field","active_s", "stats.percentiles","50"),
+              400);
+    assertQEx("percentile out of range",
+              req("q","*:*", "stats","true", "stats.field","stats_ti", "stats.percentiles","50,101"),
+              400);
+  }
+
   public void testStatsFacetMultivaluedErrorHandling() throws Exception {
     SolrCore core = h.getCore();
     SchemaField foo_ss = core.getLatestSchema().getField("foo_ss");
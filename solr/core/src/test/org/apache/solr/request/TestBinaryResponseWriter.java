@@ -18,6 +18,7 @@ package org.apache.solr.request;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.UUID;
 
@@ -72,6 +73,50 @@ public class TestBinaryResponseWriter extends AbstractSolrTestCase {
     req.close();
   }
 
+  /**
+   * Tests that a page with more documents than the document cache holds is written
+   * without going through the cache, and with the same values
+   */
+  public void testLargePage() throws Exception {
+    assertU(delQ("*:*"));
+    int numDocs = 600;  // the document cache holds 512
+    for (int i = 0; i < numDocs; i++) {
+      assertU(adoc("id", Integer.toString(i), "foo_i", Integer.toString(i), "bar_s", "a" + i, "bar_s", "b" + i));
+    }
+    assertU(commit());
+
+    LocalSolrQueryRequest req = lrf.makeRequest("q", "*:*", "rows", Integer.toString(numDocs), "fl", "id,foo_i,bar_s");
+    SolrQueryResponse rsp = h.queryAndResponse(req.getParams().get(CommonParams.QT), req);
+    BinaryQueryResponseWriter writer = (BinaryQueryResponseWriter) h.getCore().getQueryResponseWriter("javabin");
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    writer.write(baos, req, rsp);
+    NamedList res = (NamedList) new JavaBinCodec().unmarshal(new ByteArrayInputStream(baos.toByteArray()));
+    SolrDocumentList docs = (SolrDocumentList) res.get("response");
+    assertEquals(numDocs, docs.size());
+    for (SolrDocument doc : docs) {
+      String id = (String) doc.getFieldValue("id");
+      assertEquals(Integer.valueOf(id), doc.getFieldValue("foo_i"));
+      assertEquals(Arrays.asList("a" + id, "b" + id), doc.getFieldValue("bar_s"));
+      assertEquals(3, doc.getFieldNames().size());
+    }
+    req.close();
+    assertEquals(0, getDocumentCacheSize());
+
+    assertQ(req("q", "*:*", "rows", Integer.toString(numDocs), "fl", "id,bar_s"),
+        "//result[@numFound='" + numDocs + "']",
+        "count(//result/doc/arr[@name='bar_s']/str)=" + (2 * numDocs),
+        "//result/doc[str[@name='id']='7']/arr[@name='bar_s']/str[1][.='a7']");
+    assertEquals(0, getDocumentCacheSize());
+
+    // small pages are still cached
+    assertQ(req("q", "*:*", "rows", "10", "fl", "id,bar_s"), "count(//result/doc)=10");
+    assertEquals(10, getDocumentCacheSize());
+  }
+
+  private int getDocumentCacheSize() {
+    return ((Number) h.getCore().getInfoRegistry().get("documentCache").getStatistics().get("size")).intValue();
+  }
+
   public void testResolverSolrDocumentPartialFields() throws Exception {
     LocalSolrQueryRequest req = lrf.makeRequest("q", "*:*",
                                                 "fl", "id,xxx,ddd_s"); 
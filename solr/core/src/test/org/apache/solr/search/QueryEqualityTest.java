@@ -706,6 +706,38 @@ public class QueryEqualityTest extends SolrTestCaseJ4 {
   }
   
   // TODO: more tests
+  public void testQueryCollapse() throws Exception {
+    SolrQueryRequest req = req("myField", "foo_s1",
+                               "price", "foo_i");
+    try {
+      assertQueryEquals("collapse", req,
+                        "{!collapse field=foo_s1}",
+                        "{!collapse field=$myField}",
+                        "{!collapse field=foo_s1 nullPolicy=ignore}");
+      assertQueryEquals("collapse", req,
+                        "{!collapse field=foo_s1 max=foo_i}",
+                        "{!collapse field=foo_s1 max=$price}");
+    } finally {
+      req.close();
+    }
+  }
+
+  public void testQueryReRank() throws Exception {
+    SolrQueryRequest req = req("rqq", "foo_s1:bar",
+                               "rdocs", "200");
+    try {
+      assertQueryEquals("rerank", req,
+                        "{!rerank reRankQuery=$rqq}",
+                        "{!rerank reRankQuery=$rqq reRankDocs=200}",
+                        "{!rerank reRankQuery=foo_s1:bar reRankDocs=$rdocs reRankWeight=2.0}");
+      assertQueryEquals("rerank", req,
+                        "{!rerank reRankQuery=$rqq reRankDocs=10 reRankWeight=5}",
+                        "{!rerank reRankQuery='foo_s1:bar' reRankDocs=10 reRankWeight=5.0}");
+    } finally {
+      req.close();
+    }
+  }
+
   public void testQueryMaxScore() throws Exception {
     assertQueryEquals("maxscore", "{!maxscore}A OR B OR C",
                       "A OR B OR C");
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestCollapseQParserPlugin extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    // the ids of schema11 are floats
+    initCore("solrconfig.xml", "schema11.xml");
+  }
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    clearIndex();
+    assertU(adoc("id", "1", "group_s", "a", "price_ti", "10"));
+    assertU(adoc("id", "2", "group_s", "a", "price_ti", "5"));
+    assertU(adoc("id", "3", "group_s", "b", "price_ti", "7"));
+    assertU(commit());
+    // groups span segments
+    assertU(adoc("id", "4", "group_s", "b", "price_ti", "20"));
+    assertU(adoc("id", "5", "group_s", "c", "price_ti", "1"));
+    assertU(adoc("id", "6", "price_ti", "3"));
+    assertU(adoc("id", "7", "price_ti", "4"));
+    assertU(commit());
+  }
+
+  @Test
+  public void testCollapseByScore() throws Exception {
+    assertJQ(req("q", "{!func}price_ti", "fq", "{!collapse field=group_s}", "fl", "id", "sort", "id asc")
+        , "/response/numFound==3"
+        , "/response/docs==[{'id':1.0},{'id':4.0},{'id':5.0}]"
+    );
+    assertJQ(req("q", "{!func}price_ti", "fq", "{!collapse field=group_s}", "fl", "id,score")
+        , "/response/docs==[{'id':4.0,'score':20.0},{'id':1.0,'score':10.0},{'id':5.0,'score':1.0}]"
+    );
+  }
+
+  @Test
+  public void testCollapseByValue() throws Exception {
+    assertJQ(req("q", "*:*", "fq", "{!collapse field=group_s min=price_ti}", "fl", "id", "sort", "price_ti asc")
+        , "/response/docs==[{'id':5.0},{'id':2.0},{'id':3.0}]"
+    );
+    assertJQ(req("q", "*:*", "fq", "{!collapse field=group_s max=price_ti}", "fl", "id,score", "sort", "price_ti desc")
+        , "/response/docs/[0]/id==4.0"
+        , "/response/docs/[1]/id==1.0"
+        , "/response/docs/[2]/id==5.0"
+    );
+  }
+
+  @Test
+  public void testNullPolicy() throws Exception {
+    assertJQ(req("q", "*:*", "fq", "{!collapse field=group_s min=price_ti nullPolicy=expand}", "fl", "id", "sort", "id asc")
+        , "/response/docs==[{'id':2.0},{'id':3.0},{'id':5.0},{'id':6.0},{'id':7.0}]"
+    );
+    assertJQ(req("q", "*:*", "fq", "{!collapse field=group_s min=price_ti nullPolicy=collapse}", "fl", "id", "sort", "id asc")
+        , "/response/docs==[{'id':2.0},{'id':3.0},{'id':5.0},{'id':6.0}]"
+    );
+  }
+
+  @Test
+  public void testFacetsCountGroupHeads() throws Exception {
+    assertJQ(req("q", "*:*", "fq", "{!collapse field=group_s max=price_ti}", "rows", "0",
+                 "facet", "true", "facet.field", "group_s", "facet.mincount", "1")
+        , "/response/numFound==3"
+        , "/facet_counts/facet_fields/group_s==['a',1,'b',1,'c',1]"
+    );
+    // combined with a regular filter, which is applied before collapsing
+    assertJQ(req("q", "*:*", "fq", "{!collapse field=group_s max=price_ti}", "fq", "price_ti:[0 TO 10]", "fl", "id", "sort", "id asc")
+        , "/response/docs==[{'id':1.0},{'id':3.0},{'id':5.0}]"
+    );
+  }
+}
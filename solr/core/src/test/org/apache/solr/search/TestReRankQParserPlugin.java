@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestReRankQParserPlugin extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    // the ids of schema11 are floats
+    initCore("solrconfig.xml", "schema11.xml");
+  }
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    clearIndex();
+    assertU(adoc("id", "1", "test_ti", "1"));
+    assertU(adoc("id", "2", "test_ti", "2"));
+    assertU(adoc("id", "3", "test_ti", "3"));
+    assertU(commit());
+    assertU(adoc("id", "4", "test_ti", "4"));
+    assertU(adoc("id", "5", "test_ti", "5"));
+    assertU(commit());
+  }
+
+  @Test
+  public void testReRank() throws Exception {
+    // only docs within the top reRankDocs of the main query are re-ranked
+    assertJQ(req("q", "{!func}test_ti", "fl", "id",
+                 "rq", "{!rerank reRankQuery=$rqq reRankDocs=3 reRankWeight=1000}", "rqq", "id:3 OR id:1")
+        , "/response/numFound==5"
+        , "/response/docs==[{'id':3.0},{'id':5.0},{'id':4.0},{'id':2.0},{'id':1.0}]"
+    );
+
+    assertJQ(req("q", "{!func}test_ti", "fl", "id",
+                 "rq", "{!rerank reRankQuery=$rqq reRankDocs=2 reRankWeight=1000}", "rqq", "id:3 OR id:1")
+        , "/response/docs==[{'id':5.0},{'id':4.0},{'id':3.0},{'id':2.0},{'id':1.0}]"
+    );
+
+    // paging through re-ranked results, repeated to exercise the queryResultCache
+    for (int i = 0; i < 2; i++) {
+      assertJQ(req("q", "{!func}test_ti", "fl", "id", "start", "2", "rows", "2",
+                   "rq", "{!rerank reRankQuery=$rqq reRankDocs=3 reRankWeight=1000}", "rqq", "id:3 OR id:1")
+          , "/response/docs==[{'id':4.0},{'id':2.0}]"
+      );
+    }
+
+    // filters are honored
+    assertJQ(req("q", "{!func}test_ti", "fl", "id", "fq", "-id:2",
+                 "rq", "{!rerank reRankQuery=$rqq reRankDocs=4 reRankWeight=1000}", "rqq", "id:1")
+        , "/response/numFound==4"
+        , "/response/docs==[{'id':1.0},{'id':5.0},{'id':4.0},{'id':3.0}]"
+    );
+
+    // the rest of a sort by score breaks ties after re-ranking
+    assertJQ(req("q", "*:*", "fl", "id", "sort", "score desc, test_ti desc",
+                 "rq", "{!rerank reRankQuery=$rqq reRankDocs=5 reRankWeight=1000}", "rqq", "id:2")
+        , "/response/docs==[{'id':2.0},{'id':5.0},{'id':4.0},{'id':3.0},{'id':1.0}]"
+    );
+  }
+
+  @Test
+  public void testBadRequests() throws Exception {
+    ignoreException("rerank");
+    try {
+      assertQEx("missing reRankQuery", req("q", "*:*", "rq", "{!rerank reRankDocs=3}"), SolrException.ErrorCode.BAD_REQUEST);
+      assertQEx("not a RankQuery", req("q", "*:*", "rq", "id:1"), SolrException.ErrorCode.BAD_REQUEST);
+      // re-ranking by score would silently override a sort that isn't by score
+      assertQEx("sort not by score", req("q", "*:*", "sort", "test_ti asc",
+          "rq", "{!rerank reRankQuery=$rqq}", "rqq", "id:5"), SolrException.ErrorCode.BAD_REQUEST);
+      assertQEx("sort by score asc", req("q", "*:*", "sort", "score asc",
+          "rq", "{!rerank reRankQuery=$rqq}", "rqq", "id:5"), SolrException.ErrorCode.BAD_REQUEST);
+    } finally {
+      resetExceptionIgnores();
+    }
+  }
+}
@@ -199,6 +199,55 @@ public class TestRecovery extends SolrTestCaseJ4 {
 
   }
 
+  @Test
+  public void testParallelLogReplay() throws Exception {
+    try {
+      DirectUpdateHandler2.commitOnClose = false;
+      final Semaphore logReplayFinish = new Semaphore(0);
+
+      UpdateLog.testing_logReplayFinishHook = new Runnable() {
+        @Override
+        public void run() {
+          logReplayFinish.release();
+        }
+      };
+
+      clearIndex();
+      assertU(commit());
+
+      // several updates to each id, which must be replayed in order
+      for (int i=0; i<100; i++) {
+        addAndGetVersion(sdoc("id", "P" + (i % 10), "val_i", Integer.toString(i)), null);
+      }
+      deleteAndGetVersion("P3", null);
+      deleteByQueryAndGetVersion("id:P4", null);
+      addAndGetVersion(sdoc("id", "P5", "val_i", "1000"), null);
+
+      assertJQ(req("q","*:*"),"/response/numFound==0");
+
+      System.setProperty("solr.ulog.numReplayThreads", "4");
+      h.close();
+      createCore();
+      // Solr should kick this off now
+
+      // wait until recovery has finished
+      assertTrue(logReplayFinish.tryAcquire(timeout, TimeUnit.SECONDS));
+
+      assertJQ(req("q","*:*") ,"/response/numFound==8");
+      assertJQ(req("q","id:P3") ,"/response/numFound==0");
+      assertJQ(req("q","id:P4") ,"/response/numFound==0");
+      assertJQ(req("q","id:P5", "fl","id,val_i") ,"/response/docs==[{'id':'P5','val_i':1000}]");
+      assertJQ(req("q","id:P9", "fl","id,val_i") ,"/response/docs==[{'id':'P9','val_i':99}]");
+
+      assertEquals(UpdateLog.State.ACTIVE, h.getCore().getUpdateHandler().getUpdateLog().getState());
+
+    } finally {
+      System.clearProperty("solr.ulog.numReplayThreads");
+      DirectUpdateHandler2.commitOnClose = true;
+      UpdateLog.testing_logReplayFinishHook = null;
+    }
+  }
+
   @Test
   public void testBuffering() throws Exception {
 
@@ -836,6 +885,56 @@ public class TestRecovery extends SolrTestCaseJ4 {
     }
   }
 
+  @Test
+  public void testLogRetention() throws Exception {
+    UpdateLog ulog = h.getCore().getUpdateHandler().getUpdateLog();
+    assertEquals(UpdateLog.DEFAULT_NUM_RECORDS_TO_KEEP, ulog.getNumRecordsToKeep());
+    assertEquals(UpdateLog.DEFAULT_MAX_NUM_LOGS_TO_KEEP, ulog.getMaxNumLogsToKeep());
+
+    System.setProperty("solr.ulog.numRecordsToKeep", "15");
+    System.setProperty("solr.ulog.maxNumLogsToKeep", "3");
+    try {
+      clearIndex();
+      assertU(commit());
+
+      File logDir = new File(ulog.getLogDir());
+      h.close();
+      for (String file : ulog.getLogList(logDir)) {
+        new File(logDir, file).delete();
+      }
+      createCore();
+
+      ulog = h.getCore().getUpdateHandler().getUpdateLog();
+      assertEquals(15, ulog.getNumRecordsToKeep());
+      assertEquals(3, ulog.getMaxNumLogsToKeep());
+
+      int start = 0;
+      LinkedList<Long> versions = new LinkedList<Long>();
+      for (int i = 0; i < 3; i++) {
+        addDocs(10, start, versions);  start+=10;
+        assertU(commit());
+      }
+      // the oldest log went once the newer ones held 15 updates
+      assertEquals(2, ulog.getLogList(logDir).length);
+      // the 15 records read back include the commits: the newest log's commit and 10 adds,
+      // then the older log's commit and 3 of its adds
+      assertJQ(req("qt","/get", "getVersions","20"), "/versions==" + versions.subList(0,13));
+
+      for (int i = 0; i < 5; i++) {
+        addDocs(1, start, versions);  start+=1;
+        assertU(commit());
+      }
+      // and no more than 3 logs are kept, even if they hold fewer updates
+      assertEquals(3, ulog.getLogList(logDir).length);
+      assertJQ(req("qt","/get", "getVersions","20"), "/versions==" + versions.subList(0,3));
+    } finally {
+      System.clearProperty("solr.ulog.numRecordsToKeep");
+      System.clearProperty("solr.ulog.maxNumLogsToKeep");
+      h.close();
+      createCore();
+    }
+  }
+
   //
   // test that a partially written last tlog entry (that will cause problems for both reverse reading and for
   // log replay) doesn't stop us from coming up, and from recovering the documents that were not cut off.
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import java.util.List;
+
+import org.apache.solr.BaseDistributedSearchTestCase;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * Compares distributed JSON facets with the control collection, including top
+ * buckets that a shard only returns when asked to refine them.
+ */
+public class DistributedJsonFacetTest extends BaseDistributedSearchTestCase {
+
+  public DistributedJsonFacetTest() {
+    fixShardCount = true;
+    shardCount = 2;
+  }
+
+  @Override
+  public void doTest() throws Exception {
+    del("*:*");
+
+    int docId = 0;
+    // "big" is the top term overall, but only shard0 has it among its top terms
+    for (int i = 0; i < 3; i++) {
+      index_specific(0, id, docId++, "cat_s1", "big", "tag_s", "t" + (i % 2), "price_ti1", 10 * i);
+    }
+    index_specific(1, id, docId++, "cat_s1", "big", "tag_s", "t1", "price_ti1", 5);
+    for (int i = 0; i < 12; i++) {
+      for (int j = 0; j < 2; j++) {
+        index_specific(1, id, docId++, "cat_s1", "filler" + (i < 10 ? "0" : "") + i, "tag_s", "t" + j, "tag_s", "t2", "price_ti1", i + j);
+      }
+    }
+    commit();
+
+    handle.clear();
+    handle.put("QTime", SKIPVAL);
+    handle.put("timestamp", SKIPVAL);
+    handle.put("maxScore", SKIPVAL);
+    // shards return sketches for these, which may differ a little from the exact values
+    handle.put("uniq", SKIPVAL);
+    handle.put("median", SKIPVAL);
+
+    QueryResponse rsp = query("q", "*:*", "rows", 0, "json.facet", json("{'cats':{'terms':{'field':'cat_s1', 'limit':1}}}"));
+    List<NamedList> buckets = (List<NamedList>)((NamedList)((NamedList)rsp.getResponse().get("facets")).get("cats")).get("buckets");
+    assertEquals("big", buckets.get(0).get("val"));
+    assertEquals(4L, buckets.get(0).get("count"));
+
+    query("q", "*:*", "rows", 0, "json.facet",
+          json("{'cats':{'terms':{'field':'cat_s1', 'limit':3, 'facet':{'sum_p':'sum(price_ti1)', 'avg_p':'avg(price_ti1)', 'tags':{'terms':'tag_s'}}}}}"));
+    query("q", "*:*", "rows", 0, "json.facet",
+          json("{'cats':{'terms':{'field':'cat_s1', 'limit':2, 'offset':1, 'sort':'max_p desc', 'facet':{'max_p':'max(price_ti1)', 'min_p':'min(price_ti1)'}}}}"));
+    query("q", "*:*", "rows", 0, "json.facet",
+          json("{'tags':{'terms':{'field':'tag_s', 'facet':{'uniq':'unique(cat_s1)', 'median':'percentile(price_ti1,50)'}}}}"));
+    query("q", "*:*", "rows", 0, "json.facet",
+          json("{'prices':{'range':{'field':'price_ti1', 'start':0, 'end':30, 'gap':5, 'facet':{'uniq':'unique(cat_s1)', 'tags':{'terms':'tag_s'}}}}}"));
+    query("q", "*:*", "fq", "tag_s:t1", "rows", 0, "json.facet",
+          json("{'sum_p':'sum(price_ti1)', 'cheap':{'query':{'q':'price_ti1:[0 TO 5]', 'facet':{'avg_p':'avg(price_ti1)'}}}}"));
+    // few values are estimated (almost) exactly from the merged sketches
+    rsp = query("q", "*:*", "rows", 0, "json.facet", json("{'uniq':'unique(cat_s1)', 'median':'percentile(price_ti1,50)'}"));
+    NamedList facets = (NamedList)rsp.getResponse().get("facets");
+    assertEquals(13, ((Number)facets.get("uniq")).longValue(), 1);
+    assertEquals(6.0, ((Number)facets.get("median")).doubleValue(), 0.5);
+
+    // stored fields are retrieved in the same phase as the refinements
+    query("q", "*:*", "fl", "id", "sort", "id asc", "rows", 5, "json.facet", json("{'cats':{'terms':{'field':'cat_s1', 'limit':1}}}"));
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search.facet;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestJsonFacets extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig.xml", "schema11.xml");
+  }
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    clearIndex();
+    assertU(adoc("id", "1", "cat_s", "A", "tags_ss", "x", "tags_ss", "y", "price_ti", "10"));
+    assertU(adoc("id", "2", "cat_s", "B", "tags_ss", "x", "price_ti", "20"));
+    assertU(adoc("id", "3", "cat_s", "A", "tags_ss", "y", "price_ti", "30"));
+    assertU(commit());
+    assertU(adoc("id", "4", "cat_s", "A", "price_ti", "50"));
+    assertU(adoc("id", "5", "cat_s", "C", "tags_ss", "x", "tags_ss", "z", "price_ti", "5"));
+    assertU(adoc("id", "6", "price_ti", "5"));
+    assertU(commit());
+  }
+
+  @Test
+  public void testStats() throws Exception {
+    assertJQ(req("q", "*:*", "rows", "0", "json.facet",
+                 json("{'cats':'unique(cat_s)', 'sum_p':'sum(price_ti)', 'avg_p':'avg(price_ti)', 'min_p':'min(price_ti)', 'max_p':'max(price_ti)'," +
+                 " 'median':'percentile(price_ti,50)', 'bounds':'percentile(price_ti,0,100)', 'double_p':'sum(mul(price_ti,2))'}"))
+        , "/facets=={'count':6, 'cats':3, 'sum_p':120.0, 'avg_p':20.0, 'min_p':5.0, 'max_p':50.0, 'median':20.0, 'bounds':[5.0,50.0], 'double_p':240.0}"
+    );
+
+    // stats are computed over the docs matching the query and filters
+    assertJQ(req("q", "*:*", "fq", "cat_s:A", "rows", "0", "json.facet", json("{'sum_p':'sum(price_ti)', 'min_p':'min(price_ti)'}"))
+        , "/facets=={'count':3, 'sum_p':90.0, 'min_p':10.0}"
+    );
+
+    // stats without values are left out
+    assertJQ(req("q", "id:6", "rows", "0", "json.facet", json("{'cats':'unique(cat_s)', 'avg_p':'avg(tags_ss_missing_ti)'}"))
+        , "/facets=={'count':1, 'cats':0}"
+    );
+  }
+
+  @Test
+  public void testLargeStats() throws Exception {
+    // more distinct values than the stats keep exactly, so they are estimated with sketches
+    int numDocs = 2000;
+    for (int i = 0; i < numDocs; i++) {
+      assertU(adoc("id", Integer.toString(100 + i), "cat_s", "c" + i, "tags_ss", "big", "price_ti", Integer.toString(i)));
+    }
+    assertU(commit());
+
+    SolrQueryRequest req = req("q", "tags_ss:big", "rows", "0", "json.facet",
+                               json("{'cats':'unique(cat_s)', 'median':'percentile(price_ti,50)', 'p99':'percentile(price_ti,99)'}"));
+    try {
+      SolrQueryResponse rsp = h.queryAndResponse(null, req);
+      NamedList facets = (NamedList)rsp.getValues().get("facets");
+      assertEquals(numDocs, ((Number)facets.get("cats")).doubleValue(), numDocs * 0.05);
+      assertEquals(numDocs * 0.5, ((Number)facets.get("median")).doubleValue(), numDocs * 0.02);
+      assertEquals(numDocs * 0.99, ((Number)facets.get("p99")).doubleValue(), numDocs * 0.01);
+    } finally {
+      req.close();
+    }
+  }
+
+  @Test
+  public void testTermsFacet() throws Exception {
+    assertJQ(req("q", "*:*", "rows", "0", "json.facet",
+                 json("{'cats':{'terms':{'field':'cat_s', 'facet':{'avg_p':'avg(price_ti)', 'tags':{'terms':'tags_ss'}}}}}"))
+        , "/facets/cats/buckets==[" +
+            "{'val':'A', 'count':3, 'avg_p':30.0, 'tags':{'buckets':[{'val':'y','count':2},{'val':'x','count':1}]}}," +
+            "{'val':'B', 'count':1, 'avg_p':20.0, 'tags':{'buckets':[{'val':'x','count':1}]}}," +
+            "{'val':'C', 'count':1, 'avg_p':5.0, 'tags':{'buckets':[{'val':'x','count':1},{'val':'z','count':1}]}}]"
+    );
+
+    // sorted by a stat
+    assertJQ(req("q", "*:*", "rows", "0", "json.facet", json("{'cats':{'terms':{'field':'cat_s', 'sort':'avg_p asc', 'facet':{'avg_p':'avg(price_ti)'}}}}"))
+        , "/facets/cats/buckets==[{'val':'C','count':1,'avg_p':5.0},{'val':'B','count':1,'avg_p':20.0},{'val':'A','count':3,'avg_p':30.0}]"
+    );
+
+    // sorted by index, paged
+    assertJQ(req("q", "*:*", "rows", "0", "json.facet", json("{'cats':{'terms':{'field':'cat_s', 'sort':'index desc', 'offset':1, 'limit':1}}}"))
+        , "/facets/cats/buckets==[{'val':'B','count':1}]"
+    );
+
+    // mincount
+    assertJQ(req("q", "*:*", "rows", "0", "json.facet", json("{'cats':{'terms':{'field':'cat_s', 'mincount':2}}}"))
+        , "/facets/cats/buckets==[{'val':'A','count':3}]"
+    );
+  }
+
+  @Test
+  public void testMultiValuedTermsFacet() throws Exception {
+    assertJQ(req("q", "*:*", "rows", "0", "json.facet",
+                 json("{'tags':{'terms':{'field':'tags_ss', 'facet':{'cats':'unique(cat_s)', 'sum_p':'sum(price_ti)'}}}}"))
+        , "/facets/tags/buckets==[{'val':'x','count':3,'cats':3,'sum_p':35.0},{'val':'y','count':2,'cats':1,'sum_p':40.0},{'val':'z','count':1,'cats':1,'sum_p':5.0}]"
+    );
+  }
+
+  @Test
+  public void testRangeFacet() throws Exception {
+    assertJQ(req("q", "*:*", "rows", "0", "json.facet",
+                 json("{'prices':{'range':{'field':'price_ti', 'start':0, 'end':60, 'gap':20, 'facet':{'cats':'unique(cat_s)', 'c':{'terms':'cat_s'}}}}}"))
+        , "/facets/prices/buckets==[" +
+            "{'val':0, 'count':3, 'cats':2, 'c':{'buckets':[{'val':'A','count':1},{'val':'C','count':1}]}}," +
+            "{'val':20, 'count':2, 'cats':2, 'c':{'buckets':[{'val':'A','count':1},{'val':'B','count':1}]}}," +
+            "{'val':40, 'count':1, 'cats':1, 'c':{'buckets':[{'val':'A','count':1}]}}]"
+    );
+
+    assertJQ(req("q", "*:*", "rows", "0", "json.facet", json("{'prices':{'range':{'field':'price_ti', 'start':0, 'end':60, 'gap':20, 'mincount':2}}}"))
+        , "/facets/prices/buckets==[{'val':0,'count':3},{'val':20,'count':2}]"
+    );
+  }
+
+  @Test
+  public void testQueryFacet() throws Exception {
+    assertJQ(req("q", "*:*", "rows", "0", "json.facet",
+                 json("{'cheap':{'query':{'q':'price_ti:[0 TO 15]', 'facet':{'max_p':'max(price_ti)', 'cats':{'terms':'cat_s'}}}}}"))
+        , "/facets/cheap=={'count':3, 'max_p':10.0, 'cats':{'buckets':[{'val':'A','count':1},{'val':'C','count':1}]}}"
+    );
+  }
+
+  @Test
+  public void testBadRequests() throws Exception {
+    ignoreException("json.facet");
+    ignoreException("'x'");
+    try {
+      assertQEx("bad JSON", req("q", "*:*", "json.facet", json("{'cats':")), SolrException.ErrorCode.BAD_REQUEST);
+      assertQEx("unknown stat", req("q", "*:*", "json.facet", json("{'x':'median(price_ti)'}")), SolrException.ErrorCode.BAD_REQUEST);
+      assertQEx("unknown facet type", req("q", "*:*", "json.facet", json("{'x':{'pivot':'cat_s'}}")), SolrException.ErrorCode.BAD_REQUEST);
+      assertQEx("terms of a numeric field", req("q", "*:*", "json.facet", json("{'x':{'terms':'price_ti'}}")), SolrException.ErrorCode.BAD_REQUEST);
+      assertQEx("sort by an unknown stat", req("q", "*:*", "json.facet", json("{'x':{'terms':{'field':'cat_s', 'sort':'y desc'}}}")), SolrException.ErrorCode.BAD_REQUEST);
+      assertQEx("range without gap", req("q", "*:*", "json.facet", json("{'x':{'range':{'field':'price_ti', 'start':0, 'end':10}}}")), SolrException.ErrorCode.BAD_REQUEST);
+    } finally {
+      resetExceptionIgnores();
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.update;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.UpdateParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+public class BulkUpdateThrottleTest extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.maxBulkUpdateThreads", "2");
+    // with the update log, so that updates take the version locks
+    initCore("solrconfig.xml", "schema15.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("solr.maxBulkUpdateThreads");
+  }
+
+  public void testBulkUpdates() throws Exception {
+    clearIndex();
+    updateJ("[{\"id\":\"1\"},{\"id\":\"2\"},{\"id\":\"3\"}]", params(UpdateParams.UPDATE_PRIORITY, "bulk"));
+    updateJ("{\"delete\":{\"id\":\"2\"}}", params(UpdateParams.UPDATE_PRIORITY, "bulk"));
+    updateJ("[{\"id\":\"4\"}]", params(UpdateParams.UPDATE_PRIORITY, "interactive"));
+    assertU(commit());
+    assertQ(req("q", "*:*"), "//result[@numFound='3']");
+
+    NamedList stats = h.getCore().getUpdateHandler().getStatistics();
+    assertEquals(2, stats.get("bulk maxThreads"));
+
+    try {
+      updateJ("[{\"id\":\"5\"}]", params(UpdateParams.UPDATE_PRIORITY, "urgent"));
+      fail("unknown priority should fail");
+    } catch (SolrException e) {
+      assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+    }
+  }
+
+  public void testInteractiveUpdatesNotBlocked() throws Exception {
+    clearIndex();
+    assertU(commit());
+    final BulkUpdateThrottle throttle =
+        ((DirectUpdateHandler2) h.getCore().getUpdateHandler()).getBulkUpdateThrottle();
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread bulk = new Thread() {
+      @Override
+      public void run() {
+        try {
+          updateJ("[{\"id\":\"1\",\"val_s\":\"bulk\"}]", params(UpdateParams.UPDATE_PRIORITY, "bulk"));
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      }
+    };
+
+    // all the bulk threads are busy, so the bulk add of the document has to wait
+    throttle.acquire();
+    throttle.acquire();
+    try {
+      long queued = throttle.getNumQueued();
+      bulk.start();
+      while (throttle.getNumQueued() == queued) {
+        Thread.sleep(1);
+      }
+
+      // an add of the same document and a delete by query don't wait for it
+      updateJ("[{\"id\":\"1\",\"val_s\":\"interactive\"},{\"id\":\"2\"}]", null);
+      assertU(delQ("id:2"));
+      assertU(commit());
+      assertQ(req("q", "val_s:interactive"), "//result[@numFound='1']");
+      assertQ(req("q", "*:*"), "//result[@numFound='1']");
+      assertTrue(bulk.isAlive());
+    } finally {
+      throttle.release();
+      throttle.release();
+    }
+
+    bulk.join();
+    if (failure.get() != null) {
+      throw new RuntimeException(failure.get());
+    }
+    assertU(commit());
+    assertQ(req("q", "val_s:bulk"), "//result[@numFound='1']");
+  }
+
+  public void testMaxThreads() throws Exception {
+    final BulkUpdateThrottle throttle = new BulkUpdateThrottle(2);
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 6; t++) {
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 20; i++) {
+              throttle.acquire();
+              try {
+                int n = running.incrementAndGet();
+                synchronized (maxRunning) {
+                  if (n > maxRunning.get()) maxRunning.set(n);
+                }
+                Thread.sleep(1);
+                running.decrementAndGet();
+              } finally {
+                throttle.release();
+              }
+            }
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    if (failure.get() != null) {
+      throw new RuntimeException(failure.get());
+    }
+
+    assertTrue("too many bulk commands at once: " + maxRunning.get(), maxRunning.get() <= 2);
+    assertTrue(throttle.getNumQueued() > 0);
+  }
+
+}
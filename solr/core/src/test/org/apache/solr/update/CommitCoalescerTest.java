@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.update;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.util.NamedList;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+public class CommitCoalescerTest extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("enable.update.log", "false"); // schema12 doesn't support _version_
+    initCore("solrconfig.xml", "schema12.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("enable.update.log");
+  }
+
+  public void testCoalescing() throws Exception {
+    final CommitCoalescer coalescer = new CommitCoalescer();
+    CommitUpdateCommand first = newCommand(false);
+    assertTrue(coalescer.start(first));
+
+    // these all arrive while the first commit is running
+    final AtomicInteger numCommits = new AtomicInteger();
+    final AtomicReference<CommitUpdateCommand> committed = new AtomicReference<CommitUpdateCommand>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 5; t++) {
+      final CommitUpdateCommand cmd = newCommand(t == 3);
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          if (coalescer.start(cmd)) {
+            numCommits.incrementAndGet();
+            committed.set(cmd);
+            coalescer.finish(true);
+          }
+        }
+      });
+    }
+    startAndAwaitWaiting(threads);
+
+    coalescer.finish(true);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    // the first commit started before them, so exactly one more commit is needed
+    assertEquals(1, numCommits.get());
+    assertEquals(4, coalescer.getNumCoalesced());
+    assertTrue("the commit should wait for a searcher for all of them", committed.get().waitSearcher);
+  }
+
+  public void testFailedCommit() throws Exception {
+    final CommitCoalescer coalescer = new CommitCoalescer();
+    assertTrue(coalescer.start(newCommand(false)));
+    coalescer.finish(true);
+
+    // a commit running on behalf of waiting requests fails
+    assertTrue(coalescer.start(newCommand(false)));
+
+    final AtomicInteger numCommits = new AtomicInteger();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 3; t++) {
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          CommitUpdateCommand cmd = newCommand(false);
+          if (coalescer.start(cmd)) {
+            // the first of them fails, so the others need one more
+            boolean success = numCommits.incrementAndGet() > 1;
+            coalescer.finish(success);
+          }
+        }
+      });
+    }
+    startAndAwaitWaiting(threads);
+
+    coalescer.finish(true);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(2, numCommits.get());
+    assertEquals(1, coalescer.getNumCoalesced());
+    // and nothing is left running
+    assertTrue(coalescer.start(newCommand(false)));
+    coalescer.finish(true);
+  }
+
+  public void testConcurrentCommits() throws Exception {
+    clearIndex();
+    assertU(commit());
+    NamedList before = h.getCore().getUpdateHandler().getStatistics();
+
+    final int numThreads = 8;
+    final int numDocs = 20;
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < numThreads; t++) {
+      final int thread = t;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < numDocs; i++) {
+              assertU(adoc("id", thread + "_" + i));
+              assertU(commit("softCommit", "true"));
+              // each commit has made the document visible, whether coalesced or not
+              assertQ(req("q", "id:" + thread + "_" + i), "//result[@numFound='1']");
+            }
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    if (failure.get() != null) {
+      throw new RuntimeException(failure.get());
+    }
+
+    assertQ(req("q", "*:*"), "//result[@numFound='" + (numThreads * numDocs) + "']");
+    NamedList after = h.getCore().getUpdateHandler().getStatistics();
+    long commits = (Long) after.get("commits") - (Long) before.get("commits");
+    long coalesced = (Long) after.get("coalesced soft commits") - (Long) before.get("coalesced soft commits");
+    assertEquals(numThreads * numDocs, commits + coalesced);
+    assertNotNull(after.get("soft commit lastTime"));
+  }
+
+  public void testAdaptiveMaxTime() throws Exception {
+    CommitTracker tracker = new CommitTracker("Soft", h.getCore(), -1, 200, 1000, true, true);
+    try {
+      assertEquals(200, tracker.getCurrentTimeUpperBound());
+
+      // expensive commits spread the next ones further apart
+      tracker.didCommit(100);
+      assertEquals(100L * CommitTracker.ADAPTIVE_TIME_FACTOR, tracker.getCurrentTimeUpperBound());
+      tracker.didCommit(5000);
+      assertEquals(1000, tracker.getCurrentTimeUpperBound());
+
+      // and cheap ones bring them back to maxTime
+      tracker.didCommit(10);
+      assertEquals(200, tracker.getCurrentTimeUpperBound());
+      assertEquals(10, tracker.getLastCommitTime());
+      assertEquals((100 + 5000 + 10) / 3, tracker.getAverageCommitTime());
+
+      tracker.setMaxAdaptiveTime(-1);
+      tracker.didCommit(5000);
+      assertEquals(200, tracker.getCurrentTimeUpperBound());
+    } finally {
+      tracker.close();
+    }
+  }
+
+  private static CommitUpdateCommand newCommand(boolean waitSearcher) {
+    CommitUpdateCommand cmd = new CommitUpdateCommand(null, false);
+    cmd.softCommit = true;
+    cmd.waitSearcher = waitSearcher;
+    return cmd;
+  }
+
+  /** Starts the threads and waits until they are all waiting for the running commit */
+  private static void startAndAwaitWaiting(List<Thread> threads) throws InterruptedException {
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      while (thread.getState() != Thread.State.WAITING) {
+        Thread.sleep(1);
+      }
+    }
+  }
+}
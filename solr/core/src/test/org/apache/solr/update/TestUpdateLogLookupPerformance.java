@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.update;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.request.SolrQueryRequest;
+import org.junit.BeforeClass;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Measure the throughput of interleaved UpdateLog adds and realtime version lookups
+ * (as done by the DistributedUpdateProcessor for every update) from several threads.
+ *
+ * $ ant test -Dtestcase=TestUpdateLogLookupPerformance -Dargs="-server -Diter=100000 -Dthreads=8 -Dlookups=4"; grep throughput build/test-results/*TestUpdateLogLookupPerformance.xml
+ */
+public class TestUpdateLogLookupPerformance extends SolrTestCaseJ4 {
+
+  public static final Logger log
+    = LoggerFactory.getLogger(TestUpdateLogLookupPerformance.class);
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig-tlog.xml", "schema15.xml");
+  }
+
+  public void testLookupPerf() throws Exception {
+    final int iter = Integer.parseInt(System.getProperty("iter", "1000"));
+    final int nThreads = Integer.parseInt(System.getProperty("threads", "4"));
+    final int lookups = Integer.parseInt(System.getProperty("lookups", "4"));  // lookups per add
+
+    final UpdateHandler updateHandler = h.getCore().getUpdateHandler();
+    final UpdateLog ulog = updateHandler.getUpdateLog();
+    assertNotNull(ulog);
+
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    List<Thread> threads = new ArrayList<Thread>(nThreads);
+    for (int t=0; t<nThreads; t++) {
+      final String prefix = "t" + t + "_";
+      threads.add(new Thread("lookup" + t) {
+        @Override
+        public void run() {
+          SolrQueryRequest req = req();
+          try {
+            AddUpdateCommand add = new AddUpdateCommand(req);
+            for (int i=0; i<iter; i++) {
+              add.clear();
+              add.solrDoc = new SolrInputDocument();
+              add.solrDoc.addField("id", prefix + i);
+              updateHandler.addDoc(add);
+
+              for (int j=0; j<lookups; j++) {
+                // mostly recent documents, which are always found in the update log
+                String id = prefix + (i - (j & 0x07));
+                Long version = ulog.lookupVersion(new BytesRef(id));
+                if (version == null && (j & 0x07) <= i) {
+                  throw new RuntimeException("no version found for " + id);
+                }
+              }
+            }
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          } finally {
+            req.close();
+          }
+        }
+      });
+    }
+
+    long start = System.currentTimeMillis();
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long end = System.currentTimeMillis();
+
+    if (failure.get() != null) {
+      throw new RuntimeException(failure.get());
+    }
+
+    long ops = (long)iter * nThreads * (lookups + 1);
+    log.info("iter="+iter + " threads=" + nThreads + " lookups=" + lookups + " time=" + (end-start) + " throughput=" + (ops*1000)/Math.max(1, end-start));
+
+    clearIndex();
+    assertU(commit());
+  }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.update;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TransactionLogTest extends LuceneTestCase {
+
+  public void testGroupCommit() throws Exception {
+    File dir = _TestUtil.getTempDir("tlog");
+    dir.mkdirs();
+    final TransactionLog tlog = new TransactionLog(new File(dir, "tlog.0000000000000000001"), Collections.<String>emptyList());
+
+    final int nThreads = 8;
+    final int iter = atLeast(50);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    final List<List<Long>> positions = new ArrayList<List<Long>>();
+
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t=0; t<nThreads; t++) {
+      final int threadNum = t;
+      final List<Long> written = new ArrayList<Long>();
+      positions.add(written);
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i=0; i<iter; i++) {
+              synchronized (tlog) {
+                written.add(tlog.writeData("t" + threadNum + "_" + i));
+              }
+              tlog.finish(UpdateLog.SyncLevel.FSYNC);
+            }
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      });
+    }
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    if (failure.get() != null) {
+      throw new RuntimeException(failure.get());
+    }
+
+    // every record is readable
+    assertTrue(tlog.getNumSyncs() >= 1);
+    for (int t=0; t<nThreads; t++) {
+      List<Long> written = positions.get(t);
+      assertEquals(iter, written.size());
+      for (int i=0; i<iter; i++) {
+        assertEquals("t" + t + "_" + i, tlog.lookup(written.get(i)));
+      }
+    }
+
+    // nothing new to sync
+    long numSyncs = tlog.getNumSyncs();
+    tlog.finish(UpdateLog.SyncLevel.FSYNC);
+    assertEquals(numSyncs, tlog.getNumSyncs());
+
+    tlog.decref();
+  }
+
+  public void testWaitingRequestsShareAnFsync() throws Exception {
+    File dir = _TestUtil.getTempDir("tlog");
+    dir.mkdirs();
+    final CountDownLatch syncing = new CountDownLatch(1);
+    final CountDownLatch releaseSync = new CountDownLatch(1);
+    final TransactionLog tlog = new TransactionLog(new File(dir, "tlog.0000000000000000001"), Collections.<String>emptyList()) {
+      @Override
+      protected void doSync() throws IOException {
+        if (syncing.getCount() > 0) {
+          // hold the first fsync until the other requests queued up behind it
+          syncing.countDown();
+          try {
+            releaseSync.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+        super.doSync();
+      }
+    };
+
+    final int nThreads = 8;
+    final CountDownLatch written = new CountDownLatch(nThreads - 1);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t=0; t<nThreads; t++) {
+      final int threadNum = t;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            synchronized (tlog) {
+              tlog.writeData("t" + threadNum);
+            }
+            if (threadNum > 0) written.countDown();
+            tlog.finish(UpdateLog.SyncLevel.FSYNC);
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      });
+    }
+
+    threads.get(0).start();
+    assertTrue(syncing.await(60, TimeUnit.SECONDS));
+    for (Thread thread : threads.subList(1, nThreads)) {
+      thread.start();
+    }
+    // all of the others wrote their records while the first fsync runs
+    assertTrue(written.await(60, TimeUnit.SECONDS));
+    releaseSync.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    if (failure.get() != null) {
+      throw new RuntimeException(failure.get());
+    }
+
+    // the first fsync, and a single one for all of the requests that waited for it
+    assertEquals(2, tlog.getNumSyncs());
+
+    tlog.decref();
+  }
+
+}
@@ -0,0 +1,74 @@
+package org.apache.solr.update.processor;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/** Atomic updates of fields that only have docValues (indexed="false" stored="false") */
+public class AtomicUpdateDocValuesTest extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeTests() throws Exception {
+    initCore("solrconfig-tlog.xml", "schema-docValues.xml");
+  }
+
+  @Before
+  public void before() {
+    clearIndex();
+    assertU(commit());
+  }
+
+  @Test
+  public void testIncFromIndex() throws Exception {
+    assertU(adoc("id", "1", "intdv", "10", "longdv", "100"));
+    assertU(adoc("id", "2", "intdv", "5", "longdv", "50"));
+    assertU(commit());
+
+    // the old values only exist as docValues in the index; realtime get only returns
+    // stored fields, so the values are checked through the searcher after a commit
+    addAndGetVersion(sdoc("id", "1", "intdv", map("inc", -8), "longdv", map("inc", 1)), null);
+    assertU(commit());
+    assertJQ(req("q", "id:1", "fl", "id,i:field(intdv),l:field(longdv)")
+        , "/response/docs==[{'id':'1','i':2,'l':101}]");
+
+    // fields that aren't updated keep their values
+    addAndGetVersion(sdoc("id", "2", "floatdv", map("set", 7.5f)), null);
+    assertU(commit());
+    assertJQ(req("q", "id:2", "fl", "id,f:field(floatdv),i:field(intdv),l:field(longdv)")
+        , "/response/docs==[{'id':'2','f':7.5,'i':5,'l':50}]");
+
+    assertQ(req("q", "*:*", "sort", "intdv asc", "fl", "id"),
+        "//result/doc[1]/str[@name='id'][.='1']",
+        "//result/doc[2]/str[@name='id'][.='2']");
+    assertQ(req("q", "*:*", "sort", "longdv desc", "fl", "id"),
+        "//result/doc[1]/str[@name='id'][.='1']",
+        "//result/doc[2]/str[@name='id'][.='2']");
+    assertQ(req("q", "*:*", "sort", "floatdv desc", "fl", "id"),
+        "//result/doc[1]/str[@name='id'][.='2']");
+
+    // and the values survive another round trip through the index
+    addAndGetVersion(sdoc("id", "2", "intdv", map("inc", 10)), null);
+    assertU(commit());
+    assertJQ(req("q", "id:2", "fl", "id,f:field(floatdv),i:field(intdv)")
+        , "/response/docs==[{'id':'2','f':7.5,'i':15}]");
+  }
+
+}
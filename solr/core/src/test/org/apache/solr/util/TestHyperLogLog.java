@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.util;
+
+import java.util.Arrays;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestHyperLogLog extends LuceneTestCase {
+
+  public void testCardinality() {
+    HyperLogLog hll = new HyperLogLog();
+    assertEquals(0, hll.cardinality());
+    for (int i = 0; i < 10; i++) {
+      hll.addHash(HyperLogLog.hash(i));
+      hll.addHash(HyperLogLog.hash(i));  // duplicates are not counted
+    }
+    assertEquals(10, hll.cardinality());
+
+    int n = 100000;
+    for (int i = 0; i < n; i++) {
+      hll.addHash(HyperLogLog.hash(random().nextLong()));
+    }
+    assertEquals(n, hll.cardinality(), n * 0.05);
+  }
+
+  public void testMerge() {
+    int n = atLeast(20000);
+    HyperLogLog all = new HyperLogLog(12);
+    HyperLogLog a = new HyperLogLog(12);
+    HyperLogLog b = new HyperLogLog(12);
+    for (int i = 0; i < n; i++) {
+      long hash = HyperLogLog.hash(Integer.toString(i));
+      all.addHash(hash);
+      // overlapping halves
+      if (i < n * 2 / 3) a.addHash(hash);
+      if (i > n / 3) b.addHash(hash);
+    }
+    a.merge(b);
+    assertEquals(all.cardinality(), a.cardinality());
+    assertTrue(Arrays.equals(all.toBytes(), a.toBytes()));
+
+    try {
+      a.merge(new HyperLogLog(10));
+      fail("sketches of different sizes can't be merged");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testSerialization() {
+    HyperLogLog hll = new HyperLogLog();
+    for (int i = 0; i < 100; i++) {
+      hll.addHash(HyperLogLog.hash(i));
+    }
+    byte[] sparse = hll.toBytes();
+    assertTrue("few values should be stored sparse: " + sparse.length, sparse.length < 1000);
+    assertEquals(hll.cardinality(), HyperLogLog.fromBytes(sparse).cardinality());
+
+    for (int i = 0; i < 100000; i++) {
+      hll.addHash(HyperLogLog.hash(i));
+    }
+    byte[] dense = hll.toBytes();
+    assertEquals(2 + (1 << HyperLogLog.DEFAULT_LOG2M), dense.length);
+    HyperLogLog copy = HyperLogLog.fromBytes(dense);
+    assertEquals(hll.getLog2m(), copy.getLog2m());
+    assertEquals(hll.cardinality(), copy.cardinality());
+  }
+
+  public void testHashBytes() {
+    for (String s : new String[] {"", "a", "caf\u00e9", "\ud83d\ude00 and more text"}) {
+      assertEquals(HyperLogLog.hash(s), HyperLogLog.hash(new BytesRef(s)));
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.util;
+
+import java.util.Arrays;
+
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestTDigest extends LuceneTestCase {
+
+  public void testSmallDigestsAreExact() {
+    TDigest digest = new TDigest();
+    assertTrue(Double.isNaN(digest.quantile(0.5)));
+    for (double v : new double[] {30, 10, 50, 20, 40}) {
+      digest.add(v);
+    }
+    assertEquals(10, digest.quantile(0), 0);
+    assertEquals(30, digest.quantile(0.5), 0);
+    assertEquals(50, digest.quantile(1), 0);
+    // interpolated between neighbours
+    assertEquals(25, digest.quantile(0.4), 1e-9);
+  }
+
+  public void testQuantiles() {
+    int n = 100000;
+    double[] values = new double[n];
+    TDigest digest = new TDigest();
+    for (int i = 0; i < n; i++) {
+      values[i] = random().nextGaussian() * 100;
+      digest.add(values[i]);
+    }
+    assertEquals(n, digest.size(), 0);
+    assertQuantiles(values, digest);
+  }
+
+  public void testMergeAndSerialization() {
+    int n = 50000;
+    double[] values = new double[n * 2];
+    TDigest a = new TDigest();
+    TDigest b = new TDigest();
+    for (int i = 0; i < n; i++) {
+      values[i] = random().nextDouble() * 1000;
+      a.add(values[i]);
+      // a skewed distribution on the other shard
+      values[n + i] = Math.exp(random().nextDouble() * 7);
+      b.add(values[n + i]);
+    }
+
+    TDigest merged = TDigest.fromBytes(a.toBytes());
+    merged.merge(TDigest.fromBytes(b.toBytes()));
+    assertEquals(2 * n, merged.size(), 1e-6);
+    assertQuantiles(values, merged);
+
+    byte[] bytes = merged.toBytes();
+    assertTrue("digest should be compact: " + bytes.length, bytes.length < 20000);
+  }
+
+  private void assertQuantiles(double[] values, TDigest digest) {
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+    assertEquals(sorted[0], digest.quantile(0), 0);
+    assertEquals(sorted[sorted.length - 1], digest.quantile(1), 0);
+    for (double q : new double[] {0.001, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999}) {
+      // compare ranks, the error is relative to q*(1-q)
+      double estimate = digest.quantile(q);
+      int rank = Arrays.binarySearch(sorted, estimate);
+      if (rank < 0) rank = -rank - 1;
+      double error = Math.abs((double) rank / sorted.length - q);
+      assertTrue("q=" + q + " estimate=" + estimate + " error=" + error, error < 0.005 + 0.05 * q * (1 - q));
+    }
+  }
+}
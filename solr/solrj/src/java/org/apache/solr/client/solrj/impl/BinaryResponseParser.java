@@ -31,6 +31,9 @@ import java.io.Reader;
  */
 public class BinaryResponseParser extends ResponseParser {
   public static final String BINARY_CONTENT_TYPE = "application/octet-stream";
+
+  // field names and values that repeat across responses
+  private static final JavaBinCodec.StringCache stringCache = new JavaBinCodec.StringCache(4096, 32);
   
   @Override
   public String getWriterType() {
@@ -40,7 +43,9 @@ public class BinaryResponseParser extends ResponseParser {
   @Override
   public NamedList<Object> processResponse(InputStream body, String encoding) {
     try {
-      return (NamedList<Object>) new JavaBinCodec().unmarshal(body);
+      JavaBinCodec codec = new JavaBinCodec();
+      codec.setStringCache(stringCache);
+      return (NamedList<Object>) codec.unmarshal(body);
     } catch (IOException e) {
       throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "parsing error", e);
 
@@ -30,6 +30,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 
 import org.apache.http.client.HttpClient;
@@ -37,19 +42,28 @@ import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.request.IsUpdateRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
 import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrException.ErrorCode;
 import org.apache.solr.common.cloud.Aliases;
 import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.DocRouter;
+import org.apache.solr.common.cloud.HashBasedRouter;
+import org.apache.solr.common.cloud.Replica;
 import org.apache.solr.common.cloud.Slice;
 import org.apache.solr.common.cloud.ZkCoreNodeProps;
 import org.apache.solr.common.cloud.ZkNodeProps;
 import org.apache.solr.common.cloud.ZkStateReader;
 import org.apache.solr.common.cloud.ZooKeeperException;
 import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
 import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.params.UpdateParams;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.common.util.SolrjNamedThreadFactory;
 import org.apache.solr.common.util.StrUtils;
 import org.apache.zookeeper.KeeperException;
 
@@ -58,6 +72,17 @@ import org.apache.zookeeper.KeeperException;
  * Instances of this class communicate with Zookeeper to discover
  * Solr endpoints for SolrCloud collections, and then use the 
  * {@link LBHttpSolrServer} to issue requests.
+ * <p>
+ * Queries go to a random replica, or to the replica likely to answer first if
+ * {@link LBHttpSolrServer#setAdaptiveSelection adaptive selection} is enabled on
+ * the {@link #getLbServer() load balancer}.
+ * <p>
+ * When updates go to leaders, the documents and deletes by id of an
+ * {@link UpdateRequest} are split by shard with the router of the collection,
+ * and each part is sent directly to the leader of its shard, in parallel
+ * (see {@link #setParallelUpdates}).  This saves the leaders from forwarding the
+ * updates to each other.  Updates that can't be routed on the client, e.g.
+ * deletes by query, are sent to a leader as before.
  */
 public class CloudSolrServer extends SolrServer {
   private volatile ZkStateReader zkStateReader;
@@ -72,6 +97,10 @@ public class CloudSolrServer extends SolrServer {
   private Map<String,List<String>> replicasLists = new HashMap<String,List<String>>();
   
   private final boolean updatesToLeaders;
+  private volatile boolean parallelUpdates = true;
+  private volatile String idField = "id";
+  private final ExecutorService threadPool = Executors
+      .newCachedThreadPool(new SolrjNamedThreadFactory("CloudSolrServer ThreadPool"));
 
   /**
    * @param zkHost The client endpoint of the zookeeper quorum containing the cloud state,
@@ -138,6 +167,27 @@ public class CloudSolrServer extends SolrServer {
     this.zkClientTimeout = zkClientTimeout;
   }
 
+  /**
+   * Sets whether the updates routed to several shard leaders are sent in
+   * parallel, defaults to true
+   */
+  public void setParallelUpdates(boolean parallelUpdates) {
+    this.parallelUpdates = parallelUpdates;
+  }
+
+  public boolean isParallelUpdates() {
+    return parallelUpdates;
+  }
+
+  /** Sets the name of the unique key field used to route documents, defaults to "id" */
+  public void setIdField(String idField) {
+    this.idField = idField;
+  }
+
+  public String getIdField() {
+    return idField;
+  }
+
   /**
    * Connect to the zookeeper ensemble.
    * This is an optional method that may be used to force a connect before any other requests are sent.
@@ -176,9 +226,195 @@ public class CloudSolrServer extends SolrServer {
       throws SolrServerException, IOException {
     connect();
     
-    // TODO: if you can hash here, you could favor the shard leader
-    
     ClusterState clusterState = zkStateReader.getClusterState();
+    
+    if (request instanceof UpdateRequest && updatesToLeaders) {
+      NamedList<Object> response = directUpdate((UpdateRequest) request, clusterState);
+      if (response != null) {
+        return response;
+      }
+    }
+    
+    return sendRequest(request, clusterState);
+  }
+
+  /**
+   * Splits the update by shard and sends each part to its leader, then sends
+   * what can't be routed (deletes by query, commits...) as a regular request.
+   * 
+   * @return the combined response, or null if the request can't be routed here
+   */
+  private NamedList<Object> directUpdate(UpdateRequest request,
+      ClusterState clusterState) throws SolrServerException, IOException {
+    ModifiableSolrParams params = request.getParams();
+    if (params != null && params.get(ShardParams._ROUTE_) != null) {
+      return null;
+    }
+    String collection = params == null ? defaultCollection : params.get(
+        "collection", defaultCollection);
+    if (collection == null) {
+      return null;
+    }
+    // aliases and lists of collections go through a node
+    DocCollection col = clusterState.getCollectionOrNull(collection);
+    if (col == null) {
+      return null;
+    }
+    // hash based routers only need the id
+    DocRouter router = col.getRouter();
+    if (!(router instanceof HashBasedRouter)) {
+      return null;
+    }
+
+    Map<String,List<String>> urlMap = buildUrlMap(col, clusterState.getLiveNodes(),
+        params != null && params.get("collection") != null);
+    if (urlMap == null) {
+      return null;
+    }
+
+    // commits and the like are sent once, after the routed updates
+    ModifiableSolrParams routableParams = new ModifiableSolrParams();
+    ModifiableSolrParams nonRoutableParams = new ModifiableSolrParams();
+    boolean hasNonRoutable = false;
+    if (params != null) {
+      nonRoutableParams.add(params);
+      routableParams.add(params);
+      for (String param : NON_ROUTABLE_PARAMS) {
+        hasNonRoutable |= routableParams.remove(param) != null;
+      }
+    }
+    
+    Map<String,LBHttpSolrServer.Req> routes = request.getRoutes(router, col,
+        urlMap, routableParams, idField);
+    if (routes == null) {
+      return null;
+    }
+
+    long start = System.nanoTime();
+    NamedList<Object> routeResponses = new SimpleOrderedMap<Object>();
+    List<UpdateRequest> failed = new ArrayList<UpdateRequest>();
+    SolrException firstError = null;
+    if (parallelUpdates && routes.size() > 1) {
+      Map<String,Future<NamedList<Object>>> responseFutures =
+          new HashMap<String,Future<NamedList<Object>>>(routes.size());
+      for (final Map.Entry<String,LBHttpSolrServer.Req> entry : routes.entrySet()) {
+        responseFutures.put(entry.getKey(), threadPool.submit(new Callable<NamedList<Object>>() {
+          @Override
+          public NamedList<Object> call() throws Exception {
+            return lbServer.request(entry.getValue()).getResponse();
+          }
+        }));
+      }
+      for (Map.Entry<String,Future<NamedList<Object>>> entry : responseFutures.entrySet()) {
+        try {
+          routeResponses.add(entry.getKey(), entry.getValue().get());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SolrServerException(e);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof SolrException) {
+            if (firstError == null) firstError = (SolrException) cause;
+          } else {
+            failed.add((UpdateRequest) routes.get(entry.getKey()).getRequest());
+          }
+        }
+      }
+    } else {
+      for (Map.Entry<String,LBHttpSolrServer.Req> entry : routes.entrySet()) {
+        try {
+          routeResponses.add(entry.getKey(), lbServer.request(entry.getValue()).getResponse());
+        } catch (SolrServerException e) {
+          failed.add((UpdateRequest) entry.getValue().getRequest());
+        }
+      }
+    }
+    if (firstError != null) {
+      throw firstError;
+    }
+
+    if (!failed.isEmpty()) {
+      // none of the replicas of a shard answered: our view of the cluster may
+      // be stale, so refresh it and let a leader route the updates
+      try {
+        zkStateReader.updateClusterState(true);
+      } catch (Exception e) {
+        throw new SolrServerException("Could not refresh the cluster state", e);
+      }
+      for (UpdateRequest failedRequest : failed) {
+        routeResponses.add("retry", sendRequest(failedRequest, zkStateReader.getClusterState()));
+      }
+    }
+
+    List<String> deleteQuery = request.getDeleteQuery();
+    if (hasNonRoutable || (deleteQuery != null && !deleteQuery.isEmpty())) {
+      UpdateRequest nonRoutableRequest = new UpdateRequest();
+      nonRoutableRequest.setMethod(request.getMethod());
+      nonRoutableRequest.setPath(request.getPath());
+      nonRoutableRequest.setCommitWithin(request.getCommitWithin());
+      nonRoutableRequest.setParams(nonRoutableParams);
+      if (deleteQuery != null) {
+        for (String q : deleteQuery) {
+          nonRoutableRequest.deleteByQuery(q);
+        }
+      }
+      routeResponses.add("nonRoutable", sendRequest(nonRoutableRequest, zkStateReader.getClusterState()));
+    }
+
+    NamedList<Object> header = new SimpleOrderedMap<Object>();
+    header.add("status", 0);
+    header.add("QTime", (int) ((System.nanoTime() - start) / 1000000));
+    NamedList<Object> response = new NamedList<Object>();
+    response.add("responseHeader", header);
+    response.add("routes", routeResponses);
+    return response;
+  }
+
+  private static final String[] NON_ROUTABLE_PARAMS = {UpdateParams.COMMIT,
+      UpdateParams.OPTIMIZE, UpdateParams.SOFT_COMMIT,
+      UpdateParams.PREPARE_COMMIT, UpdateParams.ROLLBACK,
+      UpdateParams.EXPUNGE_DELETES, UpdateParams.MAX_OPTIMIZE_SEGMENTS,
+      UpdateParams.WAIT_SEARCHER, UpdateParams.OPEN_SEARCHER};
+
+  /**
+   * Returns the urls of the active replicas of each active slice, leader first,
+   * or null if a slice has no live leader.
+   */
+  private Map<String,List<String>> buildUrlMap(DocCollection col,
+      Set<String> liveNodes, boolean collectionParam) {
+    Map<String,List<String>> urlMap = new HashMap<String,List<String>>();
+    for (Slice slice : col.getActiveSlices()) {
+      Replica leader = slice.getLeader();
+      if (leader == null || !liveNodes.contains(leader.getNodeName())) {
+        return null;
+      }
+      List<String> urls = new ArrayList<String>();
+      urls.add(getUrl(leader, collectionParam));
+      List<String> replicas = new ArrayList<String>();
+      for (Replica replica : slice.getReplicas()) {
+        if (replica.getName().equals(leader.getName())
+            || !liveNodes.contains(replica.getNodeName())
+            || !ZkStateReader.ACTIVE.equals(replica.getStr(ZkStateReader.STATE_PROP))) continue;
+        replicas.add(getUrl(replica, collectionParam));
+      }
+      // replicas forward to the leader if it can't be reached directly
+      Collections.shuffle(replicas, rand);
+      urls.addAll(replicas);
+      urlMap.put(slice.getName(), urls);
+    }
+    return urlMap;
+  }
+
+  private String getUrl(ZkNodeProps nodeProps, boolean collectionParam) {
+    if (collectionParam) {
+      return ZkCoreNodeProps.getCoreUrl(nodeProps);
+    }
+    return ZkCoreNodeProps.getCoreUrl(
+        nodeProps.getStr(ZkStateReader.BASE_URL_PROP), defaultCollection);
+  }
+
+  private NamedList<Object> sendRequest(SolrRequest request,
+      ClusterState clusterState) throws SolrServerException, IOException {
     boolean sendToLeaders = false;
     List<String> replicas = null;
     
@@ -337,6 +573,7 @@ public class CloudSolrServer extends SolrServer {
 
   @Override
   public void shutdown() {
+    threadPool.shutdownNow();
     if (zkStateReader != null) {
       synchronized(this) {
         if (zkStateReader!= null)
@@ -17,6 +17,7 @@
 
 package org.apache.solr.client.solrj.impl;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.LinkedList;
@@ -29,6 +30,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -70,6 +72,15 @@ import org.slf4j.LoggerFactory;
  * only recommended to use ConcurrentUpdateSolrServer with /update
  * requests. The class {@link HttpSolrServer} is better suited for the
  * query interface.
+ * <p>
+ * By default, up to <code>threadCount</code> runners are started when the queue
+ * fills up.  With {@link #setAdaptiveRunners adaptive runners}, the number of
+ * runners follows how the server copes instead: it grows by one while there is
+ * a backlog and the server answers as fast as it did, shrinks by one when it
+ * answers slower, and is halved on errors.  {@link #setMaxRequestBytes} bounds
+ * the size of the requests, so runners report on the server regularly.  The
+ * queue depth, the bytes in flight and the indexing rate are exposed for
+ * monitoring.
  */
 public class ConcurrentUpdateSolrServer extends SolrServer {
   private static final long serialVersionUID = 1L;
@@ -85,6 +96,24 @@ public class ConcurrentUpdateSolrServer extends SolrServer {
   int pollQueueTime = 250;
   private final boolean streamDeletes;
 
+  private volatile long maxRequestBytes = 0;
+  private final AtomicLong inFlightBytes = new AtomicLong();
+  private final AtomicLong docsSent = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+
+  // adaptive runners, guarded by runners
+  private volatile boolean adaptiveRunners = false;
+  private int targetRunners;
+  private double ackLatency = -1; // moving average, in ms
+  private double minAckLatency = Double.MAX_VALUE;
+  // the docs/sec of the last full second
+  private long rateWindowStart = System.nanoTime();
+  private long rateWindowDocs;
+  private volatile double docsPerSecond;
+
+  /** The factor by which the latency may grow before runners are removed */
+  static final double LATENCY_FACTOR = 2;
+
   /**
    * Uses an internally managed HttpClient instance.
    * 
@@ -125,6 +154,7 @@ public class ConcurrentUpdateSolrServer extends SolrServer {
     this.server.setFollowRedirects(false);
     queue = new LinkedBlockingQueue<UpdateRequest>(queueSize);
     this.threadCount = threadCount;
+    this.targetRunners = threadCount;
     runners = new LinkedList<Runner>();
     scheduler = es;
     this.streamDeletes = streamDeletes;
@@ -147,6 +177,12 @@ public class ConcurrentUpdateSolrServer extends SolrServer {
    */
   class Runner implements Runnable {
     final Lock runnerLock = new ReentrantLock();
+    // set when the runner stopped itself to lower the number of runners
+    boolean retired;
+    // the bytes and docs of the current request, and when its body was sent
+    long requestBytes;
+    int requestDocs;
+    long bodySent;
 
     @Override
     public void run() {
@@ -157,7 +193,10 @@ public class ConcurrentUpdateSolrServer extends SolrServer {
       HttpResponse response = null;            
       try {
         sendAuthenticatingRequestIfNecessary();
-        while (!queue.isEmpty()) {
+        while (!queue.isEmpty() && !retire()) {
+          boolean success = false;
+          requestBytes = 0;
+          requestDocs = 0;
           try {
             final UpdateRequest updateRequest = 
                 queue.poll(pollQueueTime, TimeUnit.MILLISECONDS);
@@ -172,7 +211,8 @@ public class ConcurrentUpdateSolrServer extends SolrServer {
             EntityTemplate template = new EntityTemplate(new ContentProducer() {
 
               @Override
-              public void writeTo(OutputStream out) throws IOException {
+              public void writeTo(OutputStream stream) throws IOException {
+                OutputStream out = new CountingOutputStream(stream);
                 try {
                   if (isXml) {
                     out.write("<stream>".getBytes("UTF-8")); // can be anything
@@ -186,6 +226,9 @@ public class ConcurrentUpdateSolrServer extends SolrServer {
                     }
                     
                     server.requestWriter.write(req, out);
+                    if (req.getDocumentsMap() != null) {
+                      requestDocs += req.getDocumentsMap().size();
+                    }
                     if (isXml) {
                       // check for commit or optimize
                       SolrParams params = req.getParams();
@@ -206,12 +249,18 @@ public class ConcurrentUpdateSolrServer extends SolrServer {
                       }
                     }
                     out.flush();
+                    long maxBytes = maxRequestBytes;
+                    if (maxBytes > 0 && requestBytes >= maxBytes) {
+                      // the next updates go in a new request
+                      break;
+                    }
                     req = queue.poll(pollQueueTime, TimeUnit.MILLISECONDS);
                   }
                   
                   if (isXml) {
                     out.write("</stream>".getBytes("UTF-8"));
                   }
+                  bodySent = System.nanoTime();
 
                 } catch (InterruptedException e) {
                   Thread.currentThread().interrupt();
@@ -241,9 +290,14 @@ public class ConcurrentUpdateSolrServer extends SolrServer {
               msg.append("request: ").append(method.getURI());
               handleError(new SolrException(ErrorCode.getErrorCode(statusCode), msg.toString()));
             } else {
+              success = true;
               onSuccess(response);
             }
           } finally {
+            inFlightBytes.addAndGet(-requestBytes);
+            if (requestBytes > 0) {
+              requestFinished(success, System.nanoTime() - bodySent, requestDocs);
+            }
             try {
               if (response != null) {
                 response.getEntity().getContent().close();
@@ -260,7 +314,7 @@ public class ConcurrentUpdateSolrServer extends SolrServer {
         handleError(e);
       } finally {
         synchronized (runners) {
-          if (runners.size() == 1 && !queue.isEmpty()) {
+          if (!retired && runners.size() == 1 && !queue.isEmpty()) {
             // keep this runner alive
             scheduler.execute(this);
           } else {
@@ -275,6 +329,46 @@ public class ConcurrentUpdateSolrServer extends SolrServer {
       }
     }
 
+    /**
+     * Stops this runner if there are more runners than the server is allowed,
+     * leaving at least one.
+     */
+    private boolean retire() {
+      if (!adaptiveRunners) return false;
+      synchronized (runners) {
+        if (runners.size() > Math.max(1, targetRunners)) {
+          runners.remove(this);
+          retired = true;
+          log.debug("retiring runner: {}", this);
+        }
+        return retired;
+      }
+    }
+
+    /** Counts the bytes of the current request, which are in flight until it is answered */
+    private class CountingOutputStream extends FilterOutputStream {
+      CountingOutputStream(OutputStream out) {
+        super(out);
+      }
+
+      @Override
+      public void write(int b) throws IOException {
+        out.write(b);
+        count(1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count(len);
+      }
+
+      private void count(int len) {
+        requestBytes += len;
+        inFlightBytes.addAndGet(len);
+      }
+    }
+
     private void sendAuthenticatingRequestIfNecessary() throws IOException {
       if (isSecure()) {
         // Required for SPNego authentication
@@ -354,7 +448,9 @@ public class ConcurrentUpdateSolrServer extends SolrServer {
           // see if queue is half full and we can add more runners
           // special case: if only using a threadCount of 1 and the queue
           // is filling up, allow 1 add'l runner to help process the queue
-          if (runners.isEmpty() || (queue.remainingCapacity() < queue.size() && runners.size() < threadCount))
+          if (runners.isEmpty() || (adaptiveRunners
+              ? !queue.isEmpty() && runners.size() < targetRunners
+              : queue.remainingCapacity() < queue.size() && runners.size() < threadCount))
           {
             // We need more runners, so start a new one.
             Runner r = new Runner();
@@ -428,6 +524,96 @@ public class ConcurrentUpdateSolrServer extends SolrServer {
     }
   }
 
+  /**
+   * Records the outcome of a request, and with adaptive runners adjusts their
+   * number: additive increase while the server keeps up, multiplicative
+   * decrease on errors.
+   * 
+   * @param ackNanos the time between the end of the request body and the response
+   */
+  private void requestFinished(boolean success, long ackNanos, int docs) {
+    if (!success) {
+      errors.incrementAndGet();
+    } else {
+      docsSent.addAndGet(docs);
+    }
+    synchronized (runners) {
+      long now = System.nanoTime();
+      if (success) {
+        rateWindowDocs += docs;
+      }
+      long elapsed = now - rateWindowStart;
+      if (elapsed >= TimeUnit.SECONDS.toNanos(1)) {
+        docsPerSecond = rateWindowDocs * 1e9 / elapsed;
+        rateWindowDocs = 0;
+        rateWindowStart = now;
+      }
+
+      if (!adaptiveRunners) return;
+      int oldTarget = targetRunners;
+      if (!success) {
+        targetRunners = Math.max(1, targetRunners / 2);
+      } else {
+        double latency = ackNanos / 1e6;
+        ackLatency = ackLatency < 0 ? latency : ackLatency + 0.3 * (latency - ackLatency);
+        // the baseline slowly follows the latency, in case the load changed
+        minAckLatency = Math.min(minAckLatency, ackLatency);
+        minAckLatency += 0.01 * (ackLatency - minAckLatency);
+        // the 1ms floor avoids reacting to noise on fast servers
+        if (ackLatency > LATENCY_FACTOR * (minAckLatency + 1)) {
+          targetRunners = Math.max(1, targetRunners - 1);
+        } else if (!queue.isEmpty() && targetRunners < threadCount) {
+          targetRunners++;
+        }
+      }
+      if (targetRunners != oldTarget) {
+        log.debug("runners: {} -> {}", oldTarget, targetRunners);
+      }
+    }
+  }
+
+  /** Returns the number of update requests waiting in the queue */
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  /** Returns the number of bytes sent in requests that weren't answered yet */
+  public long getInFlightBytes() {
+    return inFlightBytes.get();
+  }
+
+  /** Returns the number of documents in requests that succeeded */
+  public long getDocsSent() {
+    return docsSent.get();
+  }
+
+  /** Returns the number of requests that failed */
+  public long getErrorCount() {
+    return errors.get();
+  }
+
+  /** Returns the rate of documents indexed, measured over about a second */
+  public double getDocsPerSecond() {
+    return docsPerSecond;
+  }
+
+  /** Returns the number of runners sending updates */
+  public int getRunnerCount() {
+    synchronized (runners) {
+      return runners.size();
+    }
+  }
+
+  /**
+   * Returns the number of runners allowed: the thread count, or with
+   * adaptive runners, the number the server currently keeps up with.
+   */
+  public int getTargetRunners() {
+    synchronized (runners) {
+      return targetRunners;
+    }
+  }
+
   public void handleError(Throwable ex) {
     log.error("error", ex);
   }
@@ -496,6 +682,30 @@ public class ConcurrentUpdateSolrServer extends SolrServer {
     this.pollQueueTime = pollQueueTime;
   }
 
+  /**
+   * @param adaptiveRunners whether the number of runners, up to the thread
+   * count, adapts to the latency and errors of the server, rather than
+   * growing when the queue is half full.  Defaults to false.
+   */
+  public void setAdaptiveRunners(boolean adaptiveRunners) {
+    synchronized (runners) {
+      this.adaptiveRunners = adaptiveRunners;
+      targetRunners = adaptiveRunners ? 1 : threadCount;
+    }
+  }
+
+  public boolean isAdaptiveRunners() {
+    return adaptiveRunners;
+  }
+
+  /**
+   * @param maxRequestBytes the number of bytes after which a runner ends its
+   * request and starts a new one, or 0 for no limit (the default).
+   */
+  public void setMaxRequestBytes(long maxRequestBytes) {
+    this.maxRequestBytes = maxRequestBytes;
+  }
+
   public void setRequestWriter(RequestWriter requestWriter) {
     server.setRequestWriter(requestWriter);
   }
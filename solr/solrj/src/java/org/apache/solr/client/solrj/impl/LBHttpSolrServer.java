@@ -53,7 +53,9 @@ import java.util.*;
  * <p/>
  * It offers automatic failover when a server goes down and it detects when the server comes back up.
  * <p/>
- * Load balancing is done using a simple round-robin on the list of servers.
+ * Load balancing is done using a simple round-robin on the list of servers, or if
+ * {@link #setAdaptiveSelection adaptive selection} is enabled, by sending requests to
+ * the servers with the lowest response times and fewest outstanding requests first.
  * <p/>
  * If a request to a server fails by an IOException due to a connection timeout or read timeout then the host is taken
  * off the list of live servers and moved to a 'dead server list' and the request is resent to the next live server.
@@ -101,6 +103,8 @@ public class LBHttpSolrServer extends SolrServer {
   private final HttpClient httpClient;
   private final boolean clientIsInternal;
   private final AtomicInteger counter = new AtomicInteger(-1);
+  private final ResponseTimeTracker responseTimeTracker = new ResponseTimeTracker();
+  private volatile boolean adaptiveSelection = false;
 
   private static final SolrQuery solrQuery = new SolrQuery("*:*");
   private final ResponseParser parser;
@@ -239,7 +243,8 @@ public class LBHttpSolrServer extends SolrServer {
    * If a request fails due to an IOException, the server is moved to the dead pool for a certain period of
    * time, or until a test request on that server succeeds.
    *
-   * Servers are queried in the exact order given (except servers currently in the dead pool are skipped).
+   * Servers are queried in the exact order given (except servers currently in the dead pool are skipped),
+   * or for queries ranked by their response times if {@link #setAdaptiveSelection adaptive selection} is enabled.
    * If no live servers from the provided list remain to be tried, a number of previously skipped dead servers will be tried.
    * Req.getNumDeadServersToTry() controls how many dead servers will be tried.
    *
@@ -256,8 +261,10 @@ public class LBHttpSolrServer extends SolrServer {
     Exception ex = null;
     boolean isUpdate = req.request instanceof IsUpdateRequest;
     List<ServerWrapper> skipped = new ArrayList<ServerWrapper>(req.getNumDeadServersToTry());
+    // the order of the servers of updates matters, e.g. leaders first
+    List<String> servers = adaptiveSelection && !isUpdate ? responseTimeTracker.rank(req.getServers()) : req.getServers();
 
-    for (String serverStr : req.getServers()) {
+    for (String serverStr : servers) {
       serverStr = normalize(serverStr);
       // if the server is currently a zombie, just skip to the next one
       ServerWrapper wrapper = zombieServers.get(serverStr);
@@ -308,6 +315,7 @@ public class LBHttpSolrServer extends SolrServer {
   protected Exception doRequest(HttpSolrServer server, Req req, Rsp rsp, boolean isUpdate,
       boolean isZombie, String zombieKey) throws SolrServerException, IOException {
     Exception ex = null;
+    long startTime = responseTimeTracker.started(server.getBaseURL());
     try {
       rsp.rsp = server.request(req.getRequest());
       if (isZombie) {
@@ -348,6 +356,8 @@ public class LBHttpSolrServer extends SolrServer {
       }
     } catch (Exception e) {
       throw new SolrServerException(e);
+    } finally {
+      responseTimeTracker.finished(server.getBaseURL(), startTime);
     }
 
     return ex;
@@ -398,6 +408,26 @@ public class LBHttpSolrServer extends SolrServer {
     return null;
   }
 
+  /**
+   * If enabled, requests are sent to the servers with the lowest response times and
+   * fewest outstanding requests first, instead of round-robin or in the given order.
+   * Defaults to false.
+   *
+   * @see ResponseTimeTracker
+   */
+  public void setAdaptiveSelection(boolean adaptiveSelection) {
+    this.adaptiveSelection = adaptiveSelection;
+  }
+
+  public boolean isAdaptiveSelection() {
+    return adaptiveSelection;
+  }
+
+  /** Returns the response times of the servers this load balancer sent requests to */
+  public ResponseTimeTracker getResponseTimeTracker() {
+    return responseTimeTracker;
+  }
+
   public void setConnectionTimeout(int timeout) {
     HttpClientUtil.setConnectionTimeout(httpClient, timeout);
   }
@@ -437,15 +467,25 @@ public class LBHttpSolrServer extends SolrServer {
           throws SolrServerException, IOException {
     Exception ex = null;
     ServerWrapper[] serverList = aliveServerList;
+    boolean ranked = adaptiveSelection && serverList.length > 1;
+    if (ranked) {
+      serverList = rankServers(serverList);
+    }
     
     int maxTries = serverList.length;
     Map<String,ServerWrapper> justFailed = null;
 
     for (int attempts=0; attempts<maxTries; attempts++) {
-      int count = counter.incrementAndGet();      
-      ServerWrapper wrapper = serverList[count % serverList.length];
+      ServerWrapper wrapper;
+      if (ranked) {
+        wrapper = serverList[attempts];
+      } else {
+        int count = counter.incrementAndGet();
+        wrapper = serverList[count % serverList.length];
+      }
       wrapper.lastUsed = System.currentTimeMillis();
 
+      long startTime = responseTimeTracker.started(wrapper.getKey());
       try {
         return wrapper.solrServer.request(request);
       } catch (SolrException e) {
@@ -462,6 +502,8 @@ public class LBHttpSolrServer extends SolrServer {
         }
       } catch (Exception e) {
         throw new SolrServerException(e);
+      } finally {
+        responseTimeTracker.finished(wrapper.getKey(), startTime);
       }
     }
 
@@ -498,6 +540,24 @@ public class LBHttpSolrServer extends SolrServer {
     }
   }
   
+  // orders the servers by rank, starting the round-robin at the next one to break ties
+  private ServerWrapper[] rankServers(ServerWrapper[] serverList) {
+    int offset = (counter.incrementAndGet() & Integer.MAX_VALUE) % serverList.length;
+    Map<String,ServerWrapper> byKey = new HashMap<String,ServerWrapper>();
+    List<String> keys = new ArrayList<String>(serverList.length);
+    for (int i = 0; i < serverList.length; i++) {
+      ServerWrapper wrapper = serverList[(offset + i) % serverList.length];
+      byKey.put(wrapper.getKey(), wrapper);
+      keys.add(wrapper.getKey());
+    }
+    ServerWrapper[] ranked = new ServerWrapper[serverList.length];
+    int i = 0;
+    for (String key : responseTimeTracker.rank(keys)) {
+      ranked[i++] = byKey.get(key);
+    }
+    return ranked;
+  }
+
   /**
    * Takes up one dead server and check for aliveness. The check is done in a roundrobin. Each server is checked for
    * aliveness once in 'x' millis where x is decided by the setAliveCheckinterval() or it is defaulted to 1 minute
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the response times and the outstanding requests of Solr nodes, to send
+ * requests to the replicas that are likely to answer first.
+ * <p>
+ * Each node keeps an exponentially weighted moving average of its response
+ * times.  A node is ranked by that average times one plus its number of
+ * outstanding requests, so a node that is slow (e.g. pausing for GC) or already
+ * busy gets fewer requests.  The average of a node that isn't used decays with
+ * {@link #setHalfLife a half life}, so slow nodes are tried again after a while.
+ * <p>
+ * Servers are tracked by node, i.e. <code>http://host:port</code>, so all the cores of a node share
+ * their statistics.  This class is thread safe.
+ *
+ * @see LBHttpSolrServer#getResponseTimeTracker()
+ */
+public class ResponseTimeTracker {
+  /** The default weight of a new response time in the moving average */
+  public static final double DEFAULT_ALPHA = 0.3;
+  /** The default half life of the average response time of a node that isn't used, in ms */
+  public static final long DEFAULT_HALF_LIFE = 5000;
+
+  private final ConcurrentMap<String,NodeStats> nodes = new ConcurrentHashMap<String,NodeStats>();
+  private volatile double alpha = DEFAULT_ALPHA;
+  private volatile long halfLifeNanos = TimeUnit.NANOSECONDS.convert(DEFAULT_HALF_LIFE, TimeUnit.MILLISECONDS);
+
+  private static class NodeStats {
+    final AtomicInteger outstanding = new AtomicInteger();
+    // the average response time in ms, and when it was last updated (System.nanoTime())
+    double responseTime;
+    long lastUpdate;
+
+    synchronized void update(double elapsedMillis, double alpha, long now, long halfLifeNanos) {
+      if (lastUpdate == 0) {
+        responseTime = elapsedMillis;
+      } else {
+        // blend into the average as it decayed since, the one the node was ranked by
+        double rt = decayed(now, halfLifeNanos);
+        responseTime = rt + alpha * (elapsedMillis - rt);
+      }
+      lastUpdate = now;
+    }
+
+    private double decayed(long now, long halfLifeNanos) {
+      long age = now - lastUpdate;
+      return age > 0 ? responseTime * Math.pow(0.5, (double) age / halfLifeNanos) : responseTime;
+    }
+
+    synchronized double score(long now, long halfLifeNanos) {
+      double rt = lastUpdate == 0 ? responseTime : decayed(now, halfLifeNanos);
+      // the 1ms floor keeps the outstanding requests of unknown nodes relevant
+      return (rt + 1) * (1 + outstanding.get());
+    }
+  }
+
+  /** Sets the weight of a new response time in the moving average, between 0 and 1 */
+  public void setAlpha(double alpha) {
+    if (!(alpha > 0 && alpha <= 1)) {
+      throw new IllegalArgumentException("alpha must be in (0,1]: " + alpha);
+    }
+    this.alpha = alpha;
+  }
+
+  /** Sets the half life of the average response time of a node that isn't used, in ms */
+  public void setHalfLife(long halfLife) {
+    if (halfLife <= 0) {
+      throw new IllegalArgumentException("half life must be positive: " + halfLife);
+    }
+    this.halfLifeNanos = TimeUnit.NANOSECONDS.convert(halfLife, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Records the start of a request to the server, which must be followed by a call to
+   * {@link #finished(String, long)} with the returned start time.
+   */
+  public long started(String server) {
+    getStats(server).outstanding.incrementAndGet();
+    return System.nanoTime();
+  }
+
+  /** Records the end of a request to the server, successful or not */
+  public void finished(String server, long startTime) {
+    NodeStats stats = getStats(server);
+    long now = System.nanoTime();
+    stats.outstanding.decrementAndGet();
+    stats.update((now - startTime) / 1000000.0, alpha, now, halfLifeNanos);
+  }
+
+  /**
+   * Returns the servers ordered from the one most likely to answer first to the least.
+   * The order of servers with equal ranks, e.g. unknown ones, is kept.
+   */
+  public List<String> rank(List<String> servers) {
+    if (servers.size() <= 1) {
+      return servers;
+    }
+    long now = System.nanoTime();
+    long halfLife = halfLifeNanos;
+    final List<Object[]> scored = new ArrayList<Object[]>(servers.size());
+    for (String server : servers) {
+      scored.add(new Object[] {server, getStats(server).score(now, halfLife)});
+    }
+    // a stable sort
+    Collections.sort(scored, new Comparator<Object[]>() {
+      @Override
+      public int compare(Object[] o1, Object[] o2) {
+        return Double.compare((Double) o1[1], (Double) o2[1]);
+      }
+    });
+    List<String> ranked = new ArrayList<String>(servers.size());
+    for (Object[] entry : scored) {
+      ranked.add((String) entry[0]);
+    }
+    return ranked;
+  }
+
+  private NodeStats getStats(String server) {
+    String node = getNode(server);
+    NodeStats stats = nodes.get(node);
+    if (stats == null) {
+      NodeStats newStats = new NodeStats();
+      stats = nodes.putIfAbsent(node, newStats);
+      if (stats == null) {
+        stats = newStats;
+      }
+    }
+    return stats;
+  }
+
+  // http://host:port/solr/core -> http://host:port
+  static String getNode(String server) {
+    int start = server.indexOf("://");
+    start = start < 0 ? 0 : start + 3;
+    int end = server.indexOf('/', start);
+    return end < 0 ? server : server.substring(0, end);
+  }
+}
@@ -41,6 +41,9 @@ import org.apache.solr.common.util.NamedList;
  */
 public class JavaBinUpdateRequestCodec {
 
+  // field names and values that repeat across update requests
+  private static final JavaBinCodec.StringCache stringCache = new JavaBinCodec.StringCache(4096, 32);
+
   /**
    * Converts an UpdateRequest to a NamedList which can be serialized to the given OutputStream in the javabin format
    *
@@ -147,6 +150,7 @@ public class JavaBinUpdateRequestCodec {
     };
 
 
+    codec.setStringCache(stringCache);
     codec.unmarshal(is);
     
     // NOTE: if the update request contains only delete commands the params
@@ -178,6 +178,10 @@ public class UpdateRequest extends AbstractUpdateRequest {
         && (deleteById == null || deleteById.size() == 0)) {
       return null;
     }
+    if (docIterator != null) {
+      // streamed documents can't be split ahead of time
+      return null;
+    }
     
     Map<String,LBHttpSolrServer.Req> routes = new HashMap<String,LBHttpSolrServer.Req>();
     if (documents != null) {
@@ -194,6 +198,9 @@ public class UpdateRequest extends AbstractUpdateRequest {
           return null;
         }
         List<String> urls = urlMap.get(slice.getName());
+        if (urls == null) {
+          return null;
+        }
         String leaderUrl = urls.get(0);
         LBHttpSolrServer.Req request = (LBHttpSolrServer.Req) routes
             .get(leaderUrl);
@@ -207,7 +214,13 @@ public class UpdateRequest extends AbstractUpdateRequest {
           routes.put(leaderUrl, request);
         }
         UpdateRequest urequest = (UpdateRequest) request.getRequest();
-        urequest.add(doc);
+        Map<String,Object> docParams = entry.getValue();
+        if (docParams == null) {
+          urequest.add(doc);
+        } else {
+          urequest.add(doc, (Integer) docParams.get(COMMIT_WITHIN),
+              (Boolean) docParams.get(OVERWRITE));
+        }
       }
     }
     
@@ -232,6 +245,9 @@ public class UpdateRequest extends AbstractUpdateRequest {
           return null;
         }
         List<String> urls = urlMap.get(slice.getName());
+        if (urls == null) {
+          return null;
+        }
         String leaderUrl = urls.get(0);
         LBHttpSolrServer.Req request = routes.get(leaderUrl);
         if (request != null) {
@@ -239,7 +255,10 @@ public class UpdateRequest extends AbstractUpdateRequest {
           urequest.deleteById(deleteId, version);
         } else {
           UpdateRequest urequest = new UpdateRequest();
+          urequest.setMethod(getMethod());
+          urequest.setCommitWithin(getCommitWithin());
           urequest.setParams(params);
+          urequest.setPath(getPath());
           urequest.deleteById(deleteId, version);
           request = new LBHttpSolrServer.Req(urequest, urls);
           routes.put(leaderUrl, request);
@@ -327,6 +346,14 @@ public class UpdateRequest extends AbstractUpdateRequest {
   public void writeXML(Writer writer) throws IOException {
     List<Map<SolrInputDocument,Map<String,Object>>> getDocLists = getDocLists(documents);
     
+    // adds and deletes need a single root element to be parsed together
+    boolean deleteI = deleteById != null && deleteById.size() > 0;
+    boolean deleteQ = deleteQuery != null && deleteQuery.size() > 0;
+    boolean wrap = (deleteI || deleteQ) && !getDocLists.isEmpty();
+    if (wrap) {
+      writer.write("<update>");
+    }
+    
     for (Map<SolrInputDocument,Map<String,Object>> docs : getDocLists) {
       
       if ((docs != null && docs.size() > 0)) {
@@ -360,8 +387,6 @@ public class UpdateRequest extends AbstractUpdateRequest {
     }
     
     // Add the delete commands
-    boolean deleteI = deleteById != null && deleteById.size() > 0;
-    boolean deleteQ = deleteQuery != null && deleteQuery.size() > 0;
     if (deleteI || deleteQ) {
       if (commitWithin > 0) {
         writer.append("<delete commitWithin=\"" + commitWithin + "\">");
@@ -393,6 +418,10 @@ public class UpdateRequest extends AbstractUpdateRequest {
       }
       writer.append("</delete>");
     }
+    
+    if (wrap) {
+      writer.write("</update>");
+    }
   }
   
   // --------------------------------------------------------------------------
@@ -21,6 +21,7 @@ import org.apache.solr.common.util.NamedList;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -41,6 +42,8 @@ public class FieldStatsInfo implements Serializable {
   Object mean = null;
   Double sumOfSquares = null;
   Double stddev = null;
+  Long cardinality = null;
+  Map<Double,Double> percentiles = null;
   
   Map<String,List<FieldStatsInfo>> facets;
   
@@ -73,6 +76,17 @@ public class FieldStatsInfo implements Serializable {
       else if( "stddev".equals( entry.getKey() ) ) {
         stddev = (Double)entry.getValue();
       }
+      else if( "cardinality".equals( entry.getKey() ) ) {
+        cardinality = (Long)entry.getValue();
+      }
+      else if( "percentiles".equals( entry.getKey() ) ) {
+        @SuppressWarnings("unchecked")
+        NamedList<Object> p = (NamedList<Object>)entry.getValue();
+        percentiles = new LinkedHashMap<Double, Double>();
+        for( Map.Entry<String, Object> ev : p ) {
+          percentiles.put( Double.valueOf( ev.getKey() ), ((Number)ev.getValue()).doubleValue() );
+        }
+      }
       else if( "facets".equals( entry.getKey() ) ) {
         @SuppressWarnings("unchecked")
         NamedList<Object> fields = (NamedList<Object>)entry.getValue();
@@ -121,6 +135,12 @@ public class FieldStatsInfo implements Serializable {
     if( stddev != null ) {
       sb.append( " stddev:").append(stddev);
     }
+    if( cardinality != null ) {
+      sb.append( " cardinality:").append( cardinality );
+    }
+    if( percentiles != null ) {
+      sb.append( " percentiles:").append( percentiles );
+    }
     sb.append( " }" );
     return sb.toString();
   }
@@ -157,6 +177,19 @@ public class FieldStatsInfo implements Serializable {
     return stddev;
   }
 
+  /** Returns the estimated number of distinct values, if stats.cardinality was requested */
+  public Long getCardinality() {
+    return cardinality;
+  }
+
+  /**
+   * Returns the estimated values of the percentiles requested by stats.percentiles,
+   * in the requested order
+   */
+  public Map<Double, Double> getPercentiles() {
+    return percentiles;
+  }
+
   public Map<String, List<FieldStatsInfo>> getFacets() {
     return facets;
   }
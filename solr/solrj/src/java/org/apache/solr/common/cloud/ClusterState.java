@@ -44,7 +44,7 @@ public class ClusterState implements JSONWriter.Writable {
   
   private Integer zkClusterStateVersion;
   
-  private final Map<String, DocCollection> collectionStates;  // Map<collectionName, Map<sliceName,Slice>>
+  private final Map<String, CollectionRef> collectionStates;  // Map<collectionName, Map<sliceName,Slice>>
   private final Set<String> liveNodes;
 
   /**
@@ -62,19 +62,49 @@ public class ClusterState implements JSONWriter.Writable {
    */
   public ClusterState(Integer zkClusterStateVersion, Set<String> liveNodes,
       Map<String, DocCollection> collectionStates) {
+    this(liveNodes, getRefMap(collectionStates), zkClusterStateVersion);
+  }
+
+  /**
+   * Use this constr when the state of some collections is only loaded when
+   * it is asked for, see {@link CollectionRef}.
+   */
+  public ClusterState(Set<String> liveNodes, Map<String, CollectionRef> collectionStates,
+      Integer zkClusterStateVersion) {
     this.zkClusterStateVersion = zkClusterStateVersion;
     this.liveNodes = new HashSet<String>(liveNodes.size());
     this.liveNodes.addAll(liveNodes);
-    this.collectionStates = new HashMap<String, DocCollection>(collectionStates.size());
-    this.collectionStates.putAll(collectionStates);
+    this.collectionStates = new LinkedHashMap<String, CollectionRef>(collectionStates);
   }
 
+  private static Map<String, CollectionRef> getRefMap(Map<String, DocCollection> collections) {
+    Map<String, CollectionRef> result = new LinkedHashMap<String, CollectionRef>(collections.size());
+    for (Entry<String, DocCollection> entry : collections.entrySet()) {
+      result.put(entry.getKey(), new CollectionRef(entry.getValue()));
+    }
+    return result;
+  }
+
+  /**
+   * Returns a copy of this ClusterState in which the given collection is replaced,
+   * or removed if <code>collection</code> is null.  The states of the other
+   * collections are not loaded.
+   */
+  public ClusterState copyWith(String collectionName, DocCollection collection) {
+    Map<String, CollectionRef> newStates = new LinkedHashMap<String, CollectionRef>(collectionStates);
+    if (collection == null) {
+      newStates.remove(collectionName);
+    } else {
+      newStates.put(collectionName, new CollectionRef(collection));
+    }
+    return new ClusterState(liveNodes, newStates, zkClusterStateVersion);
+  }
 
   /**
    * Get the lead replica for specific collection, or null if one currently doesn't exist.
    */
   public Replica getLeader(String collection, String sliceName) {
-    DocCollection coll = collectionStates.get(collection);
+    DocCollection coll = getCollectionOrNull(collection);
     if (coll == null) return null;
     Slice slice = coll.getSlice(sliceName);
     if (slice == null) return null;
@@ -87,7 +117,7 @@ public class ClusterState implements JSONWriter.Writable {
    * coreNodeName is the same as replicaName
    */
   public Replica getReplica(final String collection, final String coreNodeName) {
-    return getReplica(collectionStates.get(collection), coreNodeName);
+    return getReplica(getCollectionOrNull(collection), coreNodeName);
   }
 
   private Replica getReplica(DocCollection coll, String replicaName) {
@@ -107,31 +137,31 @@ public class ClusterState implements JSONWriter.Writable {
    * Get the named Slice for collection, or null if not found.
    */
   public Slice getSlice(String collection, String sliceName) {
-    DocCollection coll = collectionStates.get(collection);
+    DocCollection coll = getCollectionOrNull(collection);
     if (coll == null) return null;
     return coll.getSlice(sliceName);
   }
 
   public Map<String, Slice> getSlicesMap(String collection) {
-    DocCollection coll = collectionStates.get(collection);
+    DocCollection coll = getCollectionOrNull(collection);
     if (coll == null) return null;
     return coll.getSlicesMap();
   }
   
   public Map<String, Slice> getActiveSlicesMap(String collection) {
-    DocCollection coll = collectionStates.get(collection);
+    DocCollection coll = getCollectionOrNull(collection);
     if (coll == null) return null;
     return coll.getActiveSlicesMap();
   }
 
   public Collection<Slice> getSlices(String collection) {
-    DocCollection coll = collectionStates.get(collection);
+    DocCollection coll = getCollectionOrNull(collection);
     if (coll == null) return null;
     return coll.getSlices();
   }
 
   public Collection<Slice> getActiveSlices(String collection) {
-    DocCollection coll = collectionStates.get(collection);
+    DocCollection coll = getCollectionOrNull(collection);
     if (coll == null) return null;
     return coll.getActiveSlices();
   }
@@ -140,7 +170,7 @@ public class ClusterState implements JSONWriter.Writable {
    * Get the named DocCollection object, or throw an exception if it doesn't exist.
    */
   public DocCollection getCollection(String collection) {
-    DocCollection coll = collectionStates.get(collection);
+    DocCollection coll = getCollectionOrNull(collection);
     if (coll == null) {
       throw new SolrException(ErrorCode.BAD_REQUEST, "Could not find collection:" + collection);
     }
@@ -148,6 +178,18 @@ public class ClusterState implements JSONWriter.Writable {
   }
   
   public DocCollection getCollectionOrNull(String coll) {
+    CollectionRef ref = collectionStates.get(coll);
+    return ref == null ? null : ref.get();
+  }
+
+  /**
+   * Get the reference to the state of the named collection, or null if not found.
+   * The state of a collection kept in its own state node may only be read from
+   * ZooKeeper when {@link CollectionRef#get()} is called.
+   *
+   * @lucene.internal
+   */
+  public CollectionRef getCollectionRef(String coll) {
     return collectionStates.get(coll);
   }
 
@@ -159,10 +201,20 @@ public class ClusterState implements JSONWriter.Writable {
   }
 
   /**
+   * Note that this loads the state of every collection that is only loaded
+   * when asked for, prefer {@link #getCollectionOrNull(String)} where possible.
+   *
    * @return Map&lt;collectionName, Map&lt;sliceName,Slice&gt;&gt;
    */
   public Map<String, DocCollection> getCollectionStates() {
-    return Collections.unmodifiableMap(collectionStates);
+    Map<String, DocCollection> result = new LinkedHashMap<String, DocCollection>(collectionStates.size());
+    for (Entry<String, CollectionRef> entry : collectionStates.entrySet()) {
+      DocCollection coll = entry.getValue().get();
+      if (coll != null) {
+        result.put(entry.getKey(), coll);
+      }
+    }
+    return Collections.unmodifiableMap(result);
   }
 
   /**
@@ -173,8 +225,24 @@ public class ClusterState implements JSONWriter.Writable {
   }
 
   public String getShardId(String nodeName, String coreName) {
+    return getShardId(null, nodeName, coreName);
+  }
+
+  /**
+   * Get the shard of the given core, looking only at the named collection
+   * if <code>collectionName</code> is not null.
+   */
+  public String getShardId(String collectionName, String nodeName, String coreName) {
     // System.out.println("###### getShardId(" + baseUrl + "," + coreName + ") in " + collectionStates);
-    for (DocCollection coll : collectionStates.values()) {
+    Collection<DocCollection> states;
+    if (collectionName != null) {
+      DocCollection c = getCollectionOrNull(collectionName);
+      if (c == null) return null;
+      states = Collections.singletonList(c);
+    } else {
+      states = getCollectionStates().values();
+    }
+    for (DocCollection coll : states) {
       for (Slice slice : coll.getSlices()) {
         for (Replica replica : slice.getReplicas()) {
           // TODO: for really large clusters, we could 'index' on this
@@ -190,11 +258,14 @@ public class ClusterState implements JSONWriter.Writable {
   }
   
   public String getShardIdByCoreNodeName(String collectionName, String coreNodeName) {
-    Collection<DocCollection> states = collectionStates.values();
+    Collection<DocCollection> states = null;
     if (collectionName != null) {
       DocCollection c = getCollectionOrNull(collectionName);
       if (c != null) states = Collections.singletonList(c);
     }
+    if (states == null) {
+      states = getCollectionStates().values();
+    }
 
     for (DocCollection coll : states) {
       for (Slice slice : coll.getSlices()) {
@@ -246,15 +317,33 @@ public class ClusterState implements JSONWriter.Writable {
    * @return the ClusterState
    */
   public static ClusterState load(Integer version, byte[] bytes, Set<String> liveNodes) {
+    return load(version, bytes, liveNodes, ZkStateReader.CLUSTER_STATE);
+  }
+
+  /**
+   * Create ClusterState from the json of the given znode, either clusterstate.json
+   * or the state node of a single collection (see {@link ZkStateReader#getCollectionPath(String)}).
+   * The collections remember the version of the znode, and those read from a
+   * collection state node are of {@link DocCollection#STATE_FORMAT} 2.
+   *
+   * @param version zk version of the znode
+   * @param bytes the json of the znode as a byte array
+   * @param liveNodes list of live nodes
+   * @param znode the path of the znode
+   * @return the ClusterState
+   */
+  public static ClusterState load(Integer version, byte[] bytes, Set<String> liveNodes, String znode) {
     // System.out.println("######## ClusterState.load:" + (bytes==null ? null : new String(bytes)));
     if (bytes == null || bytes.length == 0) {
       return new ClusterState(version, liveNodes, Collections.<String, DocCollection>emptyMap());
     }
     Map<String, Object> stateMap = (Map<String, Object>) ZkStateReader.fromJSON(bytes);
     Map<String,DocCollection> collections = new LinkedHashMap<String,DocCollection>(stateMap.size());
+    boolean ownNode = !ZkStateReader.CLUSTER_STATE.equals(znode);
     for (Entry<String, Object> entry : stateMap.entrySet()) {
       String collectionName = entry.getKey();
-      DocCollection coll = collectionFromObjects(collectionName, (Map<String,Object>)entry.getValue());
+      DocCollection coll = collectionFromObjects(collectionName, (Map<String,Object>)entry.getValue(),
+          version == null ? -1 : version, ownNode);
       collections.put(collectionName, coll);
     }
 
@@ -271,7 +360,7 @@ public class ClusterState implements JSONWriter.Writable {
     return new Aliases(aliasMap);
   }
 
-  private static DocCollection collectionFromObjects(String name, Map<String,Object> objs) {
+  private static DocCollection collectionFromObjects(String name, Map<String,Object> objs, int version, boolean ownNode) {
     Map<String,Object> props;
     Map<String,Slice> slices;
 
@@ -286,8 +375,13 @@ public class ClusterState implements JSONWriter.Writable {
       objs.remove(DocCollection.SHARDS);
     }
 
+    if (ownNode) {
+      if (props.isEmpty()) props = new HashMap<String, Object>();
+      props.put(DocCollection.STATE_FORMAT, 2);
+    }
+
     DocRouter router = DocRouter.getDocRouter(props.get(DocCollection.DOC_ROUTER));
-    return new DocCollection(name, slices, props, router);
+    return new DocCollection(name, slices, props, router, version);
   }
 
   private static Map<String,Slice> makeSlices(Map<String,Object> genericSlices) {
@@ -305,9 +399,22 @@ public class ClusterState implements JSONWriter.Writable {
     return result;
   }
 
+  /**
+   * Writes the collections kept in clusterstate.json, those of
+   * {@link DocCollection#STATE_FORMAT} 1.
+   */
   @Override
   public void write(JSONWriter jsonWriter) {
-    jsonWriter.write(collectionStates);
+    Map<String, DocCollection> legacy = new LinkedHashMap<String, DocCollection>();
+    for (Entry<String, CollectionRef> entry : collectionStates.entrySet()) {
+      // lazily loaded collections have their own state node
+      if (entry.getValue().isLazilyLoaded()) continue;
+      DocCollection coll = entry.getValue().get();
+      if (coll != null && coll.getStateFormat() == 1) {
+        legacy.put(entry.getKey(), coll);
+      }
+    }
+    jsonWriter.write(legacy);
   }
 
   /**
@@ -344,7 +451,30 @@ public class ClusterState implements JSONWriter.Writable {
     return true;
   }
 
+  /**
+   * A reference to the state of a collection.  The state may only be loaded from
+   * ZooKeeper when it is asked for, see {@link #isLazilyLoaded()}.
+   */
+  public static class CollectionRef {
+    private final DocCollection coll;
+
+    public CollectionRef(DocCollection coll) {
+      this.coll = coll;
+    }
 
+    /** Returns the state of the collection, or null if it no longer exists */
+    public DocCollection get() {
+      return coll;
+    }
 
+    /** Whether {@link #get()} may have to read the state from ZooKeeper */
+    public boolean isLazilyLoaded() {
+      return false;
+    }
 
+    @Override
+    public String toString() {
+      return String.valueOf(coll);
+    }
+  }
 }
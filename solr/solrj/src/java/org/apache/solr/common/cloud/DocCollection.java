@@ -35,6 +35,11 @@ import org.noggit.JSONWriter;
 public class DocCollection extends ZkNodeProps {
   public static final String DOC_ROUTER = "router";
   public static final String SHARDS = "shards";
+  /**
+   * Where the state of the collection is kept: 1 (the default) in the shared
+   * {@link ZkStateReader#CLUSTER_STATE}, 2 in its own {@link ZkStateReader#getCollectionPath(String)}
+   */
+  public static final String STATE_FORMAT = "stateFormat";
 
   private final String name;
   private final Map<String, Slice> slices;
@@ -44,6 +49,8 @@ public class DocCollection extends ZkNodeProps {
   private final Integer replicationFactor;
   private final Integer maxShardsPerNode;
   private final boolean autoAddReplicas;
+  private final int stateFormat;
+  private final int znodeVersion;
 
   /**
    * @param name  The name of the collection
@@ -51,8 +58,19 @@ public class DocCollection extends ZkNodeProps {
    * @param props  The properties of the slice.  This is used directly and a copy is not made.
    */
   public DocCollection(String name, Map<String, Slice> slices, Map<String, Object> props, DocRouter router) {
+    this(name, slices, props, router, -1);
+  }
+
+  /**
+   * @param name  The name of the collection
+   * @param slices The logical shards of the collection.  This is used directly and a copy is not made.
+   * @param props  The properties of the slice.  This is used directly and a copy is not made.
+   * @param znodeVersion The version of the znode the state was read from, or -1
+   */
+  public DocCollection(String name, Map<String, Slice> slices, Map<String, Object> props, DocRouter router, int znodeVersion) {
     super( props==null ? Collections.<String,Object>emptyMap() : props);
     this.name = name;
+    this.znodeVersion = znodeVersion;
 
     this.slices = slices;
     this.activeSlices = new HashMap<String, Slice>();
@@ -81,10 +99,17 @@ public class DocCollection extends ZkNodeProps {
       } else {
         this.autoAddReplicas = false;
       }
+      Object stateFormatObject = props.get(STATE_FORMAT);
+      if (stateFormatObject != null) {
+        this.stateFormat = Integer.parseInt(stateFormatObject.toString());
+      } else {
+        this.stateFormat = 1;
+      }
     } else {
       this.replicationFactor = null;
       this.maxShardsPerNode = null;
       this.autoAddReplicas = false;
+      this.stateFormat = 1;
     }
 
     Iterator<Map.Entry<String, Slice>> iter = slices.entrySet().iterator();
@@ -160,6 +185,22 @@ public class DocCollection extends ZkNodeProps {
     return router;
   }
 
+  /**
+   * @return 1 if the state of this collection is kept in the shared clusterstate.json,
+   *         2 if it is kept in its own state node
+   * @see #STATE_FORMAT
+   */
+  public int getStateFormat() {
+    return stateFormat;
+  }
+
+  /**
+   * @return the version of the znode this state was read from, or -1 if it was not read from ZooKeeper
+   */
+  public int getZNodeVersion() {
+    return znodeVersion;
+  }
+
   @Override
   public String toString() {
     return "DocCollection("+name+")=" + JSONUtil.toJSON(this);
@@ -38,11 +38,15 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
@@ -70,6 +74,7 @@ public class ZkStateReader implements Closeable {
   public static final String LIVE_NODES_ZKNODE = "/live_nodes";
   public static final String ALIASES = "/aliases.json";
   public static final String CLUSTER_STATE = "/clusterstate.json";
+  public static final String STATE_JSON = "state.json";
   public static final String CLUSTER_PROPS = "/clusterprops.json";
 
   public static final String REPLICATION_FACTOR = "replicationFactor";
@@ -91,6 +96,9 @@ public class ZkStateReader implements Closeable {
 
   private static final long SOLRCLOUD_UPDATE_DELAY = Long.parseLong(System.getProperty("solrcloud.update.delay", "5000"));
 
+  // how long the state of a collection that is not watched is reused
+  private static final long LAZY_CACHE_NANOS = TimeUnit.MILLISECONDS.toNanos(2000);
+
   public static final String LEADER_ELECT_ZKNODE = "/leader_elect";
 
   public static final String SHARD_LEADERS_ZKNODE = "leaders";
@@ -195,6 +203,21 @@ public class ZkStateReader implements Closeable {
 
   private volatile boolean closed = false;
 
+  // the collections kept in clusterstate.json, and its version
+  private Map<String, DocCollection> legacyCollectionStates = Collections.emptyMap();
+  private Integer legacyClusterStateVersion;
+
+  private Set<String> liveNodes = Collections.emptySet();
+
+  // the children of /collections
+  private final Set<String> knownCollections = new HashSet<String>();
+  // the collections with their own state node
+  private final Set<String> ownStateCollections = new LinkedHashSet<String>();
+  // the collections whose state node is watched, typically those hosted by this node
+  private final Set<String> interestingCollections = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+  private final Map<String, DocCollection> watchedCollectionStates = new ConcurrentHashMap<String, DocCollection>();
+  private final Map<String, Watcher> collectionWatchers = new ConcurrentHashMap<String, Watcher>();
+
   public ZkStateReader(SolrZkClient zkClient) {
     this.zkClient = zkClient;
     initZkCmdExecutor(zkClient.getZkClientTimeout());
@@ -253,6 +276,7 @@ public class ZkStateReader implements Closeable {
     synchronized (getUpdateLock()) {
       cmdExecutor.ensureExists(CLUSTER_STATE, zkClient);
       cmdExecutor.ensureExists(ALIASES, zkClient);
+      cmdExecutor.ensureExists(COLLECTIONS_ZKNODE, zkClient);
       
       log.info("Updating cluster state from ZooKeeper... ");
       
@@ -272,19 +296,8 @@ public class ZkStateReader implements Closeable {
             // ZkStateReader.this.updateClusterState(false, false);
             synchronized (ZkStateReader.this.getUpdateLock()) {
               // remake watch
-              final Watcher thisWatch = this;
-              Stat stat = new Stat();
-              byte[] data = zkClient.getData(CLUSTER_STATE, thisWatch, stat ,
-                  true);
-              List<String> liveNodes = zkClient.getChildren(
-                  LIVE_NODES_ZKNODE, this, true);
-     
-              Set<String> liveNodesSet = new HashSet<String>();
-              liveNodesSet.addAll(liveNodes);
-              Set<String> ln = ZkStateReader.this.clusterState.getLiveNodes();
-              ClusterState clusterState = ClusterState.load(stat.getVersion(), data, ln);
-              // update volatile
-              ZkStateReader.this.clusterState = clusterState;
+              refreshLegacyClusterState(this);
+              constructState();
             }
           } catch (KeeperException e) {
             if (e.code() == KeeperException.Code.SESSIONEXPIRED
@@ -325,13 +338,8 @@ public class ZkStateReader implements Closeable {
                   List<String> liveNodes = zkClient.getChildren(
                       LIVE_NODES_ZKNODE, this, true);
                   log.info("Updating live nodes... ({})", liveNodes.size());
-                  Set<String> liveNodesSet = new HashSet<String>();
-                  liveNodesSet.addAll(liveNodes);
-                  ClusterState clusterState = new ClusterState(
-                      ZkStateReader.this.clusterState.getZkClusterStateVersion(),
-                      liveNodesSet, ZkStateReader.this.clusterState
-                          .getCollectionStates());
-                  ZkStateReader.this.clusterState = clusterState;
+                  ZkStateReader.this.liveNodes = new HashSet<String>(liveNodes);
+                  constructState();
                 }
               } catch (KeeperException e) {
                 if (e.code() == KeeperException.Code.SESSIONEXPIRED
@@ -352,10 +360,46 @@ public class ZkStateReader implements Closeable {
             
           }, true);
     
-      Set<String> liveNodeSet = new HashSet<String>();
-      liveNodeSet.addAll(liveNodes);
-      ClusterState clusterState = ClusterState.load(zkClient, liveNodeSet);
-      this.clusterState = clusterState;
+      this.liveNodes = new HashSet<String>(liveNodes);
+      refreshLegacyClusterState(null);
+
+      // collections with their own state node are only listed here, their state
+      // is watched if this node is interested in them and lazily loaded otherwise
+      refreshCollectionList(new Watcher() {
+
+        @Override
+        public void process(WatchedEvent event) {
+          // session events are not change events,
+          // and do not remove the watcher
+          if (EventType.None.equals(event.getType())) {
+            return;
+          }
+          try {
+            synchronized (ZkStateReader.this.getUpdateLock()) {
+              log.info("Updating collection list... ");
+              refreshCollectionList(this);
+              constructState();
+            }
+          } catch (KeeperException e) {
+            if (e.code() == KeeperException.Code.SESSIONEXPIRED
+                || e.code() == KeeperException.Code.CONNECTIONLOSS) {
+              log.warn("ZooKeeper watch triggered, but Solr cannot talk to ZK");
+              return;
+            }
+            log.error("", e);
+            throw new ZooKeeperException(
+                SolrException.ErrorCode.SERVER_ERROR, "", e);
+          } catch (InterruptedException e) {
+            // Restore the interrupted status
+            Thread.currentThread().interrupt();
+            log.warn("", e);
+            return;
+          }
+        }
+
+      });
+      refreshWatchedCollections();
+      constructState();
       
       zkClient.exists(ALIASES,
           new Watcher() {
@@ -402,6 +446,296 @@ public class ZkStateReader implements Closeable {
     }
     updateAliases();
   }
+
+  /**
+   * Reads the collections kept in clusterstate.json, setting the given watch if not null.
+   * Must be called with the update lock held.
+   */
+  private void refreshLegacyClusterState(Watcher watcher) throws KeeperException, InterruptedException {
+    Stat stat = new Stat();
+    byte[] data = zkClient.getData(CLUSTER_STATE, watcher, stat, true);
+    ClusterState legacyState = ClusterState.load(stat.getVersion(), data, Collections.<String>emptySet());
+    legacyClusterStateVersion = stat.getVersion();
+    legacyCollectionStates = legacyState.getCollectionStates();
+  }
+
+  /**
+   * Lists the collections, checking which of the new ones have their own state node.
+   * Must be called with the update lock held.
+   */
+  private void refreshCollectionList(Watcher watcher) throws KeeperException, InterruptedException {
+    List<String> children;
+    try {
+      children = zkClient.getChildren(COLLECTIONS_ZKNODE, watcher, true);
+    } catch (KeeperException.NoNodeException e) {
+      log.warn("Error fetching collection names");
+      children = Collections.emptyList();
+    }
+
+    Set<String> current = new HashSet<String>(children);
+    knownCollections.retainAll(current);
+    ownStateCollections.retainAll(current);
+    watchedCollectionStates.keySet().retainAll(current);
+    collectionWatchers.keySet().retainAll(current);
+
+    for (String coll : children) {
+      // collections without a state node yet are checked again, in case it was created since
+      if (knownCollections.add(coll) || !ownStateCollections.contains(coll)) {
+        checkStateNode(coll);
+      }
+    }
+  }
+
+  /**
+   * Checks whether the collection has its own state node.  The state node of a
+   * collection this node is interested in is watched for any change.  For other
+   * collections only a missing state node is watched, for its creation: once it
+   * exists its changes don't concern this node, which reads the state when asked
+   * for, and the collection's deletion shows in the children of /collections.
+   * Must be called with the update lock held.
+   */
+  private void checkStateNode(String coll) throws KeeperException, InterruptedException {
+    String path = getCollectionPath(coll);
+    // without a state node this is e.g. a collection in clusterstate.json, or one being created or migrated
+    Stat stat;
+    if (interestingCollections.contains(coll)) {
+      stat = zkClient.exists(path, getCollectionWatcher(coll), true);
+    } else {
+      stat = zkClient.exists(path, null, true);
+      if (stat == null) {
+        stat = zkClient.exists(path, getCollectionWatcher(coll), true);
+      }
+    }
+    if (stat == null) {
+      ownStateCollections.remove(coll);
+    } else {
+      ownStateCollections.add(coll);
+      if (interestingCollections.contains(coll)) {
+        updateWatchedCollection(coll);
+      }
+    }
+  }
+
+  /** Re-reads the state of all watched collections. Must be called with the update lock held. */
+  private void refreshWatchedCollections() throws KeeperException, InterruptedException {
+    for (String coll : interestingCollections) {
+      if (ownStateCollections.contains(coll)) {
+        updateWatchedCollection(coll);
+      }
+    }
+  }
+
+  /**
+   * Reads the state of a watched collection and (re)sets the watch on its state node.
+   * Must be called with the update lock held.
+   */
+  private void updateWatchedCollection(String coll) throws KeeperException, InterruptedException {
+    Watcher watcher = getCollectionWatcher(coll);
+    DocCollection newState = fetchCollectionState(coll, watcher);
+    if (newState == null) {
+      watchedCollectionStates.remove(coll);
+      ownStateCollections.remove(coll);
+      // watch for the state node being created again
+      if (zkClient.exists(getCollectionPath(coll), watcher, true) != null) {
+        updateWatchedCollection(coll);
+      }
+      return;
+    }
+    ownStateCollections.add(coll);
+    DocCollection oldState = watchedCollectionStates.get(coll);
+    // don't go back to an older version read by a concurrent update
+    if (oldState == null || newState.getZNodeVersion() >= oldState.getZNodeVersion()) {
+      watchedCollectionStates.put(coll, newState);
+    }
+  }
+
+  private DocCollection fetchCollectionState(String coll, Watcher watcher) throws KeeperException, InterruptedException {
+    String path = getCollectionPath(coll);
+    try {
+      Stat stat = new Stat();
+      byte[] data = zkClient.getData(path, watcher, stat, true);
+      ClusterState state = ClusterState.load(stat.getVersion(), data, Collections.<String>emptySet(), path);
+      return state.getCollectionOrNull(coll);
+    } catch (KeeperException.NoNodeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the single watcher of the state node of a collection, so that setting
+   * the watch again never registers a second watcher.
+   */
+  private Watcher getCollectionWatcher(String coll) {
+    Watcher watcher = collectionWatchers.get(coll);
+    if (watcher == null) {
+      watcher = new CollectionStateWatcher(coll);
+      collectionWatchers.put(coll, watcher);
+    }
+    return watcher;
+  }
+
+  /** Publishes a new ClusterState from what was read. Must be called with the update lock held. */
+  private void constructState() {
+    Map<String, ClusterState.CollectionRef> collections = new LinkedHashMap<String, ClusterState.CollectionRef>();
+    for (Entry<String, DocCollection> entry : legacyCollectionStates.entrySet()) {
+      collections.put(entry.getKey(), new ClusterState.CollectionRef(entry.getValue()));
+    }
+    // a collection being migrated may be in both places, its own state node wins
+    for (String coll : ownStateCollections) {
+      DocCollection watched = watchedCollectionStates.get(coll);
+      if (watched != null) {
+        collections.put(coll, new ClusterState.CollectionRef(watched));
+      } else {
+        collections.put(coll, new LazyCollectionRef(coll));
+      }
+    }
+    this.clusterState = new ClusterState(liveNodes, collections, legacyClusterStateVersion);
+  }
+
+  /**
+   * Watches the state of this collection in its state node from now on, rather
+   * than reading it when it is asked for.  This is meant for the collections
+   * hosted by this node; the state of other collections is read from ZooKeeper
+   * when needed, so that changes to them cost this node nothing.
+   */
+  public void addCollectionWatch(String coll) throws KeeperException, InterruptedException {
+    synchronized (getUpdateLock()) {
+      if (!interestingCollections.add(coll)) return;
+      log.info("Watching the state of collection {}", coll);
+      if (ownStateCollections.contains(coll)) {
+        updateWatchedCollection(coll);
+        constructState();
+      }
+    }
+  }
+
+  /**
+   * Stops watching the state of this collection, e.g. once this node no longer
+   * hosts any of its replicas; from now on it is read when it is asked for.
+   */
+  public void removeCollectionWatch(String coll) {
+    synchronized (getUpdateLock()) {
+      if (!interestingCollections.remove(coll)) return;
+      log.info("No longer watching the state of collection {}", coll);
+      // a watch that is still set fires once more, and is then not set again
+      if (watchedCollectionStates.remove(coll) != null) {
+        constructState();
+      }
+    }
+  }
+
+  /**
+   * Reads the current state of a collection from ZooKeeper, whether it has its
+   * own state node or is kept in clusterstate.json.
+   *
+   * @return the state, or null if the collection doesn't exist
+   */
+  public DocCollection getCollectionLive(String coll) {
+    try {
+      DocCollection state = fetchCollectionState(coll, null);
+      if (state == null) {
+        state = ClusterState.load(zkClient, Collections.<String>emptySet()).getCollectionOrNull(coll);
+      }
+      return state;
+    } catch (KeeperException e) {
+      throw new SolrException(ErrorCode.SERVER_ERROR, "Could not load collection from ZK:" + coll, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(ErrorCode.SERVER_ERROR, "Could not load collection from ZK:" + coll, e);
+    }
+  }
+
+  /**
+   * Watches the state node of a collection: any change for the collections this
+   * node is interested in, only its creation for the others.
+   */
+  private class CollectionStateWatcher implements Watcher {
+    private final String coll;
+
+    CollectionStateWatcher(String coll) {
+      this.coll = coll;
+    }
+
+    @Override
+    public void process(WatchedEvent event) {
+      // session events are not change events,
+      // and do not remove the watcher
+      if (EventType.None.equals(event.getType())) {
+        return;
+      }
+      try {
+        synchronized (ZkStateReader.this.getUpdateLock()) {
+          if (!knownCollections.contains(coll)) {
+            return; // the collection was removed
+          }
+          if (interestingCollections.contains(coll)) {
+            log.info("A change of the state of collection {}: {}", coll, event);
+            // remake watch
+            updateWatchedCollection(coll);
+          } else {
+            // only watched again while there is no state node, the state itself is read when asked for
+            boolean had = ownStateCollections.contains(coll);
+            checkStateNode(coll);
+            if (had == ownStateCollections.contains(coll)) {
+              return;
+            }
+          }
+          constructState();
+        }
+      } catch (KeeperException e) {
+        if (e.code() == KeeperException.Code.SESSIONEXPIRED
+            || e.code() == KeeperException.Code.CONNECTIONLOSS) {
+          log.warn("ZooKeeper watch triggered, but Solr cannot talk to ZK");
+          return;
+        }
+        log.error("", e);
+        throw new ZooKeeperException(
+            SolrException.ErrorCode.SERVER_ERROR, "", e);
+      } catch (InterruptedException e) {
+        // Restore the interrupted status
+        Thread.currentThread().interrupt();
+        log.warn("", e);
+        return;
+      }
+    }
+  }
+
+  /**
+   * The state of a collection that this node doesn't watch, read from its state
+   * node when it is asked for, and then reused for a short while.
+   */
+  private class LazyCollectionRef extends ClusterState.CollectionRef {
+    private final String coll;
+    private boolean loaded;
+    private long lastLoadNanos;
+    private DocCollection cached;
+
+    LazyCollectionRef(String coll) {
+      super(null);
+      this.coll = coll;
+    }
+
+    @Override
+    public synchronized DocCollection get() {
+      long now = System.nanoTime();
+      if (!loaded || now - lastLoadNanos > LAZY_CACHE_NANOS) {
+        cached = getCollectionLive(coll);
+        lastLoadNanos = now;
+        loaded = true;
+      }
+      return cached;
+    }
+
+    @Override
+    public boolean isLazilyLoaded() {
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return "LazyCollectionRef(" + coll + ")";
+    }
+  }
   
   
   // load and publish a new CollectionInfo
@@ -411,24 +745,8 @@ public class ZkStateReader implements Closeable {
     // build immutable CloudInfo
     
     if (immediate) {
-      ClusterState clusterState;
       synchronized (getUpdateLock()) {
-        List<String> liveNodes = zkClient.getChildren(LIVE_NODES_ZKNODE, null,
-            true);
-        Set<String> liveNodesSet = new HashSet<String>();
-        liveNodesSet.addAll(liveNodes);
-        
-        if (!onlyLiveNodes) {
-          log.debug("Updating cloud state from ZooKeeper... ");
-          
-          clusterState = ClusterState.load(zkClient, liveNodesSet);
-        } else {
-          log.info("Updating live nodes from ZooKeeper... ({})", liveNodesSet.size());
-          clusterState = new ClusterState(
-              ZkStateReader.this.clusterState.getZkClusterStateVersion(), liveNodesSet,
-              ZkStateReader.this.clusterState.getCollectionStates());
-        }
-        this.clusterState = clusterState;
+        loadClusterState(onlyLiveNodes);
       }
 
     } else {
@@ -445,24 +763,8 @@ public class ZkStateReader implements Closeable {
           log.debug("Updating cluster state from ZooKeeper...");
           synchronized (getUpdateLock()) {
             clusterStateUpdateScheduled = false;
-            ClusterState clusterState;
             try {
-              List<String> liveNodes = zkClient.getChildren(LIVE_NODES_ZKNODE,
-                  null, true);
-              Set<String> liveNodesSet = new HashSet<String>();
-              liveNodesSet.addAll(liveNodes);
-              
-              if (!onlyLiveNodes) {
-                log.debug("Updating cloud state from ZooKeeper... ");
-                
-                clusterState = ClusterState.load(zkClient, liveNodesSet);
-              } else {
-                log.info("Updating live nodes from ZooKeeper... ");
-                clusterState = new ClusterState(ZkStateReader.this.clusterState.getZkClusterStateVersion(), liveNodesSet, ZkStateReader.this.clusterState.getCollectionStates());
-              }
-              
-              ZkStateReader.this.clusterState = clusterState;
-              
+              loadClusterState(onlyLiveNodes);
             } catch (KeeperException e) {
               if (e.code() == KeeperException.Code.SESSIONEXPIRED
                   || e.code() == KeeperException.Code.CONNECTIONLOSS) {
@@ -479,14 +781,33 @@ public class ZkStateReader implements Closeable {
               throw new ZooKeeperException(
                   SolrException.ErrorCode.SERVER_ERROR, "", e);
             } 
-            // update volatile
-            ZkStateReader.this.clusterState = clusterState;
           }
         }
       }, SOLRCLOUD_UPDATE_DELAY, TimeUnit.MILLISECONDS);
     }
     
   }
+
+  /**
+   * Reads the live nodes and, unless <code>onlyLiveNodes</code>, clusterstate.json,
+   * the collection list and the state of the watched collections.
+   * Must be called with the update lock held.
+   */
+  private void loadClusterState(boolean onlyLiveNodes) throws KeeperException, InterruptedException {
+    List<String> liveNodes = zkClient.getChildren(LIVE_NODES_ZKNODE, null,
+        true);
+    this.liveNodes = new HashSet<String>(liveNodes);
+
+    if (!onlyLiveNodes) {
+      log.debug("Updating cloud state from ZooKeeper... ");
+      refreshLegacyClusterState(null);
+      refreshCollectionList(null);
+      refreshWatchedCollections();
+    } else {
+      log.info("Updating live nodes from ZooKeeper... ({})", liveNodes.size());
+    }
+    constructState();
+  }
    
   /**
    * @return information about the cluster from ZooKeeper
@@ -545,6 +866,13 @@ public class ZkStateReader implements Closeable {
     throw new SolrException(ErrorCode.SERVICE_UNAVAILABLE, "No registered leader was found, collection:" + collection + " slice:" + shard);
   }
 
+  /**
+   * Get the path of the state node of a collection of {@link DocCollection#STATE_FORMAT} 2.
+   */
+  public static String getCollectionPath(String collection) {
+    return COLLECTIONS_ZKNODE + "/" + collection + "/" + STATE_JSON;
+  }
+
   /**
    * Get path where shard leader properties live in zookeeper.
    */
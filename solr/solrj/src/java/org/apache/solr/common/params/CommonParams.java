@@ -48,6 +48,9 @@ public interface CommonParams {
   /** query string */
   public static final String Q ="q";
 
+  /** rank query: re-ranks the top documents matched by the main query, see RankQuery */
+  public static final String RQ ="rq";
+
   /** sort order */
   public static final String SORT ="sort";
 
@@ -52,5 +52,17 @@ public interface ShardParams {
 
   public static final String _ROUTE_ = "_route_";
 
+  /** Retrieve the stored fields along with the top ids, saving a round trip to the shards (true/false) */
+  public static final String DISTRIB_SINGLE_PASS = "distrib.singlePass";
+
+  /** Time in ms after which a shard request is also sent to the next replica, if the first one did not respond yet */
+  public static final String SHARDS_HEDGE_DELAY = "shards.hedgeDelay";
+
+  /** Time in ms after which a shard request fails, see {@link #SHARDS_TOLERANT} to return partial results instead */
+  public static final String SHARDS_TIMEOUT = "shards.timeout";
+
+  /** Send requests to the replicas hosted by the node handling the request first, if any (true/false) */
+  public static final String SHARDS_PREFER_LOCAL = "shards.preferLocal";
+
 
 }
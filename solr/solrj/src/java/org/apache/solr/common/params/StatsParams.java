@@ -24,4 +24,10 @@ public interface StatsParams {
   public static final String STATS = "stats";
   public static final String STATS_FIELD = STATS + ".field";
   public static final String STATS_FACET = STATS + ".facet";
+
+  /** Estimate the number of distinct values of a field with a HyperLogLog sketch */
+  public static final String STATS_CARDINALITY = STATS + ".cardinality";
+
+  /** Comma separated percentiles of a numeric field to estimate with a t-digest, e.g. "50,90,99.9" */
+  public static final String STATS_PERCENTILES = STATS + ".percentiles";
 }
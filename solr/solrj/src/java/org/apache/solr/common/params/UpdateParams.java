@@ -55,6 +55,12 @@ public interface UpdateParams
   /** Select the update processor chain to use.  A RequestHandler may or may not respect this parameter */
   public static final String UPDATE_CHAIN = "update.chain";
 
+  /** The number of threads that run the update processor chain for the documents of a single request */
+  public static final String UPDATE_THREADS = "update.threads";
+
+  /** The priority class of an update request, <code>interactive</code> (the default) or <code>bulk</code> */
+  public static final String UPDATE_PRIORITY = "update.priority";
+
   /** Override the content type used for UpdateLoader **/
   public static final String ASSUME_CONTENT_TYPE = "update.contentType";
   
@@ -77,6 +77,7 @@ public class JavaBinCodec {
   private static byte VERSION = 2;
   private ObjectResolver resolver;
   protected FastOutputStream daos;
+  private StringCache stringCache;
 
   public JavaBinCodec() {
   }
@@ -100,6 +101,11 @@ public class JavaBinCodec {
     daos = os;
   }
 
+  /** Looks up short strings in the given cache when decoding, instead of allocating them every time */
+  public void setStringCache(StringCache stringCache) {
+    this.stringCache = stringCache;
+  }
+
   byte version;
 
   public Object unmarshal(InputStream is) throws IOException {
@@ -462,7 +468,7 @@ public class JavaBinCodec {
       return;
     }
     int end = s.length();
-    int maxSize = end * 4;
+    int maxSize = end * 3;  // a surrogate pair takes 2 chars and 4 bytes, anything else at most 3 bytes per char
     if (bytes == null || bytes.length < maxSize) bytes = new byte[maxSize];
     int sz = ByteUtils.UTF16toUTF8(s, 0, end, bytes, 0);
 
@@ -478,9 +484,16 @@ public class JavaBinCodec {
     if (bytes == null || bytes.length < sz) bytes = new byte[sz];
     dis.readFully(bytes, 0, sz);
 
+    if (stringCache != null) {
+      String s = stringCache.get(bytes, sz);
+      if (s != null) return s;
+    }
+
     arr.reset();
     ByteUtils.UTF8toUTF16(bytes, 0, sz, arr);
-    return arr.toString();
+    String s = arr.toString();
+    if (stringCache != null) stringCache.put(bytes, sz, s);
+    return s;
   }
 
   public void writeInt(int val) throws IOException {
@@ -700,5 +713,66 @@ public class JavaBinCodec {
     public Object resolve(Object o, JavaBinCodec codec) throws IOException;
   }
 
+  /**
+   * Recently decoded short strings, which may be shared by any number of codecs and threads,
+   * so that strings that repeat across messages (field names, facet values, ...) are only
+   * allocated once.  Strings are looked up by their UTF-8 bytes in a direct mapped table, so
+   * a collision simply replaces the older entry.
+   */
+  public static class StringCache {
+    private final Entry[] table;
+    private final int maxLength;
+
+    /**
+     * @param size      the number of entries, rounded up to a power of 2
+     * @param maxLength the maximum length in UTF-8 bytes of the strings to cache
+     */
+    public StringCache(int size, int maxLength) {
+      int n = 1;
+      while (n < size) n <<= 1;
+      table = new Entry[n];
+      this.maxLength = maxLength;
+    }
+
+    /** returns the cached string for the first len bytes, or null */
+    public String get(byte[] bytes, int len) {
+      if (len > maxLength) return null;
+      int hash = hash(bytes, len);
+      Entry e = table[hash & (table.length - 1)];
+      if (e == null || e.hash != hash || e.bytes.length != len) return null;
+      for (int i = 0; i < len; i++) {
+        if (e.bytes[i] != bytes[i]) return null;
+      }
+      return e.str;
+    }
+
+    public void put(byte[] bytes, int len, String str) {
+      if (len > maxLength) return;
+      int hash = hash(bytes, len);
+      // entries are immutable, so they can be published without synchronization
+      table[hash & (table.length - 1)] = new Entry(Arrays.copyOf(bytes, len), hash, str);
+    }
+
+    private static int hash(byte[] bytes, int len) {
+      int h = 0;
+      for (int i = 0; i < len; i++) {
+        h = 31 * h + bytes[i];
+      }
+      return h ^ (h >>> 16);
+    }
+
+    private static final class Entry {
+      final byte[] bytes;
+      final int hash;
+      final String str;
+
+      Entry(byte[] bytes, int hash, String str) {
+        this.bytes = bytes;
+        this.hash = hash;
+        this.str = str;
+      }
+    }
+  }
+
 
 }
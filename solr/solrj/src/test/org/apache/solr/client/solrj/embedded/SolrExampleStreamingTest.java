@@ -19,6 +19,7 @@ package org.apache.solr.client.solrj.embedded;
 
 import org.apache.lucene.util.LuceneTestCase.Slow;
 import org.apache.solr.client.solrj.SolrExampleTests;
+import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrServer;
 import org.apache.solr.client.solrj.impl.XMLResponseParser;
@@ -110,4 +111,41 @@ public class SolrExampleStreamingTest extends SolrExampleTests {
     }
   }
 
+  public void testAdaptiveRunners() throws Exception {
+    final List<Throwable> failures = new ArrayList<Throwable>();
+    ConcurrentUpdateSolrServer s = new ConcurrentUpdateSolrServer
+      (jetty.getBaseUrl().toString() + "/collection1", 10, 4) {
+        @Override
+        public void handleError(Throwable ex) {
+          failures.add(ex);
+        }
+      };
+    s.setAdaptiveRunners(true);
+    // a few docs per request
+    s.setMaxRequestBytes(1024);
+    assertEquals(1, s.getTargetRunners());
+
+    s.deleteByQuery("*:*");
+    int numDocs = 500;
+    for (int i = 0; i < numDocs; i++) {
+      SolrInputDocument document = new SolrInputDocument();
+      document.addField("id", "adaptive" + i);
+      document.addField("name", "doc " + i);
+      s.add(document);
+    }
+    s.blockUntilFinished();
+    s.commit();
+
+    assertEquals(0, failures.size());
+    assertEquals(numDocs, s.getDocsSent());
+    assertEquals(0, s.getErrorCount());
+    assertEquals(0, s.getQueueSize());
+    assertEquals(0, s.getInFlightBytes());
+    assertEquals(0, s.getRunnerCount());
+    int target = s.getTargetRunners();
+    assertTrue("target runners: " + target, target >= 1 && target <= 4);
+    assertEquals(numDocs, s.query(new SolrQuery("id:adaptive*")).getResults().getNumFound());
+    s.shutdown();
+  }
+
 }
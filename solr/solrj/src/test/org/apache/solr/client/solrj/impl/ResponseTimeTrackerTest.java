@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.impl;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.util.LuceneTestCase;
+
+public class ResponseTimeTrackerTest extends LuceneTestCase {
+
+  private static final String FAST = "http://fast:8983/solr/collection1";
+  private static final String SLOW = "http://slow:8983/solr/collection1";
+  private static final String UNKNOWN = "http://unknown:8983/solr/collection1";
+
+  // records a request that took the given number of ms
+  private static void request(ResponseTimeTracker tracker, String server, long millis) {
+    long startTime = tracker.started(server);
+    tracker.finished(server, startTime - millis * 1000000L);
+  }
+
+  public void testRankByResponseTime() {
+    ResponseTimeTracker tracker = new ResponseTimeTracker();
+    for (int i = 0; i < 5; i++) {
+      request(tracker, FAST, 5);
+      request(tracker, SLOW, 500);
+    }
+
+    assertEquals(Arrays.asList(FAST, SLOW), tracker.rank(Arrays.asList(SLOW, FAST)));
+    // the cores of a node share its response times
+    assertEquals(Arrays.asList("http://fast:8983/solr/other", SLOW),
+        tracker.rank(Arrays.asList(SLOW, "http://fast:8983/solr/other")));
+    // unknown nodes are tried, in the given order
+    assertEquals(Arrays.asList(UNKNOWN, FAST, SLOW), tracker.rank(Arrays.asList(SLOW, UNKNOWN, FAST)));
+  }
+
+  public void testOutstandingRequests() {
+    ResponseTimeTracker tracker = new ResponseTimeTracker();
+    request(tracker, FAST, 10);
+    request(tracker, SLOW, 30);
+
+    List<String> servers = Arrays.asList(SLOW, FAST);
+    assertEquals(FAST, tracker.rank(servers).get(0));
+    long[] startTimes = new long[3];
+    for (int i = 0; i < startTimes.length; i++) {
+      startTimes[i] = tracker.started(FAST);
+    }
+    assertEquals(SLOW, tracker.rank(servers).get(0));
+    for (long startTime : startTimes) {
+      tracker.finished(FAST, startTime);
+    }
+    assertEquals(FAST, tracker.rank(servers).get(0));
+  }
+
+  public void testMovingAverage() {
+    ResponseTimeTracker tracker = new ResponseTimeTracker();
+    tracker.setAlpha(0.5);
+    request(tracker, FAST, 10);
+    request(tracker, SLOW, 20);
+    // a single long pause doesn't outweigh the history, a few do
+    request(tracker, FAST, 25);
+    assertEquals(FAST, tracker.rank(Arrays.asList(SLOW, FAST)).get(0));
+    request(tracker, FAST, 100);
+    assertEquals(SLOW, tracker.rank(Arrays.asList(FAST, SLOW)).get(0));
+  }
+
+  public void testSlowNodesAreRetried() throws Exception {
+    ResponseTimeTracker tracker = new ResponseTimeTracker();
+    tracker.setHalfLife(10);
+    request(tracker, SLOW, 1000);
+    Thread.sleep(200);
+    request(tracker, FAST, 10);
+    // 20 half lives later, the slow node looks faster than the one just used
+    assertEquals(SLOW, tracker.rank(Arrays.asList(FAST, SLOW)).get(0));
+  }
+
+  public void testResponseTimeBlendsIntoDecayedAverage() throws Exception {
+    ResponseTimeTracker tracker = new ResponseTimeTracker();
+    tracker.setHalfLife(100);
+    request(tracker, SLOW, 1000);
+    Thread.sleep(1000);
+    // 10 half lives later the old average is about 1ms, and a fast response keeps it low
+    request(tracker, SLOW, 10);
+    request(tracker, FAST, 20);
+    assertEquals(SLOW, tracker.rank(Arrays.asList(FAST, SLOW)).get(0));
+  }
+
+  public void testGetNode() {
+    assertEquals("http://host:8983", ResponseTimeTracker.getNode("http://host:8983/solr/core"));
+    assertEquals("host:8983", ResponseTimeTracker.getNode("host:8983/solr/core"));
+    assertEquals("https://host:8983", ResponseTimeTracker.getNode("https://host:8983"));
+  }
+}
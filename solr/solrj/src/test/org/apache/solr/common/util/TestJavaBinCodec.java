@@ -36,4 +36,33 @@ public class TestJavaBinCodec extends LuceneTestCase {
       assertEquals(s, o);
     }
   }
+
+  public void testStringCache() throws Exception {
+    // a tiny cache, so that strings keep replacing each other
+    JavaBinCodec.StringCache cache = new JavaBinCodec.StringCache(4, 16);
+    String[] strings = new String[20];
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = _TestUtil.randomUnicodeString(random(), 20);
+    }
+
+    for (int i = 0; i < 1000*RANDOM_MULTIPLIER; i++) {
+      String s = strings[random().nextInt(strings.length)];
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      new JavaBinCodec().marshal(s, os);
+
+      JavaBinCodec javabin = new JavaBinCodec();
+      javabin.setStringCache(cache);
+      Object o = javabin.unmarshal(new ByteArrayInputStream(os.toByteArray()));
+      assertEquals(s, o);
+
+      // the same string decoded again right away comes from the cache, if it was short enough
+      javabin = new JavaBinCodec();
+      javabin.setStringCache(cache);
+      Object o2 = javabin.unmarshal(new ByteArrayInputStream(os.toByteArray()));
+      assertEquals(s, o2);
+      if (os.size() - 2 <= 16) {
+        assertSame(o, o2);
+      }
+    }
+  }
 }
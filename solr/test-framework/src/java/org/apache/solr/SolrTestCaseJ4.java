@@ -948,6 +948,14 @@ public abstract class SolrTestCaseJ4 extends LuceneTestCase {
     return sd;
   }
 
+  /**
+   * Converts "test JSON" into strict JSON by replacing single quotes with double quotes,
+   * the same way {@link #assertJQ} treats its tests.  Keys must still be quoted.
+   */
+  public static String json(String testJSON) {
+    return testJSON.replace('\'', '"');
+  }
+
   /** Creates JSON from a SolrInputDocument.  Doesn't currently handle boosts. */
   public static String json(SolrInputDocument doc) {
      CharArr out = new CharArr();